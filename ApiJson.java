@@ -0,0 +1,185 @@
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The JSON the gate API speaks: rendering of slots and occupancy, string
+ * escaping, and a reader for the flat request objects clients send, such as
+ * {"plate": "KA01AB1234", "type": "car"}. Nested values are not needed and
+ * are rejected.
+ */
+public final class ApiJson {
+    
+    private ApiJson() {
+    }
+    
+    public static String slot(ParkingEngine engine, int slotNumber) {
+        Vehicle vehicle = engine.getVehicle(slotNumber);
+        StringBuilder json = new StringBuilder(128);
+        json.append("{\"slot\":").append(slotNumber).append(",\"occupied\":").append(vehicle != null);
+        if (vehicle != null) {
+            appendVehicle(json, vehicle);
+        } else if (engine.isHeld(slotNumber)) {
+            json.append(",\"held\":true");
+        }
+        return json.append('}').toString();
+    }
+    
+    // Slot change pushed on the stream; same fields as slot() plus the message kind
+    public static String slotChange(ParkingEngine engine, int slotNumber) {
+        return "{\"event\":\"slot\"," + slot(engine, slotNumber).substring(1);
+    }
+    
+    public static String occupancy(ParkingEngine engine) {
+        return "{\"total\":" + engine.getTotalSlots()
+            + ",\"occupied\":" + engine.getOccupiedCount()
+            + ",\"free\":" + engine.getAvailableCount()
+            + ",\"revenuePaise\":" + engine.getTotalRevenuePaise() + "}";
+    }
+    
+    public static String occupancyChange(ParkingEngine engine) {
+        return "{\"event\":\"occupancy\"," + occupancy(engine).substring(1);
+    }
+    
+    public static String reservation(Reservation reservation) {
+        return "{\"id\":" + reservation.getId()
+            + ",\"plate\":" + quote(reservation.getPlate())
+            + ",\"type\":" + quote(reservation.getType().getCode())
+            + ",\"start\":" + quote(reservation.getStart().toString())
+            + ",\"end\":" + quote(reservation.getEnd().toString())
+            + ",\"slot\":" + reservation.getSlotNumber()
+            + ",\"status\":" + quote(reservation.getStatus().name().toLowerCase(Locale.ROOT)) + "}";
+    }
+    
+    static void appendVehicle(StringBuilder json, Vehicle vehicle) {
+        json.append(",\"plate\":").append(quote(vehicle.getVehicleNumber()))
+            .append(",\"type\":").append(quote(vehicle.getType().getCode()))
+            .append(",\"entryTime\":").append(quote(vehicle.getEntryTime().toString()));
+    }
+    
+    public static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+    
+    public static String quote(String value) {
+        StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+    
+    // Reads a flat object of string, number, boolean or null values; values come back as text
+    public static Map<String, String> parseObject(String text) {
+        Map<String, String> result = new HashMap<>();
+        int[] pos = {skipSpace(text, 0)};
+        expect(text, pos, '{');
+        if (peek(text, pos) == '}') {
+            pos[0]++;
+            return result;
+        }
+        while (true) {
+            String key = readString(text, pos);
+            expect(text, pos, ':');
+            String value = peek(text, pos) == '"' ? readString(text, pos) : readLiteral(text, pos);
+            if (value != null) {
+                result.put(key, value);
+            }
+            char next = peek(text, pos);
+            pos[0]++;
+            if (next == '}') {
+                return result;
+            }
+            if (next != ',') {
+                throw new IllegalArgumentException("Expected , or } at " + (pos[0] - 1));
+            }
+        }
+    }
+    
+    private static String readString(String text, int[] pos) {
+        expect(text, pos, '"');
+        StringBuilder value = new StringBuilder();
+        int i = pos[0];
+        while (i < text.length() && text.charAt(i) != '"') {
+            char c = text.charAt(i++);
+            if (c == '\\' && i < text.length()) {
+                char escaped = text.charAt(i++);
+                switch (escaped) {
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'u' -> {
+                        if (i + 4 > text.length()) {
+                            throw new IllegalArgumentException("Bad escape at " + i);
+                        }
+                        value.append((char) Integer.parseInt(text, i, i + 4, 16));
+                        i += 4;
+                    }
+                    default -> value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        if (i >= text.length()) {
+            throw new IllegalArgumentException("Unterminated string");
+        }
+        pos[0] = skipSpace(text, i + 1);
+        return value.toString();
+    }
+    
+    private static String readLiteral(String text, int[] pos) {
+        int start = pos[0];
+        int i = start;
+        while (i < text.length() && ",} \t\r\n".indexOf(text.charAt(i)) < 0) {
+            char c = text.charAt(i);
+            if (c == '{' || c == '[' || c == '"') {
+                throw new IllegalArgumentException("Only flat objects are accepted");
+            }
+            i++;
+        }
+        if (i == start) {
+            throw new IllegalArgumentException("Missing value at " + start);
+        }
+        pos[0] = skipSpace(text, i);
+        String literal = text.substring(start, i);
+        return literal.equals("null") ? null : literal;
+    }
+    
+    private static void expect(String text, int[] pos, char c) {
+        if (peek(text, pos) != c) {
+            throw new IllegalArgumentException("Expected " + c + " at " + pos[0]);
+        }
+        pos[0] = skipSpace(text, pos[0] + 1);
+    }
+    
+    private static char peek(String text, int[] pos) {
+        if (pos[0] >= text.length()) {
+            throw new IllegalArgumentException("Unexpected end of JSON");
+        }
+        return text.charAt(pos[0]);
+    }
+    
+    private static int skipSpace(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,276 @@
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test for the gate API on localhost. Opens thousands of keep-alive
+ * connections, each on its own virtual thread, waits until all of them are
+ * connected, then has every one loop over a mix of occupancy reads, vehicle
+ * lookups, entries and exits for a fixed time while WebSocket subscribers
+ * follow the stream. Reports throughput, latency percentiles, status codes
+ * and stream messages received.
+ *
+ * Without --port it starts its own engine and server in the same JVM, which
+ * is the quickest check; with --port it drives a server that is already
+ * running, such as the desktop app's.
+ *
+ *   java ApiLoadTest [--connections 2000] [--subscribers 200] [--warmup 3]
+ *       [--seconds 10] [--slots 5000] [--port 8080]
+ */
+public class ApiLoadTest {
+    
+    private static final InetAddress LOCALHOST = InetAddress.getLoopbackAddress();
+    private static final VehicleType[] TYPES = VehicleType.values();
+    
+    private static final LatencyHistogram latency = new LatencyHistogram();
+    private static final LongAdder[] statusCounts = new LongAdder[6];
+    private static final LongAdder failures = new LongAdder();
+    private static final LongAdder streamMessages = new LongAdder();
+    private static final AtomicInteger connected = new AtomicInteger();
+    private static volatile long measureFrom = Long.MAX_VALUE;
+    
+    public static void main(String[] args) throws Exception {
+        int connections = 2000;
+        int subscribers = 200;
+        int warmup = 3;
+        int seconds = 10;
+        int slots = 5000;
+        int port = -1;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--connections" -> connections = Integer.parseInt(args[i + 1]);
+                case "--subscribers" -> subscribers = Integer.parseInt(args[i + 1]);
+                case "--warmup" -> warmup = Integer.parseInt(args[i + 1]);
+                case "--seconds" -> seconds = Integer.parseInt(args[i + 1]);
+                case "--slots" -> slots = Integer.parseInt(args[i + 1]);
+                case "--port" -> port = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        for (int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] = new LongAdder();
+        }
+        
+        GateApiServer server = null;
+        if (port < 0) {
+            ParkingEngine engine = new ParkingEngine(slots, TariffEngine.standard());
+            SlotAssigner assigner = new SlotAssigner(new LotPlan(new LotLayout(1, slots, 100)), engine,
+                SlotAssigner.Mode.BEST_FIT);
+            assigner.attach();
+            server = GateApiServer.start(engine, null, assigner, null, 0);
+            port = server.getPort();
+        }
+        System.out.printf("Target localhost:%d, %d connections, %d stream subscribers, %d s%n",
+            port, connections, subscribers, seconds);
+        
+        int clients = connections + subscribers;
+        CountDownLatch ready = new CountDownLatch(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        long deadline;
+        long streamBefore;
+        List<Socket> streamSockets = new ArrayList<>();
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            int target = port;
+            for (int s = 0; s < subscribers; s++) {
+                Socket socket = new Socket();
+                streamSockets.add(socket);
+                threads.execute(() -> subscribe(socket, target, ready));
+            }
+            long[] end = new long[1];
+            for (int c = 0; c < connections; c++) {
+                int id = c;
+                threads.execute(() -> drive(id, target, ready, go, end));
+            }
+            
+            ready.await();
+            System.out.printf("Connected: %d clients%s%n", connected.get(),
+                server == null ? "" : ", server sees " + server.getOpenConnections() + " open connections");
+            long started = System.nanoTime();
+            measureFrom = started + warmup * 1_000_000_000L;
+            deadline = measureFrom + seconds * 1_000_000_000L;
+            end[0] = deadline;
+            go.countDown();
+            
+            // Only requests that start after the warm-up are recorded
+            Thread.sleep(warmup * 1000L);
+            streamBefore = streamMessages.sum();
+            while (System.nanoTime() < deadline) {
+                Thread.sleep(1000);
+                System.out.printf("  %,d requests, %,d stream messages%n", latency.getCount(), streamMessages.sum() - streamBefore);
+            }
+            // Workers stop at the deadline; give subscribers a moment to drain the last changes
+            Thread.sleep(500);
+            for (Socket socket : streamSockets) {
+                socket.close();
+            }
+        }
+        
+        long requests = latency.getCount();
+        System.out.printf("%nRequests: %,d in %d s = %,.0f req/s%n", requests, seconds, requests / (double) seconds);
+        System.out.printf("Latency: p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms%n",
+            millis(latency.percentile(50)), millis(latency.percentile(90)), millis(latency.percentile(99)),
+            millis(latency.percentile(99.9)), millis(latency.getMaxNanos()));
+        System.out.printf("Status: 2xx %,d, 4xx %,d, 5xx %,d, other %,d; connection failures %,d%n",
+            statusCounts[2].sum(), statusCounts[4].sum(), statusCounts[5].sum(),
+            statusCounts[0].sum() + statusCounts[1].sum() + statusCounts[3].sum(), failures.sum());
+        System.out.printf("Stream: %,d messages to %d subscribers%n", streamMessages.sum() - streamBefore, subscribers);
+        if (server != null) {
+            server.close();
+        }
+    }
+    
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+    
+    // One keep-alive client: parks its own vehicles, looks them up and takes them out again
+    private static void drive(int id, int port, CountDownLatch ready, CountDownLatch go, long[] end) {
+        try (Socket socket = new Socket()) {
+            try {
+                socket.connect(new InetSocketAddress(LOCALHOST, port), 30_000);
+                socket.setTcpNoDelay(true);
+                connected.incrementAndGet();
+            } finally {
+                ready.countDown();
+            }
+            go.await();
+            
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            Random random = new Random(id);
+            String type = TYPES[id % TYPES.length].getCode();
+            long deadline = end[0];
+            int trips = 0;
+            String parked = null;
+            while (System.nanoTime() < deadline) {
+                int roll = random.nextInt(10);
+                if (parked == null && roll < 3) {
+                    String plate = "LT" + id + "N" + trips++;
+                    if (exchange(in, out, post("/api/entry",
+                            "{\"plate\":\"" + plate + "\",\"type\":\"" + type + "\",\"gate\":\"load\"}")) == 201) {
+                        parked = plate;
+                    }
+                } else if (parked != null && roll < 2) {
+                    exchange(in, out, post("/api/exit", "{\"plate\":\"" + parked + "\"}"));
+                    parked = null;
+                } else if (parked != null && roll < 4) {
+                    exchange(in, out, "GET /api/vehicles/" + parked + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+                } else {
+                    exchange(in, out, "GET /api/occupancy HTTP/1.1\r\nHost: localhost\r\n\r\n");
+                }
+            }
+        } catch (IOException e) {
+            failures.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static String post(String path, String json) {
+        return "POST " + path + " HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/json\r\n"
+            + "Content-Length: " + json.getBytes(StandardCharsets.UTF_8).length + "\r\n\r\n" + json;
+    }
+    
+    // Sends one request and reads the whole response; returns the status code
+    private static int exchange(InputStream in, OutputStream out, String request) throws IOException {
+        long started = System.nanoTime();
+        out.write(request.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        
+        String statusLine = readLine(in);
+        int status = Integer.parseInt(statusLine.substring(9, 12));
+        int length = 0;
+        for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+            if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                length = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        in.skipNBytes(length);
+        if (started < measureFrom) {
+            return status;
+        }
+        latency.record(System.nanoTime() - started);
+        statusCounts[status / 100 < statusCounts.length ? status / 100 : 0].increment();
+        return status;
+    }
+    
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new EOFException();
+            }
+            if (c != '\r') {
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+    
+    // Follows the slot stream, counting messages until the socket is closed under it
+    private static void subscribe(Socket socket, int port, CountDownLatch ready) {
+        try (socket) {
+            InputStream in;
+            try {
+                socket.connect(new InetSocketAddress(LOCALHOST, port), 30_000);
+                byte[] nonce = new byte[16];
+                new Random(port).nextBytes(nonce);
+                OutputStream out = socket.getOutputStream();
+                out.write(("GET /api/stream HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\n"
+                    + "Connection: Upgrade\r\nSec-WebSocket-Version: 13\r\n"
+                    + "Sec-WebSocket-Key: " + Base64.getEncoder().encodeToString(nonce) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
+                in = new BufferedInputStream(socket.getInputStream());
+                if (!readLine(in).startsWith("HTTP/1.1 101")) {
+                    throw new IOException("Stream upgrade refused");
+                }
+                while (!readLine(in).isEmpty()) {
+                    // Skip the handshake headers
+                }
+                connected.incrementAndGet();
+            } finally {
+                ready.countDown();
+            }
+            while (true) {
+                int first = in.read();
+                if (first < 0) {
+                    return;
+                }
+                long length = in.read() & 0x7F;
+                if (length == 126) {
+                    length = (in.read() << 8) | in.read();
+                } else if (length == 127) {
+                    length = 0;
+                    for (int i = 0; i < 8; i++) {
+                        length = (length << 8) | in.read();
+                    }
+                }
+                in.skipNBytes(length);
+                if ((first & 0x0F) == 0x1) {
+                    streamMessages.increment();
+                }
+            }
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                failures.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+import java.time.LocalDateTime;
+
+/**
+ * Prices a stay in paise (1/100 rupee) so revenue can be summed exactly.
+ */
+@FunctionalInterface
+public interface ChargeCalculator {
+    
+    long chargeFor(Vehicle vehicle, LocalDateTime exitTime);
+}
@@ -0,0 +1,185 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counterpart of SlotBitSet. Leaf bits are changed with CAS and are
+ * the source of truth; the summary levels are hints that may briefly claim a
+ * word is non-empty when it is not, which searches simply step over.
+ */
+public class ConcurrentSlotBitSet {
+    
+    private final int size;
+    private final AtomicLongArray[] levels;
+    private final AtomicInteger cardinality = new AtomicInteger();
+    
+    public ConcurrentSlotBitSet(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive: " + size);
+        }
+        this.size = size;
+        
+        int depth = 1;
+        for (int words = wordCount(size); words > 1; words = wordCount(words)) {
+            depth++;
+        }
+        levels = new AtomicLongArray[depth];
+        int bits = size;
+        for (int level = 0; level < depth; level++) {
+            levels[level] = new AtomicLongArray(wordCount(bits));
+            bits = levels[level].length();
+        }
+    }
+    
+    private static int wordCount(int bits) {
+        return (bits + 63) >>> 6;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public int cardinality() {
+        return cardinality.get();
+    }
+    
+    public boolean get(int index) {
+        checkIndex(index);
+        return (levels[0].get(index >>> 6) & (1L << index)) != 0;
+    }
+    
+    // Returns true if this call changed the bit from clear to set
+    public boolean set(int index) {
+        checkIndex(index);
+        AtomicLongArray leaves = levels[0];
+        int w = index >>> 6;
+        long mask = 1L << index;
+        long word;
+        do {
+            word = leaves.get(w);
+            if ((word & mask) != 0) {
+                return false;
+            }
+        } while (!leaves.compareAndSet(w, word, word | mask));
+        cardinality.incrementAndGet();
+        markNonEmpty(1, w);
+        return true;
+    }
+    
+    // Returns true if this call changed the bit from set to clear; only one racing caller wins
+    public boolean clear(int index) {
+        checkIndex(index);
+        AtomicLongArray leaves = levels[0];
+        int w = index >>> 6;
+        long mask = 1L << index;
+        long word;
+        do {
+            word = leaves.get(w);
+            if ((word & mask) == 0) {
+                return false;
+            }
+        } while (!leaves.compareAndSet(w, word, word & ~mask));
+        cardinality.decrementAndGet();
+        if ((word & ~mask) == 0) {
+            markEmpty(1, w);
+        }
+        return true;
+    }
+    
+    // Atomically clears and returns the lowest set bit at or after fromIndex, or -1 if none
+    public int claimNext(int fromIndex) {
+        while (true) {
+            int index = nextSetBit(fromIndex);
+            if (index < 0 || clear(index)) {
+                return index;
+            }
+        }
+    }
+    
+    public int nextSetBit(int fromIndex) {
+        if (fromIndex >= size) {
+            return -1;
+        }
+        return nextSet(0, Math.max(fromIndex, 0));
+    }
+    
+    // Only safe before the set is shared with other threads
+    public void setAll() {
+        int bits = size;
+        for (AtomicLongArray words : levels) {
+            int last = words.length() - 1;
+            for (int w = 0; w < last; w++) {
+                words.set(w, -1L);
+            }
+            words.set(last, (bits & 63) == 0 ? -1L : (1L << bits) - 1);
+            bits = words.length();
+        }
+        cardinality.set(size);
+    }
+    
+    private int nextSet(int level, int from) {
+        AtomicLongArray words = levels[level];
+        int w = from >>> 6;
+        if (w >= words.length()) {
+            return -1;
+        }
+        long word = words.get(w) & (-1L << from);
+        while (word == 0) {
+            // Let the level above point at the next candidate word, then verify it
+            if (level + 1 < levels.length) {
+                w = nextSet(level + 1, w + 1);
+            } else {
+                w = w + 1 < words.length() ? w + 1 : -1;
+            }
+            if (w < 0) {
+                return -1;
+            }
+            word = words.get(w);
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+    
+    private void markNonEmpty(int level, int index) {
+        for (; level < levels.length; level++) {
+            AtomicLongArray words = levels[level];
+            int w = index >>> 6;
+            long mask = 1L << index;
+            long word;
+            do {
+                word = words.get(w);
+                if ((word & mask) != 0) {
+                    return;
+                }
+            } while (!words.compareAndSet(w, word, word | mask));
+            index = w;
+        }
+    }
+    
+    private void markEmpty(int level, int index) {
+        if (level >= levels.length) {
+            return;
+        }
+        AtomicLongArray words = levels[level];
+        int w = index >>> 6;
+        long mask = 1L << index;
+        long word;
+        do {
+            word = words.get(w);
+            if ((word & mask) == 0) {
+                return;
+            }
+        } while (!words.compareAndSet(w, word, word & ~mask));
+        if ((word & ~mask) == 0) {
+            markEmpty(level + 1, w);
+        }
+        // A bit may have been set below while the hint was being cleared
+        if (levels[level - 1].get(index) != 0) {
+            markNonEmpty(level, index);
+        }
+    }
+    
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside 0.." + (size - 1));
+        }
+    }
+}
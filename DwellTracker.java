@@ -0,0 +1,260 @@
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps what each parked vehicle owes up to date without scanning the lot.
+ * Every parked vehicle has one timeout in a TimerWheel, due at the next
+ * minute its charge steps up or it reaches the overstay limit, whichever
+ * comes first. When it fires, the charge is worked out for that one
+ * vehicle, the listeners hear what changed, and the next such minute is
+ * scheduled, so a lot billed by the hour wakes once an hour per vehicle
+ * rather than every minute. Minutes stayed are worked out when asked for.
+ *
+ * The charge is what the vehicle would owe leaving during the coming
+ * minute, which is how a tariff step shows up the moment the hour it bills
+ * begins. The next step is found by probing minutes ahead, doubling the
+ * gap and then halving it, which relies on a charge never going down as a
+ * stay goes on. A vehicle that reaches the overstay limit is reported once.
+ * Time is the wheel's, so a replay that advances the wheel by hand sees
+ * the same changes as the live lot. Listeners are called on the thread
+ * that advances the wheel.
+ */
+public class DwellTracker implements ParkingListener {
+    
+    private static final long SECONDS_PER_MINUTE = 60;
+    // A charge that stops rising, say at a daily cap, is looked at again this often
+    private static final long HORIZON_MINUTES = 24 * 60;
+    
+    public interface Listener {
+        
+        // What the vehicle owes went up, for example as it entered a new billed hour or band
+        default void chargeChanged(int slotNumber, Vehicle vehicle, long chargePaise) {
+        }
+        
+        default void overstayed(int slotNumber, Vehicle vehicle, long minutes) {
+        }
+    }
+    
+    // One parked vehicle; a tick for a vehicle that has since left finds its slot holding another Dwell
+    private static final class Dwell {
+        final Vehicle vehicle;
+        final long plateCode;
+        final long entrySecond;
+        volatile long chargePaise;
+        volatile boolean overstayed;
+        volatile TimerWheel.Timeout timeout;
+        boolean gone;
+        
+        Dwell(Vehicle vehicle) {
+            this.vehicle = vehicle;
+            this.plateCode = PlateCodec.encode(vehicle.getVehicleNumber());
+            this.entrySecond = JournalRecord.toEpochSecond(vehicle.getEntryTime());
+        }
+    }
+    
+    private final ParkingEngine engine;
+    private final ChargeCalculator calculator;
+    private final TimerWheel timers;
+    private final long overstayMinutes;
+    private final AtomicReferenceArray<Dwell> dwells;
+    // Used only on the wheel's thread, to check a vehicle is still parked without building it
+    private final SlotStore.Cursor cursor;
+    private final AtomicInteger overstayCount = new AtomicInteger();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    
+    public DwellTracker(ParkingEngine engine, ChargeCalculator calculator, TimerWheel timers, long overstayMinutes) {
+        if (overstayMinutes <= 0) {
+            throw new IllegalArgumentException("Overstay limit must be positive: " + overstayMinutes);
+        }
+        this.engine = engine;
+        this.calculator = calculator;
+        this.timers = timers;
+        this.overstayMinutes = overstayMinutes;
+        this.dwells = new AtomicReferenceArray<>(engine.getTotalSlots());
+        this.cursor = engine.getSlotStore().cursor();
+    }
+    
+    // Starts from the vehicles already parked, then follows the engine
+    public void attach() {
+        engine.addListener(this);
+        for (int slot = engine.nextOccupiedSlot(1); slot > 0; slot = engine.nextOccupiedSlot(slot + 1)) {
+            Vehicle vehicle = engine.getVehicle(slot);
+            if (vehicle != null && dwells.get(slot - 1) == null) {
+                track(slot, vehicle);
+            }
+        }
+    }
+    
+    public void detach() {
+        engine.removeListener(this);
+    }
+    
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+    
+    @Override
+    public void vehicleParked(int slotNumber, Vehicle vehicle) {
+        track(slotNumber, vehicle);
+    }
+    
+    @Override
+    public void vehicleExited(ParkingSession session) {
+        Dwell dwell = dwells.getAndSet(session.getSlotNumber() - 1, null);
+        if (dwell != null) {
+            cancel(dwell);
+        }
+    }
+    
+    // Whole minutes as of the wheel's time, or -1 if the slot is not tracked
+    public long getMinutes(int slotNumber) {
+        Dwell dwell = dwells.get(slotNumber - 1);
+        return dwell != null ? minutesAt(dwell, timers.getCurrentSecond()) : -1;
+    }
+    
+    public long getChargePaise(int slotNumber) {
+        Dwell dwell = dwells.get(slotNumber - 1);
+        return dwell != null ? dwell.chargePaise : 0;
+    }
+    
+    public boolean isOverstayed(int slotNumber) {
+        Dwell dwell = dwells.get(slotNumber - 1);
+        return dwell != null && dwell.overstayed;
+    }
+    
+    // Vehicles parked now that have passed the overstay limit
+    public int getOverstayCount() {
+        return overstayCount.get();
+    }
+    
+    public long getOverstayMinutes() {
+        return overstayMinutes;
+    }
+    
+    // Charge as of the wheel's time; later ones come from the ticks
+    private void track(int slotNumber, Vehicle vehicle) {
+        Dwell dwell = new Dwell(vehicle);
+        long minutes = minutesAt(dwell, timers.getCurrentSecond());
+        dwell.chargePaise = chargeDuring(dwell, dwell.entrySecond + minutes * SECONDS_PER_MINUTE);
+        if (minutes >= overstayMinutes) {
+            dwell.overstayed = true;
+            overstayCount.incrementAndGet();
+        }
+        Dwell previous = dwells.getAndSet(slotNumber - 1, dwell);
+        if (previous != null) {
+            cancel(previous);
+        }
+        schedule(slotNumber, dwell, nextChange(dwell, minutes));
+    }
+    
+    private void schedule(int slotNumber, Dwell dwell, long minute) {
+        dwell.timeout = timers.schedule(dwell.entrySecond + minute * SECONDS_PER_MINUTE, () -> tick(slotNumber, dwell, minute));
+        // The vehicle may have left while the tick was being scheduled
+        if (dwells.get(slotNumber - 1) != dwell) {
+            dwell.timeout.cancel();
+        }
+    }
+    
+    private void tick(int slotNumber, Dwell dwell, long minute) {
+        if (dwells.get(slotNumber - 1) != dwell) {
+            return;
+        }
+        if (!stillParked(slotNumber, dwell)) {
+            // The exit was reported before the entry it follows, so nothing else will drop this one
+            if (dwells.compareAndSet(slotNumber - 1, dwell, null)) {
+                cancel(dwell);
+            }
+            return;
+        }
+        long charge = chargeDuring(dwell, dwell.entrySecond + minute * SECONDS_PER_MINUTE);
+        boolean chargeChanged = charge != dwell.chargePaise;
+        dwell.chargePaise = charge;
+        boolean overstayed = false;
+        synchronized (dwell) {
+            if (!dwell.gone && !dwell.overstayed && minute >= overstayMinutes) {
+                dwell.overstayed = true;
+                overstayCount.incrementAndGet();
+                overstayed = true;
+            }
+        }
+        for (Listener listener : listeners) {
+            if (chargeChanged) {
+                listener.chargeChanged(slotNumber, dwell.vehicle, charge);
+            }
+            if (overstayed) {
+                listener.overstayed(slotNumber, dwell.vehicle, minute);
+            }
+        }
+        schedule(slotNumber, dwell, nextChange(dwell, minute));
+    }
+    
+    /*
+     * The first minute after this one at which the charge differs from the
+     * one held, or the vehicle reaches the overstay limit. Probes 1, 2, 4...
+     * minutes ahead until the charge moves, then halves the last gap, so an
+     * hourly step is found in about a dozen quotes.
+     */
+    private long nextChange(Dwell dwell, long minute) {
+        long limit = minute + HORIZON_MINUTES;
+        if (!dwell.overstayed && overstayMinutes > minute) {
+            limit = Math.min(limit, overstayMinutes);
+        }
+        long charge = dwell.chargePaise;
+        long unchanged = minute;
+        long changed;
+        for (long step = 1; ; step <<= 1) {
+            long probe = Math.min(unchanged + step, limit);
+            if (chargeDuring(dwell, dwell.entrySecond + probe * SECONDS_PER_MINUTE) != charge) {
+                changed = probe;
+                break;
+            }
+            if (probe == limit) {
+                return limit;
+            }
+            unchanged = probe;
+        }
+        while (changed - unchanged > 1) {
+            long middle = (unchanged + changed) >>> 1;
+            if (chargeDuring(dwell, dwell.entrySecond + middle * SECONDS_PER_MINUTE) != charge) {
+                changed = middle;
+            } else {
+                unchanged = middle;
+            }
+        }
+        return changed;
+    }
+    
+    private static long minutesAt(Dwell dwell, long second) {
+        return Math.max(0, second - dwell.entrySecond) / SECONDS_PER_MINUTE;
+    }
+    
+    private boolean stillParked(int slotNumber, Dwell dwell) {
+        if (!cursor.read(slotNumber) || cursor.getEntrySecond() != dwell.entrySecond || cursor.getPlateCode() != dwell.plateCode) {
+            return false;
+        }
+        return dwell.plateCode != PlateCodec.NONE || dwell.vehicle.getVehicleNumber().equals(cursor.getPlate());
+    }
+    
+    // Billing is in whole minutes, so one second into the minute prices all of it
+    private long chargeDuring(Dwell dwell, long minuteStartSecond) {
+        return calculator.chargeFor(dwell.vehicle, JournalRecord.fromEpochSecond(minuteStartSecond + 1));
+    }
+    
+    private void cancel(Dwell dwell) {
+        TimerWheel.Timeout timeout = dwell.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        synchronized (dwell) {
+            dwell.gone = true;
+            if (dwell.overstayed) {
+                overstayCount.decrementAndGet();
+            }
+        }
+    }
+}
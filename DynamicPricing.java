@@ -0,0 +1,88 @@
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Surge and discount pricing on top of a base tariff. When a vehicle parks,
+ * the forecast load for its entry hour sets a multiplier: a discount while
+ * the lot is expected to be quiet, nothing in between, and a surge that
+ * rises linearly from SURGE_FROM to MAX_SURGE_PERMILLE for a full lot. The
+ * multiplier is fixed at entry, so the price a driver is quoted does not
+ * change while they are parked; vehicles parked before the engine knew of
+ * this pricing get the multiplier for their entry hour when they leave.
+ *
+ * Until the forecaster has seen a whole hour every stay is charged at the
+ * base price. Multipliers are in permille and the result is rounded to the
+ * nearest paisa.
+ *
+ * Locked multipliers are also remembered per slot, so a vehicle whose exit
+ * this pricing never heard of, say because it was removed as a listener
+ * for a while, loses its lock when the next vehicle parks in that slot
+ * instead of staying in the map for good.
+ */
+public class DynamicPricing implements ChargeCalculator, ParkingListener {
+    
+    public static final int BASE_PERMILLE = 1000;
+    private static final double DISCOUNT_BELOW = 0.40;
+    private static final int DISCOUNT_PERMILLE = 800;
+    private static final double SURGE_FROM = 0.85;
+    private static final int MAX_SURGE_PERMILLE = 1500;
+    
+    private final ChargeCalculator base;
+    private final OccupancyForecaster forecaster;
+    private final Map<Vehicle, Integer> lockedPermille = new ConcurrentHashMap<>();
+    // The vehicle each slot's lock was taken for, by slot index
+    private final AtomicReferenceArray<Vehicle> lockedIn;
+    
+    public DynamicPricing(ChargeCalculator base, OccupancyForecaster forecaster) {
+        this.base = base;
+        this.forecaster = forecaster;
+        this.lockedIn = new AtomicReferenceArray<>(forecaster.getTotalSlots());
+    }
+    
+    // Multiplier for a vehicle arriving at the given time
+    public int multiplierPermille(LocalDateTime time) {
+        double load = forecaster.forecastLoad(time);
+        if (load < 0) {
+            return BASE_PERMILLE;
+        }
+        if (load < DISCOUNT_BELOW) {
+            return DISCOUNT_PERMILLE;
+        }
+        if (load <= SURGE_FROM) {
+            return BASE_PERMILLE;
+        }
+        return BASE_PERMILLE + (int) Math.round((MAX_SURGE_PERMILLE - BASE_PERMILLE) * (load - SURGE_FROM) / (1 - SURGE_FROM));
+    }
+    
+    @Override
+    public long chargeFor(Vehicle vehicle, LocalDateTime exitTime) {
+        long charge = base.chargeFor(vehicle, exitTime);
+        Integer permille = lockedPermille.get(vehicle);
+        int multiplier = permille != null ? permille : multiplierPermille(vehicle.getEntryTime());
+        return (charge * multiplier + BASE_PERMILLE / 2) / BASE_PERMILLE;
+    }
+    
+    // Locked multipliers held, at most one per slot
+    public int getLockedCount() {
+        return lockedPermille.size();
+    }
+    
+    @Override
+    public void vehicleParked(int slotNumber, Vehicle vehicle) {
+        lockedPermille.put(vehicle, multiplierPermille(vehicle.getEntryTime()));
+        // The slot is this vehicle's now, so whoever was locked in it before has left
+        Vehicle previous = lockedIn.getAndSet(slotNumber - 1, vehicle);
+        if (previous != null && !previous.equals(vehicle)) {
+            lockedPermille.remove(previous);
+        }
+    }
+    
+    // The engine prices the stay before it reports the exit, so the lock is no longer needed
+    @Override
+    public void vehicleExited(ParkingSession session) {
+        lockedPermille.remove(session.getVehicle());
+        lockedIn.compareAndSet(session.getSlotNumber() - 1, session.getVehicle(), null);
+    }
+}
@@ -0,0 +1,597 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URLDecoder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP/1.1 and WebSocket API over the in-process ParkingEngine, so the web
+ * page, kiosks and plate cameras all work against the same lot as the
+ * desktop window. Every connection gets its own virtual thread and plain
+ * blocking I/O, which keeps thousands of idle keep-alive and stream
+ * connections cheap.
+ *
+ *   GET  /api/occupancy            totals and revenue
+ *   GET  /api/slots?from=1&limit=  page of slot states
+ *   GET  /api/slots/{n}            one slot
+ *   GET  /api/vehicles/{plate}     where a vehicle is and what it owes now
+ *   POST /api/entry                {"plate", "type", optional "slot", "gate"}
+ *   POST /api/exit                 {"plate"} or {"slot"}; answers slot, charge and receipt number
+ *   POST /api/reservations         {"plate", "type", "start", "end"}, times as 2025-03-01T09:00
+ *   GET  /api/reservations/{id}    one booking and its status
+ *   POST /api/reservations/cancel  {"id"}
+ *   GET  /api/stream               WebSocket of slot and occupancy changes
+ *
+ * Entries without a slot and exits by plate go through a GateEventPipeline,
+ * so API traffic is applied in order with the same backpressure as any other
+ * gate feed; a full pipeline answers 503 with Retry-After. An event the
+ * pipeline has taken is always applied, so the request then waits for its
+ * result however long that takes rather than answering 503. With a
+ * SlotAssigner, those entries get the nearest slot the vehicle fits from the
+ * gate named in the request, and a slot picked by hand must fit too.
+ * Reservations are served when the assigner has a ReservationBook.
+ */
+public class GateApiServer implements AutoCloseable {
+    
+    private static final int MAX_LINE = 8192;
+    private static final int MAX_BODY = 64 * 1024;
+    private static final int IDLE_TIMEOUT_MILLIS = 30_000;
+    private static final int PAGE_LIMIT = 10_000;
+    private static final long QUEUE_WAIT_MILLIS = 500;
+    
+    private final ParkingEngine engine;
+    private final ParkingMetrics metrics;
+    private final SlotAssigner assigner;
+    private final Path page;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor();
+    private final GateEventPipeline pipeline;
+    private final SlotStreamHub stream;
+    private final Map<GateEvent, CompletableFuture<GateResult>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final Thread acceptor;
+    private volatile boolean running;
+    
+    private GateApiServer(ParkingEngine engine, ParkingMetrics metrics, SlotAssigner assigner, Path page,
+                          ServerSocketChannel serverChannel) throws IOException {
+        this.engine = engine;
+        this.metrics = metrics;
+        this.assigner = assigner;
+        this.page = page;
+        this.serverChannel = serverChannel;
+        this.pipeline = new GateEventPipeline(engine, metrics, assigner, 8192, 512, this::complete);
+        this.stream = new SlotStreamHub(engine);
+        this.acceptor = new Thread(this::acceptLoop, "gate-api-accept");
+        this.acceptor.setDaemon(true);
+    }
+    
+    // metrics and assigner may be null; page, if it exists, is served at /
+    public static GateApiServer start(ParkingEngine engine, ParkingMetrics metrics, SlotAssigner assigner, Path page,
+                                      int port) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 4096);
+        GateApiServer server = new GateApiServer(engine, metrics, assigner, page, serverChannel);
+        server.running = true;
+        server.pipeline.start();
+        server.stream.start();
+        server.acceptor.start();
+        return server;
+    }
+    
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+    
+    // HTTP connections being served plus stream subscribers
+    public int getOpenConnections() {
+        return openConnections.get() + stream.getSubscriberCount();
+    }
+    
+    public int getStreamSubscribers() {
+        return stream.getSubscriberCount();
+    }
+    
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        stream.close();
+        pipeline.close();
+        connections.shutdownNow();
+    }
+    
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                connections.execute(() -> serve(channel));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Gate API accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    private void complete(GateResult result) {
+        CompletableFuture<GateResult> future = pending.remove(result.getEvent());
+        if (future != null) {
+            future.complete(result);
+        }
+    }
+    
+    private void serve(SocketChannel channel) {
+        openConnections.incrementAndGet();
+        boolean handedOver = false;
+        try {
+            Socket socket = channel.socket();
+            socket.setSoTimeout(IDLE_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            while (running) {
+                Request request;
+                try {
+                    request = Request.read(in);
+                } catch (IllegalArgumentException e) {
+                    respond(out, 400, ApiJson.error(e.getMessage()), false);
+                    return;
+                }
+                if (request == null) {
+                    return;
+                }
+                if (request.path.equals("/api/stream") && "websocket".equalsIgnoreCase(request.header("upgrade"))) {
+                    handedOver = upgrade(channel, in, out, request);
+                    return;
+                }
+                boolean keepAlive = !"close".equalsIgnoreCase(request.header("connection"));
+                handle(request, out, keepAlive);
+                if (!keepAlive) {
+                    return;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            // Idle keep-alive connection
+        } catch (IOException e) {
+            // Client went away
+        } finally {
+            openConnections.decrementAndGet();
+            if (!handedOver) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+    }
+    
+    // Answers the handshake and hands the channel, with anything the client sent after it, to the stream hub;
+    // false if the request was refused
+    private boolean upgrade(SocketChannel channel, InputStream in, OutputStream out, Request request) throws IOException {
+        String key = request.header("sec-websocket-key");
+        if (key == null) {
+            respond(out, 400, ApiJson.error("Missing Sec-WebSocket-Key"), false);
+            return false;
+        }
+        out.write(("HTTP/1.1 101 Switching Protocols\r\n"
+            + "Upgrade: websocket\r\n"
+            + "Connection: Upgrade\r\n"
+            + "Sec-WebSocket-Accept: " + WebSocketConnection.acceptKey(key) + "\r\n\r\n")
+            .getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+        stream.subscribe(new WebSocketConnection(channel, in.readNBytes(in.available())));
+        return true;
+    }
+    
+    private void handle(Request request, OutputStream out, boolean keepAlive) throws IOException {
+        if (request.method.equals("OPTIONS")) {
+            respond(out, 204, null, keepAlive);
+            return;
+        }
+        try {
+            String path = request.path;
+            if (request.method.equals("GET")) {
+                if (path.equals("/") && page != null && Files.exists(page)) {
+                    respond(out, 200, "text/html; charset=utf-8", Files.readAllBytes(page), keepAlive);
+                } else if (path.equals("/api/occupancy")) {
+                    respond(out, 200, ApiJson.occupancy(engine), keepAlive);
+                } else if (path.equals("/api/slots")) {
+                    respond(out, 200, slotPage(request), keepAlive);
+                } else if (path.startsWith("/api/slots/")) {
+                    int slotNumber = Integer.parseInt(path.substring("/api/slots/".length()));
+                    if (slotNumber < 1 || slotNumber > engine.getTotalSlots()) {
+                        respond(out, 404, ApiJson.error("No such slot: " + slotNumber), keepAlive);
+                    } else {
+                        respond(out, 200, ApiJson.slot(engine, slotNumber), keepAlive);
+                    }
+                } else if (path.startsWith("/api/vehicles/")) {
+                    lookup(decode(path.substring("/api/vehicles/".length())), out, keepAlive);
+                } else if (path.startsWith("/api/reservations/") && reservations() != null) {
+                    Reservation reservation = reservations().get(Long.parseLong(path.substring("/api/reservations/".length())));
+                    if (reservation == null) {
+                        respond(out, 404, ApiJson.error("No such reservation"), keepAlive);
+                    } else {
+                        respond(out, 200, ApiJson.reservation(reservation), keepAlive);
+                    }
+                } else {
+                    respond(out, 404, ApiJson.error("Not found"), keepAlive);
+                }
+            } else if (request.method.equals("POST") && path.equals("/api/entry")) {
+                entry(request.parameters(), out, keepAlive);
+            } else if (request.method.equals("POST") && path.equals("/api/exit")) {
+                exit(request.parameters(), out, keepAlive);
+            } else if (request.method.equals("POST") && path.equals("/api/reservations") && reservations() != null) {
+                reserve(request.parameters(), out, keepAlive);
+            } else if (request.method.equals("POST") && path.equals("/api/reservations/cancel") && reservations() != null) {
+                long id = Long.parseLong(required(request.parameters(), "id"));
+                if (reservations().cancel(id)) {
+                    respond(out, 200, "{\"id\":" + id + ",\"status\":\"cancelled\"}", keepAlive);
+                } else {
+                    respond(out, 404, ApiJson.error("No active reservation " + id), keepAlive);
+                }
+            } else {
+                respond(out, 405, ApiJson.error("Method not allowed"), keepAlive);
+            }
+        } catch (IllegalArgumentException e) {
+            respond(out, 400, ApiJson.error(e.getMessage()), keepAlive);
+        } catch (UncheckedIOException e) {
+            // The journal could not write the change, so it must not be acknowledged
+            respond(out, 500, ApiJson.error("Not recorded: " + e.getCause().getMessage()), keepAlive);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(out, 503, ApiJson.error("Shutting down"), false);
+        }
+    }
+    
+    private String slotPage(Request request) {
+        int from = Math.max(1, request.intParameter("from", 1));
+        int limit = Math.min(PAGE_LIMIT, Math.max(0, request.intParameter("limit", 1000)));
+        int to = (int) Math.min(engine.getTotalSlots(), (long) from + limit - 1);
+        StringBuilder json = new StringBuilder(64 + 48 * Math.max(0, to - from + 1));
+        json.append("{\"total\":").append(engine.getTotalSlots()).append(",\"slots\":[");
+        for (int slotNumber = from; slotNumber <= to; slotNumber++) {
+            if (slotNumber > from) {
+                json.append(',');
+            }
+            json.append(ApiJson.slot(engine, slotNumber));
+        }
+        return json.append("]}").toString();
+    }
+    
+    private void lookup(String plate, OutputStream out, boolean keepAlive) throws IOException {
+        int slotNumber = engine.findSlotByPlate(plate);
+        Vehicle vehicle = slotNumber > 0 ? engine.getVehicle(slotNumber) : null;
+        if (vehicle == null) {
+            respond(out, 404, ApiJson.error("Vehicle " + plate + " is not parked here"), keepAlive);
+            return;
+        }
+        StringBuilder json = new StringBuilder("{\"slot\":").append(slotNumber);
+        ApiJson.appendVehicle(json, vehicle);
+        json.append(",\"chargePaise\":").append(engine.quoteCharge(slotNumber, LocalDateTime.now())).append('}');
+        respond(out, 200, json.toString(), keepAlive);
+    }
+    
+    private void entry(Map<String, String> parameters, OutputStream out, boolean keepAlive)
+            throws IOException, InterruptedException {
+        String plate = required(parameters, "plate").toUpperCase(Locale.ROOT).trim();
+        VehicleType type = VehicleType.fromCode(required(parameters, "type").toLowerCase(Locale.ROOT));
+        String gate = parameters.getOrDefault("gate", "api");
+        
+        if (parameters.containsKey("slot")) {
+            // An operator picked the slot, so there is nothing to queue
+            int slotNumber = Integer.parseInt(parameters.get("slot"));
+            if (slotNumber < 1 || slotNumber > engine.getTotalSlots()) {
+                respond(out, 404, ApiJson.error("No such slot: " + slotNumber), keepAlive);
+                return;
+            }
+            if (assigner != null && !assigner.fits(slotNumber, type)) {
+                respond(out, 409, ApiJson.error("Slot " + slotNumber + " is too small for a " + type.getDisplayName()), keepAlive);
+                return;
+            }
+            long requested = System.nanoTime();
+            if (!engine.parkVehicle(slotNumber, new Vehicle(plate, type, LocalDateTime.now()))) {
+                int parkedSlot = engine.findSlotByPlate(plate);
+                String message = parkedSlot > 0 ? "Vehicle " + plate + " is already parked in Slot " + parkedSlot
+                    : "Slot " + slotNumber + " is already occupied";
+                respond(out, 409, ApiJson.error(message), keepAlive);
+                return;
+            }
+            if (metrics != null) {
+                metrics.recordAssignment(System.nanoTime() - requested);
+            }
+            respond(out, 201, ApiJson.slot(engine, slotNumber), keepAlive);
+            return;
+        }
+        
+        GateResult result = submit(new GateEvent(GateEvent.Kind.ENTRY, plate, type, gate, LocalDateTime.now()));
+        if (result == null) {
+            busy(out, keepAlive);
+        } else if (result.getStatus() == GateResult.Status.PARKED) {
+            respond(out, 201, "{\"slot\":" + result.getSlotNumber() + ",\"plate\":" + ApiJson.quote(plate) + "}", keepAlive);
+        } else if (result.getStatus() == GateResult.Status.ALREADY_PARKED) {
+            respond(out, 409, ApiJson.error("Vehicle " + plate + " is already parked in Slot " + result.getSlotNumber()), keepAlive);
+        } else if (result.getStatus() == GateResult.Status.FAILED) {
+            respond(out, 500, ApiJson.error("Entry for " + plate + " could not be recorded"), keepAlive);
+        } else {
+            respond(out, 409, ApiJson.error("Parking is full"), keepAlive);
+        }
+    }
+    
+    private void exit(Map<String, String> parameters, OutputStream out, boolean keepAlive)
+            throws IOException, InterruptedException {
+        if (parameters.containsKey("slot")) {
+            int slotNumber = Integer.parseInt(parameters.get("slot"));
+            if (slotNumber < 1 || slotNumber > engine.getTotalSlots()) {
+                respond(out, 404, ApiJson.error("No such slot: " + slotNumber), keepAlive);
+                return;
+            }
+            ParkingSession session = engine.removeVehicle(slotNumber, LocalDateTime.now());
+            if (session == null) {
+                respond(out, 404, ApiJson.error("Slot " + slotNumber + " is already empty"), keepAlive);
+            } else {
+                respond(out, 200, exited(session), keepAlive);
+            }
+            return;
+        }
+        
+        String plate = required(parameters, "plate").toUpperCase(Locale.ROOT).trim();
+        String gate = parameters.getOrDefault("gate", "api");
+        GateResult result = submit(new GateEvent(GateEvent.Kind.EXIT, plate, null, gate, LocalDateTime.now()));
+        if (result == null) {
+            busy(out, keepAlive);
+        } else if (result.getStatus() == GateResult.Status.EXITED) {
+            respond(out, 200, exited(result.getSession()), keepAlive);
+        } else if (result.getStatus() == GateResult.Status.FAILED) {
+            respond(out, 500, ApiJson.error("Exit for " + plate + " could not be recorded"), keepAlive);
+        } else {
+            respond(out, 404, ApiJson.error("Vehicle " + plate + " is not parked here"), keepAlive);
+        }
+    }
+    
+    private void reserve(Map<String, String> parameters, OutputStream out, boolean keepAlive) throws IOException {
+        String plate = required(parameters, "plate").toUpperCase(Locale.ROOT).trim();
+        VehicleType type = VehicleType.fromCode(required(parameters, "type").toLowerCase(Locale.ROOT));
+        LocalDateTime start;
+        LocalDateTime end;
+        try {
+            start = LocalDateTime.parse(required(parameters, "start"));
+            end = LocalDateTime.parse(required(parameters, "end"));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Times look like 2025-03-01T09:00: " + e.getParsedString());
+        }
+        Reservation reservation = reservations().reserve(plate, type, start, end, LocalDateTime.now());
+        if (reservation == null) {
+            respond(out, 409, ApiJson.error("No " + type.getDisplayName() + " slot is free for that time"), keepAlive);
+        } else {
+            respond(out, 201, ApiJson.reservation(reservation), keepAlive);
+        }
+    }
+    
+    private ReservationBook reservations() {
+        return assigner != null ? assigner.getReservations() : null;
+    }
+    
+    private static String exited(ParkingSession session) {
+        return "{\"slot\":" + session.getSlotNumber() + ",\"chargePaise\":" + session.getChargePaise()
+            + ",\"receipt\":\"" + Receipt.of(session).getNumber() + "\"}";
+    }
+    
+    // Queues the event and waits for its result, or returns null if the pipeline stays full.
+    // Once queued the event will be applied, so there is no giving up on its result.
+    private GateResult submit(GateEvent event) throws InterruptedException {
+        CompletableFuture<GateResult> future = new CompletableFuture<>();
+        pending.put(event, future);
+        if (!pipeline.offer(event, QUEUE_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+            pending.remove(event);
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Gate event failed", e.getCause());
+        }
+    }
+    
+    private void busy(OutputStream out, boolean keepAlive) throws IOException {
+        String body = ApiJson.error("Gates are busy, try again");
+        writeResponse(out, 503, "application/json", body.getBytes(StandardCharsets.UTF_8), keepAlive, "Retry-After: 1\r\n");
+    }
+    
+    private static String required(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        return value;
+    }
+    
+    private static void respond(OutputStream out, int status, String json, boolean keepAlive) throws IOException {
+        byte[] body = json == null ? new byte[0] : json.getBytes(StandardCharsets.UTF_8);
+        writeResponse(out, status, "application/json", body, keepAlive, "");
+    }
+    
+    private static void respond(OutputStream out, int status, String contentType, byte[] body, boolean keepAlive)
+            throws IOException {
+        writeResponse(out, status, contentType, body, keepAlive, "");
+    }
+    
+    private static void writeResponse(OutputStream out, int status, String contentType, byte[] body,
+                                      boolean keepAlive, String extraHeaders) throws IOException {
+        String head = "HTTP/1.1 " + status + " " + reason(status) + "\r\n"
+            + "Content-Type: " + contentType + "\r\n"
+            + "Content-Length: " + body.length + "\r\n"
+            + "Access-Control-Allow-Origin: *\r\n"
+            + "Access-Control-Allow-Methods: GET, POST, OPTIONS\r\n"
+            + "Access-Control-Allow-Headers: Content-Type\r\n"
+            + (keepAlive ? "" : "Connection: close\r\n")
+            + extraHeaders
+            + "\r\n";
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+        out.flush();
+    }
+    
+    private static String reason(int status) {
+        return switch (status) {
+            case 200 -> "OK";
+            case 201 -> "Created";
+            case 204 -> "No Content";
+            case 400 -> "Bad Request";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 409 -> "Conflict";
+            case 500 -> "Internal Server Error";
+            case 503 -> "Service Unavailable";
+            default -> "Status";
+        };
+    }
+    
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+    
+    private static class Request {
+        
+        final String method;
+        final String path;
+        final String query;
+        final Map<String, String> headers;
+        final String body;
+        
+        Request(String method, String path, String query, Map<String, String> headers, String body) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.headers = headers;
+            this.body = body;
+        }
+        
+        // Next request on the connection, or null once the client has closed it
+        static Request read(InputStream in) throws IOException {
+            String requestLine = readLine(in);
+            while (requestLine != null && requestLine.isEmpty()) {
+                requestLine = readLine(in);
+            }
+            if (requestLine == null) {
+                return null;
+            }
+            String[] parts = requestLine.split(" ");
+            if (parts.length != 3 || !parts[2].startsWith("HTTP/1.")) {
+                throw new IllegalArgumentException("Malformed request line");
+            }
+            
+            Map<String, String> headers = new HashMap<>();
+            for (String line = readLine(in); line != null && !line.isEmpty(); line = readLine(in)) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+                }
+                if (headers.size() > 100) {
+                    throw new IllegalArgumentException("Too many headers");
+                }
+            }
+            
+            int length = Integer.parseInt(headers.getOrDefault("content-length", "0"));
+            if (length < 0 || length > MAX_BODY) {
+                throw new IllegalArgumentException("Body too large");
+            }
+            byte[] body = in.readNBytes(length);
+            if (body.length < length) {
+                return null;
+            }
+            
+            String target = parts[1];
+            int question = target.indexOf('?');
+            String path = question < 0 ? target : target.substring(0, question);
+            String query = question < 0 ? "" : target.substring(question + 1);
+            return new Request(parts[0], path, query, headers, new String(body, StandardCharsets.UTF_8));
+        }
+        
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) {
+                if (c == '\n') {
+                    int end = line.length();
+                    return end > 0 && line.charAt(end - 1) == '\r' ? line.substring(0, end - 1) : line.toString();
+                }
+                if (line.length() >= MAX_LINE) {
+                    throw new IllegalArgumentException("Line too long");
+                }
+                line.append((char) c);
+            }
+            return line.length() == 0 ? null : line.toString();
+        }
+        
+        String header(String name) {
+            return headers.get(name);
+        }
+        
+        int intParameter(String name, int defaultValue) {
+            String value = queryParameters().get(name);
+            return value == null ? defaultValue : Integer.parseInt(value);
+        }
+        
+        // Query string plus a JSON or form-encoded body
+        Map<String, String> parameters() {
+            Map<String, String> parameters = queryParameters();
+            String contentType = headers.getOrDefault("content-type", "");
+            if (contentType.startsWith("application/x-www-form-urlencoded")) {
+                parameters.putAll(parseForm(body));
+            } else if (!body.isBlank()) {
+                parameters.putAll(ApiJson.parseObject(body));
+            }
+            return parameters;
+        }
+        
+        private Map<String, String> queryParameters() {
+            return parseForm(query);
+        }
+        
+        private static Map<String, String> parseForm(String text) {
+            Map<String, String> values = new HashMap<>();
+            for (String pair : List.of(text.split("&"))) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+                int equals = pair.indexOf('=');
+                if (equals < 0) {
+                    values.put(decode(pair), "");
+                } else {
+                    values.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+                }
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Headless intake for gate events. Gates hand events to a bounded ring
+ * buffer and return at once; one worker thread drains it in batches, applies
+ * each event to the engine in arrival order and passes every result to a
+ * sink on the worker thread. Slot changes reach the UI through the engine's
+ * listeners as usual, so a burst never runs on the FX thread.
+ *
+ * The whole batch goes through ParkingEngine.applyBatch, so a journal
+ * forces it to disk once, and results are passed on only after that. An
+ * event the engine throws on gets a FAILED result and the worker moves on
+ * to the next one. If the journal cannot force the batch, the engine has
+ * made its changes all the same, so each result still says what became of
+ * its event, and a gate that retries finds the lot as the result said; the
+ * journal refuses every change after that.
+ *
+ * When the buffer is full, offer() fails straight away so a caller on the FX
+ * thread can report it, while put() and the timed offer() make a gate feed
+ * wait for room. A burst therefore slows the gates down instead of growing
+ * the heap.
+ */
+public class GateEventPipeline implements AutoCloseable {
+    
+    private final ParkingEngine engine;
+    private final ParkingMetrics metrics;
+    private final SlotAssigner assigner;
+    private final ArrayBlockingQueue<GateEvent> queue;
+    private final int maxBatch;
+    private final Consumer<GateResult> sink;
+    private final Thread worker;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private volatile long processed;
+    private volatile boolean running;
+    
+    // metrics may be null; the sink is called on the worker thread and should not block
+    public GateEventPipeline(ParkingEngine engine, ParkingMetrics metrics, int capacity, int maxBatch,
+                             Consumer<GateResult> sink) {
+        this(engine, metrics, null, capacity, maxBatch, sink);
+    }
+    
+    // With an assigner, entries get the nearest slot their size fits from the event's gate
+    public GateEventPipeline(ParkingEngine engine, ParkingMetrics metrics, SlotAssigner assigner, int capacity,
+                             int maxBatch, Consumer<GateResult> sink) {
+        this.engine = engine;
+        this.metrics = metrics;
+        this.assigner = assigner;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.sink = sink;
+        this.worker = new Thread(this::processLoop, "gate-pipeline");
+        this.worker.setDaemon(true);
+    }
+    
+    public void start() {
+        running = true;
+        worker.start();
+    }
+    
+    // Returns false at once if the buffer is full
+    public boolean offer(GateEvent event) {
+        return count(queue.offer(event));
+    }
+    
+    public boolean offer(GateEvent event, long timeout, TimeUnit unit) throws InterruptedException {
+        return count(queue.offer(event, timeout, unit));
+    }
+    
+    public void put(GateEvent event) throws InterruptedException {
+        queue.put(event);
+        accepted.incrementAndGet();
+    }
+    
+    private boolean count(boolean queued) {
+        (queued ? accepted : refused).incrementAndGet();
+        return queued;
+    }
+    
+    public int getQueued() {
+        return queue.size();
+    }
+    
+    public int getRemainingCapacity() {
+        return queue.remainingCapacity();
+    }
+    
+    public long getAccepted() {
+        return accepted.get();
+    }
+    
+    public long getRefused() {
+        return refused.get();
+    }
+    
+    public long getProcessed() {
+        return processed;
+    }
+    
+    public long getBatches() {
+        return batches.get();
+    }
+    
+    // Blocks until every event accepted so far has been applied
+    public void awaitProcessed() throws InterruptedException {
+        long target = accepted.get();
+        synchronized (this) {
+            while (processed < target && worker.isAlive()) {
+                wait(100);
+            }
+        }
+    }
+    
+    // Applies whatever is still queued, then stops the worker
+    @Override
+    public void close() {
+        running = false;
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void processLoop() {
+        List<GateEvent> batch = new ArrayList<>(maxBatch);
+        List<GateResult> results = new ArrayList<>(maxBatch);
+        try {
+            while (running || !queue.isEmpty()) {
+                GateEvent first = queue.poll(10, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                
+                try {
+                    engine.applyBatch(() -> {
+                        for (GateEvent event : batch) {
+                            results.add(applyOne(event));
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // Events with a result were applied; any without one never reached the engine
+                    System.err.println("Journal could not force a batch of " + batch.size() + " gate events: " + e);
+                    for (int i = results.size(); i < batch.size(); i++) {
+                        results.add(new GateResult(batch.get(i), GateResult.Status.FAILED, -1, 0));
+                    }
+                }
+                for (GateResult result : results) {
+                    try {
+                        sink.accept(result);
+                    } catch (RuntimeException e) {
+                        System.err.println("Gate result sink failed: " + e);
+                    }
+                }
+                batches.incrementAndGet();
+                publishProcessed(batch.size());
+                batch.clear();
+                results.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+    
+    private synchronized void publishProcessed(int count) {
+        processed += count;
+        notifyAll();
+    }
+    
+    private GateResult applyOne(GateEvent event) {
+        try {
+            return apply(event);
+        } catch (RuntimeException e) {
+            // One event the engine could not take must not stop the gates queued behind it
+            System.err.println("Gate event for " + event.getPlate() + " failed: " + e);
+            return new GateResult(event, GateResult.Status.FAILED, -1, 0);
+        }
+    }
+    
+    private GateResult apply(GateEvent event) {
+        if (event.getKind() == GateEvent.Kind.ENTRY) {
+            Vehicle vehicle = new Vehicle(event.getPlate(), event.getType(), event.getTimestamp());
+            int slotNumber = assigner != null ? assigner.parkVehicle(vehicle, event.getGate()) : engine.parkVehicle(vehicle);
+            if (slotNumber == ParkingEngine.ALREADY_PARKED) {
+                return new GateResult(event, GateResult.Status.ALREADY_PARKED, engine.findSlotByPlate(event.getPlate()), 0);
+            }
+            if (slotNumber < 0) {
+                return new GateResult(event, GateResult.Status.LOT_FULL, -1, 0);
+            }
+            if (metrics != null) {
+                metrics.recordAssignment(System.nanoTime() - event.getReceivedNanos());
+            }
+            return new GateResult(event, GateResult.Status.PARKED, slotNumber, 0);
+        }
+        
+        ParkingSession session = engine.removeVehicleByPlate(event.getPlate(), event.getTimestamp());
+        if (session == null) {
+            return new GateResult(event, GateResult.Status.NOT_PARKED, -1, 0);
+        }
+        return new GateResult(event, session);
+    }
+}
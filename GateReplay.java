@@ -0,0 +1,164 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load-test tool that feeds a recorded gate event file through a
+ * GateEventPipeline and reports throughput, refusals, outcomes and
+ * assignment latency. It can also write a synthetic morning-rush file.
+ * With --lots the slots are split over that many lots of a
+ * ShardedParkingEngine and each vehicle is routed to a lot by its plate.
+ *
+ *   java GateReplay generate rush.csv [events] [slots]
+ *   java GateReplay replay rush.csv [--slots 10000] [--speed 1 | --speed 0 for flat out]
+ *       [--capacity 8192] [--batch 512] [--lots 1]
+ */
+public class GateReplay {
+    
+    private static final String[] GATES = {"north", "south", "east"};
+    
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: GateReplay generate <file> [events] [slots] | replay <file> [options]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[1]);
+        if (args[0].equals("generate")) {
+            int events = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+            int slots = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+            generate(file, events, slots);
+            System.out.println("Wrote " + events + " events to " + file);
+        } else {
+            int slots = 10_000;
+            double speed = 0;
+            int capacity = 8192;
+            int batch = 512;
+            int lots = 1;
+            for (int i = 2; i + 1 < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--slots" -> slots = Integer.parseInt(args[i + 1]);
+                    case "--speed" -> speed = Double.parseDouble(args[i + 1]);
+                    case "--capacity" -> capacity = Integer.parseInt(args[i + 1]);
+                    case "--batch" -> batch = Integer.parseInt(args[i + 1]);
+                    case "--lots" -> lots = Integer.parseInt(args[i + 1]);
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            replay(file, slots, speed, capacity, batch, lots);
+        }
+    }
+    
+    // An hour of arrivals peaking at 08:30, with stays short enough that the lot fills to about
+    // half; a vehicle that leaves within the hour also gets its exit
+    private static void generate(Path file, int events, int slots) throws IOException {
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 6, 8, 0);
+        VehicleType[] types = VehicleType.values();
+        List<GateEvent> all = new ArrayList<>(events);
+        for (int vehicle = 0; all.size() < events; vehicle++) {
+            double peak = Math.min(3599, Math.max(0, 1800 + random.nextGaussian() * 600));
+            LocalDateTime arrival = start.plusNanos((long) (peak * 1e9));
+            String plate = String.format("KA%02d%s%04d", vehicle % 100, (char) ('A' + vehicle / 10000 % 26), vehicle % 10000);
+            String gate = GATES[random.nextInt(GATES.length)];
+            all.add(new GateEvent(GateEvent.Kind.ENTRY, plate, types[random.nextInt(types.length)], gate, arrival));
+            LocalDateTime departure = arrival.plusSeconds((long) (random.nextDouble() * slots * 3600.0 / events * 2));
+            if (all.size() < events && departure.isBefore(start.plusHours(1))) {
+                all.add(new GateEvent(GateEvent.Kind.EXIT, plate, null, GATES[random.nextInt(GATES.length)], departure));
+            }
+        }
+        all.sort(Comparator.comparing(GateEvent::getTimestamp));
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            for (GateEvent event : all) {
+                out.write(event.toLine());
+                out.newLine();
+            }
+        }
+    }
+    
+    private static void replay(Path file, int slots, double speed, int capacity, int batch, int lotCount)
+            throws Exception {
+        AtomicLongArray outcomes = new AtomicLongArray(GateResult.Status.values().length);
+        LatencyHistogram latency = new LatencyHistogram();
+        ShardedParkingEngine lots = new ShardedParkingEngine(capacity, batch, (lot, result) -> {
+            outcomes.incrementAndGet(result.getStatus().ordinal());
+            if (result.getStatus() == GateResult.Status.PARKED) {
+                latency.record(System.nanoTime() - result.getEvent().getReceivedNanos());
+            }
+        });
+        String[] lotNames = new String[lotCount];
+        for (int i = 0; i < lotCount; i++) {
+            int lotSlots = slots / lotCount + (i < slots % lotCount ? 1 : 0);
+            ParkingEngine engine = new ParkingEngine(lotSlots, TariffEngine.standard());
+            ParkingMetrics metrics = new ParkingMetrics(new LotPlan(new LotLayout(1, lotSlots, Math.max(1, lotSlots / 26 + 1))), engine);
+            metrics.attach();
+            lotNames[i] = "lot-" + (i + 1);
+            lots.addLot(lotNames[i], engine, metrics, null);
+        }
+        
+        long started = System.nanoTime();
+        long blockedNanos = 0;
+        LocalDateTime firstEvent = null;
+        try (BufferedReader in = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                GateEvent event = GateEvent.parse(line);
+                if (speed > 0) {
+                    // Hold each event back until its recorded time, scaled by speed
+                    if (firstEvent == null) {
+                        firstEvent = event.getTimestamp();
+                    }
+                    long due = started + (long) (Duration.between(firstEvent, event.getTimestamp()).toNanos() / speed);
+                    long wait = due - System.nanoTime();
+                    if (wait > 1_000_000) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                // Both gate events of a vehicle go to the same lot
+                String lot = lotNames[Math.floorMod(PlateIndex.normalize(event.getPlate()).hashCode(), lotCount)];
+                if (!lots.offer(lot, event)) {
+                    long blocked = System.nanoTime();
+                    lots.put(lot, event);
+                    blockedNanos += System.nanoTime() - blocked;
+                }
+            }
+        }
+        lots.awaitProcessed();
+        double seconds = (System.nanoTime() - started) / 1e9;
+        lots.close();
+        
+        long processed = 0;
+        long batches = 0;
+        long refused = 0;
+        for (ShardedParkingEngine.Lot lot : lots.getLots()) {
+            processed += lot.getPipeline().getProcessed();
+            batches += lot.getPipeline().getBatches();
+            refused += lot.getPipeline().getRefused();
+        }
+        System.out.printf("Events        %d in %.2f s (%.0f/s) over %d lot(s)%n", processed, seconds, processed / seconds,
+            lotCount);
+        System.out.printf("Batches       %d (avg %.1f events)%n", batches, (double) processed / Math.max(1, batches));
+        System.out.printf("Backpressure  %d events waited for room, %.1f ms in total%n", refused, blockedNanos / 1e6);
+        for (GateResult.Status status : GateResult.Status.values()) {
+            System.out.printf("%-13s %d%n", status, outcomes.get(status.ordinal()));
+        }
+        System.out.printf("Assignment    p50 %.1f us, p99 %.1f us, max %.1f us%n",
+            latency.percentile(50) / 1e3, latency.percentile(99) / 1e3, latency.getMaxNanos() / 1e3);
+        ShardedParkingEngine.Occupancy occupancy = lots.occupancy();
+        System.out.printf("Occupied      %d of %d, revenue %d paise%n",
+            occupancy.getOccupied(), occupancy.getTotalSlots(), occupancy.getRevenuePaise());
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Outcome of one gate event: where the vehicle was parked, or what it paid
+ * on the way out, or why the event could not be applied.
+ */
+public class GateResult {
+    
+    public enum Status {
+        PARKED,
+        EXITED,
+        LOT_FULL,
+        ALREADY_PARKED,
+        NOT_PARKED,
+        FAILED
+    }
+    
+    private final GateEvent event;
+    private final Status status;
+    private final int slotNumber;
+    private final long chargePaise;
+    private final ParkingSession session;
+    
+    public GateResult(GateEvent event, Status status, int slotNumber, long chargePaise) {
+        this.event = event;
+        this.status = status;
+        this.slotNumber = slotNumber;
+        this.chargePaise = chargePaise;
+        this.session = null;
+    }
+    
+    // An exit, with the session its receipt is made from
+    public GateResult(GateEvent event, ParkingSession session) {
+        this.event = event;
+        this.status = Status.EXITED;
+        this.slotNumber = session.getSlotNumber();
+        this.chargePaise = session.getChargePaise();
+        this.session = session;
+    }
+    
+    public GateEvent getEvent() {
+        return event;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    // Slot the vehicle was parked in or left, or -1
+    public int getSlotNumber() {
+        return slotNumber;
+    }
+    
+    public long getChargePaise() {
+        return chargePaise;
+    }
+    
+    // The session that ended, for an EXITED result; null otherwise
+    public ParkingSession getSession() {
+        return session;
+    }
+}
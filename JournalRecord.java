@@ -0,0 +1,161 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.CRC32C;
+
+/**
+ * One entry or exit in the binary journal. On disk a record is
+ * [int bodyLength][int crc32c(body)][body], where the body is
+ * seq, kind, slot, entry/exit epoch seconds, charge, plate and type.
+ * A zero length or a checksum mismatch marks the end of the log.
+ */
+public class JournalRecord {
+    
+    public static final byte PARK = 1;
+    public static final byte EXIT = 2;
+    
+    static final int HEADER_BYTES = 8;
+    static final int MAX_BYTES = HEADER_BYTES + 8 + 1 + 4 + 8 + 8 + 8 + 1 + 255 + 1 + 255;
+    
+    private final long seq;
+    private final byte kind;
+    private final int slotNumber;
+    private final String plate;
+    private final VehicleType type;
+    private final long entryEpochSecond;
+    private final long exitEpochSecond;
+    private final long chargePaise;
+    
+    public JournalRecord(long seq, byte kind, int slotNumber, String plate, VehicleType type,
+                         long entryEpochSecond, long exitEpochSecond, long chargePaise) {
+        this.seq = seq;
+        this.kind = kind;
+        this.slotNumber = slotNumber;
+        this.plate = plate;
+        this.type = type;
+        this.entryEpochSecond = entryEpochSecond;
+        this.exitEpochSecond = exitEpochSecond;
+        this.chargePaise = chargePaise;
+    }
+    
+    public static JournalRecord parked(long seq, int slotNumber, Vehicle vehicle) {
+        return new JournalRecord(seq, PARK, slotNumber, vehicle.getVehicleNumber(), vehicle.getType(),
+            toEpochSecond(vehicle.getEntryTime()), 0, 0);
+    }
+    
+    public static JournalRecord exited(long seq, ParkingSession session) {
+        Vehicle vehicle = session.getVehicle();
+        return new JournalRecord(seq, EXIT, session.getSlotNumber(), vehicle.getVehicleNumber(), vehicle.getType(),
+            toEpochSecond(vehicle.getEntryTime()), toEpochSecond(session.getExitTime()), session.getChargePaise());
+    }
+    
+    // Journal times are wall-clock LocalDateTimes stored as if they were UTC
+    public static long toEpochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+    
+    public static LocalDateTime fromEpochSecond(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+    
+    public JournalRecord withSeq(long newSeq) {
+        return new JournalRecord(newSeq, kind, slotNumber, plate, type, entryEpochSecond, exitEpochSecond, chargePaise);
+    }
+    
+    public Vehicle toVehicle() {
+        return new Vehicle(plate, type, fromEpochSecond(entryEpochSecond));
+    }
+    
+    public void writeTo(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.position(start + HEADER_BYTES);
+        buffer.putLong(seq);
+        buffer.put(kind);
+        buffer.putInt(slotNumber);
+        buffer.putLong(entryEpochSecond);
+        buffer.putLong(exitEpochSecond);
+        buffer.putLong(chargePaise);
+        putString(buffer, plate);
+        putString(buffer, type.getCode());
+        int end = buffer.position();
+        
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(start + HEADER_BYTES).limit(end));
+        buffer.putInt(start, end - start - HEADER_BYTES);
+        buffer.putInt(start + 4, (int) crc.getValue());
+    }
+    
+    // Reads the record at the buffer position, or returns null (position unchanged) at the end of the log
+    public static JournalRecord readFrom(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER_BYTES) {
+            return null;
+        }
+        int length = buffer.getInt(start);
+        if (length <= 0 || length > buffer.remaining() - HEADER_BYTES) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(start + HEADER_BYTES).limit(start + HEADER_BYTES + length));
+        if ((int) crc.getValue() != buffer.getInt(start + 4)) {
+            return null;
+        }
+        
+        buffer.position(start + HEADER_BYTES);
+        long seq = buffer.getLong();
+        byte kind = buffer.get();
+        int slotNumber = buffer.getInt();
+        long entry = buffer.getLong();
+        long exit = buffer.getLong();
+        long charge = buffer.getLong();
+        String plate = getString(buffer);
+        VehicleType type = VehicleType.fromCode(getString(buffer));
+        return new JournalRecord(seq, kind, slotNumber, plate, type, entry, exit, charge);
+    }
+    
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, 255);
+        buffer.put((byte) length);
+        buffer.put(bytes, 0, length);
+    }
+    
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.get() & 0xFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    public long getSeq() {
+        return seq;
+    }
+    
+    public byte getKind() {
+        return kind;
+    }
+    
+    public int getSlotNumber() {
+        return slotNumber;
+    }
+    
+    public String getPlate() {
+        return plate;
+    }
+    
+    public VehicleType getType() {
+        return type;
+    }
+    
+    public long getEntryEpochSecond() {
+        return entryEpochSecond;
+    }
+    
+    public long getExitEpochSecond() {
+        return exitEpochSecond;
+    }
+    
+    public long getChargePaise() {
+        return chargePaise;
+    }
+}
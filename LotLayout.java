@@ -0,0 +1,64 @@
+/**
+ * Physical arrangement of a lot: slots are numbered level by level, and each
+ * level is split into equally sized zones named A, B, C...
+ */
+public class LotLayout {
+    
+    private final int levels;
+    private final int slotsPerLevel;
+    private final int slotsPerZone;
+    
+    public LotLayout(int levels, int slotsPerLevel, int slotsPerZone) {
+        if (levels <= 0 || slotsPerLevel <= 0 || slotsPerZone <= 0) {
+            throw new IllegalArgumentException("Levels, slots per level and slots per zone must be positive");
+        }
+        this.levels = levels;
+        this.slotsPerLevel = slotsPerLevel;
+        this.slotsPerZone = Math.min(slotsPerZone, slotsPerLevel);
+    }
+    
+    public int getLevels() {
+        return levels;
+    }
+    
+    public int getSlotsPerLevel() {
+        return slotsPerLevel;
+    }
+    
+    public int getTotalSlots() {
+        return levels * slotsPerLevel;
+    }
+    
+    public int getZonesPerLevel() {
+        return (slotsPerLevel + slotsPerZone - 1) / slotsPerZone;
+    }
+    
+    public int levelOf(int slotNumber) {
+        return (slotNumber - 1) / slotsPerLevel + 1;
+    }
+    
+    // Zero-based zone index within the slot's level
+    public int zoneOf(int slotNumber) {
+        return ((slotNumber - 1) % slotsPerLevel) / slotsPerZone;
+    }
+    
+    public static String zoneName(int zone) {
+        return String.valueOf((char) ('A' + zone));
+    }
+    
+    public int firstSlotOfLevel(int level) {
+        return (level - 1) * slotsPerLevel + 1;
+    }
+    
+    public int lastSlotOfLevel(int level) {
+        return level * slotsPerLevel;
+    }
+    
+    public int firstSlotOfZone(int level, int zone) {
+        return firstSlotOfLevel(level) + zone * slotsPerZone;
+    }
+    
+    public int lastSlotOfZone(int level, int zone) {
+        return Math.min(firstSlotOfZone(level, zone) + slotsPerZone - 1, lastSlotOfLevel(level));
+    }
+}
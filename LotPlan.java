@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Where each slot is and how big it is, plus the gates vehicles arrive at.
+ * Coordinates are in metres on the slot's own level. The standard plan lays
+ * every zone out as a row along x with small bays at the near end, large
+ * bays at the far end and medium ones in between, and has one gate at the
+ * start of row A on level 1.
+ *
+ * A plan file overrides any of this:
+ *
+ *   slots.41-60 = LARGE         size of a range of slots
+ *   slot.12 = SMALL,10.5,3      size and position of one slot
+ *   gate.north = 1,0,-5         level and position of a gate
+ *
+ * Gates in the file replace the standard one; the first is the default for
+ * events from a gate the plan does not know.
+ */
+public class LotPlan {
+    
+    private static final float ROW_SPACING = 7.5f;
+    private static final float[] BAY_WIDTH = {1.5f, 2.5f, 3.5f};
+    private static final SlotSize[] SIZES = SlotSize.values();
+    
+    public static class Gate {
+        private final String name;
+        private final int level;
+        private final float x;
+        private final float y;
+        
+        public Gate(String name, int level, float x, float y) {
+            this.name = name;
+            this.level = level;
+            this.x = x;
+            this.y = y;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public int getLevel() {
+            return level;
+        }
+        
+        public float getX() {
+            return x;
+        }
+        
+        public float getY() {
+            return y;
+        }
+    }
+    
+    private final LotLayout layout;
+    private final byte[] sizes;
+    private final float[] x;
+    private final float[] y;
+    private final Map<String, Gate> gates = new LinkedHashMap<>();
+    
+    public LotPlan(LotLayout layout) {
+        this.layout = layout;
+        int total = layout.getTotalSlots();
+        this.sizes = new byte[total];
+        this.x = new float[total];
+        this.y = new float[total];
+        
+        for (int level = 1; level <= layout.getLevels(); level++) {
+            for (int zone = 0; zone < layout.getZonesPerLevel(); zone++) {
+                int first = layout.firstSlotOfZone(level, zone);
+                int count = layout.lastSlotOfZone(level, zone) - first + 1;
+                int small = count / 5;
+                int large = Math.max(1, count * 15 / 100);
+                float position = 0;
+                for (int i = 0; i < count; i++) {
+                    SlotSize size = i < small ? SlotSize.SMALL : i >= count - large ? SlotSize.LARGE : SlotSize.MEDIUM;
+                    float width = BAY_WIDTH[size.ordinal()];
+                    place(first + i, size, position + width / 2, zone * ROW_SPACING);
+                    position += width;
+                }
+            }
+        }
+        gates.put("main", new Gate("main", 1, 0, -5));
+    }
+    
+    public static LotPlan load(Path file, LotLayout layout) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        LotPlan plan = new LotPlan(layout);
+        List<String> keys = new ArrayList<>(properties.stringPropertyNames());
+        Collections.sort(keys);
+        boolean customGates = false;
+        for (String key : keys) {
+            String value = properties.getProperty(key).trim();
+            if (key.startsWith("slots.")) {
+                String[] range = key.substring("slots.".length()).split("-");
+                int first = Integer.parseInt(range[0]);
+                int last = range.length > 1 ? Integer.parseInt(range[1]) : first;
+                for (int slotNumber = first; slotNumber <= last; slotNumber++) {
+                    plan.setSlot(slotNumber, SlotSize.valueOf(value), plan.xOf(slotNumber), plan.yOf(slotNumber));
+                }
+            } else if (key.startsWith("slot.")) {
+                String[] fields = value.split(",");
+                plan.setSlot(Integer.parseInt(key.substring("slot.".length())), SlotSize.valueOf(fields[0].trim()),
+                    Float.parseFloat(fields[1].trim()), Float.parseFloat(fields[2].trim()));
+            } else if (key.startsWith("gate.")) {
+                if (!customGates) {
+                    plan.gates.clear();
+                    customGates = true;
+                }
+                String[] fields = value.split(",");
+                plan.addGate(key.substring("gate.".length()), Integer.parseInt(fields[0].trim()),
+                    Float.parseFloat(fields[1].trim()), Float.parseFloat(fields[2].trim()));
+            }
+        }
+        return plan;
+    }
+    
+    public LotLayout getLayout() {
+        return layout;
+    }
+    
+    public int getTotalSlots() {
+        return sizes.length;
+    }
+    
+    public void setSlot(int slotNumber, SlotSize size, float slotX, float slotY) {
+        place(slotNumber, size, slotX, slotY);
+    }
+    
+    private void place(int slotNumber, SlotSize size, float slotX, float slotY) {
+        int index = indexOf(slotNumber);
+        sizes[index] = (byte) size.ordinal();
+        x[index] = slotX;
+        y[index] = slotY;
+    }
+    
+    public void addGate(String name, int level, float gateX, float gateY) {
+        if (level < 1 || level > layout.getLevels()) {
+            throw new IllegalArgumentException("No such level for gate " + name + ": " + level);
+        }
+        gates.put(name, new Gate(name, level, gateX, gateY));
+    }
+    
+    public SlotSize sizeOf(int slotNumber) {
+        return SIZES[sizes[indexOf(slotNumber)]];
+    }
+    
+    public int levelOf(int slotNumber) {
+        return layout.levelOf(slotNumber);
+    }
+    
+    public float xOf(int slotNumber) {
+        return x[indexOf(slotNumber)];
+    }
+    
+    public float yOf(int slotNumber) {
+        return y[indexOf(slotNumber)];
+    }
+    
+    public boolean fits(int slotNumber, VehicleType type) {
+        return sizeOf(slotNumber).fits(type.getSlotSize());
+    }
+    
+    public int countOf(SlotSize size) {
+        int count = 0;
+        for (byte slotSize : sizes) {
+            if (slotSize == size.ordinal()) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    public List<Gate> getGates() {
+        return new ArrayList<>(gates.values());
+    }
+    
+    // The named gate, or the first gate of the plan if the name is null or unknown
+    public Gate gate(String name) {
+        Gate gate = name == null ? null : gates.get(name);
+        return gate != null ? gate : gates.values().iterator().next();
+    }
+    
+    private int indexOf(int slotNumber) {
+        if (slotNumber < 1 || slotNumber > sizes.length) {
+            throw new IllegalArgumentException("No such slot: " + slotNumber);
+        }
+        return slotNumber - 1;
+    }
+}
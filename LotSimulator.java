@@ -0,0 +1,335 @@
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Seeded discrete-event simulation of a lot over whole days, for checking a
+ * layout, tariff or assigner change before it goes live. Each vehicle type
+ * arrives as a Poisson process with its own hour-of-day profile, quieter at
+ * weekends, and stays for a log-normal time around its own median. Entries
+ * and exits wait in a queue ordered by simulated second and go through the
+ * same assigner, engine, dynamic pricing and dwell tracker the lot runs,
+ * with no journal, API or window, as fast as they can. The dwell tracker's
+ * wheel is moved on by hand at every simulated minute.
+ *
+ * The same seed and lot always produce the same arrivals, refusals,
+ * occupancy and revenue; only the timings change from run to run. Each
+ * entry, exit and minute of dwell ticks is timed into a LatencyHistogram,
+ * and the bytes it allocates are counted, so p50, p99, p99.9 and
+ * allocation per operation can be compared between two configurations. A
+ * warm-up run on a separate lot comes first so the JIT has compiled the
+ * gate paths before anything is measured.
+ *
+ *   java LotSimulator [parking.properties] [--days 1] [--seed 42]
+ *       [--demand 3.0 arrivals per slot per weekday] [--warmup-days 1]
+ */
+public class LotSimulator {
+    
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 6, 0, 0);
+    private static final int MINUTE = 60;
+    private static final int HOUR = 3600;
+    private static final int DAY = 24 * HOUR;
+    private static final double WEEKEND_FACTOR = 0.55;
+    private static final long MIN_STAY_SECONDS = 5 * MINUTE;
+    private static final long MAX_STAY_SECONDS = 3 * DAY;
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    
+    // How one vehicle type arrives and how long it stays
+    private static final class Demand {
+        final VehicleType type;
+        final double share;
+        final double medianStaySeconds;
+        final double staySigma;
+        final double[] hourly;
+        
+        Demand(VehicleType type, double share, double medianStayMinutes, double staySigma, double[] profile) {
+            this.type = type;
+            this.share = share;
+            this.medianStaySeconds = medianStayMinutes * MINUTE;
+            this.staySigma = staySigma;
+            double total = 0;
+            for (double weight : profile) {
+                total += weight;
+            }
+            this.hourly = new double[24];
+            for (int hour = 0; hour < 24; hour++) {
+                hourly[hour] = profile[hour] / total;
+            }
+        }
+    }
+    
+    // Cars peak with commuters, bikes spread over the working day, trucks deliver early and late
+    private static final Demand[] DEMAND = {
+        new Demand(VehicleType.CAR, 0.70, 150, 0.8, new double[] {
+            0.02, 0.01, 0.01, 0.01, 0.02, 0.05, 0.15, 0.45, 0.85, 1.00, 0.70, 0.45,
+            0.40, 0.45, 0.40, 0.35, 0.45, 0.65, 0.70, 0.50, 0.30, 0.15, 0.08, 0.04}),
+        new Demand(VehicleType.BIKE, 0.22, 90, 0.9, new double[] {
+            0.01, 0.01, 0.01, 0.01, 0.02, 0.08, 0.30, 0.70, 0.90, 0.80, 0.70, 0.75,
+            0.80, 0.75, 0.70, 0.70, 0.75, 0.80, 0.60, 0.40, 0.25, 0.10, 0.05, 0.02}),
+        new Demand(VehicleType.TRUCK, 0.08, 360, 0.6, new double[] {
+            0.30, 0.40, 0.50, 0.70, 0.90, 1.00, 0.80, 0.40, 0.20, 0.20, 0.25, 0.25,
+            0.25, 0.25, 0.25, 0.20, 0.15, 0.15, 0.20, 0.30, 0.40, 0.45, 0.40, 0.35}),
+    };
+    
+    // An entry, or the exit of a vehicle that got in; ties keep the order events were created in
+    private static final class Event implements Comparable<Event> {
+        final long second;
+        final long order;
+        final Vehicle vehicle;
+        final boolean entry;
+        
+        Event(long second, long order, Vehicle vehicle, boolean entry) {
+            this.second = second;
+            this.order = order;
+            this.vehicle = vehicle;
+            this.entry = entry;
+        }
+        
+        @Override
+        public int compareTo(Event other) {
+            return second != other.second ? Long.compare(second, other.second) : Long.compare(order, other.order);
+        }
+    }
+    
+    // What one simulated run did and what it cost
+    static final class Run {
+        final LatencyHistogram entries = new LatencyHistogram();
+        final LatencyHistogram exits = new LatencyHistogram();
+        final LatencyHistogram minutes = new LatencyHistogram();
+        final long[] arrivals = new long[VehicleType.values().length];
+        final long[] refusedByHour = new long[24];
+        long entryBytes;
+        long exitBytes;
+        long minuteBytes;
+        long refused;
+        int peakOccupied;
+        long peakSecond;
+        int stillParked;
+        int overstayed;
+        long revenuePaise;
+        Map<VehicleType, Duration> averageStay;
+        long wallNanos;
+        long allocatedBytes;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Path configFile = Paths.get("parking.properties");
+        int days = 1;
+        long seed = 42;
+        double demand = 3.0;
+        int warmupDays = 1;
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                configFile = Paths.get(args[i]);
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Option " + args[i] + " needs a value");
+            }
+            switch (args[i]) {
+                case "--days" -> days = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--demand" -> demand = Double.parseDouble(args[++i]);
+                case "--warmup-days" -> warmupDays = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (days <= 0 || warmupDays < 0 || demand <= 0) {
+            throw new IllegalArgumentException("Days and demand must be positive");
+        }
+        ParkingConfig config = Files.exists(configFile) ? ParkingConfig.load(configFile) : ParkingConfig.defaults();
+        
+        if (warmupDays > 0) {
+            simulate(config, seed + 1, warmupDays, demand);
+        }
+        Run run = simulate(config, seed, days, demand);
+        report(config, run, seed, days, demand, warmupDays);
+    }
+    
+    static Run simulate(ParkingConfig config, long seed, int days, double demand) {
+        LotLayout layout = config.getLayout();
+        TariffEngine tariff = config.loadTariff();
+        OccupancyForecaster forecaster = new OccupancyForecaster(layout.getTotalSlots());
+        DynamicPricing pricing = new DynamicPricing(tariff, forecaster);
+        ParkingEngine engine = new ParkingEngine(layout.getTotalSlots(), pricing);
+        forecaster.attach(engine, START);
+        engine.addListener(pricing);
+        SlotAssigner assigner = new SlotAssigner(config.loadPlan(layout), engine, config.getAssignerMode());
+        assigner.attach();
+        TimerWheel timers = new TimerWheel(START);
+        DwellTracker dwell = new DwellTracker(engine, pricing, timers, config.getOverstayMinutes());
+        dwell.attach();
+        SessionStore sessions = new SessionStore();
+        engine.addListener(sessions);
+        
+        List<LotPlan.Gate> gates = assigner.getPlan().getGates();
+        Random random = new Random(seed);
+        PriorityQueue<Event> events = new PriorityQueue<>();
+        Run run = new Run();
+        long start = JournalRecord.toEpochSecond(START);
+        long end = start + (long) days * DAY;
+        long order = 0;
+        int occupied = 0;
+        long nextMinute = start + MINUTE;
+        
+        long wallStart = System.nanoTime();
+        long allocatedStart = THREADS.getCurrentThreadAllocatedBytes();
+        for (long hour = start; hour < end; hour += HOUR) {
+            // This hour's arrivals join the queue as the simulated clock reaches it
+            LocalDateTime hourStart = JournalRecord.fromEpochSecond(hour);
+            DayOfWeek weekday = hourStart.getDayOfWeek();
+            double dayFactor = weekday == DayOfWeek.SATURDAY || weekday == DayOfWeek.SUNDAY ? WEEKEND_FACTOR : 1;
+            for (Demand type : DEMAND) {
+                double expected = demand * layout.getTotalSlots() * type.share * type.hourly[hourStart.getHour()] * dayFactor;
+                for (long i = poisson(random, expected); i > 0; i--) {
+                    long second = hour + random.nextInt(HOUR);
+                    String plate = String.format(Locale.ROOT, "SIM%07d", order);
+                    Vehicle vehicle = new Vehicle(plate, type.type, JournalRecord.fromEpochSecond(second));
+                    events.add(new Event(second, order++, vehicle, true));
+                    run.arrivals[type.type.ordinal()]++;
+                }
+            }
+            
+            while (!events.isEmpty() && events.peek().second < hour + HOUR) {
+                Event event = events.poll();
+                for (; nextMinute <= event.second; nextMinute += MINUTE) {
+                    long allocated = THREADS.getCurrentThreadAllocatedBytes();
+                    long started = System.nanoTime();
+                    timers.advanceTo(nextMinute);
+                    run.minutes.record(System.nanoTime() - started);
+                    run.minuteBytes += THREADS.getCurrentThreadAllocatedBytes() - allocated;
+                }
+                
+                if (event.entry) {
+                    String gate = gates.get(random.nextInt(gates.size())).getName();
+                    long allocated = THREADS.getCurrentThreadAllocatedBytes();
+                    long started = System.nanoTime();
+                    int slotNumber = assigner.parkVehicle(event.vehicle, gate);
+                    run.entries.record(System.nanoTime() - started);
+                    run.entryBytes += THREADS.getCurrentThreadAllocatedBytes() - allocated;
+                    if (slotNumber < 0) {
+                        run.refused++;
+                        run.refusedByHour[event.vehicle.getEntryTime().getHour()]++;
+                        continue;
+                    }
+                    if (++occupied > run.peakOccupied) {
+                        run.peakOccupied = occupied;
+                        run.peakSecond = event.second;
+                    }
+                    events.add(new Event(event.second + stay(random, event.vehicle.getType()), order++, event.vehicle, false));
+                } else {
+                    String plate = event.vehicle.getVehicleNumber();
+                    LocalDateTime exitTime = JournalRecord.fromEpochSecond(event.second);
+                    long allocated = THREADS.getCurrentThreadAllocatedBytes();
+                    long started = System.nanoTime();
+                    ParkingSession session = engine.removeVehicleByPlate(plate, exitTime);
+                    run.exits.record(System.nanoTime() - started);
+                    run.exitBytes += THREADS.getCurrentThreadAllocatedBytes() - allocated;
+                    if (session != null) {
+                        occupied--;
+                    }
+                }
+            }
+        }
+        timers.advanceTo(end);
+        run.wallNanos = System.nanoTime() - wallStart;
+        run.allocatedBytes = THREADS.getCurrentThreadAllocatedBytes() - allocatedStart;
+        
+        run.stillParked = engine.getOccupiedCount();
+        run.overstayed = dwell.getOverstayCount();
+        run.revenuePaise = engine.getTotalRevenuePaise();
+        run.averageStay = new SessionAnalytics(sessions).averageDwellByType(START, JournalRecord.fromEpochSecond(end));
+        dwell.detach();
+        return run;
+    }
+    
+    // Knuth's method for small means, a rounded normal for large ones
+    private static long poisson(Random random, double mean) {
+        if (mean <= 0) {
+            return 0;
+        }
+        if (mean > 30) {
+            return Math.max(0, Math.round(mean + Math.sqrt(mean) * random.nextGaussian()));
+        }
+        double limit = Math.exp(-mean);
+        long count = 0;
+        for (double product = random.nextDouble(); product > limit; product *= random.nextDouble()) {
+            count++;
+        }
+        return count;
+    }
+    
+    private static long stay(Random random, VehicleType type) {
+        Demand demand = DEMAND[0];
+        for (Demand candidate : DEMAND) {
+            if (candidate.type == type) {
+                demand = candidate;
+            }
+        }
+        double seconds = demand.medianStaySeconds * Math.exp(demand.staySigma * random.nextGaussian());
+        return Math.max(MIN_STAY_SECONDS, Math.min(MAX_STAY_SECONDS, (long) seconds));
+    }
+    
+    private static void report(ParkingConfig config, Run run, long seed, int days, double demand, int warmupDays) {
+        LotLayout layout = config.getLayout();
+        double seconds = run.wallNanos / 1e9;
+        long arrivals = 0;
+        for (long count : run.arrivals) {
+            arrivals += count;
+        }
+        long events = run.entries.getCount() + run.exits.getCount();
+        
+        System.out.printf(Locale.ROOT, "Lot           %d slots on %d level(s), %s assigner, seed %d%n",
+            layout.getTotalSlots(), layout.getLevels(), config.getAssignerMode(), seed);
+        System.out.printf(Locale.ROOT, "Simulated     %d day(s) at %.1f arrivals per slot per weekday, after %d warm-up day(s)%n",
+            days, demand, warmupDays);
+        StringBuilder byType = new StringBuilder();
+        for (VehicleType type : VehicleType.values()) {
+            Duration stay = run.averageStay.get(type);
+            byType.append(String.format(Locale.ROOT, ", %s %d (avg stay %s)", type.getCode(), run.arrivals[type.ordinal()],
+                stay == null ? "-" : String.format(Locale.ROOT, "%.1f h", stay.getSeconds() / 3600.0)));
+        }
+        System.out.printf(Locale.ROOT, "Arrivals      %d%s%n", arrivals, byType);
+        System.out.printf(Locale.ROOT, "Turned away   %d (%.2f%%)%s%n", run.refused, 100.0 * run.refused / Math.max(1, arrivals),
+            run.refused == 0 ? "" : ", busiest hour " + busiestHour(run.refusedByHour) + ":00");
+        System.out.printf(Locale.ROOT, "Peak          %d of %d occupied (%.1f%%) at %s%n", run.peakOccupied,
+            layout.getTotalSlots(), 100.0 * run.peakOccupied / layout.getTotalSlots(),
+            JournalRecord.fromEpochSecond(run.peakSecond));
+        System.out.printf(Locale.ROOT, "At the end    %d parked, %d of them past the %d-minute overstay limit%n",
+            run.stillParked, run.overstayed, config.getOverstayMinutes());
+        System.out.printf(Locale.ROOT, "Revenue       %d.%02d%n", run.revenuePaise / 100, run.revenuePaise % 100);
+        System.out.printf(Locale.ROOT, "Throughput    %d gate events in %.2f s (%.0f/s), %.0fx real time%n",
+            events, seconds, events / seconds, (double) days * DAY / seconds);
+        printLatency("Entry", run.entries, run.entryBytes);
+        printLatency("Exit", run.exits, run.exitBytes);
+        printLatency("Dwell minute", run.minutes, run.minuteBytes);
+        System.out.printf(Locale.ROOT, "Allocation    %.1f MB/s over the run, %.0f B per gate event including the simulator%n",
+            run.allocatedBytes / seconds / 1e6, (double) run.allocatedBytes / Math.max(1, events));
+    }
+    
+    private static void printLatency(String name, LatencyHistogram latency, long bytes) {
+        System.out.printf(Locale.ROOT, "%-13s p50 %.2f us, p99 %.2f us, p99.9 %.2f us, max %.2f us, %.0f B/op over %d%n",
+            name, latency.percentile(50) / 1e3, latency.percentile(99) / 1e3, latency.percentile(99.9) / 1e3,
+            latency.getMaxNanos() / 1e3, (double) bytes / Math.max(1, latency.getCount()), latency.getCount());
+    }
+    
+    private static int busiestHour(long[] byHour) {
+        int busiest = 0;
+        for (int hour = 1; hour < byHour.length; hour++) {
+            if (byHour[hour] > byHour[busiest]) {
+                busiest = hour;
+            }
+        }
+        return busiest;
+    }
+}
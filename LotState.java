@@ -0,0 +1,195 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lot contents rebuilt from journal records: who is parked where, total
+ * revenue and the last applied sequence number. It is what snapshots store
+ * and what recovery hands back to a fresh ParkingEngine.
+ *
+ * Journals written before the engine logged each change ahead of making it
+ * can hold an exit just ahead of its park. Such an exit is held as an
+ * orphan and cancels the park when it arrives. A slot can hold several
+ * orphans at once, one per stay whose park is still on its way. Once a
+ * later stay of the slot has parked and left, those parks are not coming:
+ * the slot's orphans are dropped then, so they do not pile up in every
+ * snapshot.
+ */
+public class LotState {
+    
+    private static final int SNAPSHOT_MAGIC = 0x504B534E;
+    private static final int SNAPSHOT_VERSION = 1;
+    
+    private final int totalSlots;
+    private final JournalRecord[] parked;
+    private final Map<Integer, List<JournalRecord>> orphanExits = new HashMap<>();
+    private int orphanCount;
+    private long revenuePaise;
+    private long lastSeq;
+    private int occupiedCount;
+    
+    public LotState(int totalSlots) {
+        this.totalSlots = totalSlots;
+        this.parked = new JournalRecord[totalSlots];
+    }
+    
+    public int getTotalSlots() {
+        return totalSlots;
+    }
+    
+    public long getRevenuePaise() {
+        return revenuePaise;
+    }
+    
+    public long getLastSeq() {
+        return lastSeq;
+    }
+    
+    public int getOccupiedCount() {
+        return occupiedCount;
+    }
+    
+    // Exits still waiting for their park
+    public int getOrphanCount() {
+        return orphanCount;
+    }
+    
+    public JournalRecord getParked(int slotNumber) {
+        return parked[slotNumber - 1];
+    }
+    
+    public void apply(JournalRecord record) {
+        lastSeq = record.getSeq();
+        int index = record.getSlotNumber() - 1;
+        if (record.getKind() == JournalRecord.PARK) {
+            if (cancelOrphan(record)) {
+                return;
+            }
+            if (parked[index] == null) {
+                occupiedCount++;
+            }
+            parked[index] = record;
+        } else {
+            revenuePaise += record.getChargePaise();
+            if (parked[index] != null && sameStay(parked[index], record)) {
+                parked[index] = null;
+                occupiedCount--;
+                dropOrphans(record.getSlotNumber());
+            } else {
+                addOrphan(record);
+            }
+        }
+    }
+    
+    private void addOrphan(JournalRecord exit) {
+        orphanExits.computeIfAbsent(exit.getSlotNumber(), slot -> new ArrayList<>(1)).add(exit);
+        orphanCount++;
+    }
+    
+    // True if an exit for this park already arrived, which the park then cancels
+    private boolean cancelOrphan(JournalRecord park) {
+        List<JournalRecord> orphans = orphanExits.get(park.getSlotNumber());
+        if (orphans == null) {
+            return false;
+        }
+        for (int i = 0; i < orphans.size(); i++) {
+            if (sameStay(orphans.get(i), park)) {
+                orphans.remove(i);
+                if (orphans.isEmpty()) {
+                    orphanExits.remove(park.getSlotNumber());
+                }
+                orphanCount--;
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void dropOrphans(int slotNumber) {
+        List<JournalRecord> orphans = orphanExits.remove(slotNumber);
+        if (orphans != null) {
+            orphanCount -= orphans.size();
+        }
+    }
+    
+    private static boolean sameStay(JournalRecord a, JournalRecord b) {
+        return a.getEntryEpochSecond() == b.getEntryEpochSecond() && a.getPlate().equals(b.getPlate());
+    }
+    
+    // Parks every recovered vehicle in a fresh engine and restores its revenue
+    public void restoreInto(ParkingEngine engine) {
+        for (int slotNumber = 1; slotNumber <= totalSlots; slotNumber++) {
+            JournalRecord record = parked[slotNumber - 1];
+            if (record != null) {
+                engine.restoreVehicle(slotNumber, record.getPlate(), record.getType(), record.getEntryEpochSecond());
+            }
+        }
+        engine.restoreRevenue(revenuePaise);
+    }
+    
+    public void writeSnapshot(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeInt(totalSlots);
+        out.writeLong(lastSeq);
+        out.writeLong(revenuePaise);
+        out.writeInt(occupiedCount);
+        for (JournalRecord record : parked) {
+            if (record != null) {
+                writeStay(out, record);
+            }
+        }
+        out.writeInt(orphanCount);
+        for (List<JournalRecord> orphans : orphanExits.values()) {
+            for (JournalRecord record : orphans) {
+                writeStay(out, record);
+            }
+        }
+        out.flush();
+    }
+    
+    public static LotState readSnapshot(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+            throw new IOException("Not a parking snapshot");
+        }
+        LotState state = new LotState(in.readInt());
+        state.lastSeq = in.readLong();
+        state.revenuePaise = in.readLong();
+        int occupied = in.readInt();
+        for (int i = 0; i < occupied; i++) {
+            JournalRecord record = readStay(in, JournalRecord.PARK);
+            state.parked[record.getSlotNumber() - 1] = record;
+        }
+        state.occupiedCount = occupied;
+        int orphans = in.readInt();
+        for (int i = 0; i < orphans; i++) {
+            state.addOrphan(readStay(in, JournalRecord.EXIT));
+        }
+        return state;
+    }
+    
+    private static void writeStay(DataOutputStream out, JournalRecord record) throws IOException {
+        out.writeInt(record.getSlotNumber());
+        out.writeLong(record.getEntryEpochSecond());
+        out.writeUTF(record.getPlate());
+        out.writeUTF(record.getType().getCode());
+    }
+    
+    private static JournalRecord readStay(DataInputStream in, byte kind) throws IOException {
+        int slotNumber = in.readInt();
+        long entry = in.readLong();
+        String plate = in.readUTF();
+        VehicleType type = VehicleType.fromCode(in.readUTF());
+        return new JournalRecord(0, kind, slotNumber, plate, type, entry, 0, 0);
+    }
+}
@@ -1,4 +1,8 @@
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -6,23 +10,54 @@ import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.stage.Stage;
 import javafx.animation.FadeTransition;
-import javafx.animation.ScaleTransition;
 import javafx.util.Duration;
+import javafx.util.StringConverter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.management.JMException;
 
 public class ParkingManagementApp extends Application {
     
-    private static final int TOTAL_SLOTS = 20;
-    private static final int RATE_CAR = 20;
-    private static final int RATE_BIKE = 10;
-    private static final int RATE_TRUCK = 40;
+    private static final int MAX_SEARCH_RESULTS = 500;
+    private static final Path CONFIG_FILE = Paths.get("parking.properties");
     
-    private List<ParkingSlot> parkingSlots;
-    private double totalRevenue = 0.0;
+    private ParkingConfig config;
+    private LotLayout layout;
+    private TariffEngine tariff;
+    private OccupancyForecaster forecaster;
+    private DynamicPricing pricing;
+    private ParkingEngine engine;
+    private SlotChangeTracker changeTracker;
+    private ParkingJournal journal;
+    private SlotAssigner assigner;
+    private TimerWheel timers;
+    private DwellTracker dwell;
+    private SlotChangeTracker dwellChanges;
+    private SessionStore sessions;
+    private ParkingMetrics metrics;
+    private MetricsServer metricsServer;
+    private GateApiServer apiServer;
+    private ReplicationServer replication;
+    // Parks and exits wait for the journal to force them, so the desk's run here, one at a time and in order
+    private final ExecutorService deskGate = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "desk-gate");
+        thread.setDaemon(true);
+        return thread;
+    });
     
     // UI Components
     private Label totalSlotsLabel;
@@ -31,17 +66,36 @@ public class ParkingManagementApp extends Application {
     private Label revenueLabel;
     private Label availablePercentLabel;
     private Label occupiedPercentLabel;
-    private GridPane parkingGrid;
-    private ComboBox<String> slotComboBox;
+    private SlotMapView slotMapView;
+    private ComboBox<String> levelFilterComboBox;
+    private ComboBox<String> zoneFilterComboBox;
+    private ComboBox<Integer> slotComboBox;
     private TextField vehicleNumberField;
-    private ComboBox<String> vehicleTypeComboBox;
+    private ComboBox<VehicleType> vehicleTypeComboBox;
     private ComboBox<String> actionComboBox;
-    private VBox vehicleListBox;
+    private TextField plateSearchField;
+    private ListView<Integer> vehicleListView;
     private VBox alertContainer;
+    
+    // Occupied slot numbers in slot order; the list view only materializes visible rows
+    private final ObservableList<Integer> occupiedSlots = FXCollections.observableArrayList();
+    private FilteredList<Integer> filteredVehicles;
+    private final ObservableList<Integer> searchResults = FXCollections.observableArrayList();
+    private int filterFirstSlot;
+    private int filterLastSlot;
 
     @Override
     public void start(Stage primaryStage) {
-        initializeData();
+        String refusal = initializeData();
+        if (refusal != null) {
+            Alert error = new Alert(Alert.AlertType.ERROR);
+            error.setTitle("Parking Management System");
+            error.setHeaderText("The lot cannot open");
+            error.setContentText(refusal);
+            error.showAndWait();
+            Platform.exit();
+            return;
+        }
         
         BorderPane root = new BorderPane();
         root.getStyleClass().add("root");
@@ -91,10 +145,125 @@ public class ParkingManagementApp extends Application {
         updateUI();
     }
     
-    private void initializeData() {
-        parkingSlots = new ArrayList<>();
-        for (int i = 1; i <= TOTAL_SLOTS; i++) {
-            parkingSlots.add(new ParkingSlot(i));
+    // Returns why the lot may not open, or null once it is open
+    private String initializeData() {
+        config = loadConfig();
+        layout = config.getLayout();
+        tariff = config.loadTariff();
+        // The tariff sets the price; the occupancy forecast adds a surge or discount at entry
+        forecaster = new OccupancyForecaster(layout.getTotalSlots());
+        pricing = new DynamicPricing(tariff, forecaster);
+        engine = new ParkingEngine(layout.getTotalSlots(), pricing);
+        changeTracker = new SlotChangeTracker(layout.getTotalSlots(), () -> Platform.runLater(this::applySlotChanges));
+        engine.addListener(changeTracker);
+        
+        // Restore whatever was parked before the last shutdown or crash, and every session before it
+        sessions = new SessionStore();
+        try {
+            journal = ParkingJournal.open(config.getDataDirectory(), layout.getTotalSlots());
+            journal.restoreSessions(sessions);
+            journal.attach(engine);
+        } catch (IOException e) {
+            journal = null;
+            // As in ParkingDaemon: every change the gates acknowledged would be lost at the next start
+            if (!config.isAllowNoJournal()) {
+                return "Parking journal unavailable: " + e.getMessage()
+                    + "\n\nSet allowNoJournal = true in " + CONFIG_FILE + " to run without it.";
+            }
+            System.err.println("Parking journal unavailable, state will not survive a restart: " + e.getMessage());
+        }
+        forecaster.attach(engine, LocalDateTime.now());
+        engine.addListener(pricing);
+        
+        // Entries without a picked slot get the nearest one their size fits
+        assigner = new SlotAssigner(config.loadPlan(layout), engine, config.getAssignerMode());
+        assigner.attach();
+        
+        // Booked slots are held ahead of arrival and released after a no-show
+        timers = new TimerWheel(LocalDateTime.now());
+        timers.start();
+        assigner.setReservations(new ReservationBook(engine, assigner.getPlan(), timers));
+        
+        // Charges in the vehicle list follow the wheel; only rows whose charge or overstay changed are redrawn
+        dwell = new DwellTracker(engine, pricing, timers, config.getOverstayMinutes());
+        dwellChanges = new SlotChangeTracker(layout.getTotalSlots(), () -> Platform.runLater(this::applyDwellChanges));
+        dwell.addListener(new DwellTracker.Listener() {
+            @Override
+            public void chargeChanged(int slotNumber, Vehicle vehicle, long chargePaise) {
+                dwellChanges.markDirty(slotNumber);
+            }
+            
+            @Override
+            public void overstayed(int slotNumber, Vehicle vehicle, long minutes) {
+                dwellChanges.markDirty(slotNumber);
+                Platform.runLater(() -> showAlert("Vehicle " + vehicle.getVehicleNumber() + " in Slot " + slotNumber
+                    + " has stayed over " + minutes / 60 + " hours", "warning"));
+            }
+        });
+        dwell.attach();
+        
+        // Every completed stay is kept for reports, not just its charge
+        engine.addListener(sessions);
+        
+        // Counters start from the restored lot; JMX and the scrape endpoint are optional
+        metrics = new ParkingMetrics(assigner.getPlan(), engine);
+        metrics.attach();
+        try {
+            metrics.registerMBean();
+        } catch (JMException e) {
+            System.err.println("Metrics not published over JMX: " + e.getMessage());
+        }
+        if (config.getMetricsPort() > 0) {
+            try {
+                metricsServer = MetricsServer.start(metrics, config.getMetricsPort());
+            } catch (IOException e) {
+                System.err.println("Metrics endpoint unavailable on port " + config.getMetricsPort() + ": " + e.getMessage());
+            }
+        }
+        
+        // A ParkingDaemon with standbyOf set can follow this lot and take over if it goes down
+        if (config.getReplicationPort() > 0 && journal != null) {
+            try {
+                replication = ReplicationServer.start(journal, config.getReplicationAddress());
+            } catch (IOException e) {
+                System.err.println("Replication unavailable on " + config.getReplicationAddress() + ": " + e.getMessage());
+            }
+        }
+        
+        // The web page, kiosks and cameras share this engine through the API
+        if (config.getApiPort() > 0) {
+            try {
+                apiServer = GateApiServer.start(engine, metrics, assigner, config.getWebPage(), config.getApiPort());
+            } catch (IOException e) {
+                System.err.println("Gate API unavailable on port " + config.getApiPort() + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public void stop() throws Exception {
+        // Changes already handed to the desk gate still reach the journal
+        deskGate.shutdown();
+        deskGate.awaitTermination(5, TimeUnit.SECONDS);
+        if (apiServer != null) {
+            apiServer.close();
+        }
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
+        // A lot that refused to open got no further than its journal
+        if (metrics != null) {
+            metrics.unregisterMBean();
+        }
+        if (timers != null) {
+            timers.close();
+        }
+        if (replication != null) {
+            replication.close();
+        }
+        if (journal != null) {
+            journal.close();
         }
     }
     
@@ -179,15 +348,38 @@ public class ParkingManagementApp extends Application {
         
         alertContainer = new VBox(10);
         
-        parkingGrid = new GridPane();
-        parkingGrid.setHgap(15);
-        parkingGrid.setVgap(15);
-        parkingGrid.setAlignment(Pos.CENTER);
+        // Level / zone filters
+        HBox filters = new HBox(12);
+        filters.setAlignment(Pos.CENTER_LEFT);
+        
+        levelFilterComboBox = new ComboBox<>();
+        levelFilterComboBox.getItems().add("All levels");
+        for (int level = 1; level <= layout.getLevels(); level++) {
+            levelFilterComboBox.getItems().add("Level " + level);
+        }
+        levelFilterComboBox.getSelectionModel().selectFirst();
+        levelFilterComboBox.getStyleClass().add("form-control");
+        
+        zoneFilterComboBox = new ComboBox<>();
+        zoneFilterComboBox.getItems().add("All zones");
+        for (int zone = 0; zone < layout.getZonesPerLevel(); zone++) {
+            zoneFilterComboBox.getItems().add("Zone " + LotLayout.zoneName(zone));
+        }
+        zoneFilterComboBox.getSelectionModel().selectFirst();
+        zoneFilterComboBox.getStyleClass().add("form-control");
+        
+        levelFilterComboBox.setOnAction(e -> applyFilters());
+        zoneFilterComboBox.setOnAction(e -> applyFilters());
+        filters.getChildren().addAll(levelFilterComboBox, zoneFilterComboBox);
+        
+        slotMapView = new SlotMapView(engine);
+        slotMapView.setOnSlotClicked(slotNumber -> slotComboBox.setValue(slotNumber));
+        VBox.setVgrow(slotMapView, Priority.ALWAYS);
         
         // Create legend
         HBox legend = createLegend();
         
-        panel.getChildren().addAll(title, alertContainer, parkingGrid, legend);
+        panel.getChildren().addAll(title, filters, alertContainer, slotMapView, legend);
         return panel;
     }
     
@@ -231,7 +423,8 @@ public class ParkingManagementApp extends Application {
         // Slot Selection
         VBox slotGroup = createFormGroup("Select Slot");
         slotComboBox = new ComboBox<>();
-        slotComboBox.setPromptText("Choose a slot...");
+        slotComboBox.setPromptText("Nearest free slot");
+        slotComboBox.setConverter(displayConverter(this::slotComboText));
         slotComboBox.setPrefWidth(Double.MAX_VALUE);
         slotComboBox.getStyleClass().add("form-control");
         slotGroup.getChildren().add(slotComboBox);
@@ -246,12 +439,10 @@ public class ParkingManagementApp extends Application {
         // Vehicle Type
         VBox typeGroup = createFormGroup("Vehicle Type");
         vehicleTypeComboBox = new ComboBox<>();
-        vehicleTypeComboBox.getItems().addAll(
-            "Car (₹20/hr)",
-            "Bike (₹10/hr)",
-            "Truck (₹40/hr)"
-        );
-        vehicleTypeComboBox.setValue("Car (₹20/hr)");
+        vehicleTypeComboBox.getItems().addAll(VehicleType.values());
+        vehicleTypeComboBox.setConverter(displayConverter(type ->
+            type.getDisplayName() + " (" + formatRupees(type.getHourlyRatePaise()) + "/hr)"));
+        vehicleTypeComboBox.setValue(VehicleType.CAR);
         vehicleTypeComboBox.setPrefWidth(Double.MAX_VALUE);
         vehicleTypeComboBox.getStyleClass().add("form-control");
         typeGroup.getChildren().add(vehicleTypeComboBox);
@@ -300,202 +491,269 @@ public class ParkingManagementApp extends Application {
         Label title = new Label("🚗 Current Vehicles");
         title.getStyleClass().add("panel-title");
         
-        ScrollPane scrollPane = new ScrollPane();
-        scrollPane.setFitToWidth(true);
-        scrollPane.getStyleClass().add("vehicle-scroll");
-        scrollPane.setPrefHeight(400);
+        plateSearchField = new TextField();
+        plateSearchField.setPromptText("Search by vehicle number");
+        plateSearchField.getStyleClass().add("form-control");
+        plateSearchField.textProperty().addListener((obs, oldText, newText) -> applyFilters());
         
-        vehicleListBox = new VBox(12);
-        scrollPane.setContent(vehicleListBox);
+        Label emptyLabel = new Label("No vehicles parked currently");
+        emptyLabel.getStyleClass().add("empty-message");
         
-        panel.getChildren().addAll(title, scrollPane);
+        filteredVehicles = new FilteredList<>(occupiedSlots);
+        vehicleListView = new ListView<>(filteredVehicles);
+        vehicleListView.setCellFactory(list -> new VehicleListCell(engine, dwell, this::handleQuickExit));
+        vehicleListView.setPlaceholder(emptyLabel);
+        vehicleListView.getStyleClass().add("vehicle-scroll");
+        vehicleListView.setPrefHeight(400);
+        
+        panel.getChildren().addAll(title, plateSearchField, vehicleListView);
         return panel;
     }
     
     private void updateUI() {
         updateStats();
-        updateParkingGrid();
-        updateSlotComboBox();
-        updateVehicleList();
+        buildSlotComboBox();
+        buildVehicleList();
+        applyFilters();
+    }
+    
+    // Runs once per batch of engine changes and touches only the slots that changed
+    private void applySlotChanges() {
+        changeTracker.drain(slotNumber -> {
+            slotMapView.refreshSlot(slotNumber);
+            updateSlotComboItem(slotNumber);
+            updateVehicleItem(slotNumber);
+        });
+        if (vehicleListView.getItems() == searchResults) {
+            refreshSearchResults();
+        }
+        updateStats();
+    }
+    
+    // Redraws the rows whose charge or overstay moved on since the last pass
+    private void applyDwellChanges() {
+        dwellChanges.drain(slotNumber -> {
+            updateVehicleItem(slotNumber);
+            int position = searchResults.indexOf(slotNumber);
+            if (position >= 0) {
+                searchResults.set(position, slotNumber);
+            }
+        });
     }
     
     private void updateStats() {
-        long available = parkingSlots.stream().filter(ParkingSlot::isAvailable).count();
-        long occupied = TOTAL_SLOTS - available;
-        double availablePercent = (available * 100.0) / TOTAL_SLOTS;
-        double occupiedPercent = (occupied * 100.0) / TOTAL_SLOTS;
+        int total = engine.getTotalSlots();
+        int available = engine.getAvailableCount();
+        int occupied = engine.getOccupiedCount();
+        double availablePercent = (available * 100.0) / total;
+        double occupiedPercent = (occupied * 100.0) / total;
         
-        totalSlotsLabel.setText(String.valueOf(TOTAL_SLOTS));
+        totalSlotsLabel.setText(String.valueOf(total));
         availableSlotsLabel.setText(String.valueOf(available));
         occupiedSlotsLabel.setText(String.valueOf(occupied));
-        revenueLabel.setText("₹" + String.format("%.0f", totalRevenue));
+        revenueLabel.setText(formatRupees(engine.getTotalRevenuePaise()));
         availablePercentLabel.setText(String.format("%.0f%%", availablePercent));
         occupiedPercentLabel.setText(String.format("%.0f%%", occupiedPercent));
     }
     
-    private void updateParkingGrid() {
-        parkingGrid.getChildren().clear();
-        int columns = 5;
-        
-        for (int i = 0; i < parkingSlots.size(); i++) {
-            ParkingSlot slot = parkingSlots.get(i);
-            VBox slotBox = createSlotBox(slot);
-            
-            int row = i / columns;
-            int col = i % columns;
-            parkingGrid.add(slotBox, col, row);
+    // Items are slot numbers; the text comes from the converter when a cell is shown
+    private void buildSlotComboBox() {
+        List<Integer> items = new ArrayList<>(engine.getTotalSlots());
+        for (int slotNumber = 1; slotNumber <= engine.getTotalSlots(); slotNumber++) {
+            items.add(slotNumber);
         }
+        slotComboBox.getItems().setAll(items);
     }
     
-    private VBox createSlotBox(ParkingSlot slot) {
-        VBox box = new VBox(5);
-        box.setAlignment(Pos.CENTER);
-        box.setPrefSize(100, 100);
-        box.getStyleClass().add("parking-slot");
-        
-        if (slot.isAvailable()) {
-            box.getStyleClass().add("available");
-        } else {
-            box.getStyleClass().add("occupied");
+    // Replacing the item with itself makes a visible cell redraw its status
+    private void updateSlotComboItem(int slotNumber) {
+        slotComboBox.getItems().set(slotNumber - 1, slotNumber);
+    }
+    
+    private String slotComboText(int slotNumber) {
+        String status = engine.isAvailable(slotNumber) ? "Available" : engine.isHeld(slotNumber) ? "Reserved" : "Occupied";
+        return "Slot " + slotNumber + " (" + assigner.getPlan().sizeOf(slotNumber).getDisplayName() + ") - " + status;
+    }
+    
+    private void buildVehicleList() {
+        List<Integer> slots = new ArrayList<>(engine.getOccupiedCount());
+        for (int slotNumber = engine.nextOccupiedSlot(1); slotNumber > 0; slotNumber = engine.nextOccupiedSlot(slotNumber + 1)) {
+            slots.add(slotNumber);
         }
-        
-        Label slotNumber = new Label(String.valueOf(slot.getSlotNumber()));
-        slotNumber.getStyleClass().add("slot-number");
-        
-        Label status = new Label(slot.isAvailable() ? "Free" : "Occupied");
-        status.getStyleClass().add("slot-status");
-        
-        box.getChildren().addAll(slotNumber, status);
-        
-        box.setOnMouseClicked(e -> {
-            slotComboBox.setValue("Slot " + slot.getSlotNumber());
-        });
-        
-        // Hover animation
-        box.setOnMouseEntered(e -> {
-            ScaleTransition st = new ScaleTransition(Duration.millis(150), box);
-            st.setToX(1.05);
-            st.setToY(1.05);
-            st.play();
-        });
-        
-        box.setOnMouseExited(e -> {
-            ScaleTransition st = new ScaleTransition(Duration.millis(150), box);
-            st.setToX(1.0);
-            st.setToY(1.0);
-            st.play();
-        });
-        
-        return box;
+        occupiedSlots.setAll(slots);
     }
     
-    private void updateSlotComboBox() {
-        slotComboBox.getItems().clear();
-        for (ParkingSlot slot : parkingSlots) {
-            String status = slot.isAvailable() ? "Available" : "Occupied";
-            slotComboBox.getItems().add("Slot " + slot.getSlotNumber() + " - " + status);
+    private void updateVehicleItem(int slotNumber) {
+        int position = Collections.binarySearch(occupiedSlots, slotNumber);
+        boolean occupied = engine.getVehicle(slotNumber) != null;
+        if (occupied && position < 0) {
+            occupiedSlots.add(-position - 1, slotNumber);
+        } else if (!occupied && position >= 0) {
+            occupiedSlots.remove(position);
+        } else if (occupied) {
+            // Same slot, different vehicle: replace so the row is redrawn
+            occupiedSlots.set(position, slotNumber);
         }
     }
     
-    private void updateVehicleList() {
-        vehicleListBox.getChildren().clear();
-        
-        List<ParkingSlot> occupiedSlots = parkingSlots.stream()
-            .filter(slot -> !slot.isAvailable())
-            .toList();
-        
-        if (occupiedSlots.isEmpty()) {
-            Label emptyLabel = new Label("No vehicles parked currently");
-            emptyLabel.getStyleClass().add("empty-message");
-            vehicleListBox.getChildren().add(emptyLabel);
-            return;
+    private void applyFilters() {
+        int level = levelFilterComboBox.getSelectionModel().getSelectedIndex();
+        int zone = zoneFilterComboBox.getSelectionModel().getSelectedIndex();
+        zoneFilterComboBox.setDisable(level <= 0);
+        
+        int firstSlot = 1;
+        int lastSlot = engine.getTotalSlots();
+        if (level > 0 && zone > 0) {
+            firstSlot = layout.firstSlotOfZone(level, zone - 1);
+            lastSlot = layout.lastSlotOfZone(level, zone - 1);
+        } else if (level > 0) {
+            firstSlot = layout.firstSlotOfLevel(level);
+            lastSlot = layout.lastSlotOfLevel(level);
         }
-        
-        for (ParkingSlot slot : occupiedSlots) {
-            HBox vehicleItem = createVehicleItem(slot);
-            vehicleListBox.getChildren().add(vehicleItem);
+        slotMapView.showRange(firstSlot, lastSlot);
+        filterFirstSlot = firstSlot;
+        filterLastSlot = lastSlot;
+        
+        if (plateSearchField.getText().trim().isEmpty()) {
+            int from = firstSlot;
+            int to = lastSlot;
+            filteredVehicles.setPredicate(slotNumber -> slotNumber >= from && slotNumber <= to);
+            vehicleListView.setItems(filteredVehicles);
+        } else {
+            refreshSearchResults();
+            vehicleListView.setItems(searchResults);
         }
     }
     
-    private HBox createVehicleItem(ParkingSlot slot) {
-        HBox item = new HBox(10);
-        item.setAlignment(Pos.CENTER_LEFT);
-        item.getStyleClass().add("vehicle-item");
-        item.setPadding(new Insets(15));
-        
-        VBox info = new VBox(4);
-        Label vehicleLabel = new Label(slot.getVehicle().getVehicleNumber());
-        vehicleLabel.getStyleClass().add("vehicle-label");
-        
-        long minutes = ChronoUnit.MINUTES.between(slot.getVehicle().getEntryTime(), LocalDateTime.now());
-        String details = String.format("Slot %d • %s • %d min", 
-            slot.getSlotNumber(), 
-            slot.getVehicle().getType(), 
-            minutes);
-        Label detailsLabel = new Label(details);
-        detailsLabel.getStyleClass().add("vehicle-details");
-        
-        info.getChildren().addAll(vehicleLabel, detailsLabel);
-        HBox.setHgrow(info, Priority.ALWAYS);
-        
-        Button exitBtn = new Button("Exit");
-        exitBtn.getStyleClass().add("exit-btn");
-        exitBtn.setOnAction(e -> handleQuickExit(slot.getSlotNumber()));
-        
-        item.getChildren().addAll(info, exitBtn);
-        return item;
+    // Plate search goes through the engine's sorted plate index instead of scanning the list
+    private void refreshSearchResults() {
+        List<Integer> slots = engine.findSlotsByPlatePrefix(plateSearchField.getText(), MAX_SEARCH_RESULTS);
+        slots.removeIf(slotNumber -> slotNumber < filterFirstSlot || slotNumber > filterLastSlot);
+        searchResults.setAll(slots);
     }
     
     private void handleSubmit() {
-        String slotSelection = slotComboBox.getValue();
+        Integer selectedSlot = slotComboBox.getValue();
         String vehicleNumber = vehicleNumberField.getText().toUpperCase().trim();
-        String vehicleType = vehicleTypeComboBox.getValue();
+        VehicleType type = vehicleTypeComboBox.getValue();
         String action = actionComboBox.getValue();
+        boolean entry = action.equals("Vehicle Entry");
         
-        if (slotSelection == null || slotSelection.isEmpty()) {
-            showAlert("Please select a slot", "error");
+        boolean slotSelected = selectedSlot != null;
+        
+        if (!entry && !slotSelected && vehicleNumber.isEmpty()) {
+            showAlert("Please enter vehicle number or select a slot", "error");
             return;
         }
         
-        if (vehicleNumber.isEmpty()) {
+        if (entry && vehicleNumber.isEmpty()) {
             showAlert("Please enter vehicle number", "error");
             return;
         }
         
-        int slotNumber = Integer.parseInt(slotSelection.split(" ")[1]);
-        ParkingSlot slot = parkingSlots.get(slotNumber - 1);
-        
-        String type = vehicleType.split(" ")[0].toLowerCase();
+        if (entry && type == null) {
+            showAlert("Please select a vehicle type", "error");
+            return;
+        }
         
-        if (action.equals("Vehicle Entry")) {
-            if (!slot.isAvailable()) {
-                showAlert("Slot " + slotNumber + " is already occupied!", "error");
+        if (entry) {
+            int parkedSlot = engine.findSlotByPlate(vehicleNumber);
+            if (parkedSlot > 0) {
+                showAlert("Vehicle " + vehicleNumber + " is already parked in Slot " + parkedSlot + "!", "error");
                 return;
             }
             
+            long requested = System.nanoTime();
             Vehicle vehicle = new Vehicle(vehicleNumber, type, LocalDateTime.now());
-            slot.parkVehicle(vehicle);
-            showAlert("Vehicle " + vehicleNumber + " parked in Slot " + slotNumber, "success");
-        } else {
-            if (slot.isAvailable()) {
-                showAlert("Slot " + slotNumber + " is already empty!", "warning");
-                return;
+            if (!slotSelected) {
+                // No slot picked: take the nearest free one the vehicle fits, from the main gate
+                atDesk(() -> {
+                    int slotNumber = assigner.parkVehicle(vehicle, null);
+                    if (slotNumber > 0) {
+                        metrics.recordAssignment(System.nanoTime() - requested);
+                    }
+                    return slotNumber;
+                }, slotNumber -> {
+                    if (slotNumber == ParkingEngine.ALREADY_PARKED) {
+                        showAlert("Vehicle " + vehicleNumber + " is already parked!", "error");
+                    } else if (slotNumber < 0) {
+                        showAlert("No free slot fits a " + type.getDisplayName() + "!", "error");
+                    } else {
+                        parked(vehicleNumber, slotNumber);
+                    }
+                });
+            } else {
+                int slotNumber = selectedSlot;
+                if (!assigner.fits(slotNumber, type)) {
+                    showAlert("Slot " + slotNumber + " is too small for a " + type.getDisplayName() + "!", "error");
+                    return;
+                }
+                atDesk(() -> {
+                    boolean taken = engine.parkVehicle(slotNumber, vehicle);
+                    if (taken) {
+                        metrics.recordAssignment(System.nanoTime() - requested);
+                    }
+                    return taken;
+                }, taken -> {
+                    if (taken) {
+                        parked(vehicleNumber, slotNumber);
+                    } else {
+                        showAlert("Slot " + slotNumber + " is already occupied!", "error");
+                    }
+                });
             }
-            
-            double charge = calculateCharge(slot);
-            totalRevenue += charge;
-            slot.removeVehicle();
-            showAlert("Vehicle exited from Slot " + slotNumber + ". Charge: ₹" + String.format("%.0f", charge), "success");
+        } else if (!vehicleNumber.isEmpty()) {
+            // Exit by plate is a single index lookup
+            atDesk(() -> engine.removeVehicleByPlate(vehicleNumber, LocalDateTime.now()), session -> {
+                if (session == null) {
+                    showAlert("Vehicle " + vehicleNumber + " is not parked here!", "warning");
+                } else {
+                    exited(session);
+                    resetForm();
+                }
+            });
+        } else {
+            int slotNumber = selectedSlot;
+            atDesk(() -> engine.removeVehicle(slotNumber, LocalDateTime.now()), session -> {
+                if (session == null) {
+                    showAlert("Slot " + slotNumber + " is already empty!", "warning");
+                } else {
+                    exited(session);
+                    resetForm();
+                }
+            });
         }
-        
-        updateUI();
+    }
+    
+    // Runs a park or exit on the desk gate and hands its outcome to done on the FX thread; a change the
+    // journal could not write is reported instead of acknowledged
+    private <T> void atDesk(Supplier<T> change, Consumer<T> done) {
+        deskGate.execute(() -> {
+            try {
+                T outcome = change.get();
+                Platform.runLater(() -> done.accept(outcome));
+            } catch (UncheckedIOException e) {
+                Platform.runLater(() -> showAlert("Not recorded: " + e.getCause().getMessage(), "error"));
+            } catch (RuntimeException e) {
+                Platform.runLater(() -> showAlert("Not done: " + e.getMessage(), "error"));
+            }
+        });
+    }
+    
+    private void parked(String vehicleNumber, int slotNumber) {
+        showAlert("Vehicle " + vehicleNumber + " parked in Slot " + slotNumber, "success");
         resetForm();
     }
     
+    private void exited(ParkingSession session) {
+        showAlert("Vehicle exited from Slot " + session.getSlotNumber() + ". Charge: " + formatRupees(session.getChargePaise())
+            + ". Receipt " + Receipt.of(session).getNumber(), "success");
+    }
+    
     private void handleQuickExit(int slotNumber) {
-        ParkingSlot slot = parkingSlots.get(slotNumber - 1);
+        Vehicle vehicle = engine.getVehicle(slotNumber);
         
-        if (slot.isAvailable()) {
+        if (vehicle == null) {
             showAlert("Slot " + slotNumber + " is empty!", "error");
             return;
         }
@@ -504,40 +762,59 @@ public class ParkingManagementApp extends Application {
         confirmDialog.setTitle("Confirm Exit");
         confirmDialog.setHeaderText("Exit Vehicle from Slot " + slotNumber);
         
-        double charge = calculateCharge(slot);
+        long charge = pricing.chargeFor(vehicle, LocalDateTime.now());
         confirmDialog.setContentText(
-            "Vehicle: " + slot.getVehicle().getVehicleNumber() + "
-" +
-            "Type: " + slot.getVehicle().getType() + "
-" +
-            "Charge: ₹" + String.format("%.0f", charge) + "
-
-" +
+            "Vehicle: " + vehicle.getVehicleNumber() + "\n" +
+            "Type: " + vehicle.getType().getDisplayName() + "\n" +
+            "Charge: " + formatRupees(charge) + "\n\n" +
             "Proceed with exit?"
         );
         
         Optional<ButtonType> result = confirmDialog.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            totalRevenue += charge;
-            slot.removeVehicle();
-            showAlert("Vehicle exited from Slot " + slotNumber + ". Charge: ₹" + String.format("%.0f", charge), "success");
-            updateUI();
+            // Another gate may have let the vehicle out while the dialog was open
+            atDesk(() -> engine.removeVehicle(slotNumber, vehicle, LocalDateTime.now()), session -> {
+                if (session == null) {
+                    showAlert("Slot " + slotNumber + " was already released", "warning");
+                } else {
+                    exited(session);
+                }
+            });
         }
     }
     
-    private double calculateCharge(ParkingSlot slot) {
-        Vehicle vehicle = slot.getVehicle();
-        long hours = ChronoUnit.HOURS.between(vehicle.getEntryTime(), LocalDateTime.now());
-        if (hours == 0) hours = 1; // Minimum 1 hour charge
-        
-        int rate = switch (vehicle.getType().toLowerCase()) {
-            case "car" -> RATE_CAR;
-            case "bike" -> RATE_BIKE;
-            case "truck" -> RATE_TRUCK;
-            default -> RATE_CAR;
+    // parking.properties sets the lot size, files and ports; the headless daemon reads the same file
+    private static ParkingConfig loadConfig() {
+        if (Files.exists(CONFIG_FILE)) {
+            try {
+                return ParkingConfig.load(CONFIG_FILE);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not load " + CONFIG_FILE + ", using the standard lot: " + e.getMessage());
+            }
+        }
+        return ParkingConfig.defaults();
+    }
+    
+    // Shows items as text; the combo boxes are not editable so text is never parsed back
+    private static <T> StringConverter<T> displayConverter(Function<T, String> text) {
+        return new StringConverter<>() {
+            @Override
+            public String toString(T value) {
+                return value == null ? "" : text.apply(value);
+            }
+            
+            @Override
+            public T fromString(String string) {
+                throw new UnsupportedOperationException("Selection only");
+            }
         };
-        
-        return hours * rate;
+    }
+    
+    private static String formatRupees(long paise) {
+        if (paise % 100 == 0) {
+            return "₹" + paise / 100;
+        }
+        return String.format("₹%d.%02d", paise / 100, Math.abs(paise % 100));
     }
     
     private void showAlert(String message, String type) {
@@ -581,7 +858,7 @@ public class ParkingManagementApp extends Application {
     private void resetForm() {
         slotComboBox.setValue(null);
         vehicleNumberField.clear();
-        vehicleTypeComboBox.setValue("Car (₹20/hr)");
+        vehicleTypeComboBox.setValue(VehicleType.CAR);
         actionComboBox.setValue("Vehicle Entry");
     }
     
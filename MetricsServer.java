@@ -0,0 +1,149 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves ParkingMetrics in the Prometheus text format at /metrics on the
+ * loopback interface. Scrapes run on one background thread and only read
+ * the counters, so they never hold up a gate.
+ */
+public class MetricsServer implements AutoCloseable {
+    
+    private final ParkingMetrics metrics;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    
+    private MetricsServer(ParkingMetrics metrics, HttpServer server, ExecutorService executor) {
+        this.metrics = metrics;
+        this.server = server;
+        this.executor = executor;
+    }
+    
+    public static MetricsServer start(ParkingMetrics metrics, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "parking-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        MetricsServer metricsServer = new MetricsServer(metrics, server, executor);
+        server.createContext("/metrics", metricsServer::handle);
+        server.setExecutor(executor);
+        server.start();
+        return metricsServer;
+    }
+    
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        
+        gauge(out, "parking_slots_total", "Slots in the lot", metrics.getTotalSlots());
+        gauge(out, "parking_slots_occupied", "Occupied slots", metrics.getOccupiedSlots());
+        gauge(out, "parking_slots_free", "Free slots", metrics.getFreeSlots());
+        
+        header(out, "parking_type_occupied", "gauge", "Occupied slots by vehicle type");
+        for (VehicleType type : VehicleType.values()) {
+            out.append("parking_type_occupied{type=\"").append(type.getCode()).append("\"} ")
+                .append(metrics.getOccupied(type)).append('\n');
+        }
+        
+        LotLayout layout = metrics.getLayout();
+        header(out, "parking_zone_occupied", "gauge", "Occupied slots by zone");
+        for (int level = 1; level <= layout.getLevels(); level++) {
+            for (int zone = 0; zone < layout.getZonesPerLevel(); zone++) {
+                zoneSample(out, "parking_zone_occupied", level, zone, metrics.getOccupiedInZone(level, zone));
+            }
+        }
+        header(out, "parking_zone_free", "gauge", "Free slots by zone");
+        for (int level = 1; level <= layout.getLevels(); level++) {
+            for (int zone = 0; zone < layout.getZonesPerLevel(); zone++) {
+                zoneSample(out, "parking_zone_free", level, zone, metrics.getFreeInZone(level, zone));
+            }
+        }
+        header(out, "parking_size_free", "gauge", "Free slots by slot size");
+        for (SlotSize size : SlotSize.values()) {
+            out.append("parking_size_free{size=\"").append(size.name()).append("\"} ")
+                .append(metrics.getFree(size)).append('\n');
+        }
+        
+        counter(out, "parking_entries_total", "Vehicles parked", metrics.getEntriesTotal());
+        counter(out, "parking_exits_total", "Vehicles that left", metrics.getExitsTotal());
+        gauge(out, "parking_entries_last_minute", "Vehicles parked in the last complete minute", metrics.getEntriesLastMinute());
+        gauge(out, "parking_exits_last_minute", "Vehicles that left in the last complete minute", metrics.getExitsLastMinute());
+        counter(out, "parking_revenue_paise_total", "Revenue in paise", metrics.getRevenuePaise());
+        
+        header(out, "parking_dwell_minutes", "histogram", "Length of completed stays in minutes");
+        long[] bounds = ParkingMetrics.getDwellBoundsMinutes();
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += metrics.getDwellCount(i);
+            out.append("parking_dwell_minutes_bucket{le=\"").append(bounds[i]).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += metrics.getDwellCount(bounds.length);
+        out.append("parking_dwell_minutes_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append("parking_dwell_minutes_sum ").append(metrics.getDwellSecondsTotal() / 60.0).append('\n');
+        out.append("parking_dwell_minutes_count ").append(cumulative).append('\n');
+        
+        LatencyHistogram latency = metrics.getAssignmentLatency();
+        header(out, "parking_assignment_latency_seconds", "summary", "Time from entry request to slot assignment");
+        for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+            out.append("parking_assignment_latency_seconds{quantile=\"").append(quantile).append("\"} ")
+                .append(latency.percentile(quantile * 100) / 1e9).append('\n');
+        }
+        out.append("parking_assignment_latency_seconds_sum ").append(latency.getSumNanos() / 1e9).append('\n');
+        out.append("parking_assignment_latency_seconds_count ").append(latency.getCount()).append('\n');
+        return out.toString();
+    }
+    
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+    
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, "gauge", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+    
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, "counter", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+    
+    private static void zoneSample(StringBuilder out, String name, int level, int zone, int value) {
+        out.append(name).append("{level=\"").append(level).append("\",zone=\"")
+            .append(LotLayout.zoneName(zone)).append("\"} ").append(value).append('\n');
+    }
+}
@@ -0,0 +1,269 @@
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Forecasts how full the lot will be in a given hour, learned online from
+ * entries and exits. The forecaster integrates the occupied count over
+ * time; when an hour ends, its average occupancy updates an exponentially
+ * weighted moving average for that hour of the week and for that hour of
+ * the day. A forecast uses the hour-of-week average once that hour has
+ * been seen, and the hour-of-day average until then, so a new lot gets
+ * usable forecasts after one day and learns weekday patterns after a week.
+ *
+ * Parks and exits are recorded without a lock, since they run on every gate
+ * thread: each adds to two LongAdders for its hour, the net change in
+ * vehicles and the vehicle-seconds that change adds up to the end of the
+ * hour. An hour's average is then the occupancy it started with plus those
+ * seconds, over an hour. Only the first event of a new hour takes the lock,
+ * to fold the hour before last into the averages and free its counters; the
+ * hour that has just ended stays open a little longer for events that
+ * arrive late, and forecast counts it in as if it were already folded. A
+ * quiet spell of more than a week is folded in closed form rather than
+ * hour by hour. Times are wall-clock seconds read as UTC, as in the
+ * journal, and an event older than the hours still open counts as
+ * happening at the start of the oldest of them.
+ *
+ * Each set of counters is stamped with the hour it is collecting, and an
+ * event only adds to counters stamped with its own hour. Folding an hour
+ * clears its stamp before it reads the counters, and never resets them:
+ * it takes the difference from what it took before. An event that passed
+ * the stamp check just before the fold may still add after the read. The
+ * next roll finds that in the difference and adds its vehicles to the
+ * occupancy of the hours that follow, so no vehicle is lost or counted
+ * twice.
+ */
+public class OccupancyForecaster implements ParkingListener {
+    
+    public static final double DEFAULT_ALPHA = 0.3;
+    
+    private static final int HOUR = 3600;
+    private static final int HOURS_PER_DAY = 24;
+    private static final int HOURS_PER_WEEK = 7 * HOURS_PER_DAY;
+    // 1970-01-01 was a Thursday; shifting by three days makes hour-of-week 0 Monday midnight
+    private static final long WEEK_OFFSET_HOURS = 3 * HOURS_PER_DAY;
+    private static final long NONE = Long.MIN_VALUE;
+    // Counters for the hours still open, by hour modulo the ring size; two are in use at a time
+    private static final int RING = 4;
+    
+    private final int totalSlots;
+    private final double alpha;
+    private final double[] weekly = new double[HOURS_PER_WEEK];
+    private final boolean[] weeklySeen = new boolean[HOURS_PER_WEEK];
+    private final double[] daily = new double[HOURS_PER_DAY];
+    private final boolean[] dailySeen = new boolean[HOURS_PER_DAY];
+    private final LongAdder[] netVehicles = new LongAdder[RING];
+    private final LongAdder[] netVehicleSeconds = new LongAdder[RING];
+    // Hour each bucket is collecting, or NONE from the moment it is folded until it is opened again
+    private final AtomicLongArray bucketHour = new AtomicLongArray(RING);
+    // What folds have taken out of each bucket so far
+    private final long[] vehiclesTaken = new long[RING];
+    private final long[] vehicleSecondsTaken = new long[RING];
+    // Occupancy at the start of the oldest open hour
+    private long occupied;
+    private volatile long openHour = NONE;
+    private volatile long foldedThrough = NONE;
+    private long hoursObserved;
+    
+    public OccupancyForecaster(int totalSlots) {
+        this(totalSlots, DEFAULT_ALPHA);
+    }
+    
+    // alpha is the weight of the newest hour in each average, between 0 and 1
+    public OccupancyForecaster(int totalSlots, double alpha) {
+        if (alpha <= 0 || alpha > 1) {
+            throw new IllegalArgumentException("alpha must be in (0, 1]: " + alpha);
+        }
+        this.totalSlots = totalSlots;
+        this.alpha = alpha;
+        for (int i = 0; i < RING; i++) {
+            netVehicles[i] = new LongAdder();
+            netVehicleSeconds[i] = new LongAdder();
+            bucketHour.set(i, NONE);
+        }
+    }
+    
+    // Starts counting from the engine's current occupancy, then follows its events
+    public void attach(ParkingEngine engine, LocalDateTime now) {
+        record(JournalRecord.toEpochSecond(now), engine.getOccupiedCount());
+        engine.addListener(this);
+    }
+    
+    public void detach(ParkingEngine engine) {
+        engine.removeListener(this);
+    }
+    
+    @Override
+    public void vehicleParked(int slotNumber, Vehicle vehicle) {
+        record(JournalRecord.toEpochSecond(vehicle.getEntryTime()), 1);
+    }
+    
+    @Override
+    public void vehicleExited(ParkingSession session) {
+        record(JournalRecord.toEpochSecond(session.getExitTime()), -1);
+    }
+    
+    public int getTotalSlots() {
+        return totalSlots;
+    }
+    
+    public synchronized long getHoursObserved() {
+        return hasPendingHour() ? hoursObserved + 1 : hoursObserved;
+    }
+    
+    // Expected average number of vehicles parked during the hour holding time, or -1 before any hour has ended
+    public synchronized double forecast(LocalDateTime time) {
+        long hour = Math.floorDiv(JournalRecord.toEpochSecond(time), HOUR);
+        int week = hourOfWeek(hour);
+        int day = Math.floorMod(hour, HOURS_PER_DAY);
+        // The hour that ended last is not folded in yet, but counts as if it were
+        long pending = hasPendingHour() ? openHour - 1 : NONE;
+        if (pending != NONE && hourOfWeek(pending) == week) {
+            return blend(weekly[week], weeklySeen[week], average(pending));
+        }
+        if (weeklySeen[week]) {
+            return weekly[week];
+        }
+        if (pending != NONE && Math.floorMod(pending, HOURS_PER_DAY) == day) {
+            return blend(daily[day], dailySeen[day], average(pending));
+        }
+        return dailySeen[day] ? daily[day] : -1;
+    }
+    
+    // Forecast as a share of the lot, 0 to 1, or -1 before any hour has ended
+    public double forecastLoad(LocalDateTime time) {
+        double expected = forecast(time);
+        return expected < 0 ? -1 : Math.min(1, expected / totalSlots);
+    }
+    
+    // Adds vehicles parked (or, negative, gone) at second to its hour's counters
+    private void record(long second, int vehicles) {
+        long hour = Math.floorDiv(second, HOUR);
+        while (true) {
+            if (hour > openHour) {
+                roll(hour);
+            }
+            long oldest = foldedThrough + 1;
+            long at = hour < oldest ? oldest : hour;
+            int bucket = (int) (at & (RING - 1));
+            if (bucketHour.get(bucket) == at) {
+                long from = Math.max(second, at * HOUR);
+                netVehicles[bucket].add(vehicles);
+                netVehicleSeconds[bucket].add(vehicles * ((at + 1) * HOUR - from));
+                return;
+            }
+            // A roll is folding the hour; wait for it to finish and look again
+            roll(hour);
+        }
+    }
+    
+    // Opens hour, folding in every hour before the one that has just ended
+    private synchronized void roll(long hour) {
+        if (openHour == NONE) {
+            bucketHour.set((int) (hour & (RING - 1)), hour);
+            foldedThrough = hour - 1;
+            openHour = hour;
+            return;
+        }
+        if (hour <= openHour) {
+            return;
+        }
+        // Vehicles added to hours already folded were there all the same, from the hours after on
+        for (int bucket = 0; bucket < RING; bucket++) {
+            if (bucketHour.get(bucket) == NONE) {
+                takeLate(bucket);
+            }
+        }
+        long foldTo = hour - 2;
+        long lastRecorded = Math.min(foldTo, openHour);
+        for (long h = foldedThrough + 1; h <= lastRecorded; h++) {
+            int bucket = (int) (h & (RING - 1));
+            bucketHour.set(bucket, NONE);
+            long vehicleSeconds = take(netVehicleSeconds, vehicleSecondsTaken, bucket);
+            long vehicles = take(netVehicles, vehiclesTaken, bucket);
+            observe(h, Math.max(0, (occupied * HOUR + vehicleSeconds) / (double) HOUR));
+            occupied = Math.max(0, occupied + vehicles);
+        }
+        // Every whole hour after that the lot sat unchanged
+        long quietHours = foldTo - Math.max(lastRecorded, foldedThrough);
+        if (quietHours > HOURS_PER_WEEK) {
+            observeQuiet(foldTo - quietHours + 1, quietHours);
+        } else {
+            for (long h = foldTo - quietHours + 1; h <= foldTo; h++) {
+                observe(h, occupied);
+            }
+        }
+        // The hour that has just ended, if nothing was recorded in it yet, and the new one
+        for (long h = Math.max(foldTo + 1, openHour + 1); h <= hour; h++) {
+            int bucket = (int) (h & (RING - 1));
+            takeLate(bucket);
+            bucketHour.set(bucket, h);
+        }
+        foldedThrough = Math.max(foldedThrough, foldTo);
+        openHour = hour;
+    }
+    
+    // What was added to the bucket since it was last taken from
+    private static long take(LongAdder[] counters, long[] taken, int bucket) {
+        long sum = counters[bucket].sum();
+        long added = sum - taken[bucket];
+        taken[bucket] = sum;
+        return added;
+    }
+    
+    // Adds to the occupancy the vehicles that reached a closed bucket after its hour was folded
+    private void takeLate(int bucket) {
+        take(netVehicleSeconds, vehicleSecondsTaken, bucket);
+        occupied = Math.max(0, occupied + take(netVehicles, vehiclesTaken, bucket));
+    }
+    
+    private boolean hasPendingHour() {
+        return openHour != NONE && foldedThrough == openHour - 2;
+    }
+    
+    // Average occupancy of an open hour from its counters so far
+    private double average(long hour) {
+        int bucket = (int) (hour & (RING - 1));
+        return Math.max(0, (occupied * HOUR + netVehicleSeconds[bucket].sum() - vehicleSecondsTaken[bucket]) / (double) HOUR);
+    }
+    
+    private double blend(double average, boolean seen, double latest) {
+        return seen ? average + alpha * (latest - average) : latest;
+    }
+    
+    private void observe(long hour, double average) {
+        int week = hourOfWeek(hour);
+        int day = Math.floorMod(hour, HOURS_PER_DAY);
+        weekly[week] = blend(weekly[week], weeklySeen[week], average);
+        weeklySeen[week] = true;
+        daily[day] = blend(daily[day], dailySeen[day], average);
+        dailySeen[day] = true;
+        hoursObserved++;
+    }
+    
+    // The same as observing count hours from firstHour at the current occupancy, in constant time
+    private void observeQuiet(long firstHour, long count) {
+        for (int offset = 0; offset < HOURS_PER_WEEK; offset++) {
+            long updates = (count - offset + HOURS_PER_WEEK - 1) / HOURS_PER_WEEK;
+            int week = hourOfWeek(firstHour + offset);
+            weekly[week] = settle(weekly[week], weeklySeen[week], updates);
+            weeklySeen[week] = true;
+        }
+        for (int offset = 0; offset < HOURS_PER_DAY; offset++) {
+            long updates = (count - offset + HOURS_PER_DAY - 1) / HOURS_PER_DAY;
+            int day = Math.floorMod(firstHour + offset, HOURS_PER_DAY);
+            daily[day] = settle(daily[day], dailySeen[day], updates);
+            dailySeen[day] = true;
+        }
+        hoursObserved += count;
+    }
+    
+    private double settle(double average, boolean seen, long updates) {
+        double start = seen ? average : occupied;
+        return occupied + (start - occupied) * Math.pow(1 - alpha, updates);
+    }
+    
+    private static int hourOfWeek(long hour) {
+        return Math.floorMod(hour + WEEK_OFFSET_HOURS, HOURS_PER_WEEK);
+    }
+}
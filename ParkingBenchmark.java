@@ -0,0 +1,360 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.LongUnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Microbenchmarks for the parking hot paths at several lot sizes. Every lot
+ * starts half full with scattered vehicles; each benchmark is warmed up and
+ * then timed over fixed-length iterations, reporting time and heap
+ * allocation per operation. Results can be written as JSON and compared
+ * against an earlier run. Benchmarks share one JVM, so for numbers that do
+ * not depend on what ran before, run each one on its own with --only.
+ *
+ *   javac -d bench ParkingBenchmark.java
+ *   java -cp bench ParkingBenchmark [--sizes 20,10000,1000000] [--iterations 5]
+ *       [--millis 500] [--only charge] [--json out.json] [--baseline old.json]
+ *
+ * The same workloads run under JMH, one per fork, through workload() and
+ * jmh/bench/ParkingJmh.java; see pom.xml.
+ */
+public class ParkingBenchmark {
+    
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 6, 8, 0);
+    private static final VehicleType[] TYPES = VehicleType.values();
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    
+    // Receives each workload as soon as it is set up, before the next one changes the lot
+    private interface Workloads {
+        void add(String name, LongUnaryOperator operation);
+    }
+    
+    private static class Result {
+        final String benchmark;
+        final int slots;
+        final double nsPerOp;
+        final double errorNs;
+        final double bytesPerOp;
+        
+        Result(String benchmark, int slots, double nsPerOp, double errorNs, double bytesPerOp) {
+            this.benchmark = benchmark;
+            this.slots = slots;
+            this.nsPerOp = nsPerOp;
+            this.errorNs = errorNs;
+            this.bytesPerOp = bytesPerOp;
+        }
+        
+        String key() {
+            return benchmark + "@" + slots;
+        }
+    }
+    
+    private final int iterations;
+    private final long iterationNanos;
+    private final String only;
+    private final List<Result> results = new ArrayList<>();
+    private long sink;
+    
+    private ParkingBenchmark(int iterations, long iterationMillis, String only) {
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+        this.only = only;
+    }
+    
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        ParkingBenchmark benchmark = new ParkingBenchmark(
+            Integer.parseInt(options.getOrDefault("iterations", "5")),
+            Long.parseLong(options.getOrDefault("millis", "500")),
+            options.get("only"));
+        
+        for (String size : options.getOrDefault("sizes", "20,10000,1000000").split(",")) {
+            benchmark.runAll(Integer.parseInt(size.trim()));
+        }
+        
+        if (options.containsKey("json")) {
+            Path out = Paths.get(options.get("json"));
+            Files.writeString(out, benchmark.toJson());
+            System.out.println("Results written to " + out);
+        }
+        if (options.containsKey("baseline")) {
+            benchmark.compare(readJson(Paths.get(options.get("baseline"))));
+        }
+        if (benchmark.sink == 42) {
+            System.out.println();
+        }
+    }
+    
+    // The named workload against a fresh lot of that size; the result of each call should be consumed
+    public static LongUnaryOperator workload(String name, int slots) {
+        LongUnaryOperator[] found = new LongUnaryOperator[1];
+        define(slots, (candidate, operation) -> {
+            if (candidate.equals(name) && found[0] == null) {
+                found[0] = operation;
+            }
+        });
+        if (found[0] == null) {
+            throw new IllegalArgumentException("No benchmark named " + name);
+        }
+        return found[0];
+    }
+    
+    private void runAll(int slots) {
+        define(slots, (name, operation) -> measure(name, slots, operation));
+    }
+    
+    private static void define(int slots, Workloads workloads) {
+        ParkingEngine engine = halfFullLot(slots);
+        TariffEngine tariff = TariffEngine.standard();
+        Random random = new Random(7);
+        
+        // Nearest-free search from a random slot, as an entry gate does
+        int[] starts = random.ints(4096, 1, slots + 1).toArray();
+        workloads.add("slotSearch", op -> engine.findAvailableSlot(starts[(int) (op & 4095)]));
+        
+        // Full entry and exit through the engine, including the plate index
+        Vehicle[] arrivals = new Vehicle[4096];
+        for (int i = 0; i < arrivals.length; i++) {
+            arrivals[i] = new Vehicle("BENCH" + i, TYPES[i % TYPES.length], START);
+        }
+        LocalDateTime exitTime = START.plusHours(3);
+        workloads.add("entryExit", op -> {
+            int slot = engine.parkVehicle(arrivals[(int) (op & 4095)]);
+            return engine.removeVehicle(slot, exitTime).getChargePaise();
+        });
+        
+        // What updateStats() needs: the occupied count, kept by the engine vs a scan of every slot
+        workloads.add("occupancyCount", op -> engine.getOccupiedCount());
+        workloads.add("occupancyScanLegacy", op -> {
+            int occupied = 0;
+            for (int slot = 1; slot <= slots; slot++) {
+                if (!engine.isAvailable(slot)) {
+                    occupied++;
+                }
+            }
+            return occupied;
+        });
+        
+        // Charges for parked vehicles at a fixed exit time
+        Vehicle[] parked = new Vehicle[4096];
+        for (int i = 0, slot = 0; i < parked.length; i++) {
+            slot = engine.nextOccupiedSlot(slot + 1);
+            if (slot < 0) {
+                slot = engine.nextOccupiedSlot(1);
+            }
+            parked[i] = engine.getVehicle(slot);
+        }
+        LocalDateTime chargeTime = START.plusDays(2);
+        workloads.add("chargeTariff", op -> tariff.chargeFor(parked[(int) (op & 4095)], chargeTime));
+        VehicleType[] types = new VehicleType[parked.length];
+        long[] entrySeconds = new long[parked.length];
+        for (int i = 0; i < parked.length; i++) {
+            types[i] = parked[i].getType();
+            entrySeconds[i] = JournalRecord.toEpochSecond(parked[i].getEntryTime());
+        }
+        long chargeSecond = JournalRecord.toEpochSecond(chargeTime);
+        workloads.add("chargeTariffIndexed", op -> {
+            int i = (int) (op & 4095);
+            return tariff.charge(types[i], entrySeconds[i], chargeSecond);
+        });
+        workloads.add("chargeLegacy", op -> legacyCharge(parked[(int) (op & 4095)], chargeTime));
+        
+        // One entry and one exit through the forecaster, thirteen seconds apart, as they run inline at the gate
+        OccupancyForecaster forecaster = new OccupancyForecaster(slots);
+        workloads.add("forecastEvents", op -> {
+            Vehicle vehicle = new Vehicle("BENCH", TYPES[(int) (op % TYPES.length)], START.plusSeconds(op * 13));
+            forecaster.vehicleParked(1, vehicle);
+            forecaster.vehicleExited(new ParkingSession(1, vehicle, vehicle.getEntryTime().plusSeconds(6), 0));
+            return forecaster.getHoursObserved();
+        });
+        DynamicPricing pricing = new DynamicPricing(tariff, forecaster);
+        workloads.add("chargeDynamic", op -> pricing.chargeFor(parked[(int) (op & 4095)], chargeTime));
+        
+        // Nearest slot the vehicle fits, from two gates, against the same half-full lot
+        LotPlan plan = new LotPlan(benchLayout(slots));
+        plan.addGate("far", plan.getLayout().getLevels(), 100, 100);
+        String[] gates = {"main", "far"};
+        SlotAssigner nearest = new SlotAssigner(plan, engine, SlotAssigner.Mode.NEAREST);
+        nearest.attach();
+        workloads.add("assignNearest", op -> nearest.findSlot(TYPES[(int) (op % TYPES.length)], gates[(int) (op & 1)]));
+        nearest.detach();
+        SlotAssigner bestFit = new SlotAssigner(plan, engine, SlotAssigner.Mode.BEST_FIT);
+        bestFit.attach();
+        workloads.add("assignBestFit", op -> bestFit.findSlot(TYPES[(int) (op % TYPES.length)], gates[(int) (op & 1)]));
+        workloads.add("assignEntryExit", op -> {
+            int slot = bestFit.parkVehicle(arrivals[(int) (op & 4095)], gates[(int) (op & 1)]);
+            return engine.removeVehicle(slot, exitTime).getChargePaise();
+        });
+        bestFit.detach();
+        
+        // Copy of the occupied slots for the vehicle list
+        int[] snapshot = new int[slots];
+        workloads.add("listSnapshot", op -> {
+            int count = 0;
+            for (int slot = engine.nextOccupiedSlot(1); slot > 0; slot = engine.nextOccupiedSlot(slot + 1)) {
+                snapshot[count++] = slot;
+            }
+            return count;
+        });
+        
+        // A year of reports over four completed sessions per slot
+        SessionStore sessions = yearOfSessions(slots * 4);
+        SessionAnalytics analytics = new SessionAnalytics(sessions);
+        LocalDateTime yearEnd = START.plusYears(1);
+        workloads.add("reportOccupancy", op -> analytics.hourlyOccupancy(START, yearEnd).length);
+        workloads.add("reportDwell", op -> analytics.averageDwellByType(START, yearEnd).size());
+        workloads.add("reportPeakRevenue", op -> analytics.peakRevenueHour(START, yearEnd));
+    }
+    
+    private void measure(String name, int slots, LongUnaryOperator operation) {
+        if (only != null && !name.contains(only)) {
+            return;
+        }
+        // Warm-up lasts as long as one measured iteration and sizes batches to about a millisecond,
+        // so the clock is read rarely for fast operations and often enough for slow ones
+        long op = 0;
+        long warmupStart = System.nanoTime();
+        while (System.nanoTime() - warmupStart < iterationNanos) {
+            sink += operation.applyAsLong(op++);
+        }
+        long batch = Math.max(1, Math.min(1 << 16, op * 1_000_000 / iterationNanos));
+        
+        double[] nsPerOp = new double[iterations];
+        double bytes = 0;
+        long totalOps = 0;
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            long ops = 0;
+            long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                for (long i = 0; i < batch; i++) {
+                    sink += operation.applyAsLong(op++);
+                }
+                ops += batch;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < iterationNanos);
+            bytes += THREADS.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            totalOps += ops;
+            nsPerOp[iteration] = (double) elapsed / ops;
+        }
+        
+        double mean = 0;
+        for (double value : nsPerOp) {
+            mean += value;
+        }
+        mean /= iterations;
+        double variance = 0;
+        for (double value : nsPerOp) {
+            variance += (value - mean) * (value - mean);
+        }
+        double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+        
+        Result result = new Result(name, slots, mean, error, bytes / totalOps);
+        results.add(result);
+        System.out.printf(Locale.ROOT, "%-20s %9d slots %14.1f +- %8.1f ns/op %10.1f B/op%n",
+            name, slots, result.nsPerOp, result.errorNs, result.bytesPerOp);
+    }
+    
+    private static ParkingEngine halfFullLot(int slots) {
+        ParkingEngine engine = new ParkingEngine(slots, TariffEngine.standard());
+        Random random = new Random(slots);
+        while (engine.getOccupiedCount() < slots / 2) {
+            int slot = 1 + random.nextInt(slots);
+            LocalDateTime entry = START.minusMinutes(random.nextInt(3 * 24 * 60));
+            engine.parkVehicle(slot, new Vehicle("KA" + slot, TYPES[random.nextInt(TYPES.length)], entry));
+        }
+        return engine;
+    }
+    
+    private static SessionStore yearOfSessions(int count) {
+        SessionStore sessions = new SessionStore();
+        Random random = new Random(count);
+        long yearStart = JournalRecord.toEpochSecond(START);
+        for (int i = 0; i < count; i++) {
+            long entry = yearStart + random.nextInt(365 * 24 * 3600);
+            long exit = entry + 600 + random.nextInt(8 * 3600);
+            sessions.add("KA01AB" + random.nextInt(10_000), TYPES[random.nextInt(TYPES.length)], 1 + i % 1000, entry, exit,
+                100L * random.nextInt(500), i + 1);
+        }
+        return sessions;
+    }
+    
+    // Lots of up to 10k slots are one level; larger ones get 10k slots per level
+    private static LotLayout benchLayout(int slots) {
+        int levels = slots > 10_000 && slots % 10_000 == 0 ? slots / 10_000 : 1;
+        return new LotLayout(levels, slots / levels, 100);
+    }
+    
+    // calculateCharge as it was before the tariff engine, string switch included, kept as a baseline
+    private static long legacyCharge(Vehicle vehicle, LocalDateTime exitTime) {
+        long hours = ChronoUnit.HOURS.between(vehicle.getEntryTime(), exitTime);
+        if (hours == 0) hours = 1;
+        
+        int rate = switch (vehicle.getType().getCode().toLowerCase()) {
+            case "car" -> 20;
+            case "bike" -> 10;
+            case "truck" -> 40;
+            default -> 20;
+        };
+        
+        return hours * rate * 100;
+    }
+    
+    private String toJson() {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            json.append(String.format(Locale.ROOT,
+                "  {\"benchmark\": \"%s\", \"slots\": %d, \"nsPerOp\": %.3f, \"errorNs\": %.3f, \"bytesPerOp\": %.1f}",
+                result.benchmark, result.slots, result.nsPerOp, result.errorNs, result.bytesPerOp));
+            json.append(i + 1 < results.size() ? ",\n" : "\n");
+        }
+        return json.append("]\n").toString();
+    }
+    
+    // Reads back the format written by toJson
+    private static Map<String, Result> readJson(Path file) throws IOException {
+        Pattern entry = Pattern.compile("\"benchmark\": \"([^\"]+)\", \"slots\": (\\d+), \"nsPerOp\": ([\\d.]+), "
+            + "\"errorNs\": ([\\d.]+), \"bytesPerOp\": ([\\d.]+)");
+        Map<String, Result> baseline = new HashMap<>();
+        Matcher matcher = entry.matcher(Files.readString(file));
+        while (matcher.find()) {
+            Result result = new Result(matcher.group(1), Integer.parseInt(matcher.group(2)),
+                Double.parseDouble(matcher.group(3)), Double.parseDouble(matcher.group(4)),
+                Double.parseDouble(matcher.group(5)));
+            baseline.put(result.key(), result);
+        }
+        return baseline;
+    }
+    
+    private void compare(Map<String, Result> baseline) {
+        System.out.println();
+        System.out.println("Change against baseline (negative is faster):");
+        for (Result result : results) {
+            Result before = baseline.get(result.key());
+            if (before == null) {
+                continue;
+            }
+            double change = (result.nsPerOp - before.nsPerOp) / before.nsPerOp * 100;
+            System.out.printf(Locale.ROOT, "%-20s %9d slots %+8.1f%% %s%n", result.benchmark, result.slots, change,
+                Math.abs(result.nsPerOp - before.nsPerOp) > result.errorNs + before.errorNs ? "" : "(within error)");
+        }
+    }
+}
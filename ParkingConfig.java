@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Settings for running one lot, shared by the desktop app and the headless
+ * daemon. A properties file overrides any of the defaults, which describe
+ * the desktop app's standard lot:
+ *
+ *   levels = 1
+ *   slotsPerLevel = 20
+ *   slotsPerZone = 10
+ *   dataDirectory = parking-data
+ *   tariffFile = tariff.properties
+ *   planFile = lot-plan.properties
+ *   webPage = oops website.html
+ *   apiPort = 8080                 0 turns the gate API off
+ *   metricsPort = 9464             0 turns the scrape endpoint off
+ *   assigner = BEST_FIT            or NEAREST
+ *   overstayMinutes = 1440
+ *   replicationPort = 0            port standbys follow this lot on; 0 turns it off
+ *   replicationAddress =           interface that port listens on; loopback unless set, 0.0.0.0 for all
+ *   standbyOf =                    host:port of a primary to follow instead of opening gates
+ *   failoverMillis = 1000          silence from the primary before a standby takes over
+ *   allowNoJournal = false         let the daemon or the window run when the journal will not
+ *                                  open, losing everything at the next restart
+ *
+ * Relative paths are resolved against the working directory. A standby's
+ * data directory must not be its primary's, since taking over rewrites it.
+ */
+public class ParkingConfig {
+    
+    private int levels = 1;
+    private int slotsPerLevel = 20;
+    private int slotsPerZone = 10;
+    private Path dataDirectory = Paths.get("parking-data");
+    private Path tariffFile = Paths.get("tariff.properties");
+    private Path planFile = Paths.get("lot-plan.properties");
+    private Path webPage = Paths.get("oops website.html");
+    private int apiPort = 8080;
+    private int metricsPort = 9464;
+    private SlotAssigner.Mode assignerMode = SlotAssigner.Mode.BEST_FIT;
+    private long overstayMinutes = 24 * 60;
+    private int replicationPort;
+    private String replicationAddress;
+    private InetSocketAddress standbyOf;
+    private long failoverMillis = 1000;
+    private boolean allowNoJournal;
+    
+    public static ParkingConfig defaults() {
+        return new ParkingConfig();
+    }
+    
+    public static ParkingConfig load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        ParkingConfig config = new ParkingConfig();
+        config.levels = Integer.parseInt(properties.getProperty("levels", String.valueOf(config.levels)).trim());
+        config.slotsPerLevel = Integer.parseInt(properties.getProperty("slotsPerLevel", String.valueOf(config.slotsPerLevel)).trim());
+        config.slotsPerZone = Integer.parseInt(properties.getProperty("slotsPerZone", String.valueOf(config.slotsPerZone)).trim());
+        config.dataDirectory = Paths.get(properties.getProperty("dataDirectory", config.dataDirectory.toString()).trim());
+        config.tariffFile = Paths.get(properties.getProperty("tariffFile", config.tariffFile.toString()).trim());
+        config.planFile = Paths.get(properties.getProperty("planFile", config.planFile.toString()).trim());
+        config.webPage = Paths.get(properties.getProperty("webPage", config.webPage.toString()).trim());
+        config.apiPort = port(properties.getProperty("apiPort", String.valueOf(config.apiPort)));
+        config.metricsPort = port(properties.getProperty("metricsPort", String.valueOf(config.metricsPort)));
+        config.assignerMode = SlotAssigner.Mode.valueOf(properties.getProperty("assigner", config.assignerMode.name()).trim());
+        config.overstayMinutes = Long.parseLong(properties.getProperty("overstayMinutes", String.valueOf(config.overstayMinutes)).trim());
+        if (config.overstayMinutes <= 0) {
+            throw new IllegalArgumentException("overstayMinutes must be positive: " + config.overstayMinutes);
+        }
+        config.replicationPort = port(properties.getProperty("replicationPort", String.valueOf(config.replicationPort)));
+        String replicationAddress = properties.getProperty("replicationAddress", "").trim();
+        if (!replicationAddress.isEmpty()) {
+            config.replicationAddress = replicationAddress;
+        }
+        String standbyOf = properties.getProperty("standbyOf", "").trim();
+        if (!standbyOf.isEmpty()) {
+            config.standbyOf = address(standbyOf);
+        }
+        config.failoverMillis = Long.parseLong(properties.getProperty("failoverMillis", String.valueOf(config.failoverMillis)).trim());
+        if (config.failoverMillis <= ReplicationServer.HEARTBEAT_MILLIS) {
+            throw new IllegalArgumentException("failoverMillis must be more than the "
+                + ReplicationServer.HEARTBEAT_MILLIS + " ms heartbeat: " + config.failoverMillis);
+        }
+        config.allowNoJournal = Boolean.parseBoolean(properties.getProperty("allowNoJournal", "false").trim());
+        // Checks the numbers before anything is built from them
+        config.getLayout();
+        return config;
+    }
+    
+    public LotLayout getLayout() {
+        return new LotLayout(levels, slotsPerLevel, slotsPerZone);
+    }
+    
+    public Path getDataDirectory() {
+        return dataDirectory;
+    }
+    
+    public Path getWebPage() {
+        return webPage;
+    }
+    
+    public int getApiPort() {
+        return apiPort;
+    }
+    
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+    
+    public SlotAssigner.Mode getAssignerMode() {
+        return assignerMode;
+    }
+    
+    public long getOverstayMinutes() {
+        return overstayMinutes;
+    }
+    
+    public int getReplicationPort() {
+        return replicationPort;
+    }
+    
+    // Where the replication server listens: replicationPort on the loopback interface unless an address is set
+    public InetSocketAddress getReplicationAddress() {
+        if (replicationAddress == null) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), replicationPort);
+        }
+        return new InetSocketAddress(replicationAddress, replicationPort);
+    }
+    
+    // The primary to follow, or null if this lot serves gates itself
+    public InetSocketAddress getStandbyOf() {
+        return standbyOf;
+    }
+    
+    public long getFailoverMillis() {
+        return failoverMillis;
+    }
+    
+    public boolean isAllowNoJournal() {
+        return allowNoJournal;
+    }
+    
+    // The tariff file's rates, or each vehicle type's default rate if there is no usable file
+    public TariffEngine loadTariff() {
+        if (Files.exists(tariffFile)) {
+            try {
+                return TariffEngine.load(tariffFile);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not load " + tariffFile + ", using default rates: " + e.getMessage());
+            }
+        }
+        return TariffEngine.standard();
+    }
+    
+    // The plan file's slot sizes, positions and gates, or the standard plan if there is no usable file
+    public LotPlan loadPlan(LotLayout layout) {
+        if (Files.exists(planFile)) {
+            try {
+                return LotPlan.load(planFile, layout);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not load " + planFile + ", using the standard plan: " + e.getMessage());
+            }
+        }
+        return new LotPlan(layout);
+    }
+    
+    private static int port(String value) {
+        int port = Integer.parseInt(value.trim());
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("No such port: " + port);
+        }
+        return port;
+    }
+    
+    private static InetSocketAddress address(String value) {
+        int colon = value.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Expected host:port, got " + value);
+        }
+        return InetSocketAddress.createUnresolved(value.substring(0, colon), port(value.substring(colon + 1)));
+    }
+}
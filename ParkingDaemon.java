@@ -0,0 +1,418 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import javax.management.JMException;
+
+/**
+ * Runs a lot without the desktop window, for gate controllers and servers.
+ * It reads the same parking.properties as the desktop app, restores the lot
+ * from the journal and opens the gate API. Then it prints how long it took
+ * to be ready for entries, both from the start of main and from the start
+ * of the JVM. Anything gates do not need straight away, such as JMX, the
+ * metrics endpoint and dwell tracking, starts after that line.
+ *
+ *   java ParkingDaemon [parking.properties] [--console] [--exit-when-ready]
+ *
+ * --console reads commands from standard input: park PLATE TYPE [GATE],
+ * exit PLATE, find PLATE, status, settle [DAY] and quit. An exit prints the
+ * receipt. settle writes the day's sessions, today by default, as CSV and
+ * binary settlements under the data directory, and checks them against the
+ * revenue counter. It refuses a day that began before the sessions it
+ * has: those of the journal's history, or of this run without a journal.
+ * --exit-when-ready stops once the
+ * lot is ready, which is what a class-data sharing training run needs. The
+ * archive only takes classes from jars, not from a directory:
+ *
+ *   jar cf parking.jar *.class
+ *   java -XX:ArchiveClassesAtExit=parking.jsa -cp parking.jar ParkingDaemon parking.properties --exit-when-ready
+ *   java -XX:SharedArchiveFile=parking.jsa -cp parking.jar ParkingDaemon parking.properties
+ *
+ * The archive keeps the parsed and verified classes of the start-up path,
+ * including the lambda and method handle classes the JDK would otherwise
+ * generate, so later starts skip most of that work. It has to be made again
+ * after the classes or the JDK change. On JDK 19 and later,
+ * -XX:+AutoCreateSharedArchive -XX:SharedArchiveFile=parking.jsa does both
+ * steps by itself.
+ *
+ * A daemon whose journal will not open does not start, since every change
+ * it acknowledged would be lost at the next restart; allowNoJournal = true
+ * lets it run without one. The same goes for a standby taking over.
+ *
+ * Mapping the journal creates its buffer through reflection, which spins
+ * up method handles on first use unless
+ * -Djdk.reflect.useNativeAccessorOnly=true is passed. A gate controller that
+ * values a quick start over peak throughput can add -XX:TieredStopAtLevel=1
+ * and -XX:+UseSerialGC as well.
+ *
+ * With standbyOf set, the daemon follows that primary's replicationPort
+ * instead of opening gates. Its engine, and everything listening to it but
+ * the gate API, is kept in step with the primary's, and once the primary
+ * has been silent for failoverMillis it starts its own journal from the
+ * replicated state and carries on as the lot. The primary listens on
+ * loopback only unless its replicationAddress says otherwise. The ready
+ * line then also gives how long taking over took after the silence was
+ * noticed.
+ */
+public class ParkingDaemon {
+    
+    private static final Path DEFAULT_CONFIG = Paths.get("parking.properties");
+    
+    private final ParkingConfig config;
+    private LotLayout layout;
+    private OccupancyForecaster forecaster;
+    private DynamicPricing pricing;
+    private ParkingEngine engine;
+    private ParkingJournal journal;
+    private SlotAssigner assigner;
+    private TimerWheel timers;
+    private DwellTracker dwell;
+    private SessionStore sessions;
+    private ParkingMetrics metrics;
+    private MetricsServer metricsServer;
+    private GateApiServer apiServer;
+    private ReplicationServer replication;
+    private long takeoverNanos;
+    // Revenue the counter held that no session in the store accounts for: takings from before the journal's history
+    private long revenueBeforeSessions;
+    // Every exit since then is in the session store
+    private LocalDateTime sessionsSince;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    
+    public ParkingDaemon(ParkingConfig config) {
+        this.config = config;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        long startNanos = System.nanoTime();
+        Path configFile = DEFAULT_CONFIG;
+        boolean console = false;
+        boolean exitWhenReady = false;
+        for (String arg : args) {
+            if (arg.equals("--console")) {
+                console = true;
+            } else if (arg.equals("--exit-when-ready")) {
+                exitWhenReady = true;
+            } else if (arg.startsWith("--")) {
+                System.err.println("Unknown option " + arg);
+                System.err.println("Usage: java ParkingDaemon [parking.properties] [--console] [--exit-when-ready]");
+                System.exit(2);
+            } else {
+                configFile = Paths.get(arg);
+            }
+        }
+        ParkingConfig config = Files.exists(configFile) ? ParkingConfig.load(configFile) : ParkingConfig.defaults();
+        
+        ParkingDaemon daemon = new ParkingDaemon(config);
+        try {
+            daemon.startGates();
+        } catch (IOException e) {
+            System.err.println("Not starting: " + e.getMessage());
+            daemon.stop();
+            System.exit(1);
+        }
+        long readyMillis = System.currentTimeMillis();
+        long sinceMain = (System.nanoTime() - startNanos) / 1_000_000;
+        long sinceJvm = readyMillis - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.printf(Locale.ROOT, "Ready for entries: %d slots, %d parked, %d ms after main, %d ms after JVM start%n",
+            daemon.engine.getTotalSlots(), daemon.engine.getOccupiedCount(), sinceMain, sinceJvm);
+        if (daemon.takeoverNanos != 0) {
+            System.out.printf(Locale.ROOT, "Took over from the primary in %.1f ms%n", (System.nanoTime() - daemon.takeoverNanos) / 1e6);
+        }
+        if (exitWhenReady) {
+            daemon.stop();
+            return;
+        }
+        
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::stop, "parking-shutdown"));
+        daemon.startBackground();
+        if (console) {
+            daemon.runConsole();
+            System.exit(0);
+        }
+        daemon.stopped.await();
+    }
+    
+    // Everything an entry or exit goes through, in the order the desktop app wires it
+    public void startGates() throws IOException {
+        layout = config.getLayout();
+        TariffEngine tariff = config.loadTariff();
+        forecaster = new OccupancyForecaster(layout.getTotalSlots());
+        pricing = new DynamicPricing(tariff, forecaster);
+        engine = new ParkingEngine(layout.getTotalSlots(), pricing);
+        
+        // Restore whatever was parked before the last shutdown or power cut, and every session before it
+        sessions = new SessionStore();
+        sessionsSince = LocalDateTime.now();
+        if (config.getStandbyOf() == null) {
+            try {
+                journal = ParkingJournal.open(config.getDataDirectory(), layout.getTotalSlots());
+                journal.restoreSessions(sessions);
+                journal.attach(engine);
+                sessionsSince = journal.getHistoryStart();
+            } catch (IOException e) {
+                journalUnavailable(e);
+            }
+        }
+        forecaster.attach(engine, LocalDateTime.now());
+        engine.addListener(pricing);
+        
+        assigner = new SlotAssigner(config.loadPlan(layout), engine, config.getAssignerMode());
+        assigner.attach();
+        timers = new TimerWheel(LocalDateTime.now());
+        timers.start();
+        assigner.setReservations(new ReservationBook(engine, assigner.getPlan(), timers));
+        
+        engine.addListener(sessions);
+        metrics = new ParkingMetrics(assigner.getPlan(), engine);
+        metrics.attach();
+        if (config.getStandbyOf() != null) {
+            // Everything but the gates is already following the engine, so taking over only starts the journal
+            followPrimary();
+        }
+        // No exit can be under way before the gates open
+        revenueBeforeSessions = engine.getTotalRevenuePaise() - sessions.getRevenuePaise();
+        if (config.getApiPort() > 0) {
+            apiServer = GateApiServer.start(engine, metrics, assigner, config.getWebPage(), config.getApiPort());
+        }
+    }
+    
+    // Mirrors the primary until it goes silent, then journals from the state it left
+    private void followPrimary() throws IOException {
+        LotState state;
+        try (StandbyLot standby = new StandbyLot(engine, config.getStandbyOf(), config.getFailoverMillis())) {
+            standby.start();
+            System.out.println("Standby for " + standby.getPrimaryName() + ", taking over after "
+                + config.getFailoverMillis() + " ms without it");
+            standby.awaitPrimaryLoss();
+            takeoverNanos = System.nanoTime();
+            state = standby.takeOver();
+            System.out.printf(Locale.ROOT, "Primary silent, taking over at record %d with %d parked%n",
+                state.getLastSeq(), state.getOccupiedCount());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Stopped while following the primary");
+        }
+        try {
+            journal = ParkingJournal.startFrom(config.getDataDirectory(), state);
+            journal.attachRestored(engine);
+        } catch (IOException e) {
+            journalUnavailable(e);
+        }
+    }
+    
+    // Runs on without a journal only where the settings say so
+    private void journalUnavailable(IOException e) throws IOException {
+        journal = null;
+        if (!config.isAllowNoJournal()) {
+            throw new IOException("Parking journal unavailable: " + e.getMessage()
+                + " (allowNoJournal = true runs without it)", e);
+        }
+        System.err.println("Parking journal unavailable, state will not survive a restart: " + e.getMessage());
+    }
+    
+    // What can wait until gates are already being served
+    public void startBackground() {
+        dwell = new DwellTracker(engine, pricing, timers, config.getOverstayMinutes());
+        dwell.addListener(new DwellTracker.Listener() {
+            @Override
+            public void overstayed(int slotNumber, Vehicle vehicle, long minutes) {
+                System.out.println("Overstay: " + vehicle.getVehicleNumber() + " in Slot " + slotNumber
+                    + " for " + minutes / 60 + " hours");
+            }
+        });
+        dwell.attach();
+        try {
+            metrics.registerMBean();
+        } catch (JMException e) {
+            System.err.println("Metrics not published over JMX: " + e.getMessage());
+        }
+        if (config.getReplicationPort() > 0) {
+            if (journal == null) {
+                System.err.println("Replication needs the journal, no standby can follow this lot");
+            } else {
+                try {
+                    replication = ReplicationServer.start(journal, config.getReplicationAddress());
+                } catch (IOException e) {
+                    System.err.println("Replication unavailable on " + config.getReplicationAddress() + ": " + e.getMessage());
+                }
+            }
+        }
+        if (config.getMetricsPort() > 0) {
+            try {
+                metricsServer = MetricsServer.start(metrics, config.getMetricsPort());
+            } catch (IOException e) {
+                System.err.println("Metrics endpoint unavailable on port " + config.getMetricsPort() + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    public synchronized void stop() {
+        if (stopped.getCount() == 0) {
+            return;
+        }
+        if (apiServer != null) {
+            apiServer.close();
+        }
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
+        if (dwell != null) {
+            dwell.detach();
+            try {
+                metrics.unregisterMBean();
+            } catch (JMException e) {
+                // Not registered or already gone
+            }
+        }
+        if (timers != null) {
+            timers.close();
+        }
+        if (replication != null) {
+            replication.close();
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println("Journal not closed cleanly, the next start replays its log: " + e.getMessage());
+            }
+        }
+        stopped.countDown();
+    }
+    
+    public ParkingEngine getEngine() {
+        return engine;
+    }
+    
+    private void runConsole() throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        for (String line; (line = in.readLine()) != null; ) {
+            String[] words = line.trim().split("\\s+");
+            if (words[0].isEmpty()) {
+                continue;
+            }
+            if (words[0].equalsIgnoreCase("quit")) {
+                return;
+            }
+            try {
+                System.out.println(command(words));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Error: " + e.getMessage());
+            } catch (UncheckedIOException e) {
+                System.out.println("Not recorded: " + e.getCause().getMessage());
+            }
+        }
+    }
+    
+    // Both settlements of one day, with their totals and whether the revenue counter agrees
+    private String settle(LocalDate day) {
+        LocalDateTime from = day.atStartOfDay();
+        if (from.isBefore(sessionsSince)) {
+            return "Not settled: sessions are only kept from " + sessionsSince.withNano(0)
+                + ", so a settlement of " + day + " would miss exits";
+        }
+        Path directory = config.getDataDirectory().resolve("settlements");
+        SettlementExport.Settlement settlement;
+        try {
+            Files.createDirectories(directory);
+            settlement = SettlementExport.writeCsv(sessions, from, from.plusDays(1), directory.resolve("settlement-" + day + ".csv"));
+            SettlementExport.writeBinary(sessions, from, from.plusDays(1), directory.resolve("settlement-" + day + ".bin"));
+        } catch (IOException e) {
+            return "Settlement not written: " + e.getMessage();
+        }
+        StringBuilder report = new StringBuilder(String.format(Locale.ROOT, "Settled %s: %d sessions, %s",
+            day, settlement.getSessions(), rupees(settlement.getChargePaise())));
+        for (VehicleType type : VehicleType.values()) {
+            report.append(String.format(Locale.ROOT, "%n  %-6s %8d sessions %12s", type.getDisplayName(),
+                settlement.getSessions(type), rupees(settlement.getChargePaise(type))));
+        }
+        report.append(String.format(Locale.ROOT, "%nWritten to %s", directory.resolve("settlement-" + day + ".csv/.bin")));
+        long difference = unsettledPaise();
+        report.append(difference == 0
+            ? String.format(Locale.ROOT, "%nRevenue counter %s reconciled: %s in %d sessions kept, %s from before them",
+                rupees(engine.getTotalRevenuePaise()), rupees(sessions.getRevenuePaise()), sessions.size(),
+                rupees(revenueBeforeSessions))
+            : String.format(Locale.ROOT, "%nRevenue counter is %s away from the sessions behind it", rupees(difference)));
+        return report.toString();
+    }
+    
+    // Revenue counted with no session to show for it; an exit between the two reads looks like a difference, so it is read again
+    private long unsettledPaise() {
+        long difference = 0;
+        for (int attempt = 0; attempt < 20; attempt++) {
+            long sessionPaise = sessions.getRevenuePaise();
+            difference = engine.getTotalRevenuePaise() - revenueBeforeSessions - sessionPaise;
+            if (difference == 0) {
+                break;
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return difference;
+    }
+    
+    private static String rupees(long paise) {
+        return String.format(Locale.ROOT, "%s%d.%02d", paise < 0 ? "-" : "", Math.abs(paise) / 100, Math.abs(paise) % 100);
+    }
+    
+    private String command(String[] words) {
+        switch (words[0].toLowerCase(Locale.ROOT)) {
+            case "park" -> {
+                if (words.length < 3) {
+                    throw new IllegalArgumentException("park PLATE TYPE [GATE]");
+                }
+                VehicleType type = VehicleType.fromCode(words[2].toLowerCase(Locale.ROOT));
+                Vehicle vehicle = new Vehicle(words[1].toUpperCase(Locale.ROOT), type, LocalDateTime.now());
+                int slotNumber = assigner.parkVehicle(vehicle, words.length > 3 ? words[3] : null);
+                if (slotNumber == ParkingEngine.ALREADY_PARKED) {
+                    return "Already parked in Slot " + engine.findSlotByPlate(words[1]);
+                }
+                return slotNumber == ParkingEngine.LOT_FULL ? "Parking is full" : "Parked in Slot " + slotNumber;
+            }
+            case "exit" -> {
+                if (words.length < 2) {
+                    throw new IllegalArgumentException("exit PLATE");
+                }
+                ParkingSession session = engine.removeVehicleByPlate(words[1], LocalDateTime.now());
+                return session == null ? "Not parked here" : Receipt.of(session).toText();
+            }
+            case "find" -> {
+                if (words.length < 2) {
+                    throw new IllegalArgumentException("find PLATE");
+                }
+                int slotNumber = engine.findSlotByPlate(words[1]);
+                return slotNumber < 0 ? "Not parked here" : "Slot " + slotNumber;
+            }
+            case "status" -> {
+                return String.format(Locale.ROOT, "%d slots, %d free, %d occupied, %d held, revenue %d.%02d",
+                    engine.getTotalSlots(), engine.getAvailableCount(), engine.getOccupiedCount(), engine.getHeldCount(),
+                    engine.getTotalRevenuePaise() / 100, engine.getTotalRevenuePaise() % 100);
+            }
+            case "settle" -> {
+                try {
+                    return settle(words.length > 1 ? LocalDate.parse(words[1]) : LocalDate.now());
+                } catch (DateTimeParseException e) {
+                    throw new IllegalArgumentException("settle [DAY], with the day as 2025-03-01");
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown command " + words[0]
+                + "; try park, exit, find, status, settle or quit");
+        }
+    }
+}
@@ -0,0 +1,400 @@
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * UI-independent model of one parking lot. Slots are numbered from 1 and the
+ * free/occupied state lives in hierarchical bit sets, so allocating the
+ * nearest free slot, releasing a slot and counting free slots do not depend
+ * on the size of the lot.
+ *
+ * Any number of gate threads may call the engine at once: a slot is claimed
+ * by a CAS on its free bit and released by a CAS on its record header, so a
+ * slot can never be booked twice or a vehicle charged twice. Revenue is
+ * kept in paise in a LongAdder.
+ *
+ * Who is parked where lives in a SlotStore outside the heap rather than as
+ * Vehicle objects. The engine stores the plate normalized and the entry
+ * time to the second, and getVehicle() builds a fresh Vehicle from the
+ * record on each call. Listeners are handed that same normalized vehicle,
+ * so what they keep compares equal to what the engine returns later.
+ *
+ * Parked vehicles are also indexed by normalized plate, so gate exits by
+ * camera read are a single hash lookup and a plate cannot be parked twice.
+ *
+ * A free slot can be held for a reservation: it stays empty but is no
+ * longer free, so neither the nearest-free search nor a manual pick can
+ * take it, until the hold is released or the vehicle it was held for
+ * parks in it.
+ *
+ * With a ChangeLog set, every park and exit is written to it before anyone
+ * can see it. The gate thread first claims the slot (the free bit for a
+ * park, the header CAS for an exit), so no other thread can touch it, then
+ * appends the record, and only then updates the plate index, the bit sets,
+ * revenue and the listeners. If the log throws, the claim is given back
+ * and the lot is as it was. Without one, the engine numbers exits itself,
+ * from 1 since it was made, so receipts are still told apart.
+ */
+public class ParkingEngine {
+    
+    public static final int LOT_FULL = -1;
+    public static final int ALREADY_PARKED = -2;
+    
+    /**
+     * Makes changes durable ahead of the engine, as ParkingJournal does.
+     * append returns the record's sequence number once it is on disk, or,
+     * between batchStarted and batchEnded, as soon as it is queued, and
+     * batchEnded returns once the whole batch is on disk. All three throw
+     * UncheckedIOException when the records cannot be kept.
+     */
+    public interface ChangeLog {
+        
+        long append(JournalRecord record);
+        
+        void batchStarted();
+        
+        void batchEnded();
+    }
+    
+    private final int totalSlots;
+    private final ChargeCalculator chargeCalculator;
+    private final ConcurrentSlotBitSet freeSlots;
+    private final ConcurrentSlotBitSet occupiedSlots;
+    private final ConcurrentSlotBitSet heldSlots;
+    private final SlotStore store;
+    private final PlateIndex plateIndex = new PlateIndex();
+    private final LongAdder revenuePaise = new LongAdder();
+    private final AtomicLong exitsUnlogged = new AtomicLong();
+    private final List<ParkingListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile ChangeLog changeLog;
+    
+    public ParkingEngine(int totalSlots, ChargeCalculator chargeCalculator) {
+        if (totalSlots <= 0) {
+            throw new IllegalArgumentException("A lot needs at least one slot");
+        }
+        this.totalSlots = totalSlots;
+        this.chargeCalculator = chargeCalculator;
+        this.freeSlots = new ConcurrentSlotBitSet(totalSlots);
+        this.occupiedSlots = new ConcurrentSlotBitSet(totalSlots);
+        this.heldSlots = new ConcurrentSlotBitSet(totalSlots);
+        this.store = new SlotStore(totalSlots);
+        freeSlots.setAll();
+    }
+    
+    public void addListener(ParkingListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeListener(ParkingListener listener) {
+        listeners.remove(listener);
+    }
+    
+    // Set before the gates open; null runs the lot without one
+    public void setChangeLog(ChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+    
+    // Runs changes that the caller acknowledges together, as the gate pipeline does with a batch of events.
+    // The change log then waits once at the end instead of per change; if that wait throws, the changes are
+    // made all the same
+    public void applyBatch(Runnable changes) {
+        ChangeLog log = changeLog;
+        if (log == null) {
+            changes.run();
+            return;
+        }
+        log.batchStarted();
+        try {
+            changes.run();
+        } finally {
+            log.batchEnded();
+        }
+    }
+    
+    public int getTotalSlots() {
+        return totalSlots;
+    }
+    
+    public int getAvailableCount() {
+        return freeSlots.cardinality();
+    }
+    
+    public int getOccupiedCount() {
+        return occupiedSlots.cardinality();
+    }
+    
+    public int getHeldCount() {
+        return heldSlots.cardinality();
+    }
+    
+    public long getTotalRevenuePaise() {
+        return revenuePaise.sum();
+    }
+    
+    // Adds revenue booked before a restart, or on the primary a standby follows
+    public void restoreRevenue(long paise) {
+        revenuePaise.add(paise);
+    }
+    
+    public boolean isAvailable(int slotNumber) {
+        return freeSlots.get(indexOf(slotNumber));
+    }
+    
+    public boolean isHeld(int slotNumber) {
+        return heldSlots.get(indexOf(slotNumber));
+    }
+    
+    public Vehicle getVehicle(int slotNumber) {
+        SlotStore.Cursor cursor = store.cursor();
+        return cursor.read(slotNumber) ? cursor.toVehicle() : null;
+    }
+    
+    // For reading many slots without building a Vehicle for each
+    public SlotStore getSlotStore() {
+        return store;
+    }
+    
+    // Lowest-numbered free slot at or after fromSlot, or -1 if there is none
+    public int findAvailableSlot(int fromSlot) {
+        int index = freeSlots.nextSetBit(Math.max(fromSlot, 1) - 1);
+        return index < 0 ? -1 : index + 1;
+    }
+    
+    public int nextOccupiedSlot(int fromSlot) {
+        int index = occupiedSlots.nextSetBit(Math.max(fromSlot, 1) - 1);
+        return index < 0 ? -1 : index + 1;
+    }
+    
+    public int nextHeldSlot(int fromSlot) {
+        int index = heldSlots.nextSetBit(Math.max(fromSlot, 1) - 1);
+        return index < 0 ? -1 : index + 1;
+    }
+    
+    // Slot holding the plate, or -1 if it is not parked here
+    public int findSlotByPlate(String plate) {
+        return plateIndex.slotOf(PlateIndex.normalize(plate));
+    }
+    
+    public List<Integer> findSlotsByPlatePrefix(String prefix, int limit) {
+        return plateIndex.slotsWithPrefix(PlateIndex.normalize(prefix), limit);
+    }
+    
+    // Parks in the nearest free slot and returns its number, or LOT_FULL / ALREADY_PARKED
+    public int parkVehicle(Vehicle vehicle) {
+        String plate = PlateIndex.normalize(vehicle.getVehicleNumber());
+        if (!plateIndex.reserve(plate)) {
+            return ALREADY_PARKED;
+        }
+        int index = freeSlots.claimNext(0);
+        if (index < 0) {
+            plateIndex.cancel(plate);
+            return LOT_FULL;
+        }
+        logPark(index, plate, vehicle, freeSlots);
+        occupy(index, vehicle, plate);
+        return index + 1;
+    }
+    
+    // Returns false if the slot is taken or the plate is already parked
+    public boolean parkVehicle(int slotNumber, Vehicle vehicle) {
+        int index = indexOf(slotNumber);
+        String plate = PlateIndex.normalize(vehicle.getVehicleNumber());
+        if (!plateIndex.reserve(plate)) {
+            return false;
+        }
+        if (!freeSlots.clear(index)) {
+            plateIndex.cancel(plate);
+            return false;
+        }
+        logPark(index, plate, vehicle, freeSlots);
+        occupy(index, vehicle, plate);
+        return true;
+    }
+    
+    // Same as parkVehicle(slotNumber, vehicle) for a stay read back from a journal, without building a Vehicle for it;
+    // it is already in a journal, so it is not logged again
+    public boolean restoreVehicle(int slotNumber, String plate, VehicleType type, long entrySecond) {
+        int index = indexOf(slotNumber);
+        String normalized = PlateIndex.normalize(plate);
+        if (!plateIndex.reserve(normalized)) {
+            return false;
+        }
+        if (!freeSlots.clear(index)) {
+            plateIndex.cancel(normalized);
+            return false;
+        }
+        occupy(index, normalized, type, entrySecond, null);
+        return true;
+    }
+    
+    // Takes a free slot out of service for a reservation; false if the slot is not free
+    public boolean holdSlot(int slotNumber) {
+        int index = indexOf(slotNumber);
+        if (!freeSlots.clear(index)) {
+            return false;
+        }
+        store.setState(index, SlotStore.HELD);
+        heldSlots.set(index);
+        for (ParkingListener listener : listeners) {
+            listener.slotHeld(slotNumber);
+        }
+        return true;
+    }
+    
+    // Puts a held slot back in service; false if it was not held
+    public boolean releaseHold(int slotNumber) {
+        int index = indexOf(slotNumber);
+        if (!heldSlots.clear(index)) {
+            return false;
+        }
+        store.setState(index, SlotStore.FREE);
+        freeSlots.set(index);
+        for (ParkingListener listener : listeners) {
+            listener.holdReleased(slotNumber);
+        }
+        return true;
+    }
+    
+    // Parks the vehicle a slot was held for; false if the slot is not held or the plate is already parked
+    public boolean parkHeld(int slotNumber, Vehicle vehicle) {
+        int index = indexOf(slotNumber);
+        String plate = PlateIndex.normalize(vehicle.getVehicleNumber());
+        if (!plateIndex.reserve(plate)) {
+            return false;
+        }
+        if (!heldSlots.clear(index)) {
+            plateIndex.cancel(plate);
+            return false;
+        }
+        logPark(index, plate, vehicle, heldSlots);
+        for (ParkingListener listener : listeners) {
+            listener.holdReleased(slotNumber);
+        }
+        occupy(index, vehicle, plate);
+        return true;
+    }
+    
+    public long quoteCharge(int slotNumber, LocalDateTime exitTime) {
+        Vehicle vehicle = getVehicle(slotNumber);
+        return vehicle == null ? 0 : chargeCalculator.chargeFor(vehicle, exitTime);
+    }
+    
+    // Frees the slot and books the charge, or returns null if the slot was already empty
+    public ParkingSession removeVehicle(int slotNumber, LocalDateTime exitTime) {
+        return removeVehicle(slotNumber, null, exitTime);
+    }
+    
+    // As above, but only if the slot still holds the expected vehicle (null accepts any)
+    public ParkingSession removeVehicle(int slotNumber, Vehicle expected, LocalDateTime exitTime) {
+        return remove(slotNumber, expected, exitTime, -1, 0);
+    }
+    
+    // Frees the slot and books a charge worked out elsewhere, as a standby does when it follows a primary lot;
+    // seq is the exit's sequence number in the primary's journal, or 0 to have it numbered here, and a change log
+    // numbers it afresh
+    public ParkingSession removeVehicle(int slotNumber, LocalDateTime exitTime, long chargePaise, long seq) {
+        if (chargePaise < 0) {
+            throw new IllegalArgumentException("Charge cannot be negative: " + chargePaise);
+        }
+        return remove(slotNumber, null, exitTime, chargePaise, seq);
+    }
+    
+    // A negative chargePaise has the engine's calculator price the stay
+    private ParkingSession remove(int slotNumber, Vehicle expected, LocalDateTime exitTime, long chargePaise, long seq) {
+        int index = indexOf(slotNumber);
+        SlotStore.Cursor cursor = store.cursor();
+        while (true) {
+            if (!cursor.read(slotNumber)) {
+                return null;
+            }
+            Vehicle vehicle = cursor.toVehicle();
+            if (expected != null && !expected.equals(vehicle)) {
+                return null;
+            }
+            long charge = chargePaise >= 0 ? chargePaise : chargeCalculator.chargeFor(vehicle, exitTime);
+            if (!store.vacate(index, cursor.getHeader())) {
+                continue;
+            }
+            // The slot is ours until its free bit is set, so an exit the log refuses can put the vehicle back
+            long recordSeq = seq;
+            ChangeLog log = changeLog;
+            if (log == null) {
+                if (recordSeq == 0) {
+                    recordSeq = exitsUnlogged.incrementAndGet();
+                }
+            } else {
+                try {
+                    recordSeq = log.append(new JournalRecord(0, JournalRecord.EXIT, slotNumber, vehicle.getVehicleNumber(),
+                        vehicle.getType(), cursor.getEntrySecond(), JournalRecord.toEpochSecond(exitTime), charge));
+                } catch (RuntimeException e) {
+                    store.occupy(index, vehicle.getVehicleNumber(), vehicle.getType(), cursor.getEntrySecond());
+                    throw e;
+                }
+            }
+            plateIndex.release(vehicle.getVehicleNumber(), slotNumber);
+            occupiedSlots.clear(index);
+            freeSlots.set(index);
+            revenuePaise.add(charge);
+            
+            ParkingSession session = new ParkingSession(slotNumber, vehicle, exitTime, charge, recordSeq);
+            for (ParkingListener listener : listeners) {
+                listener.vehicleExited(session);
+            }
+            return session;
+        }
+    }
+    
+    public ParkingSession removeVehicleByPlate(String plate, LocalDateTime exitTime) {
+        int slotNumber = findSlotByPlate(plate);
+        return slotNumber < 0 ? null : removeVehicle(slotNumber, exitTime);
+    }
+    
+    // Writes a park ahead of making it; if the log refuses it, the slot goes back to the set it was claimed from
+    private void logPark(int index, String plate, Vehicle vehicle, ConcurrentSlotBitSet claimedFrom) {
+        ChangeLog log = changeLog;
+        if (log == null) {
+            return;
+        }
+        try {
+            log.append(new JournalRecord(0, JournalRecord.PARK, index + 1, plate, vehicle.getType(),
+                JournalRecord.toEpochSecond(vehicle.getEntryTime()), 0, 0));
+        } catch (RuntimeException e) {
+            claimedFrom.set(index);
+            plateIndex.cancel(plate);
+            throw e;
+        }
+    }
+    
+    private void occupy(int index, Vehicle vehicle, String plate) {
+        long entrySecond = JournalRecord.toEpochSecond(vehicle.getEntryTime());
+        // What getVehicle() will return from now on
+        Vehicle stored = plate.equals(vehicle.getVehicleNumber()) && vehicle.getEntryTime().getNano() == 0 ? vehicle : null;
+        occupy(index, plate, vehicle.getType(), entrySecond, stored);
+    }
+    
+    // stored may be null, in which case listeners, if there are any, get a vehicle built from the record
+    private void occupy(int index, String plate, VehicleType type, long entrySecond, Vehicle stored) {
+        // The record goes in last: an exit that sees it finds the plate and occupied bit to undo
+        plateIndex.assign(plate, index + 1);
+        occupiedSlots.set(index);
+        store.occupy(index, plate, type, entrySecond);
+        if (listeners.isEmpty()) {
+            return;
+        }
+        if (stored == null) {
+            stored = new Vehicle(plate, type, JournalRecord.fromEpochSecond(entrySecond));
+        }
+        for (ParkingListener listener : listeners) {
+            listener.vehicleParked(index + 1, stored);
+        }
+    }
+    
+    private int indexOf(int slotNumber) {
+        if (slotNumber < 1 || slotNumber > totalSlots) {
+            throw new IllegalArgumentException("No such slot: " + slotNumber);
+        }
+        return slotNumber - 1;
+    }
+}
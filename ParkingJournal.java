@@ -0,0 +1,535 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only write-ahead log of entries and exits, kept in a memory-mapped
+ * file next to a compacted snapshot of the lot.
+ *
+ * The journal is the engine's ChangeLog: a gate thread queues its record
+ * and waits until it is on disk before the engine makes the change, so no
+ * entry or exit is acknowledged, or even seen, before it would survive a
+ * crash, and no stay can leave before its park has a sequence number. The
+ * number is given as the record is queued, and the engine puts an exit's
+ * number in its ParkingSession for the receipt. A single writer thread
+ * drains whatever has queued up, appends the records to the mapped log in
+ * sequence and forces them to disk at once
+ * (group commit); the force completes the batch's Commit, which releases
+ * every gate thread with a record in it. A thread applying a batch of gate
+ * events through ParkingEngine.applyBatch waits once, at the end. Every
+ * SNAPSHOT_INTERVAL records, when the log fills up and on close, the writer
+ * saves its shadow LotState as a snapshot and starts the log over, so
+ * recovery reads one snapshot and replays only the tail written after it.
+ *
+ * Every exit is also appended to a session history beside the log, which is
+ * never compacted. SessionStore is loaded from it at start, so reports and
+ * settlements see every session, not only those since the process started.
+ * The history is forced before each snapshot, since until then the log
+ * holds the same exits, and on start a torn tail is cut off and exits only
+ * the log has are added again. Its header says from when it holds every
+ * exit: from the start for a new lot, or from when it was created for a lot
+ * journaled before there was a history.
+ *
+ * Replicas follow the journal from the writer thread: each gets the shadow
+ * state when it asks for it, then every batch once it is on disk, in
+ * sequence. That is how a standby lot is kept in step with this one.
+ */
+public class ParkingJournal implements ParkingEngine.ChangeLog, AutoCloseable {
+    
+    private static final String LOG_FILE = "journal.log";
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String HISTORY_FILE = "sessions.log";
+    private static final int HISTORY_MAGIC = 0x504B5348;
+    private static final int HISTORY_VERSION = 1;
+    private static final int HISTORY_HEADER_BYTES = 4 + 4 + 8;
+    private static final int HISTORY_BUFFER_BYTES = 1 << 20;
+    private static final int LOG_BYTES = 64 << 20;
+    private static final long SNAPSHOT_INTERVAL = 250_000;
+    
+    // Called on the writer thread, so it must not block for long: journaling waits for it
+    public interface Replica {
+        
+        // The whole lot as of its last sequence number; batches after it follow
+        void snapshot(LotState state);
+        
+        // Records that are on disk, in sequence
+        void written(List<JournalRecord> batch);
+    }
+    
+    // One group commit, completed once its batch is forced to disk or the journal fails
+    private static final class Commit {
+        
+        static final Commit NONE = new Commit();
+        
+        static {
+            NONE.complete(null);
+        }
+        
+        private boolean done;
+        private IOException failure;
+        
+        synchronized void complete(IOException failure) {
+            if (!done) {
+                this.failure = failure;
+                done = true;
+                notifyAll();
+            }
+        }
+        
+        // Not interruptible: a gate thread must not acknowledge a change it has not seen reach the disk
+        synchronized void await() throws IOException {
+            boolean interrupted = false;
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw new IOException("Journal could not write the change", failure);
+            }
+        }
+    }
+    
+    private final Path directory;
+    private final LotState state;
+    private final FileChannel logChannel;
+    private final MappedByteBuffer log;
+    private final FileChannel history;
+    // Exits waiting to be written to the history; used only on the writer thread once it runs
+    private final ByteBuffer historyBuffer = ByteBuffer.allocateDirect(HISTORY_BUFFER_BYTES);
+    private final long historyStartSecond;
+    // Exits replayed from the log that the history may not have yet
+    private List<JournalRecord> replayedExits = new ArrayList<>();
+    private boolean historyLoaded;
+    private final LinkedBlockingQueue<JournalRecord> pending = new LinkedBlockingQueue<>();
+    // Records join the open commit under this lock, and the writer swaps it for a new one under it
+    private final Object submitLock = new Object();
+    private final ThreadLocal<Commit> batchCommit = new ThreadLocal<>();
+    private final List<Replica> replicas = new CopyOnWriteArrayList<>();
+    private final Queue<Replica> snapshotRequests = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private Commit open = new Commit();
+    private Commit lastSubmitted = Commit.NONE;
+    private long nextSeq;
+    private boolean closed;
+    private volatile boolean running;
+    private volatile IOException failure;
+    private long recordsSinceSnapshot;
+    
+    private ParkingJournal(Path directory, LotState state, FileChannel logChannel, MappedByteBuffer log,
+                           FileChannel history, long historyStartSecond) {
+        this.directory = directory;
+        this.state = state;
+        this.nextSeq = state.getLastSeq() + 1;
+        this.logChannel = logChannel;
+        this.log = log;
+        this.history = history;
+        this.historyStartSecond = historyStartSecond;
+        this.writer = new Thread(this::writeLoop, "parking-journal");
+        this.writer.setDaemon(true);
+    }
+    
+    // Loads the last snapshot and replays the log after it
+    public static ParkingJournal open(Path directory, int totalSlots) throws IOException {
+        Files.createDirectories(directory);
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        LotState state;
+        if (Files.exists(snapshotFile)) {
+            try (InputStream in = Files.newInputStream(snapshotFile)) {
+                state = LotState.readSnapshot(in);
+            }
+            if (state.getTotalSlots() != totalSlots) {
+                throw new IOException("Snapshot is for " + state.getTotalSlots() + " slots, lot has " + totalSlots);
+            }
+        } else {
+            state = new LotState(totalSlots);
+        }
+        // A history started now holds every exit only if the log still has them all
+        boolean fromStart = state.getLastSeq() == 0;
+        
+        FileChannel channel = FileChannel.open(directory.resolve(LOG_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), LOG_BYTES));
+        
+        // Records up to the snapshot may still be in the log if we crashed before it was reset;
+        // after the first new record, anything out of sequence is left over from an older run
+        boolean replaying = false;
+        int end = 0;
+        List<JournalRecord> exits = new ArrayList<>();
+        JournalRecord record;
+        while ((record = JournalRecord.readFrom(log)) != null) {
+            if (record.getSeq() == state.getLastSeq() + 1) {
+                state.apply(record);
+                if (record.getKind() == JournalRecord.EXIT) {
+                    exits.add(record);
+                }
+                replaying = true;
+            } else if (replaying || record.getSeq() > state.getLastSeq()) {
+                break;
+            }
+            end = log.position();
+        }
+        log.position(end);
+        
+        try {
+            Path historyFile = directory.resolve(HISTORY_FILE);
+            long startSecond = Files.exists(historyFile) ? readHistoryStart(historyFile)
+                : createHistory(historyFile, fromStart ? Long.MIN_VALUE : JournalRecord.toEpochSecond(LocalDateTime.now()));
+            ParkingJournal journal = new ParkingJournal(directory, state, channel, log,
+                FileChannel.open(historyFile, StandardOpenOption.READ, StandardOpenOption.WRITE), startSecond);
+            journal.replayedExits = exits;
+            return journal;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    public LotState getRecoveredState() {
+        return state;
+    }
+    
+    // Starts a journal from state that came from elsewhere, such as a standby taking over:
+    // the state is saved as the snapshot, the log starts over and so does the history, from now
+    public static ParkingJournal startFrom(Path directory, LotState state) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel channel = FileChannel.open(directory.resolve(LOG_FILE),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer log = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), LOG_BYTES));
+            Path historyFile = directory.resolve(HISTORY_FILE);
+            long startSecond = createHistory(historyFile,
+                state.getLastSeq() == 0 ? Long.MIN_VALUE : JournalRecord.toEpochSecond(LocalDateTime.now()));
+            ParkingJournal journal = new ParkingJournal(directory, state, channel, log,
+                FileChannel.open(historyFile, StandardOpenOption.READ, StandardOpenOption.WRITE), startSecond);
+            journal.historyLoaded = true;
+            journal.history.position(HISTORY_HEADER_BYTES);
+            journal.writeSnapshot();
+            return journal;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    // Restores the recovered lot into a fresh engine and starts journaling its changes
+    public void attach(ParkingEngine engine) throws IOException {
+        state.restoreInto(engine);
+        attachRestored(engine);
+    }
+    
+    // Starts journaling an engine that already holds the recovered state
+    public void attachRestored(ParkingEngine engine) throws IOException {
+        if (!historyLoaded) {
+            loadHistory(null);
+        }
+        engine.setChangeLog(this);
+        running = true;
+        writer.start();
+    }
+    
+    // Loads every session in the history into the store, before the journal is attached
+    public void restoreSessions(SessionStore sessions) throws IOException {
+        if (historyLoaded) {
+            throw new IllegalStateException("Sessions are restored before the journal is attached");
+        }
+        loadHistory(sessions);
+    }
+    
+    // Exits before this time may be missing from the history, and so from a restored SessionStore
+    public LocalDateTime getHistoryStart() {
+        return historyStartSecond == Long.MIN_VALUE ? LocalDateTime.MIN : JournalRecord.fromEpochSecond(historyStartSecond);
+    }
+    
+    public void addReplica(Replica replica) {
+        replicas.add(replica);
+    }
+    
+    public void removeReplica(Replica replica) {
+        replicas.remove(replica);
+    }
+    
+    // Has the writer hand the replica the state between two batches, within a few milliseconds
+    public void requestSnapshot(Replica replica) {
+        snapshotRequests.add(replica);
+    }
+    
+    @Override
+    public void batchStarted() {
+        batchCommit.set(Commit.NONE);
+    }
+    
+    // Commits complete in order, so the last one this thread joined covers the whole batch
+    @Override
+    public void batchEnded() {
+        Commit last = batchCommit.get();
+        if (last != null) {
+            batchCommit.remove();
+            await(last);
+        }
+    }
+    
+    // The gate thread returns once the record is on disk, and throws UncheckedIOException if it cannot be written
+    @Override
+    public long append(JournalRecord record) {
+        Commit commit;
+        long seq;
+        synchronized (submitLock) {
+            if (closed) {
+                throw new UncheckedIOException(new IOException("Journal is closed", failure));
+            }
+            // The writer drains in queue order, so numbering here numbers the log
+            seq = nextSeq++;
+            pending.add(record.withSeq(seq));
+            lastSubmitted = open;
+            commit = open;
+        }
+        if (batchCommit.get() != null) {
+            batchCommit.set(commit);
+        } else {
+            await(commit);
+        }
+        return seq;
+    }
+    
+    private static void await(Commit commit) {
+        try {
+            commit.await();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    // Blocks until everything submitted so far is on disk
+    public void flush() throws IOException {
+        Commit last;
+        synchronized (submitLock) {
+            last = lastSubmitted;
+        }
+        last.await();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (failure == null) {
+                writeSnapshot();
+            }
+        } finally {
+            logChannel.close();
+            history.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+    
+    private void writeLoop() {
+        List<JournalRecord> batch = new ArrayList<>();
+        Commit commit = null;
+        try {
+            while (running || !pending.isEmpty()) {
+                for (Replica replica; (replica = snapshotRequests.poll()) != null; ) {
+                    replica.snapshot(state);
+                }
+                JournalRecord first = pending.poll(10, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                // Everything that joined the open commit is queued by now; later records join the next one.
+                // Gates wait on their records, so a batch is no bigger than the gates waiting
+                synchronized (submitLock) {
+                    batch.add(first);
+                    pending.drainTo(batch);
+                    commit = open;
+                    open = new Commit();
+                }
+                
+                for (int i = 0; i < batch.size(); i++) {
+                    if (log.remaining() < JournalRecord.MAX_BYTES) {
+                        writeSnapshot();
+                    }
+                    JournalRecord record = batch.get(i);
+                    record.writeTo(log);
+                    state.apply(record);
+                    if (record.getKind() == JournalRecord.EXIT) {
+                        if (historyBuffer.remaining() < JournalRecord.MAX_BYTES) {
+                            writeHistory();
+                        }
+                        record.writeTo(historyBuffer);
+                    }
+                }
+                log.force();
+                writeHistory();
+                commit.complete(null);
+                recordsSinceSnapshot += batch.size();
+                for (Replica replica : replicas) {
+                    replica.written(batch);
+                }
+                batch.clear();
+                
+                if (recordsSinceSnapshot >= SNAPSHOT_INTERVAL) {
+                    writeSnapshot();
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Nobody may wait for a writer that is gone
+            IOException stopped = failure != null ? failure : new IOException("Journal is closed");
+            synchronized (submitLock) {
+                closed = true;
+                if (commit != null) {
+                    commit.complete(stopped);
+                }
+                open.complete(stopped);
+            }
+        }
+    }
+    
+    // Persists the shadow state atomically, then starts the log over; the history must keep the log's exits first
+    private void writeSnapshot() throws IOException {
+        log.force();
+        writeHistory();
+        history.force(false);
+        Path snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream out = Channels.newOutputStream(channel)) {
+            state.writeSnapshot(out);
+            channel.force(true);
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        
+        log.putInt(0, 0);
+        log.force();
+        log.position(0);
+        recordsSinceSnapshot = 0;
+    }
+    
+    // Hands buffered exits to the file; forcing them waits for the next snapshot
+    private void writeHistory() throws IOException {
+        historyBuffer.flip();
+        while (historyBuffer.hasRemaining()) {
+            history.write(historyBuffer);
+        }
+        historyBuffer.clear();
+    }
+    
+    private static long createHistory(Path file, long startSecond) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel))) {
+            out.writeInt(HISTORY_MAGIC);
+            out.writeInt(HISTORY_VERSION);
+            out.writeLong(startSecond);
+            out.flush();
+            channel.force(true);
+        }
+        return startSecond;
+    }
+    
+    private static long readHistoryStart(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != HISTORY_MAGIC || in.readInt() != HISTORY_VERSION) {
+                throw new IOException(file + " is not a session history");
+            }
+            return in.readLong();
+        }
+    }
+    
+    // Reads the history, into the store if there is one, cuts off a torn tail and appends the exits only the log has
+    private void loadHistory(SessionStore sessions) throws IOException {
+        ByteBuffer in = ByteBuffer.allocateDirect(HISTORY_BUFFER_BYTES);
+        long bufferStart = HISTORY_HEADER_BYTES;
+        long lastSeq = 0;
+        boolean endOfFile = false;
+        history.position(bufferStart);
+        while (true) {
+            while (!endOfFile && in.hasRemaining()) {
+                endOfFile = history.read(in) < 0;
+            }
+            in.flip();
+            boolean torn = false;
+            while (true) {
+                int start = in.position();
+                JournalRecord record = JournalRecord.readFrom(in);
+                if (record == null) {
+                    break;
+                }
+                // An exit the log lost in a crash may have reached the history; its number will be used again
+                if (record.getKind() != JournalRecord.EXIT || record.getSeq() <= lastSeq
+                    || record.getSeq() > state.getLastSeq()) {
+                    in.position(start);
+                    torn = true;
+                    break;
+                }
+                restoreSession(sessions, record);
+                lastSeq = record.getSeq();
+            }
+            if (torn || endOfFile || in.remaining() >= JournalRecord.MAX_BYTES) {
+                long end = bufferStart + in.position();
+                history.truncate(end);
+                history.position(end);
+                break;
+            }
+            // The rest of a record that did not fit
+            bufferStart += in.position();
+            in.compact();
+        }
+        
+        for (JournalRecord exit : replayedExits) {
+            if (exit.getSeq() > lastSeq) {
+                if (historyBuffer.remaining() < JournalRecord.MAX_BYTES) {
+                    writeHistory();
+                }
+                exit.writeTo(historyBuffer);
+                restoreSession(sessions, exit);
+            }
+        }
+        writeHistory();
+        history.force(false);
+        replayedExits = null;
+        historyLoaded = true;
+    }
+    
+    private static void restoreSession(SessionStore sessions, JournalRecord exit) {
+        if (sessions != null) {
+            sessions.add(exit.getPlate(), exit.getType(), exit.getSlotNumber(), exit.getEntryEpochSecond(),
+                exit.getExitEpochSecond(), exit.getChargePaise(), exit.getSeq());
+        }
+    }
+}
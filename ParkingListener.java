@@ -0,0 +1,21 @@
+/**
+ * Callback for slot changes made through a ParkingEngine. Listeners are
+ * invoked on the thread that made the change, which may be any gate thread,
+ * once the change is made and, if the engine has a change log, logged.
+ * A held slot that its vehicle then parks in reports holdReleased followed
+ * by vehicleParked.
+ */
+public interface ParkingListener {
+    
+    default void vehicleParked(int slotNumber, Vehicle vehicle) {
+    }
+    
+    default void vehicleExited(ParkingSession session) {
+    }
+    
+    default void slotHeld(int slotNumber) {
+    }
+    
+    default void holdReleased(int slotNumber) {
+    }
+}
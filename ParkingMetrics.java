@@ -0,0 +1,336 @@
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Occupancy, traffic and revenue counters kept up to date from engine events.
+ * Every update is a few atomic increments on the gate thread that made the
+ * change, with no locks and no allocation; readers (JMX, the /metrics
+ * endpoint) add the counters up when they are asked.
+ *
+ * A slot held for a reservation is neither occupied nor free: the free
+ * counts by zone and by slot size leave held slots out, as the lot-wide
+ * free count does.
+ *
+ * Entries and exits per minute are counted in two buckets that pack the
+ * minute and its count into one long, so rolling over to a new minute and
+ * counting in it are a single CAS.
+ */
+public class ParkingMetrics implements ParkingListener, ParkingMetricsMXBean {
+    
+    public static final String OBJECT_NAME = "parking:type=Metrics";
+    
+    // Upper bounds of the dwell buckets in minutes; the last bucket is open-ended
+    private static final long[] DWELL_BOUNDS_MINUTES = {15, 30, 60, 120, 240, 480, 720, 1440};
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    
+    private final LotLayout layout;
+    private final LotPlan plan;
+    private final ParkingEngine engine;
+    private final LongAdder[] occupiedByType = new LongAdder[VehicleType.values().length];
+    private final AtomicIntegerArray occupiedByZone;
+    private final AtomicIntegerArray heldByZone;
+    private final int[] slotsBySize = new int[SlotSize.values().length];
+    private final AtomicIntegerArray occupiedBySize = new AtomicIntegerArray(SlotSize.values().length);
+    private final AtomicIntegerArray heldBySize = new AtomicIntegerArray(SlotSize.values().length);
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder exits = new LongAdder();
+    private final AtomicLongArray entryMinutes = new AtomicLongArray(2);
+    private final AtomicLongArray exitMinutes = new AtomicLongArray(2);
+    private final AtomicLongArray dwellCounts = new AtomicLongArray(DWELL_BOUNDS_MINUTES.length + 1);
+    private final LongAdder dwellSeconds = new LongAdder();
+    private final LatencyHistogram assignmentLatency = new LatencyHistogram();
+    
+    public ParkingMetrics(LotPlan plan, ParkingEngine engine) {
+        this.layout = plan.getLayout();
+        this.plan = plan;
+        this.engine = engine;
+        for (int i = 0; i < occupiedByType.length; i++) {
+            occupiedByType[i] = new LongAdder();
+        }
+        occupiedByZone = new AtomicIntegerArray(layout.getLevels() * layout.getZonesPerLevel());
+        heldByZone = new AtomicIntegerArray(layout.getLevels() * layout.getZonesPerLevel());
+        for (SlotSize size : SlotSize.values()) {
+            slotsBySize[size.ordinal()] = plan.countOf(size);
+        }
+    }
+    
+    // Counts what is already parked, then follows the engine; call before gates start sending traffic
+    public void attach() {
+        SlotStore.Cursor cursor = engine.getSlotStore().cursor();
+        for (int slot = engine.nextOccupiedSlot(1); slot > 0; slot = engine.nextOccupiedSlot(slot + 1)) {
+            if (cursor.read(slot)) {
+                occupiedByType[cursor.getType().ordinal()].increment();
+                occupiedByZone.incrementAndGet(zoneIndex(slot));
+                occupiedBySize.incrementAndGet(plan.sizeOf(slot).ordinal());
+            }
+        }
+        for (int slot = engine.nextHeldSlot(1); slot > 0; slot = engine.nextHeldSlot(slot + 1)) {
+            slotHeld(slot);
+        }
+        engine.addListener(this);
+    }
+    
+    public void detach() {
+        engine.removeListener(this);
+    }
+    
+    public void registerMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+    
+    public void unregisterMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+    }
+    
+    @Override
+    public void vehicleParked(int slotNumber, Vehicle vehicle) {
+        occupiedByType[vehicle.getType().ordinal()].increment();
+        occupiedByZone.incrementAndGet(zoneIndex(slotNumber));
+        occupiedBySize.incrementAndGet(plan.sizeOf(slotNumber).ordinal());
+        entries.increment();
+        countInMinute(entryMinutes, currentMinute());
+    }
+    
+    @Override
+    public void vehicleExited(ParkingSession session) {
+        Vehicle vehicle = session.getVehicle();
+        occupiedByType[vehicle.getType().ordinal()].decrement();
+        occupiedByZone.decrementAndGet(zoneIndex(session.getSlotNumber()));
+        occupiedBySize.decrementAndGet(plan.sizeOf(session.getSlotNumber()).ordinal());
+        exits.increment();
+        countInMinute(exitMinutes, currentMinute());
+        
+        long seconds = Math.max(0, JournalRecord.toEpochSecond(session.getExitTime())
+            - JournalRecord.toEpochSecond(vehicle.getEntryTime()));
+        dwellSeconds.add(seconds);
+        dwellCounts.incrementAndGet(dwellBucket(seconds / 60));
+    }
+    
+    @Override
+    public void slotHeld(int slotNumber) {
+        heldByZone.incrementAndGet(zoneIndex(slotNumber));
+        heldBySize.incrementAndGet(plan.sizeOf(slotNumber).ordinal());
+    }
+    
+    @Override
+    public void holdReleased(int slotNumber) {
+        heldByZone.decrementAndGet(zoneIndex(slotNumber));
+        heldBySize.decrementAndGet(plan.sizeOf(slotNumber).ordinal());
+    }
+    
+    // Time from a gate asking for a slot to the slot being assigned
+    public void recordAssignment(long nanos) {
+        assignmentLatency.record(nanos);
+    }
+    
+    public LatencyHistogram getAssignmentLatency() {
+        return assignmentLatency;
+    }
+    
+    public LotLayout getLayout() {
+        return layout;
+    }
+    
+    public static long[] getDwellBoundsMinutes() {
+        return DWELL_BOUNDS_MINUTES.clone();
+    }
+    
+    public long getDwellCount(int bucket) {
+        return dwellCounts.get(bucket);
+    }
+    
+    public long getDwellSecondsTotal() {
+        return dwellSeconds.sum();
+    }
+    
+    public long getOccupied(VehicleType type) {
+        return occupiedByType[type.ordinal()].sum();
+    }
+    
+    public int getOccupiedInZone(int level, int zone) {
+        return occupiedByZone.get((level - 1) * layout.getZonesPerLevel() + zone);
+    }
+    
+    public int getZoneSize(int level, int zone) {
+        return layout.lastSlotOfZone(level, zone) - layout.firstSlotOfZone(level, zone) + 1;
+    }
+    
+    public int getFreeInZone(int level, int zone) {
+        int index = (level - 1) * layout.getZonesPerLevel() + zone;
+        return getZoneSize(level, zone) - occupiedByZone.get(index) - heldByZone.get(index);
+    }
+    
+    public int getFree(SlotSize size) {
+        int i = size.ordinal();
+        return slotsBySize[i] - occupiedBySize.get(i) - heldBySize.get(i);
+    }
+    
+    @Override
+    public int getTotalSlots() {
+        return engine.getTotalSlots();
+    }
+    
+    @Override
+    public int getOccupiedSlots() {
+        return engine.getOccupiedCount();
+    }
+    
+    @Override
+    public int getFreeSlots() {
+        return engine.getAvailableCount();
+    }
+    
+    @Override
+    public long getRevenuePaise() {
+        return engine.getTotalRevenuePaise();
+    }
+    
+    @Override
+    public long getEntriesTotal() {
+        return entries.sum();
+    }
+    
+    @Override
+    public long getExitsTotal() {
+        return exits.sum();
+    }
+    
+    @Override
+    public long getEntriesLastMinute() {
+        return countForMinute(entryMinutes, currentMinute() - 1);
+    }
+    
+    @Override
+    public long getExitsLastMinute() {
+        return countForMinute(exitMinutes, currentMinute() - 1);
+    }
+    
+    @Override
+    public Map<String, Long> getOccupiedByType() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (VehicleType type : VehicleType.values()) {
+            result.put(type.getCode(), getOccupied(type));
+        }
+        return result;
+    }
+    
+    @Override
+    public Map<String, Integer> getOccupiedByZone() {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int level = 1; level <= layout.getLevels(); level++) {
+            for (int zone = 0; zone < layout.getZonesPerLevel(); zone++) {
+                result.put(zoneKey(level, zone), getOccupiedInZone(level, zone));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public Map<String, Integer> getFreeByZone() {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int level = 1; level <= layout.getLevels(); level++) {
+            for (int zone = 0; zone < layout.getZonesPerLevel(); zone++) {
+                result.put(zoneKey(level, zone), getFreeInZone(level, zone));
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public Map<String, Integer> getFreeBySize() {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (SlotSize size : SlotSize.values()) {
+            result.put(size.name(), getFree(size));
+        }
+        return result;
+    }
+    
+    @Override
+    public Map<String, Long> getDwellMinutesHistogram() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < DWELL_BOUNDS_MINUTES.length; i++) {
+            result.put(String.valueOf(DWELL_BOUNDS_MINUTES[i]), dwellCounts.get(i));
+        }
+        result.put("+Inf", dwellCounts.get(DWELL_BOUNDS_MINUTES.length));
+        return result;
+    }
+    
+    @Override
+    public long getAssignmentCount() {
+        return assignmentLatency.getCount();
+    }
+    
+    @Override
+    public long getAssignmentLatencyP50Micros() {
+        return assignmentLatency.percentile(50) / 1000;
+    }
+    
+    @Override
+    public long getAssignmentLatencyP99Micros() {
+        return assignmentLatency.percentile(99) / 1000;
+    }
+    
+    @Override
+    public long getAssignmentLatencyMaxMicros() {
+        return assignmentLatency.getMaxNanos() / 1000;
+    }
+    
+    public static String zoneKey(int level, int zone) {
+        return "L" + level + "-" + LotLayout.zoneName(zone);
+    }
+    
+    private int zoneIndex(int slotNumber) {
+        return (layout.levelOf(slotNumber) - 1) * layout.getZonesPerLevel() + layout.zoneOf(slotNumber);
+    }
+    
+    private static int dwellBucket(long minutes) {
+        int bucket = 0;
+        while (bucket < DWELL_BOUNDS_MINUTES.length && minutes > DWELL_BOUNDS_MINUTES[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+    
+    private static long currentMinute() {
+        return System.currentTimeMillis() / 60_000;
+    }
+    
+    // Adds one to the bucket for this minute, taking the bucket over if it still holds an older minute
+    private static void countInMinute(AtomicLongArray buckets, long minute) {
+        int i = (int) (minute & 1);
+        while (true) {
+            long packed = buckets.get(i);
+            long bucketMinute = packed >>> COUNT_BITS;
+            // A newer minute already owns the bucket, or the count is saturated
+            if (bucketMinute > minute || (bucketMinute == minute && (packed & COUNT_MASK) == COUNT_MASK)) {
+                return;
+            }
+            long next = bucketMinute == minute ? packed + 1 : (minute << COUNT_BITS) | 1;
+            if (buckets.compareAndSet(i, packed, next)) {
+                return;
+            }
+        }
+    }
+    
+    private static long countForMinute(AtomicLongArray buckets, long minute) {
+        long packed = buckets.get((int) (minute & 1));
+        return (packed >>> COUNT_BITS) == minute ? packed & COUNT_MASK : 0;
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.Map;
+
+/**
+ * Read-only view of ParkingMetrics published over JMX as parking:type=Metrics.
+ * Money is in paise, dwell buckets are keyed by their upper bound in minutes.
+ */
+public interface ParkingMetricsMXBean {
+    
+    int getTotalSlots();
+    
+    int getOccupiedSlots();
+    
+    int getFreeSlots();
+    
+    long getRevenuePaise();
+    
+    long getEntriesTotal();
+    
+    long getExitsTotal();
+    
+    long getEntriesLastMinute();
+    
+    long getExitsLastMinute();
+    
+    Map<String, Long> getOccupiedByType();
+    
+    Map<String, Integer> getOccupiedByZone();
+    
+    Map<String, Integer> getFreeByZone();
+    
+    Map<String, Integer> getFreeBySize();
+    
+    Map<String, Long> getDwellMinutesHistogram();
+    
+    long getAssignmentCount();
+    
+    long getAssignmentLatencyP50Micros();
+    
+    long getAssignmentLatencyP99Micros();
+    
+    long getAssignmentLatencyMaxMicros();
+}
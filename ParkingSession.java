@@ -0,0 +1,46 @@
+import java.time.LocalDateTime;
+
+/**
+ * A completed stay: the vehicle, the slot it used, when it left and what it paid.
+ */
+public class ParkingSession {
+    
+    private final int slotNumber;
+    private final Vehicle vehicle;
+    private final LocalDateTime exitTime;
+    private final long chargePaise;
+    // Journal sequence number of the exit, or the engine's own count of exits when it runs without a journal
+    private final long seq;
+    
+    public ParkingSession(int slotNumber, Vehicle vehicle, LocalDateTime exitTime, long chargePaise) {
+        this(slotNumber, vehicle, exitTime, chargePaise, 0);
+    }
+    
+    public ParkingSession(int slotNumber, Vehicle vehicle, LocalDateTime exitTime, long chargePaise, long seq) {
+        this.slotNumber = slotNumber;
+        this.vehicle = vehicle;
+        this.exitTime = exitTime;
+        this.chargePaise = chargePaise;
+        this.seq = seq;
+    }
+    
+    public int getSlotNumber() {
+        return slotNumber;
+    }
+    
+    public Vehicle getVehicle() {
+        return vehicle;
+    }
+    
+    public LocalDateTime getExitTime() {
+        return exitTime;
+    }
+    
+    public long getChargePaise() {
+        return chargePaise;
+    }
+    
+    public long getSeq() {
+        return seq;
+    }
+}
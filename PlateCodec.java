@@ -0,0 +1,88 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Packs a normalized plate into a long: up to twelve characters of 0-9 and
+ * A-Z as base-37 digits, first character most significant and unused
+ * places zero. Codes sort the way the plates do, and 0 is never a code, so
+ * it can stand for "no code". Plates that do not fit, longer ones or ones
+ * with other letters, get 0 and have to be kept as strings.
+ */
+public final class PlateCodec {
+    
+    public static final int MAX_LENGTH = 12;
+    public static final long NONE = 0;
+    
+    private static final int BASE = 37;
+    private static final long[] PLACE = new long[MAX_LENGTH];
+    
+    static {
+        long place = 1;
+        for (int i = MAX_LENGTH - 1; i >= 0; i--) {
+            PLACE[i] = place;
+            place *= BASE;
+        }
+    }
+    
+    private PlateCodec() {
+    }
+    
+    // Code of a normalized plate, or NONE if it does not fit
+    public static long encode(String plate) {
+        if (plate.isEmpty() || plate.length() > MAX_LENGTH) {
+            return NONE;
+        }
+        long code = 0;
+        for (int i = 0; i < plate.length(); i++) {
+            int digit = digitOf(plate.charAt(i));
+            if (digit == 0) {
+                return NONE;
+            }
+            code += digit * PLACE[i];
+        }
+        return code;
+    }
+    
+    public static String decode(long code) {
+        if (code <= NONE) {
+            throw new IllegalArgumentException("Not a plate code: " + code);
+        }
+        char[] plate = new char[MAX_LENGTH];
+        int length = 0;
+        for (int i = 0; i < MAX_LENGTH; i++) {
+            int digit = (int) (code / PLACE[i] % BASE);
+            if (digit == 0) {
+                break;
+            }
+            plate[length++] = charOf(digit);
+        }
+        return new String(plate, 0, length);
+    }
+    
+    // Puts the plate as ASCII bytes, for exports that should not build a String for every row
+    public static void putAscii(long code, ByteBuffer out) {
+        if (code <= NONE) {
+            throw new IllegalArgumentException("Not a plate code: " + code);
+        }
+        for (int i = 0; i < MAX_LENGTH; i++) {
+            int digit = (int) (code / PLACE[i] % BASE);
+            if (digit == 0) {
+                break;
+            }
+            out.put((byte) charOf(digit));
+        }
+    }
+    
+    private static char charOf(int digit) {
+        return digit <= 10 ? (char) ('0' + digit - 1) : (char) ('A' + digit - 11);
+    }
+    
+    private static int digitOf(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0' + 1;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A' + 11;
+        }
+        return 0;
+    }
+}
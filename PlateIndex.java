@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Maps normalized plate numbers to the slot holding the vehicle. A plate is
+ * reserved before a slot is claimed, so the same vehicle can never be parked
+ * in two slots even when two gates read it at the same moment.
+ */
+public class PlateIndex {
+    
+    // Marks a plate whose entry is in progress but has no slot yet
+    private static final int PENDING = 0;
+    
+    private final ConcurrentHashMap<String, Integer> slotsByPlate = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Integer> sortedPlates = new ConcurrentSkipListMap<>();
+    
+    // Upper case with spaces, dashes and dots removed, so "mh 12-ab 1234" matches "MH12AB1234"
+    public static String normalize(String plate) {
+        StringBuilder normalized = new StringBuilder(plate.length());
+        for (int i = 0; i < plate.length(); i++) {
+            char c = plate.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(Character.toUpperCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+    
+    public int size() {
+        return sortedPlates.size();
+    }
+    
+    // Returns false if the plate is already parked or being parked
+    public boolean reserve(String plate) {
+        return slotsByPlate.putIfAbsent(plate, PENDING) == null;
+    }
+    
+    public void cancel(String plate) {
+        slotsByPlate.remove(plate, PENDING);
+    }
+    
+    public void assign(String plate, int slotNumber) {
+        slotsByPlate.put(plate, slotNumber);
+        sortedPlates.put(plate, slotNumber);
+    }
+    
+    public void release(String plate, int slotNumber) {
+        // Drop from the sorted view first: the plate cannot be re-reserved until the hash entry goes
+        sortedPlates.remove(plate, slotNumber);
+        slotsByPlate.remove(plate, slotNumber);
+    }
+    
+    public int slotOf(String plate) {
+        Integer slotNumber = slotsByPlate.get(plate);
+        return slotNumber == null || slotNumber == PENDING ? -1 : slotNumber;
+    }
+    
+    // Slots of parked plates starting with prefix, in plate order
+    public List<Integer> slotsWithPrefix(String prefix, int limit) {
+        List<Integer> slots = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : sortedPlates.tailMap(prefix).entrySet()) {
+            if (slots.size() >= limit || !entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            slots.add(entry.getValue());
+        }
+        return slots;
+    }
+}
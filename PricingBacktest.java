@@ -0,0 +1,198 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Offline check of the occupancy forecaster and dynamic pricing against a
+ * recorded gate event file. The events are applied in order to two lots of
+ * the same size, one charging the plain tariff and one with dynamic pricing
+ * fed by a forecaster that learns as the replay goes. Before the first
+ * event of each hour the forecast for that hour is noted; at the end each
+ * forecast is compared with the hour's actual average occupancy, next to
+ * a seasonal-naive forecast (the same hour a week earlier) as a baseline.
+ * Demand does not react to price in the replay, so the revenue figures show
+ * what the multipliers would have charged for the recorded traffic.
+ *
+ * It can also write a synthetic file covering several weeks, with weekday
+ * morning and evening peaks and quieter weekends.
+ *
+ *   java PricingBacktest generate weeks.csv [days] [slots]
+ *   java PricingBacktest run weeks.csv [--slots 500] [--alpha 0.3] [--warmup-days 7]
+ */
+public class PricingBacktest {
+    
+    private static final int HOUR = 3600;
+    private static final int WEEK_HOURS = 7 * 24;
+    // Share of a weekday's peak arrival rate in each hour of the day
+    private static final double[] ARRIVAL_PROFILE = {
+        0.02, 0.01, 0.01, 0.01, 0.02, 0.05, 0.15, 0.45, 0.85, 1.00, 0.70, 0.45,
+        0.40, 0.45, 0.40, 0.35, 0.45, 0.65, 0.70, 0.50, 0.30, 0.15, 0.08, 0.04
+    };
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: PricingBacktest generate <file> [days] [slots] | run <file> [options]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[1]);
+        if (args[0].equals("generate")) {
+            int days = args.length > 2 ? Integer.parseInt(args[2]) : 56;
+            int slots = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+            int events = generate(file, days, slots);
+            System.out.println("Wrote " + events + " events over " + days + " days to " + file);
+        } else {
+            int slots = 500;
+            double alpha = OccupancyForecaster.DEFAULT_ALPHA;
+            int warmupDays = 7;
+            for (int i = 2; i + 1 < args.length; i += 2) {
+                switch (args[i]) {
+                    case "--slots" -> slots = Integer.parseInt(args[i + 1]);
+                    case "--alpha" -> alpha = Double.parseDouble(args[i + 1]);
+                    case "--warmup-days" -> warmupDays = Integer.parseInt(args[i + 1]);
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            run(file, slots, alpha, warmupDays);
+        }
+    }
+    
+    private static int generate(Path file, int days, int slots) throws IOException {
+        Random random = new Random(16);
+        LocalDateTime start = LocalDateTime.of(2025, 1, 6, 0, 0);
+        LocalDateTime end = start.plusDays(days);
+        VehicleType[] types = VehicleType.values();
+        double peakPerHour = slots * 0.45;
+        List<GateEvent> all = new ArrayList<>();
+        int vehicle = 0;
+        for (int day = 0; day < days; day++) {
+            DayOfWeek weekday = start.plusDays(day).getDayOfWeek();
+            double dayFactor = weekday == DayOfWeek.SATURDAY || weekday == DayOfWeek.SUNDAY ? 0.55 : 1.0;
+            for (int hour = 0; hour < 24; hour++) {
+                double expected = peakPerHour * dayFactor * ARRIVAL_PROFILE[hour];
+                int arrivals = (int) Math.round(expected * (0.85 + 0.3 * random.nextDouble()));
+                LocalDateTime hourStart = start.plusDays(day).plusHours(hour);
+                for (int i = 0; i < arrivals; i++, vehicle++) {
+                    LocalDateTime arrival = hourStart.plusSeconds(random.nextInt(HOUR));
+                    String plate = String.format("BT%07d", vehicle);
+                    all.add(new GateEvent(GateEvent.Kind.ENTRY, plate, types[random.nextInt(types.length)], "main", arrival));
+                    long stay = 1800 + (long) Math.min(12 * HOUR, -Math.log(1 - random.nextDouble()) * 2.5 * HOUR);
+                    LocalDateTime departure = arrival.plusSeconds(stay);
+                    if (departure.isBefore(end)) {
+                        all.add(new GateEvent(GateEvent.Kind.EXIT, plate, null, "main", departure));
+                    }
+                }
+            }
+        }
+        all.sort(Comparator.comparing(GateEvent::getTimestamp));
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            for (GateEvent event : all) {
+                out.write(event.toLine());
+                out.newLine();
+            }
+        }
+        return all.size();
+    }
+    
+    private static void run(Path file, int slots, double alpha, int warmupDays) throws IOException {
+        List<GateEvent> events = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            if (!line.isBlank()) {
+                events.add(GateEvent.parse(line));
+            }
+        }
+        if (events.isEmpty()) {
+            System.out.println("No events in " + file);
+            return;
+        }
+        
+        TariffEngine tariff = TariffEngine.standard();
+        ParkingEngine plain = new ParkingEngine(slots, tariff);
+        SessionStore sessions = new SessionStore();
+        plain.addListener(sessions);
+        OccupancyForecaster forecaster = new OccupancyForecaster(slots, alpha);
+        DynamicPricing pricing = new DynamicPricing(tariff, forecaster);
+        ParkingEngine dynamic = new ParkingEngine(slots, pricing);
+        dynamic.addListener(pricing);
+        forecaster.attach(dynamic, events.get(0).getTimestamp());
+        
+        long firstHour = Math.floorDiv(JournalRecord.toEpochSecond(events.get(0).getTimestamp()), HOUR);
+        long lastHour = Math.floorDiv(JournalRecord.toEpochSecond(events.get(events.size() - 1).getTimestamp()), HOUR);
+        int hours = (int) (lastHour - firstHour + 1);
+        double[] predicted = new double[hours];
+        int nextHour = 0;
+        long lotFull = 0;
+        long discounted = 0;
+        long surged = 0;
+        
+        long started = System.nanoTime();
+        for (GateEvent event : events) {
+            int hour = (int) (Math.floorDiv(JournalRecord.toEpochSecond(event.getTimestamp()), HOUR) - firstHour);
+            for (; nextHour <= hour; nextHour++) {
+                predicted[nextHour] = forecaster.forecast(JournalRecord.fromEpochSecond((firstHour + nextHour) * HOUR));
+            }
+            if (event.getKind() == GateEvent.Kind.ENTRY) {
+                Vehicle vehicle = new Vehicle(event.getPlate(), event.getType(), event.getTimestamp());
+                if (plain.parkVehicle(vehicle) < 0) {
+                    lotFull++;
+                    continue;
+                }
+                int multiplier = pricing.multiplierPermille(event.getTimestamp());
+                discounted += multiplier < DynamicPricing.BASE_PERMILLE ? 1 : 0;
+                surged += multiplier > DynamicPricing.BASE_PERMILLE ? 1 : 0;
+                dynamic.parkVehicle(new Vehicle(event.getPlate(), event.getType(), event.getTimestamp()));
+            } else {
+                plain.removeVehicleByPlate(event.getPlate(), event.getTimestamp());
+                dynamic.removeVehicleByPlate(event.getPlate(), event.getTimestamp());
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        
+        // Whoever is still parked leaves at the end of the last hour, so every hour has its actual occupancy
+        LocalDateTime end = JournalRecord.fromEpochSecond((lastHour + 1) * HOUR);
+        for (int slot = plain.nextOccupiedSlot(1); slot > 0; slot = plain.nextOccupiedSlot(slot + 1)) {
+            plain.removeVehicle(slot, end);
+        }
+        double[] actual = new SessionAnalytics(sessions).hourlyOccupancy(
+            JournalRecord.fromEpochSecond(firstHour * HOUR), end);
+        
+        int from = Math.min(hours, Math.max(warmupDays * 24, WEEK_HOURS));
+        int evaluated = 0;
+        double modelError = 0;
+        double naiveError = 0;
+        double modelSquared = 0;
+        for (int h = from; h < hours; h++) {
+            double error = predicted[h] - actual[h];
+            modelError += Math.abs(error);
+            modelSquared += error * error;
+            naiveError += Math.abs(actual[h - WEEK_HOURS] - actual[h]);
+            evaluated++;
+        }
+        
+        System.out.printf("Events        %d over %d hours, replayed in %.2f s (%.0f ns/event for both lots)%n",
+            events.size(), hours, seconds, seconds * 1e9 / events.size());
+        System.out.printf("Lot full      %d entries turned away%n", lotFull);
+        if (evaluated > 0) {
+            System.out.printf("Forecast      %d hours after warm-up: MAE %.1f vehicles (%.1f%% of the lot), RMSE %.1f%n",
+                evaluated, modelError / evaluated, 100 * modelError / evaluated / slots, Math.sqrt(modelSquared / evaluated));
+            System.out.printf("Baseline      same hour last week: MAE %.1f vehicles (%.1f%% of the lot)%n",
+                naiveError / evaluated, 100 * naiveError / evaluated / slots);
+        } else {
+            System.out.println("Forecast      not enough hours after warm-up to evaluate");
+        }
+        System.out.printf("Pricing       %d stays discounted, %d surged, of %d%n", discounted, surged, sessions.size());
+        for (int slot = dynamic.nextOccupiedSlot(1); slot > 0; slot = dynamic.nextOccupiedSlot(slot + 1)) {
+            dynamic.removeVehicle(slot, end);
+        }
+        System.out.printf("Revenue       plain %d paise, dynamic %d paise (%+.1f%%)%n", plain.getTotalRevenuePaise(),
+            dynamic.getTotalRevenuePaise(),
+            100.0 * (dynamic.getTotalRevenuePaise() - plain.getTotalRevenuePaise()) / Math.max(1, plain.getTotalRevenuePaise()));
+    }
+}
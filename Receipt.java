@@ -0,0 +1,96 @@
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+/**
+ * What a driver is handed at the exit. A receipt is numbered by its exit
+ * second, its slot and the exit's sequence number in the journal, as in
+ * 20261017-081502-42-1837. The time and slot alone repeat when a slot is
+ * emptied twice in one second or a gate reports an exit time again; the
+ * sequence number does not, and it is the same on a standby that took
+ * over, so settlement exports print the numbers drivers were given. A lot
+ * running without a journal ends them with the engine's count of exits
+ * instead, which starts again from 1 with the process.
+ */
+public class Receipt {
+    
+    private final String plate;
+    private final VehicleType type;
+    private final int slotNumber;
+    private final long entrySecond;
+    private final long exitSecond;
+    private final long chargePaise;
+    private final long seq;
+    
+    public Receipt(String plate, VehicleType type, int slotNumber, long entrySecond, long exitSecond, long chargePaise,
+                   long seq) {
+        this.plate = plate;
+        this.type = type;
+        this.slotNumber = slotNumber;
+        this.entrySecond = entrySecond;
+        this.exitSecond = exitSecond;
+        this.chargePaise = chargePaise;
+        this.seq = seq;
+    }
+    
+    public static Receipt of(ParkingSession session) {
+        Vehicle vehicle = session.getVehicle();
+        return new Receipt(vehicle.getVehicleNumber(), vehicle.getType(), session.getSlotNumber(),
+            JournalRecord.toEpochSecond(vehicle.getEntryTime()), JournalRecord.toEpochSecond(session.getExitTime()),
+            session.getChargePaise(), session.getSeq());
+    }
+    
+    // The receipt kept as one row of the session store
+    public static Receipt of(SessionStore sessions, int row) {
+        return new Receipt(sessions.plateOf(row), sessions.typeOf(row), sessions.slotOf(row), sessions.entrySecondOf(row),
+            sessions.exitSecondOf(row), sessions.chargeOf(row), sessions.seqOf(row));
+    }
+    
+    // Number of the receipt for an exit from the slot at that time with that journal sequence number, or 0 for none
+    public static String numberOf(int slotNumber, LocalDateTime exitTime, long seq) {
+        String number = String.format(Locale.ROOT, "%04d%02d%02d-%02d%02d%02d-%d", exitTime.getYear(),
+            exitTime.getMonthValue(), exitTime.getDayOfMonth(), exitTime.getHour(), exitTime.getMinute(),
+            exitTime.getSecond(), slotNumber);
+        return seq > 0 ? number + "-" + seq : number;
+    }
+    
+    public String getNumber() {
+        return numberOf(slotNumber, getExitTime(), seq);
+    }
+    
+    public long getSeq() {
+        return seq;
+    }
+    
+    public String getPlate() {
+        return plate;
+    }
+    
+    public VehicleType getType() {
+        return type;
+    }
+    
+    public int getSlotNumber() {
+        return slotNumber;
+    }
+    
+    public LocalDateTime getEntryTime() {
+        return JournalRecord.fromEpochSecond(entrySecond);
+    }
+    
+    public LocalDateTime getExitTime() {
+        return JournalRecord.fromEpochSecond(exitSecond);
+    }
+    
+    public long getChargePaise() {
+        return chargePaise;
+    }
+    
+    // As printed at the gate
+    public String toText() {
+        long minutes = Math.max(0, exitSecond - entrySecond) / 60;
+        return String.format(Locale.ROOT,
+            "Receipt %s%nVehicle %s (%s)%nSlot    %d%nEntry   %tF %<tT%nExit    %tF %<tT%nStay    %d h %02d min%nCharge  %d.%02d",
+            getNumber(), plate, type.getDisplayName(), slotNumber, getEntryTime(), getExitTime(),
+            minutes / 60, minutes % 60, chargePaise / 100, chargePaise % 100);
+    }
+}
@@ -0,0 +1,326 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Primary side of hot-standby replication. A StandbyLot connects over TCP
+ * and is sent the journal's shadow state as a snapshot. After that it gets
+ * every batch the journal writes, in sequence, as soon as the batch is on
+ * disk. When the lot is quiet a heartbeat goes out every HEARTBEAT_MILLIS,
+ * so a standby can tell a quiet primary from a dead one.
+ *
+ * A frame is [int length][byte type][long lastSeq][long sentMillis][payload],
+ * the length counting everything after itself. A SNAPSHOT carries the
+ * LotState snapshot format, a BATCH carries journal records back to back in
+ * their on-disk format, checksums included, and a HEARTBEAT carries nothing.
+ *
+ * As in SlotStreamHub, one platform thread serves every standby through a
+ * selector, and each frame is encoded once on the journal's writer thread
+ * and queued on every standby as the same bytes. A standby whose backlog
+ * passes MAX_BACKLOG_BYTES is disconnected. It catches up from a fresh
+ * snapshot when it reconnects. Frames are sized to their contents, so the
+ * backlog counts the heap they hold.
+ */
+public class ReplicationServer implements ParkingJournal.Replica, AutoCloseable {
+    
+    static final byte SNAPSHOT = 1;
+    static final byte BATCH = 2;
+    static final byte HEARTBEAT = 3;
+    static final int FRAME_HEADER_BYTES = 4 + 1 + 8 + 8;
+    static final long HEARTBEAT_MILLIS = 100;
+    private static final long MAX_BACKLOG_BYTES = 64L << 20;
+    
+    // One connected standby; used only on the replication thread
+    private static final class Standby {
+        final SocketChannel channel;
+        final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        final ByteBuffer in = ByteBuffer.allocate(64);
+        long pendingBytes;
+        boolean synced;
+        
+        Standby(SocketChannel channel) {
+            this.channel = channel;
+        }
+        
+        void queue(ByteBuffer frame) {
+            pending.add(frame.duplicate());
+            pendingBytes += frame.remaining();
+        }
+        
+        // Writes what the socket takes now; true once nothing is left
+        boolean flush() throws IOException {
+            while (!pending.isEmpty()) {
+                ByteBuffer head = pending.peek();
+                pendingBytes -= channel.write(head);
+                if (head.hasRemaining()) {
+                    return false;
+                }
+                pending.poll();
+            }
+            return true;
+        }
+    }
+    
+    // A frame from the writer thread; a snapshot goes to standbys still waiting for one, a batch to the rest
+    private static final class Outgoing {
+        final ByteBuffer frame;
+        final long seq;
+        final boolean snapshot;
+        
+        Outgoing(ByteBuffer frame, long seq, boolean snapshot) {
+            this.frame = frame;
+            this.seq = seq;
+            this.snapshot = snapshot;
+        }
+    }
+    
+    private final ParkingJournal journal;
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final Queue<Outgoing> outgoing = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger standbyCount = new AtomicInteger();
+    // Room to encode a batch before copying it into a frame of its exact size; used only on the journal's writer thread
+    private ByteBuffer batchScratch = ByteBuffer.allocate(0);
+    private final Thread thread;
+    private volatile boolean running;
+    
+    private ReplicationServer(ParkingJournal journal, ServerSocketChannel server, Selector selector) {
+        this.journal = journal;
+        this.server = server;
+        this.selector = selector;
+        this.thread = new Thread(this::serveLoop, "replication");
+        this.thread.setDaemon(true);
+    }
+    
+    public static ReplicationServer start(ParkingJournal journal, InetSocketAddress address) throws IOException {
+        if (address.isUnresolved()) {
+            throw new IOException("Unknown host " + address.getHostString());
+        }
+        ServerSocketChannel server = ServerSocketChannel.open();
+        Selector selector = null;
+        try {
+            server.bind(address);
+            server.configureBlocking(false);
+            selector = Selector.open();
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            if (selector != null) {
+                selector.close();
+            }
+            throw e;
+        }
+        ReplicationServer replication = new ReplicationServer(journal, server, selector);
+        replication.running = true;
+        journal.addReplica(replication);
+        replication.thread.start();
+        return replication;
+    }
+    
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+    
+    public int getStandbyCount() {
+        return standbyCount.get();
+    }
+    
+    @Override
+    public void snapshot(LotState state) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            state.writeSnapshot(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snapshot to memory failed", e);
+        }
+        byte[] payload = bytes.toByteArray();
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + payload.length);
+        frame.position(FRAME_HEADER_BYTES);
+        frame.put(payload);
+        hand(frame, SNAPSHOT, state.getLastSeq(), true);
+    }
+    
+    @Override
+    public void written(List<JournalRecord> batch) {
+        int room = batch.size() * JournalRecord.MAX_BYTES;
+        if (batchScratch.capacity() < room) {
+            batchScratch = ByteBuffer.allocate(room);
+        }
+        batchScratch.clear();
+        for (JournalRecord record : batch) {
+            record.writeTo(batchScratch);
+        }
+        batchScratch.flip();
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_BYTES + batchScratch.remaining());
+        frame.position(FRAME_HEADER_BYTES);
+        frame.put(batchScratch);
+        hand(frame, BATCH, batch.get(batch.size() - 1).getSeq(), false);
+    }
+    
+    @Override
+    public void close() {
+        running = false;
+        journal.removeReplica(this);
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void hand(ByteBuffer frame, byte type, long seq, boolean snapshot) {
+        putHeader(frame, type, seq);
+        outgoing.add(new Outgoing(frame.flip().asReadOnlyBuffer(), seq, snapshot));
+        selector.wakeup();
+    }
+    
+    private static void putHeader(ByteBuffer frame, byte type, long seq) {
+        frame.putInt(0, frame.position() - 4);
+        frame.put(4, type);
+        frame.putLong(5, seq);
+        frame.putLong(13, System.currentTimeMillis());
+    }
+    
+    private void serveLoop() {
+        long lastHeartbeat = System.currentTimeMillis();
+        // The last record sent, which a heartbeat repeats so a standby can tell it missed nothing
+        long lastSeq = 0;
+        try {
+            while (running) {
+                selector.select(HEARTBEAT_MILLIS);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                    } else {
+                        handle(key);
+                    }
+                }
+                selector.selectedKeys().clear();
+                boolean sent = false;
+                for (Outgoing next; (next = outgoing.poll()) != null; ) {
+                    publish(next);
+                    lastSeq = next.seq;
+                    sent = true;
+                }
+                long now = System.currentTimeMillis();
+                if (sent) {
+                    lastHeartbeat = now;
+                } else if (now - lastHeartbeat >= HEARTBEAT_MILLIS) {
+                    lastHeartbeat = now;
+                    ByteBuffer heartbeat = ByteBuffer.allocate(FRAME_HEADER_BYTES).position(FRAME_HEADER_BYTES);
+                    putHeader(heartbeat, HEARTBEAT, lastSeq);
+                    publish(new Outgoing(heartbeat.flip().asReadOnlyBuffer(), lastSeq, false));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Replication stopped: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Standby standby) {
+                    drop(key, standby);
+                }
+            }
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+    
+    // A new standby waits for the next snapshot, which the journal hands over between two batches
+    private void accept() throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.register(selector, SelectionKey.OP_READ, new Standby(channel));
+        } catch (IOException e) {
+            channel.close();
+            return;
+        }
+        standbyCount.incrementAndGet();
+        journal.requestSnapshot(this);
+    }
+    
+    private void handle(SelectionKey key) {
+        Standby standby = (Standby) key.attachment();
+        if (!key.isValid()) {
+            drop(key, standby);
+            return;
+        }
+        try {
+            // Standbys send nothing; a read only tells us one has gone
+            if (key.isReadable()) {
+                standby.in.clear();
+                if (standby.channel.read(standby.in) < 0) {
+                    drop(key, standby);
+                    return;
+                }
+            }
+            if (key.isValid()) {
+                write(key, standby);
+            }
+        } catch (IOException e) {
+            drop(key, standby);
+        }
+    }
+    
+    private void publish(Outgoing next) {
+        for (SelectionKey key : selector.keys()) {
+            if (!(key.attachment() instanceof Standby standby) || !key.isValid()) {
+                continue;
+            }
+            if (next.snapshot == standby.synced) {
+                continue;
+            }
+            standby.synced = true;
+            standby.queue(next.frame);
+            if (standby.pendingBytes > MAX_BACKLOG_BYTES) {
+                // Too far behind; it starts again from a snapshot when it reconnects
+                drop(key, standby);
+                continue;
+            }
+            try {
+                write(key, standby);
+            } catch (IOException e) {
+                drop(key, standby);
+            }
+        }
+    }
+    
+    private void write(SelectionKey key, Standby standby) throws IOException {
+        int interest = standby.flush() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        if (key.interestOps() != interest) {
+            key.interestOps(interest);
+        }
+    }
+    
+    private void drop(SelectionKey key, Standby standby) {
+        key.cancel();
+        if (standby.channel.isOpen()) {
+            try {
+                standby.channel.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+            standbyCount.decrementAndGet();
+        }
+    }
+}
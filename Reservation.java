@@ -0,0 +1,84 @@
+import java.time.LocalDateTime;
+
+/**
+ * A booking of one slot for a vehicle over a time window. The slot can
+ * change until the hold starts, if a walk-in is still parked in the first
+ * one; the rest is fixed when the booking is made.
+ */
+public class Reservation {
+    
+    public enum Status {
+        BOOKED,
+        HELD,
+        ARRIVED,
+        NO_SHOW,
+        CANCELLED,
+        UNSERVED
+    }
+    
+    private final long id;
+    private final String plate;
+    private final VehicleType type;
+    private final long startSecond;
+    private final long endSecond;
+    private volatile int slotNumber;
+    private volatile Status status = Status.BOOKED;
+    TimerWheel.Timeout timeout;
+    
+    Reservation(long id, String plate, VehicleType type, long startSecond, long endSecond) {
+        this.id = id;
+        this.plate = plate;
+        this.type = type;
+        this.startSecond = startSecond;
+        this.endSecond = endSecond;
+    }
+    
+    public long getId() {
+        return id;
+    }
+    
+    public String getPlate() {
+        return plate;
+    }
+    
+    public VehicleType getType() {
+        return type;
+    }
+    
+    public LocalDateTime getStart() {
+        return JournalRecord.fromEpochSecond(startSecond);
+    }
+    
+    public LocalDateTime getEnd() {
+        return JournalRecord.fromEpochSecond(endSecond);
+    }
+    
+    long getStartSecond() {
+        return startSecond;
+    }
+    
+    long getEndSecond() {
+        return endSecond;
+    }
+    
+    public int getSlotNumber() {
+        return slotNumber;
+    }
+    
+    void setSlotNumber(int slotNumber) {
+        this.slotNumber = slotNumber;
+    }
+    
+    public Status getStatus() {
+        return status;
+    }
+    
+    void setStatus(Status status) {
+        this.status = status;
+    }
+    
+    // Booked or held: the slot is still kept for the vehicle
+    public boolean isActive() {
+        return status == Status.BOOKED || status == Status.HELD;
+    }
+}
@@ -0,0 +1,393 @@
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Advance bookings of slots for a time window. A booking blocks its slot
+ * from HOLD_LEAD_SECONDS before its start until its end, and each slot
+ * keeps its bookings in a TreeMap keyed by the start of that blocked time.
+ * Bookings on a slot never overlap, so a conflict check is one neighbour
+ * lookup.
+ *
+ * To find a slot for a window, a calendar keeps a sparse bitmap of booked
+ * slots per quarter hour that has bookings: only the 64-slot words with a
+ * booked slot in them are stored, so a quarter costs memory in proportion
+ * to its bookings, not to the size of the lot. Or-ing the bitmaps of the
+ * quarters inside the window rules a slot out with one bit test. Only
+ * slots that are booked in a quarter the window covers in part have their
+ * bookings checked one by one. The slots of each size are a SlotBitSet, and
+ * a window that starts now also asks the engine for its next free slot, so
+ * the search climbs summary levels past runs of slots of other sizes or
+ * occupied ones. It steps one at a time only over the slots the window's
+ * bookings rule out, however large the lot is.
+ *
+ * A booking may last at most MAX_LENGTH_SECONDS and start at most
+ * MAX_LEAD_SECONDS ahead, which bounds the quarters one booking can mark.
+ *
+ * When its blocked time begins, a booking holds its slot in the engine and
+ * walk-ins can no longer take it. If a walk-in is still parked there, the
+ * booking moves to another slot that fits and is free for the window, or
+ * is marked unserved if there is none. A hold whose vehicle has not
+ * arrived NO_SHOW_SECONDS after the start is released. Both steps are
+ * driven by a TimerWheel, not by scanning the bookings.
+ *
+ * A vehicle that arrives during its blocked time parks in its held slot
+ * through SlotAssigner. Walk-ins are only sent to a slot with bookings when
+ * no slot without any fits, since nobody knows when they will leave. Bookings
+ * are kept in memory only and do not survive a restart.
+ */
+public class ReservationBook {
+    
+    public static final long HOLD_LEAD_SECONDS = 30 * 60;
+    public static final long NO_SHOW_SECONDS = 20 * 60;
+    public static final long MAX_LENGTH_SECONDS = 24 * 60 * 60;
+    public static final long MAX_LEAD_SECONDS = 30L * 24 * 60 * 60;
+    private static final long QUARTER_SECONDS = 15 * 60;
+    private static final SlotSize[] SIZES = SlotSize.values();
+    
+    private final ParkingEngine engine;
+    private final LotPlan plan;
+    private final TimerWheel timers;
+    private final TreeMap<Long, Reservation>[] bookings;
+    private final SlotBitSet[] slotsOfSize;
+    // Slots with at least one booking, read by gate threads without the lock
+    private final ConcurrentSlotBitSet bookedSlots;
+    private final Map<Long, Quarter> calendar = new HashMap<>();
+    private final Map<Long, Reservation> byId = new HashMap<>();
+    private final Map<String, Reservation> byPlate = new ConcurrentHashMap<>();
+    // Scratch for findSlot: the quarters inside the window or-ed together, and those it covers in part
+    private final long[] covered;
+    private final long[] partial;
+    private long nextId = 1;
+    
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ReservationBook(ParkingEngine engine, LotPlan plan, TimerWheel timers) {
+        if (plan.getTotalSlots() != engine.getTotalSlots()) {
+            throw new IllegalArgumentException("Plan has " + plan.getTotalSlots() + " slots, lot has " + engine.getTotalSlots());
+        }
+        this.engine = engine;
+        this.plan = plan;
+        this.timers = timers;
+        this.bookings = new TreeMap[engine.getTotalSlots()];
+        this.slotsOfSize = new SlotBitSet[SIZES.length];
+        for (int s = 0; s < SIZES.length; s++) {
+            slotsOfSize[s] = new SlotBitSet(engine.getTotalSlots());
+        }
+        this.bookedSlots = new ConcurrentSlotBitSet(engine.getTotalSlots());
+        this.covered = new long[(engine.getTotalSlots() + 63) >>> 6];
+        this.partial = new long[covered.length];
+        for (int slotNumber = 1; slotNumber <= engine.getTotalSlots(); slotNumber++) {
+            slotsOfSize[plan.sizeOf(slotNumber).ordinal()].set(slotNumber - 1);
+        }
+    }
+    
+    // Slots booked at some point in one quarter hour, as the non-zero words of a bitmap sorted by word index
+    private static final class Quarter {
+        int[] words = new int[4];
+        long[] bits = new long[4];
+        int size;
+        int count;
+        
+        void set(int index) {
+            int at = Arrays.binarySearch(words, 0, size, index >>> 6);
+            if (at < 0) {
+                at = -at - 1;
+                if (size == words.length) {
+                    words = Arrays.copyOf(words, size * 2);
+                    bits = Arrays.copyOf(bits, size * 2);
+                }
+                System.arraycopy(words, at, words, at + 1, size - at);
+                System.arraycopy(bits, at, bits, at + 1, size - at);
+                words[at] = index >>> 6;
+                bits[at] = 0;
+                size++;
+            }
+            bits[at] |= 1L << index;
+            count++;
+        }
+        
+        // stillBooked keeps the bit for another booking of the same slot that touches this quarter
+        void clear(int index, boolean stillBooked) {
+            count--;
+            if (stillBooked) {
+                return;
+            }
+            int at = Arrays.binarySearch(words, 0, size, index >>> 6);
+            bits[at] &= ~(1L << index);
+            if (bits[at] == 0) {
+                System.arraycopy(words, at + 1, words, at, size - at - 1);
+                System.arraycopy(bits, at + 1, bits, at, size - at - 1);
+                size--;
+            }
+        }
+    }
+    
+    // Books the first slot that fits and is free for the window, or returns null if there is none
+    public synchronized Reservation reserve(String plate, VehicleType type, LocalDateTime start, LocalDateTime end,
+                                            LocalDateTime now) {
+        long startSecond = JournalRecord.toEpochSecond(start);
+        long endSecond = JournalRecord.toEpochSecond(end);
+        long nowSecond = JournalRecord.toEpochSecond(now);
+        checkWindow(startSecond, endSecond, nowSecond);
+        String key = PlateIndex.normalize(plate);
+        if (byPlate.containsKey(key)) {
+            throw new IllegalArgumentException("Vehicle " + key + " already has a booking");
+        }
+        int slotNumber = findSlot(type, startSecond - HOLD_LEAD_SECONDS, endSecond, nowSecond);
+        if (slotNumber < 0) {
+            return null;
+        }
+        Reservation reservation = new Reservation(nextId++, key, type, startSecond, endSecond);
+        book(reservation, slotNumber);
+        byId.put(reservation.getId(), reservation);
+        byPlate.put(key, reservation);
+        if (blockedFrom(reservation) <= nowSecond) {
+            beginHold(reservation, nowSecond);
+        } else {
+            reservation.timeout = timers.schedule(JournalRecord.fromEpochSecond(blockedFrom(reservation)),
+                () -> beginHold(reservation, blockedFrom(reservation)));
+        }
+        return reservation;
+    }
+    
+    // A slot that fits the type and is free from start to end, or -1; nothing is booked
+    public synchronized int findSlot(VehicleType type, LocalDateTime start, LocalDateTime end, LocalDateTime now) {
+        long startSecond = JournalRecord.toEpochSecond(start);
+        long endSecond = JournalRecord.toEpochSecond(end);
+        long nowSecond = JournalRecord.toEpochSecond(now);
+        checkWindow(startSecond, endSecond, nowSecond);
+        return findSlot(type, startSecond - HOLD_LEAD_SECONDS, endSecond, nowSecond);
+    }
+    
+    public synchronized boolean cancel(long id) {
+        Reservation reservation = byId.get(id);
+        if (reservation == null || !reservation.isActive()) {
+            return false;
+        }
+        if (reservation.getStatus() == Reservation.Status.HELD) {
+            engine.releaseHold(reservation.getSlotNumber());
+        }
+        finish(reservation, Reservation.Status.CANCELLED);
+        return true;
+    }
+    
+    // Whether the slot has no booking that blocks any of start to end
+    public synchronized boolean isFree(int slotNumber, LocalDateTime start, LocalDateTime end) {
+        if (slotNumber < 1 || slotNumber > bookings.length) {
+            throw new IllegalArgumentException("No such slot: " + slotNumber);
+        }
+        return isFree(slotNumber - 1, JournalRecord.toEpochSecond(start) - HOLD_LEAD_SECONDS,
+            JournalRecord.toEpochSecond(end));
+    }
+    
+    // Whether any booking, however far ahead, blocks some time on the slot
+    public boolean hasBookings(int slotNumber) {
+        return bookedSlots.get(slotNumber - 1);
+    }
+    
+    public synchronized Reservation get(long id) {
+        return byId.get(id);
+    }
+    
+    // The plate's booking that is still waiting for the vehicle, or null
+    public Reservation forPlate(String plate) {
+        return byPlate.get(PlateIndex.normalize(plate));
+    }
+    
+    public synchronized int getActiveCount() {
+        return byPlate.size();
+    }
+    
+    // Parks a vehicle arriving for its booking and returns the slot, or -1 if it has no booking it can use now
+    public int arrive(Vehicle vehicle) {
+        String key = PlateIndex.normalize(vehicle.getVehicleNumber());
+        // Most vehicles have no booking; they get their answer without taking the lock
+        if (!byPlate.containsKey(key)) {
+            return -1;
+        }
+        synchronized (this) {
+            Reservation reservation = byPlate.get(key);
+            long time = JournalRecord.toEpochSecond(vehicle.getEntryTime());
+            if (reservation == null || time < blockedFrom(reservation) || time >= reservation.getEndSecond()
+                    || !plan.fits(reservation.getSlotNumber(), vehicle.getType())) {
+                return -1;
+            }
+            if (reservation.getStatus() == Reservation.Status.BOOKED) {
+                // The vehicle beat the timer to the start of its hold
+                beginHold(reservation, time);
+            }
+            if (reservation.getStatus() != Reservation.Status.HELD
+                    || !engine.parkHeld(reservation.getSlotNumber(), vehicle)) {
+                return -1;
+            }
+            reservation.timeout.cancel();
+            reservation.setStatus(Reservation.Status.ARRIVED);
+            byPlate.remove(key);
+            // The window stays booked until its end, then the slot's calendar forgets it
+            reservation.timeout = timers.schedule(reservation.getEnd(), () -> expire(reservation));
+            return reservation.getSlotNumber();
+        }
+    }
+    
+    private synchronized void beginHold(Reservation reservation, long nowSecond) {
+        if (reservation.getStatus() != Reservation.Status.BOOKED) {
+            return;
+        }
+        if (!engine.holdSlot(reservation.getSlotNumber())) {
+            // A walk-in is still there; move to a slot that is free now and for the rest of the window
+            unbook(reservation);
+            int slotNumber = findSlot(reservation.getType(), nowSecond, reservation.getEndSecond(), nowSecond);
+            if (slotNumber < 0 || !engine.holdSlot(slotNumber)) {
+                finish(reservation, Reservation.Status.UNSERVED);
+                return;
+            }
+            book(reservation, slotNumber);
+        }
+        reservation.setStatus(Reservation.Status.HELD);
+        long noShow = Math.min(reservation.getStartSecond() + NO_SHOW_SECONDS, reservation.getEndSecond());
+        reservation.timeout = timers.schedule(JournalRecord.fromEpochSecond(noShow), () -> expire(reservation));
+    }
+    
+    private synchronized void expire(Reservation reservation) {
+        if (reservation.getStatus() == Reservation.Status.HELD) {
+            engine.releaseHold(reservation.getSlotNumber());
+            finish(reservation, Reservation.Status.NO_SHOW);
+        } else if (reservation.getStatus() == Reservation.Status.ARRIVED) {
+            unbook(reservation);
+            byId.remove(reservation.getId());
+        }
+    }
+    
+    private void finish(Reservation reservation, Reservation.Status status) {
+        if (reservation.timeout != null) {
+            reservation.timeout.cancel();
+        }
+        reservation.setStatus(status);
+        unbook(reservation);
+        byId.remove(reservation.getId());
+        byPlate.remove(reservation.getPlate(), reservation);
+    }
+    
+    private static void checkWindow(long startSecond, long endSecond, long nowSecond) {
+        if (endSecond <= startSecond || endSecond <= nowSecond) {
+            throw new IllegalArgumentException("A booking must end after it starts and after now");
+        }
+        if (endSecond - startSecond > MAX_LENGTH_SECONDS) {
+            throw new IllegalArgumentException("A booking can last at most " + MAX_LENGTH_SECONDS / 3600 + " hours");
+        }
+        if (startSecond - nowSecond > MAX_LEAD_SECONDS) {
+            throw new IllegalArgumentException("A booking can start at most " + MAX_LEAD_SECONDS / 86_400 + " days ahead");
+        }
+    }
+    
+    // Smallest fitting size first, then lowest slot number; a window that starts now also needs the slot empty
+    private int findSlot(VehicleType type, long from, long to, long nowSecond) {
+        boolean holdNow = from <= nowSecond;
+        // Quarters inside the window rule a slot out; one the window only partly covers needs a closer look
+        List<Quarter> quarters = new ArrayList<>();
+        for (long q = Math.floorDiv(from, QUARTER_SECONDS); q * QUARTER_SECONDS < to; q++) {
+            Quarter quarter = calendar.get(q);
+            if (quarter != null) {
+                boolean inside = q * QUARTER_SECONDS >= from && (q + 1) * QUARTER_SECONDS <= to;
+                long[] into = inside ? covered : partial;
+                for (int i = 0; i < quarter.size; i++) {
+                    into[quarter.words[i]] |= quarter.bits[i];
+                }
+                quarters.add(quarter);
+            }
+        }
+        try {
+            for (int s = type.getSlotSize().ordinal(); s < SIZES.length; s++) {
+                SlotBitSet ofSize = slotsOfSize[s];
+                int index = ofSize.nextSetBit(0);
+                while (index >= 0) {
+                    if (holdNow) {
+                        // Leapfrog between the slots of this size and the free ones until both agree
+                        int free = engine.findAvailableSlot(index + 1) - 1;
+                        if (free != index) {
+                            index = free < 0 ? -1 : ofSize.nextSetBit(free);
+                            continue;
+                        }
+                    }
+                    long bit = 1L << index;
+                    int w = index >>> 6;
+                    if ((covered[w] & bit) == 0 && ((partial[w] & bit) == 0 || isFree(index, from, to))) {
+                        return index + 1;
+                    }
+                    index = ofSize.nextSetBit(index + 1);
+                }
+            }
+            return -1;
+        } finally {
+            // Clear only the words the quarters set, so the scratch costs nothing on a lot with few bookings
+            for (Quarter quarter : quarters) {
+                for (int i = 0; i < quarter.size; i++) {
+                    covered[quarter.words[i]] = 0;
+                    partial[quarter.words[i]] = 0;
+                }
+            }
+        }
+    }
+    
+    private boolean isFree(int index, long from, long to) {
+        TreeMap<Long, Reservation> slotBookings = bookings[index];
+        if (slotBookings == null) {
+            return true;
+        }
+        // Bookings on a slot do not overlap, so the last one starting before to also ends last
+        Map.Entry<Long, Reservation> before = slotBookings.lowerEntry(to);
+        return before == null || before.getValue().getEndSecond() <= from;
+    }
+    
+    private void book(Reservation reservation, int slotNumber) {
+        int index = slotNumber - 1;
+        if (bookings[index] == null) {
+            bookings[index] = new TreeMap<>();
+        }
+        bookings[index].put(blockedFrom(reservation), reservation);
+        bookedSlots.set(index);
+        reservation.setSlotNumber(slotNumber);
+        mark(index, reservation, true);
+    }
+    
+    private void unbook(Reservation reservation) {
+        int index = reservation.getSlotNumber() - 1;
+        TreeMap<Long, Reservation> slotBookings = bookings[index];
+        if (slotBookings == null || !slotBookings.remove(blockedFrom(reservation), reservation)) {
+            return;
+        }
+        if (slotBookings.isEmpty()) {
+            bookings[index] = null;
+            bookedSlots.clear(index);
+        }
+        mark(index, reservation, false);
+    }
+    
+    private void mark(int index, Reservation reservation, boolean booked) {
+        long last = Math.floorDiv(reservation.getEndSecond() - 1, QUARTER_SECONDS);
+        for (long q = Math.floorDiv(blockedFrom(reservation), QUARTER_SECONDS); q <= last; q++) {
+            Quarter quarter = calendar.get(q);
+            if (booked) {
+                if (quarter == null) {
+                    quarter = new Quarter();
+                    calendar.put(q, quarter);
+                }
+                quarter.set(index);
+            } else {
+                quarter.clear(index, !isFree(index, q * QUARTER_SECONDS, (q + 1) * QUARTER_SECONDS));
+                if (quarter.count == 0) {
+                    calendar.remove(q);
+                }
+            }
+        }
+    }
+    
+    private static long blockedFrom(Reservation reservation) {
+        return reservation.getStartSecond() - HOLD_LEAD_SECONDS;
+    }
+}
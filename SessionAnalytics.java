@@ -0,0 +1,130 @@
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Reports over the sessions in a SessionStore. Each report runs one
+ * parallel stream over the store's chunks; a worker loops over the
+ * primitive columns of its chunks into its own accumulator array and the
+ * arrays are summed at the end, so a report allocates a few small arrays
+ * however many sessions it reads.
+ *
+ * Ranges are half-open, [from, to). Occupancy counts every session that
+ * overlaps the range; dwell and revenue count sessions that ended in it.
+ */
+public class SessionAnalytics {
+    
+    private static final int HOUR = 3600;
+    private static final int DAY = 24 * HOUR;
+    private static final VehicleType[] TYPES = VehicleType.values();
+    
+    private final SessionStore store;
+    
+    public SessionAnalytics(SessionStore store) {
+        this.store = store;
+    }
+    
+    // Average number of vehicles parked in each whole hour that overlaps the range
+    public double[] hourlyOccupancy(LocalDateTime from, LocalDateTime to) {
+        long start = Math.floorDiv(JournalRecord.toEpochSecond(from), HOUR) * HOUR;
+        int hours = (int) Math.max(0, Math.floorDiv(JournalRecord.toEpochSecond(to) + HOUR - 1, HOUR) - start / HOUR);
+        long end = start + (long) hours * HOUR;
+        // Vehicle-seconds per hour for the partial hours at either end of a stay, plus a difference
+        // array counting the hours a stay covers in full, so every stay costs the same however long
+        long[] totals = scan(2 * hours + 1, (chunk, rows, acc) -> {
+            for (int i = 0; i < rows; i++) {
+                long entry = Math.max(chunk.entrySecond[i], start);
+                long exit = Math.min(chunk.entrySecond[i] + chunk.dwellSeconds[i], end);
+                if (exit <= entry) {
+                    continue;
+                }
+                int first = (int) ((entry - start) / HOUR);
+                int last = (int) ((exit - 1 - start) / HOUR);
+                if (first == last) {
+                    acc[first] += exit - entry;
+                    continue;
+                }
+                acc[first] += start + (first + 1L) * HOUR - entry;
+                acc[last] += exit - (start + (long) last * HOUR);
+                acc[hours + first + 1]++;
+                acc[hours + last]--;
+            }
+        });
+        double[] occupancy = new double[hours];
+        long fullStays = 0;
+        for (int h = 0; h < hours; h++) {
+            fullStays += totals[hours + h];
+            occupancy[h] = (totals[h] + fullStays * HOUR) / (double) HOUR;
+        }
+        return occupancy;
+    }
+    
+    // Mean stay of each vehicle type among sessions that ended in the range; types with none are left out
+    public Map<VehicleType, Duration> averageDwellByType(LocalDateTime from, LocalDateTime to) {
+        long start = JournalRecord.toEpochSecond(from);
+        long end = JournalRecord.toEpochSecond(to);
+        int types = TYPES.length;
+        long[] totals = scan(2 * types, (chunk, rows, acc) -> {
+            for (int i = 0; i < rows; i++) {
+                long exit = chunk.entrySecond[i] + chunk.dwellSeconds[i];
+                if (exit >= start && exit < end) {
+                    acc[chunk.type[i]] += chunk.dwellSeconds[i];
+                    acc[types + chunk.type[i]]++;
+                }
+            }
+        });
+        Map<VehicleType, Duration> average = new EnumMap<>(VehicleType.class);
+        for (VehicleType type : TYPES) {
+            long count = totals[types + type.ordinal()];
+            if (count > 0) {
+                average.put(type, Duration.ofSeconds(totals[type.ordinal()] / count));
+            }
+        }
+        return average;
+    }
+    
+    // Revenue in paise by the hour of day (0-23) the session ended in
+    public long[] revenueByHourOfDay(LocalDateTime from, LocalDateTime to) {
+        long start = JournalRecord.toEpochSecond(from);
+        long end = JournalRecord.toEpochSecond(to);
+        return scan(24, (chunk, rows, acc) -> {
+            for (int i = 0; i < rows; i++) {
+                long exit = chunk.entrySecond[i] + chunk.dwellSeconds[i];
+                if (exit >= start && exit < end) {
+                    acc[Math.floorMod(exit, DAY) / HOUR] += chunk.chargePaise[i];
+                }
+            }
+        });
+    }
+    
+    // Hour of day that took the most revenue, or -1 if nothing was paid in the range
+    public int peakRevenueHour(LocalDateTime from, LocalDateTime to) {
+        long[] revenue = revenueByHourOfDay(from, to);
+        int peak = -1;
+        for (int hour = 0; hour < revenue.length; hour++) {
+            if (revenue[hour] > 0 && (peak < 0 || revenue[hour] > revenue[peak])) {
+                peak = hour;
+            }
+        }
+        return peak;
+    }
+    
+    private interface ChunkScan {
+        void accumulate(SessionStore.Chunk chunk, int rows, long[] acc);
+    }
+    
+    private long[] scan(int width, ChunkScan scan) {
+        int size = store.size();
+        SessionStore.Chunk[] chunks = store.chunksFor(size);
+        return IntStream.range(0, chunks.length).parallel().collect(
+            () -> new long[width],
+            (acc, c) -> scan.accumulate(chunks[c], Math.min(SessionStore.CHUNK_SIZE, size - c * SessionStore.CHUNK_SIZE), acc),
+            (a, b) -> {
+                for (int i = 0; i < width; i++) {
+                    a[i] += b[i];
+                }
+            });
+    }
+}
@@ -0,0 +1,154 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Every completed parking session, kept as primitive columns: plate hash,
+ * plate code, vehicle type, slot, entry epoch second, dwell in seconds,
+ * charge in paise and the exit's journal sequence number, about 45 bytes a
+ * session. Plates PlateCodec cannot pack
+ * are kept as strings on the side. Rows are appended in exit order into
+ * fixed-size chunks, so the store grows without copying and a report can
+ * hand whole chunks to parallel workers. Each row is also the receipt the
+ * driver was given.
+ *
+ * Exits from any number of gate threads are appended under a lock; a row is
+ * never changed once the size that covers it has been published, so
+ * readers need no locking at all. The store's revenue total changes
+ * together with its size under the same lock, so holding the lock reads a
+ * total that covers exactly size() rows. Times are wall-clock
+ * LocalDateTimes stored as if they were UTC, as in the journal.
+ *
+ * The store itself lives in memory. ParkingJournal.restoreSessions fills
+ * it at start from the journal's session history, which holds every exit
+ * the journal has written, so a restart loses no sessions.
+ */
+public class SessionStore implements ParkingListener {
+    
+    static final int CHUNK_BITS = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final VehicleType[] TYPES = VehicleType.values();
+    
+    static final class Chunk {
+        final int[] plateHash = new int[CHUNK_SIZE];
+        final long[] plateCode = new long[CHUNK_SIZE];
+        final byte[] type = new byte[CHUNK_SIZE];
+        final int[] slot = new int[CHUNK_SIZE];
+        final long[] entrySecond = new long[CHUNK_SIZE];
+        final int[] dwellSeconds = new int[CHUNK_SIZE];
+        final long[] chargePaise = new long[CHUNK_SIZE];
+        final long[] seq = new long[CHUNK_SIZE];
+    }
+    
+    private volatile Chunk[] chunks = new Chunk[0];
+    private volatile int size;
+    private long revenuePaise;
+    // Plates of rows whose plate code is NONE
+    private final Map<Integer, String> unpackedPlates = new ConcurrentHashMap<>();
+    
+    @Override
+    public void vehicleExited(ParkingSession session) {
+        Vehicle vehicle = session.getVehicle();
+        long entry = JournalRecord.toEpochSecond(vehicle.getEntryTime());
+        add(vehicle.getVehicleNumber(), vehicle.getType(), session.getSlotNumber(), entry,
+            JournalRecord.toEpochSecond(session.getExitTime()), session.getChargePaise(), session.getSeq());
+    }
+    
+    // Hash the store keeps instead of the plate, so a vehicle's visits can be found again
+    public static int plateHash(String plate) {
+        return PlateIndex.normalize(plate).hashCode();
+    }
+    
+    // seq is the exit's journal sequence number, or 0 if no journal recorded it
+    public synchronized void add(String plate, VehicleType type, int slotNumber, long entrySecond, long exitSecond,
+                                 long chargePaise, long seq) {
+        String normalized = PlateIndex.normalize(plate);
+        long plateCode = PlateCodec.encode(normalized);
+        int row = size;
+        if (plateCode == PlateCodec.NONE) {
+            unpackedPlates.put(row, normalized);
+        }
+        Chunk[] current = chunks;
+        int chunkIndex = row >>> CHUNK_BITS;
+        if (chunkIndex == current.length) {
+            current = Arrays.copyOf(current, current.length + 1);
+            current[chunkIndex] = new Chunk();
+            chunks = current;
+        }
+        Chunk chunk = current[chunkIndex];
+        int i = row & (CHUNK_SIZE - 1);
+        chunk.plateHash[i] = normalized.hashCode();
+        chunk.plateCode[i] = plateCode;
+        chunk.type[i] = (byte) type.ordinal();
+        chunk.slot[i] = slotNumber;
+        chunk.entrySecond[i] = entrySecond;
+        // A stay longer than 68 years is not a parking session
+        chunk.dwellSeconds[i] = (int) Math.min(Integer.MAX_VALUE, Math.max(0, exitSecond - entrySecond));
+        chunk.chargePaise[i] = chargePaise;
+        chunk.seq[i] = seq;
+        revenuePaise += chargePaise;
+        size = row + 1;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    // Charges of all size() rows
+    public synchronized long getRevenuePaise() {
+        return revenuePaise;
+    }
+    
+    public VehicleType typeOf(int row) {
+        return TYPES[chunkOf(row).type[row & (CHUNK_SIZE - 1)]];
+    }
+    
+    public int slotOf(int row) {
+        return chunkOf(row).slot[row & (CHUNK_SIZE - 1)];
+    }
+    
+    public long entrySecondOf(int row) {
+        return chunkOf(row).entrySecond[row & (CHUNK_SIZE - 1)];
+    }
+    
+    public long exitSecondOf(int row) {
+        Chunk chunk = chunkOf(row);
+        int i = row & (CHUNK_SIZE - 1);
+        return chunk.entrySecond[i] + chunk.dwellSeconds[i];
+    }
+    
+    public long chargeOf(int row) {
+        return chunkOf(row).chargePaise[row & (CHUNK_SIZE - 1)];
+    }
+    
+    public long seqOf(int row) {
+        return chunkOf(row).seq[row & (CHUNK_SIZE - 1)];
+    }
+    
+    public int plateHashOf(int row) {
+        return chunkOf(row).plateHash[row & (CHUNK_SIZE - 1)];
+    }
+    
+    public String plateOf(int row) {
+        long plateCode = chunkOf(row).plateCode[row & (CHUNK_SIZE - 1)];
+        return plateCode != PlateCodec.NONE ? PlateCodec.decode(plateCode) : unpackedPlates.get(row);
+    }
+    
+    // Plate of a row whose plate code is NONE
+    String unpackedPlateOf(int row) {
+        return unpackedPlates.get(row);
+    }
+    
+    // Chunks holding the first rows sessions; callers read size() before calling this
+    Chunk[] chunksFor(int rows) {
+        Chunk[] current = chunks;
+        return Arrays.copyOf(current, (rows + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+    }
+    
+    private Chunk chunkOf(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("No session " + row + " of " + size);
+        }
+        return chunks[row >>> CHUNK_BITS];
+    }
+}
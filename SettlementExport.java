@@ -0,0 +1,420 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.zip.CRC32C;
+
+/**
+ * Settlement of a shift or a day: every session in a SessionStore that
+ * ended in [from, to), streamed to a file as CSV or in a compact binary
+ * form. Rows pass through one BUFFER_BYTES buffer into a FileChannel, with
+ * numbers and times put as bytes directly. However many sessions there are,
+ * an export holds one buffer and builds no String for a row whose plate
+ * PlateCodec packs. The file is written next to its name and moved into
+ * place once complete.
+ *
+ * An export reads the store up to one point, together with the store's
+ * revenue total at that point. It sums the charge of every row it reads,
+ * in the range or not, and fails if the two totals differ. A Settlement
+ * that comes back has therefore seen every session exactly once. Its
+ * history total, plus any revenue restored from before the store was
+ * attached, is what the engine's revenue counter held at that point.
+ *
+ * CSV has a header line and one line per session:
+ *
+ *   receipt,plate,type,slot,entry,exit,minutes,charge
+ *   20261017-081502-42-1837,KA01AB1234,car,42,2026-10-17T06:10:00,2026-10-17T08:15:02,125,40.00
+ *
+ * The binary form starts with [int magic][int version][long from][long to].
+ * One record per session follows: [byte type][int slot][long entry]
+ * [int dwell seconds][long charge][long journal seq][long plate code].
+ * Version 1 files, written before receipts carried the journal sequence
+ * number, have no seq and are still read.
+ * For a plate that does not pack, the type's top bit is set and
+ * [short length][UTF-8 plate] replaces the code. A 0xFF byte ends the
+ * records. Then come [long sessions][long charge][long history rows]
+ * [long history charge] and an int CRC-32C of everything before it. Times
+ * are epoch seconds of wall-clock times read as UTC, as in the journal.
+ */
+public class SettlementExport {
+    
+    static final int MAGIC = 0x504B5354;
+    static final int VERSION = 2;
+    private static final int BUFFER_BYTES = 1 << 20;
+    private static final int END_OF_RECORDS = 0xFF;
+    private static final int UNPACKED_PLATE = 0x80;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8;
+    private static final int RECORD_BYTES = 1 + 4 + 8 + 4 + 8 + 8 + 8;
+    private static final int TRAILER_BYTES = 1 + 4 * 8 + 4;
+    // Longest CSV line for a packed plate: receipt, plate, type, slot, two times, minutes and charge
+    private static final int MAX_CSV_LINE_BYTES = 256;
+    private static final int SECONDS_PER_DAY = 24 * 3600;
+    private static final VehicleType[] TYPES = VehicleType.values();
+    private static final byte[][] TYPE_CODES = new byte[TYPES.length][];
+    private static final byte[] CSV_HEADER = "receipt,plate,type,slot,entry,exit,minutes,charge\n".getBytes(StandardCharsets.US_ASCII);
+    
+    private static final byte[] DIGIT_PAIRS = new byte[200];
+    
+    static {
+        for (VehicleType type : TYPES) {
+            TYPE_CODES[type.ordinal()] = type.getCode().getBytes(StandardCharsets.US_ASCII);
+        }
+        for (int i = 0; i < 100; i++) {
+            DIGIT_PAIRS[2 * i] = (byte) ('0' + i / 10);
+            DIGIT_PAIRS[2 * i + 1] = (byte) ('0' + i % 10);
+        }
+    }
+    
+    // Totals of one export, or of a binary file read back
+    public static final class Settlement {
+        
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final long[] sessionsByType = new long[TYPES.length];
+        private final long[] paiseByType = new long[TYPES.length];
+        private long sessions;
+        private long chargePaise;
+        private long historyRows;
+        private long historyPaise;
+        
+        Settlement(LocalDateTime from, LocalDateTime to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        public LocalDateTime getFrom() {
+            return from;
+        }
+        
+        public LocalDateTime getTo() {
+            return to;
+        }
+        
+        // Sessions that ended in the range
+        public long getSessions() {
+            return sessions;
+        }
+        
+        public long getChargePaise() {
+            return chargePaise;
+        }
+        
+        public long getSessions(VehicleType type) {
+            return sessionsByType[type.ordinal()];
+        }
+        
+        public long getChargePaise(VehicleType type) {
+            return paiseByType[type.ordinal()];
+        }
+        
+        // Every session the export read, in the range or not
+        public long getHistoryRows() {
+            return historyRows;
+        }
+        
+        public long getHistoryPaise() {
+            return historyPaise;
+        }
+        
+        void add(int type, long charge) {
+            sessions++;
+            chargePaise += charge;
+            sessionsByType[type]++;
+            paiseByType[type] += charge;
+        }
+    }
+    
+    private SettlementExport() {
+    }
+    
+    public static Settlement writeCsv(SessionStore store, LocalDateTime from, LocalDateTime to, Path file) throws IOException {
+        return export(store, from, to, file, false);
+    }
+    
+    public static Settlement writeBinary(SessionStore store, LocalDateTime from, LocalDateTime to, Path file) throws IOException {
+        return export(store, from, to, file, true);
+    }
+    
+    // Streams a binary settlement back, checking its checksum and that its records add up to its totals
+    public static Settlement readBinary(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_BYTES).flip();
+            CRC32C crc = new CRC32C();
+            fill(channel, in, HEADER_BYTES, crc);
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + " is not a settlement");
+            }
+            int version = in.getInt();
+            if (version != 1 && version != VERSION) {
+                throw new IOException("Unsupported settlement version " + version + " in " + file);
+            }
+            int seqBytes = version == 1 ? 0 : 8;
+            Settlement settlement = new Settlement(JournalRecord.fromEpochSecond(in.getLong()),
+                JournalRecord.fromEpochSecond(in.getLong()));
+            while (true) {
+                fill(channel, in, 1, crc);
+                int type = in.get() & 0xFF;
+                if (type == END_OF_RECORDS) {
+                    break;
+                }
+                fill(channel, in, 4 + 8 + 4 + 8 + seqBytes, crc);
+                in.position(in.position() + 4 + 8 + 4);
+                long charge = in.getLong();
+                in.position(in.position() + seqBytes);
+                if ((type & UNPACKED_PLATE) != 0) {
+                    fill(channel, in, 2, crc);
+                    int length = in.getShort() & 0xFFFF;
+                    fill(channel, in, length, crc);
+                    in.position(in.position() + length);
+                    type &= ~UNPACKED_PLATE;
+                } else {
+                    fill(channel, in, 8, crc);
+                    in.position(in.position() + 8);
+                }
+                if (type >= TYPES.length) {
+                    throw new IOException("Unknown vehicle type " + type + " in " + file);
+                }
+                settlement.add(type, charge);
+            }
+            fill(channel, in, TRAILER_BYTES - 1, crc);
+            long sessions = in.getLong();
+            long chargePaise = in.getLong();
+            settlement.historyRows = in.getLong();
+            settlement.historyPaise = in.getLong();
+            crc.update(in.duplicate().flip());
+            if (in.getInt() != (int) crc.getValue()) {
+                throw new IOException("Checksum mismatch in " + file);
+            }
+            if (in.hasRemaining() || channel.position() != channel.size()) {
+                throw new IOException("Data after the end of " + file);
+            }
+            if (sessions != settlement.sessions || chargePaise != settlement.chargePaise) {
+                throw new IOException(file + " lists " + settlement.sessions + " sessions for " + settlement.chargePaise
+                    + " paise but totals " + sessions + " for " + chargePaise);
+            }
+            return settlement;
+        }
+    }
+    
+    private static Settlement export(SessionStore store, LocalDateTime from, LocalDateTime to, Path file, boolean binary)
+            throws IOException {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Settlement ends before it starts: " + from + " to " + to);
+        }
+        int rows;
+        long storePaise;
+        synchronized (store) {
+            rows = store.size();
+            storePaise = store.getRevenuePaise();
+        }
+        long start = JournalRecord.toEpochSecond(from);
+        long end = JournalRecord.toEpochSecond(to);
+        Settlement settlement = new Settlement(from, to);
+        CRC32C crc = binary ? new CRC32C() : null;
+        ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (binary) {
+                out.putInt(MAGIC).putInt(VERSION).putLong(start).putLong(end);
+            } else {
+                out.put(CSV_HEADER);
+            }
+            SessionStore.Chunk[] chunks = store.chunksFor(rows);
+            for (int c = 0; c < chunks.length; c++) {
+                SessionStore.Chunk chunk = chunks[c];
+                int firstRow = c << SessionStore.CHUNK_BITS;
+                int chunkRows = Math.min(SessionStore.CHUNK_SIZE, rows - firstRow);
+                for (int i = 0; i < chunkRows; i++) {
+                    settlement.historyPaise += chunk.chargePaise[i];
+                    long exit = chunk.entrySecond[i] + chunk.dwellSeconds[i];
+                    if (exit < start || exit >= end) {
+                        continue;
+                    }
+                    byte[] plate = chunk.plateCode[i] == PlateCodec.NONE
+                        ? store.unpackedPlateOf(firstRow + i).getBytes(StandardCharsets.UTF_8) : null;
+                    int plateBytes = plate != null ? plate.length : 0;
+                    if (plateBytes > 0xFFFF) {
+                        throw new IOException("Plate of session " + (firstRow + i) + " is too long to settle");
+                    }
+                    if (out.remaining() < (binary ? RECORD_BYTES + 2 : MAX_CSV_LINE_BYTES) + plateBytes) {
+                        drain(channel, out, crc);
+                    }
+                    if (binary) {
+                        putRecord(out, chunk, i, plate);
+                    } else {
+                        putCsvLine(out, chunk, i, plate);
+                    }
+                    settlement.add(chunk.type[i], chunk.chargePaise[i]);
+                }
+            }
+            settlement.historyRows = rows;
+            if (settlement.historyPaise != storePaise) {
+                throw new IllegalStateException("Sessions add up to " + settlement.historyPaise
+                    + " paise but the store counted " + storePaise);
+            }
+            if (binary) {
+                if (out.remaining() < TRAILER_BYTES) {
+                    drain(channel, out, crc);
+                }
+                out.put((byte) END_OF_RECORDS).putLong(settlement.sessions).putLong(settlement.chargePaise)
+                    .putLong(settlement.historyRows).putLong(settlement.historyPaise);
+                drain(channel, out, crc);
+                out.putInt((int) crc.getValue());
+            }
+            drain(channel, out, null);
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return settlement;
+    }
+    
+    private static void putRecord(ByteBuffer out, SessionStore.Chunk chunk, int i, byte[] plate) {
+        out.put((byte) (plate == null ? chunk.type[i] : chunk.type[i] | UNPACKED_PLATE));
+        out.putInt(chunk.slot[i]).putLong(chunk.entrySecond[i]).putInt(chunk.dwellSeconds[i]).putLong(chunk.chargePaise[i])
+            .putLong(chunk.seq[i]);
+        if (plate == null) {
+            out.putLong(chunk.plateCode[i]);
+        } else {
+            out.putShort((short) plate.length).put(plate);
+        }
+    }
+    
+    // Written straight into the buffer's array; a ByteBuffer put per byte costs twice as much
+    private static void putCsvLine(ByteBuffer out, SessionStore.Chunk chunk, int i, byte[] plate) {
+        byte[] line = out.array();
+        int at = out.arrayOffset() + out.position();
+        long exit = chunk.entrySecond[i] + chunk.dwellSeconds[i];
+        // The receipt number, as Receipt prints it
+        at = putTime(line, at, exit, true);
+        line[at++] = '-';
+        at = putDecimal(line, at, chunk.slot[i]);
+        if (chunk.seq[i] > 0) {
+            line[at++] = '-';
+            at = putDecimal(line, at, chunk.seq[i]);
+        }
+        line[at++] = ',';
+        if (plate == null) {
+            out.position(at - out.arrayOffset());
+            PlateCodec.putAscii(chunk.plateCode[i], out);
+            at = out.arrayOffset() + out.position();
+        } else {
+            System.arraycopy(plate, 0, line, at, plate.length);
+            at += plate.length;
+        }
+        line[at++] = ',';
+        byte[] type = TYPE_CODES[chunk.type[i]];
+        System.arraycopy(type, 0, line, at, type.length);
+        at += type.length;
+        line[at++] = ',';
+        at = putDecimal(line, at, chunk.slot[i]);
+        line[at++] = ',';
+        at = putTime(line, at, chunk.entrySecond[i], false);
+        line[at++] = ',';
+        at = putTime(line, at, exit, false);
+        line[at++] = ',';
+        at = putDecimal(line, at, chunk.dwellSeconds[i] / 60);
+        line[at++] = ',';
+        long charge = chunk.chargePaise[i];
+        if (charge < 0) {
+            line[at++] = '-';
+            charge = -charge;
+        }
+        at = putDecimal(line, at, charge / 100);
+        line[at++] = '.';
+        at = putPair(line, at, (int) (charge % 100));
+        line[at++] = '\n';
+        out.position(at - out.arrayOffset());
+    }
+    
+    // 2026-10-17T08:15:02, or 20261017-081502 for a receipt number
+    private static int putTime(byte[] line, int at, long epochSecond, boolean compact) {
+        // Days to a civil date, as in java.time but without building a LocalDateTime
+        int zeroDay = (int) Math.floorDiv(epochSecond, SECONDS_PER_DAY) + 719_468;
+        int era = Math.floorDiv(zeroDay, 146_097);
+        int dayOfEra = zeroDay - era * 146_097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthIndex = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        int month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        int secondOfDay = Math.floorMod(epochSecond, SECONDS_PER_DAY);
+        int minuteOfDay = secondOfDay / 60;
+        
+        at = putPair(line, at, year / 100);
+        at = putPair(line, at, year % 100);
+        if (!compact) {
+            line[at++] = '-';
+        }
+        at = putPair(line, at, month);
+        if (!compact) {
+            line[at++] = '-';
+        }
+        at = putPair(line, at, day);
+        line[at++] = (byte) (compact ? '-' : 'T');
+        at = putPair(line, at, minuteOfDay / 60);
+        if (!compact) {
+            line[at++] = ':';
+        }
+        at = putPair(line, at, minuteOfDay % 60);
+        if (!compact) {
+            line[at++] = ':';
+        }
+        return putPair(line, at, secondOfDay % 60);
+    }
+    
+    // Two digits of 0 to 99 from a table, which saves a division each
+    private static int putPair(byte[] line, int at, int value) {
+        line[at] = DIGIT_PAIRS[2 * value];
+        line[at + 1] = DIGIT_PAIRS[2 * value + 1];
+        return at + 2;
+    }
+    
+    private static int putDecimal(byte[] line, int at, long value) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        int end = at + digits;
+        for (int i = end - 1; i >= at; i--) {
+            line[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+    
+    private static void drain(FileChannel channel, ByteBuffer out, CRC32C crc) throws IOException {
+        out.flip();
+        if (crc != null) {
+            crc.update(out.duplicate());
+        }
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+    
+    // Makes at least n bytes readable, checksumming the ones already read before they are dropped
+    private static void fill(FileChannel channel, ByteBuffer in, int n, CRC32C crc) throws IOException {
+        if (in.remaining() >= n) {
+            return;
+        }
+        if (n > in.capacity()) {
+            throw new IOException("Settlement record of " + n + " bytes does not fit the read buffer");
+        }
+        crc.update(in.duplicate().flip());
+        in.compact();
+        while (in.position() < n) {
+            if (channel.read(in) < 0) {
+                throw new IOException("Settlement file ends early");
+            }
+        }
+        in.flip();
+    }
+}
@@ -0,0 +1,202 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * Many lots served from one process. Each lot is a shard: its own
+ * ParkingEngine, written only by its own GateEventPipeline worker, so lots
+ * never contend on shared state and busy lots spread over the available
+ * cores. Events are routed to their lot by name, applied in arrival order
+ * within the lot, and every result reaches the shared sink together with
+ * the name of the lot it came from.
+ *
+ * Questions about the whole network (occupancy, where a plate is parked,
+ * revenue) fan out over the lots and merge the answers. They read each
+ * engine's lock-free state directly instead of queueing behind the lot's
+ * writes, so a total is the sum of per-lot values read a moment apart.
+ * Slots held for a reservation are neither occupied nor available.
+ */
+public class ShardedParkingEngine implements AutoCloseable {
+    
+    public static class Lot {
+        private final String name;
+        private final ParkingEngine engine;
+        private final GateEventPipeline pipeline;
+        
+        Lot(String name, ParkingEngine engine, GateEventPipeline pipeline) {
+            this.name = name;
+            this.engine = engine;
+            this.pipeline = pipeline;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public ParkingEngine getEngine() {
+            return engine;
+        }
+        
+        public GateEventPipeline getPipeline() {
+            return pipeline;
+        }
+    }
+    
+    public static class Occupancy {
+        private final int totalSlots;
+        private final int occupied;
+        private final int available;
+        private final long revenuePaise;
+        
+        public Occupancy(int totalSlots, int occupied, int available, long revenuePaise) {
+            this.totalSlots = totalSlots;
+            this.occupied = occupied;
+            this.available = available;
+            this.revenuePaise = revenuePaise;
+        }
+        
+        public int getTotalSlots() {
+            return totalSlots;
+        }
+        
+        public int getOccupied() {
+            return occupied;
+        }
+        
+        public int getAvailable() {
+            return available;
+        }
+        
+        public long getRevenuePaise() {
+            return revenuePaise;
+        }
+    }
+    
+    public static class PlateLocation {
+        private final String lot;
+        private final int slotNumber;
+        
+        public PlateLocation(String lot, int slotNumber) {
+            this.lot = lot;
+            this.slotNumber = slotNumber;
+        }
+        
+        public String getLot() {
+            return lot;
+        }
+        
+        public int getSlotNumber() {
+            return slotNumber;
+        }
+    }
+    
+    private final Map<String, Lot> lotsByName = new ConcurrentHashMap<>();
+    private final List<Lot> lots = new CopyOnWriteArrayList<>();
+    private final int capacity;
+    private final int maxBatch;
+    private final BiConsumer<String, GateResult> sink;
+    
+    // capacity and maxBatch apply to each lot's pipeline; the sink is called on the lots' worker threads
+    public ShardedParkingEngine(int capacity, int maxBatch, BiConsumer<String, GateResult> sink) {
+        this.capacity = capacity;
+        this.maxBatch = maxBatch;
+        this.sink = sink;
+    }
+    
+    // Adds a lot and starts its worker; metrics and assigner may be null
+    public synchronized Lot addLot(String name, ParkingEngine engine, ParkingMetrics metrics, SlotAssigner assigner) {
+        if (lotsByName.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate lot: " + name);
+        }
+        GateEventPipeline pipeline = new GateEventPipeline(engine, metrics, assigner, capacity, maxBatch,
+            result -> sink.accept(name, result));
+        Lot lot = new Lot(name, engine, pipeline);
+        pipeline.start();
+        lots.add(lot);
+        lotsByName.put(name, lot);
+        return lot;
+    }
+    
+    public List<Lot> getLots() {
+        return new ArrayList<>(lots);
+    }
+    
+    public Lot lot(String name) {
+        Lot lot = lotsByName.get(name);
+        if (lot == null) {
+            throw new IllegalArgumentException("No such lot: " + name);
+        }
+        return lot;
+    }
+    
+    // Returns false at once if the lot's buffer is full
+    public boolean offer(String lot, GateEvent event) {
+        return lot(lot).pipeline.offer(event);
+    }
+    
+    public void put(String lot, GateEvent event) throws InterruptedException {
+        lot(lot).pipeline.put(event);
+    }
+    
+    // Blocks until every lot has applied the events it accepted so far
+    public void awaitProcessed() throws InterruptedException {
+        for (Lot lot : lots) {
+            lot.pipeline.awaitProcessed();
+        }
+    }
+    
+    public Occupancy occupancy() {
+        int total = 0;
+        int occupied = 0;
+        int available = 0;
+        long revenue = 0;
+        for (Lot lot : lots) {
+            total += lot.engine.getTotalSlots();
+            occupied += lot.engine.getOccupiedCount();
+            available += lot.engine.getAvailableCount();
+            revenue += lot.engine.getTotalRevenuePaise();
+        }
+        return new Occupancy(total, occupied, available, revenue);
+    }
+    
+    // In the order the lots were added
+    public Map<String, Occupancy> occupancyByLot() {
+        Map<String, Occupancy> byLot = new LinkedHashMap<>();
+        for (Lot lot : lots) {
+            byLot.put(lot.name, new Occupancy(lot.engine.getTotalSlots(), lot.engine.getOccupiedCount(),
+                lot.engine.getAvailableCount(), lot.engine.getTotalRevenuePaise()));
+        }
+        return byLot;
+    }
+    
+    // Lot and slot holding the plate, or null if it is parked in none of them
+    public PlateLocation findPlate(String plate) {
+        for (Lot lot : lots) {
+            int slotNumber = lot.engine.findSlotByPlate(plate);
+            if (slotNumber > 0) {
+                return new PlateLocation(lot.name, slotNumber);
+            }
+        }
+        return null;
+    }
+    
+    public long getTotalRevenuePaise() {
+        long revenue = 0;
+        for (Lot lot : lots) {
+            revenue += lot.engine.getTotalRevenuePaise();
+        }
+        return revenue;
+    }
+    
+    // Lets every lot apply what is still queued, then stops the workers
+    @Override
+    public void close() {
+        for (Lot lot : lots) {
+            lot.pipeline.close();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Picks the slot for an arriving vehicle: the nearest free slot its size
+ * fits, measured from the gate it came in by, using one SlotGrid per slot
+ * size. Other levels count as a fixed ramp distance per level away.
+ *
+ * NEAREST takes whichever fitting slot is closest. BEST_FIT keeps the lot
+ * from fragmenting: a bigger slot than needed costs an extra distance per
+ * size step, so a car only takes a truck bay when it saves a long walk, and
+ * the last tenth of each size's free slots is held back for vehicles that
+ * need that size.
+ *
+ * The engine stays the authority on which slots are free; the assigner
+ * claims its pick through the engine and looks again if another gate got
+ * there first. A vehicle with a booking in the ReservationBook parks in the
+ * slot held for it instead. A vehicle without one is only given a slot
+ * that has bookings when no slot without any fits, so that it is not in
+ * the way when one of them begins.
+ */
+public class SlotAssigner implements ParkingListener {
+    
+    public enum Mode {
+        NEAREST,
+        BEST_FIT
+    }
+    
+    private static final float LEVEL_DISTANCE = 40f;
+    private static final float OVERSIZE_DISTANCE = 60f;
+    private static final int RESERVE_PERCENT = 10;
+    private static final int MAX_ATTEMPTS = 16;
+    private static final SlotSize[] SIZES = SlotSize.values();
+    
+    private final LotPlan plan;
+    private final ParkingEngine engine;
+    private final SlotGrid[] grids = new SlotGrid[SIZES.length];
+    private final int[] reserve = new int[SIZES.length];
+    private volatile Mode mode;
+    private volatile ReservationBook reservations;
+    
+    public SlotAssigner(LotPlan plan, ParkingEngine engine, Mode mode) {
+        if (plan.getTotalSlots() != engine.getTotalSlots()) {
+            throw new IllegalArgumentException("Plan has " + plan.getTotalSlots() + " slots, lot has " + engine.getTotalSlots());
+        }
+        this.plan = plan;
+        this.engine = engine;
+        this.mode = mode;
+        for (SlotSize size : SIZES) {
+            grids[size.ordinal()] = new SlotGrid(plan, size);
+            reserve[size.ordinal()] = (grids[size.ordinal()].getSlotCount() * RESERVE_PERCENT + 99) / 100;
+        }
+    }
+    
+    // Starts from the vehicles already parked, then follows the engine
+    public void attach() {
+        for (int slot = engine.nextOccupiedSlot(1); slot > 0; slot = engine.nextOccupiedSlot(slot + 1)) {
+            gridOf(slot).adjust(slot, -1);
+        }
+        engine.addListener(this);
+    }
+    
+    public void detach() {
+        engine.removeListener(this);
+    }
+    
+    @Override
+    public void vehicleParked(int slotNumber, Vehicle vehicle) {
+        gridOf(slotNumber).adjust(slotNumber, -1);
+    }
+    
+    @Override
+    public void vehicleExited(ParkingSession session) {
+        gridOf(session.getSlotNumber()).adjust(session.getSlotNumber(), 1);
+    }
+    
+    @Override
+    public void slotHeld(int slotNumber) {
+        gridOf(slotNumber).adjust(slotNumber, -1);
+    }
+    
+    @Override
+    public void holdReleased(int slotNumber) {
+        gridOf(slotNumber).adjust(slotNumber, 1);
+    }
+    
+    public LotPlan getPlan() {
+        return plan;
+    }
+    
+    public Mode getMode() {
+        return mode;
+    }
+    
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+    
+    public ReservationBook getReservations() {
+        return reservations;
+    }
+    
+    public void setReservations(ReservationBook reservations) {
+        this.reservations = reservations;
+    }
+    
+    public int getFreeCount(SlotSize size) {
+        return grids[size.ordinal()].getFreeCount();
+    }
+    
+    public boolean fits(int slotNumber, VehicleType type) {
+        return plan.fits(slotNumber, type);
+    }
+    
+    // Slot the vehicle would get from the gate, without claiming it, or -1 if none fits
+    public int findSlot(VehicleType type, String gateName) {
+        ReservationBook book = reservations;
+        int slotNumber = findSlot(type, gateName, book);
+        return slotNumber < 0 && book != null ? findSlot(type, gateName, null) : slotNumber;
+    }
+    
+    // Passes over slots with bookings in the book if it is not null
+    private int findSlot(VehicleType type, String gateName, ReservationBook unbookedIn) {
+        LotPlan.Gate gate = plan.gate(gateName);
+        SlotSize needed = type.getSlotSize();
+        boolean bestFit = mode == Mode.BEST_FIT;
+        SlotGrid.Candidate best = new SlotGrid.Candidate();
+        for (int s = needed.ordinal(); s < SIZES.length; s++) {
+            int steps = s - needed.ordinal();
+            if (bestFit && steps > 0 && grids[s].getFreeCount() <= reserve[s]) {
+                continue;
+            }
+            float penalty = bestFit ? steps * OVERSIZE_DISTANCE : 0;
+            searchLevels(grids[s], gate, penalty, unbookedIn, best);
+        }
+        return best.getSlotNumber();
+    }
+    
+    // Parks in the slot findSlot picks and returns it, or LOT_FULL / ALREADY_PARKED
+    public int parkVehicle(Vehicle vehicle, String gateName) {
+        if (engine.findSlotByPlate(vehicle.getVehicleNumber()) > 0) {
+            return ParkingEngine.ALREADY_PARKED;
+        }
+        ReservationBook book = reservations;
+        if (book != null) {
+            int reserved = book.arrive(vehicle);
+            if (reserved > 0) {
+                return reserved;
+            }
+        }
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            int slotNumber = findSlot(vehicle.getType(), gateName);
+            if (slotNumber < 0) {
+                return ParkingEngine.LOT_FULL;
+            }
+            if (engine.parkVehicle(slotNumber, vehicle)) {
+                return slotNumber;
+            }
+            if (engine.findSlotByPlate(vehicle.getVehicleNumber()) > 0) {
+                return ParkingEngine.ALREADY_PARKED;
+            }
+            // Another gate took the slot between the search and the claim
+        }
+        return ParkingEngine.LOT_FULL;
+    }
+    
+    // The gate's own level first, then outward while another level could still be closer
+    private void searchLevels(SlotGrid grid, LotPlan.Gate gate, float penalty, ReservationBook unbookedIn,
+                              SlotGrid.Candidate best) {
+        if (grid.getFreeCount() <= 0) {
+            return;
+        }
+        int levels = plan.getLayout().getLevels();
+        for (int away = 0; away < levels; away++) {
+            float extra = penalty + away * LEVEL_DISTANCE;
+            if (extra >= best.getCost()) {
+                return;
+            }
+            int below = gate.getLevel() - away;
+            int above = gate.getLevel() + away;
+            if (below >= 1) {
+                grid.search(engine, unbookedIn, below, gate.getX(), gate.getY(), extra, best);
+            }
+            if (away > 0 && above <= levels) {
+                grid.search(engine, unbookedIn, above, gate.getX(), gate.getY(), extra, best);
+            }
+        }
+    }
+    
+    private SlotGrid gridOf(int slotNumber) {
+        return grids[plan.sizeOf(slotNumber).ordinal()];
+    }
+}
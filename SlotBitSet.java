@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * Fixed-size bit set with 64-ary summary levels on top of the leaf words.
+ * A summary bit is set when the word below it has any bit set, so
+ * nextSetBit() touches at most two words per level (four levels cover 16M
+ * slots) instead of scanning the whole set.
+ */
+public class SlotBitSet {
+    
+    private final int size;
+    private final long[][] levels;
+    private int cardinality;
+    
+    public SlotBitSet(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Size must be positive: " + size);
+        }
+        this.size = size;
+        
+        int depth = 1;
+        for (int words = wordCount(size); words > 1; words = wordCount(words)) {
+            depth++;
+        }
+        levels = new long[depth][];
+        int bits = size;
+        for (int level = 0; level < depth; level++) {
+            levels[level] = new long[wordCount(bits)];
+            bits = levels[level].length;
+        }
+    }
+    
+    private static int wordCount(int bits) {
+        return (bits + 63) >>> 6;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public int cardinality() {
+        return cardinality;
+    }
+    
+    public boolean get(int index) {
+        checkIndex(index);
+        return (levels[0][index >>> 6] & (1L << index)) != 0;
+    }
+    
+    public void set(int index) {
+        checkIndex(index);
+        if (get(index)) {
+            return;
+        }
+        cardinality++;
+        for (long[] words : levels) {
+            int w = index >>> 6;
+            boolean wasEmpty = words[w] == 0;
+            words[w] |= 1L << index;
+            if (!wasEmpty) {
+                return;
+            }
+            index = w;
+        }
+    }
+    
+    public void clear(int index) {
+        checkIndex(index);
+        if (!get(index)) {
+            return;
+        }
+        cardinality--;
+        for (long[] words : levels) {
+            int w = index >>> 6;
+            words[w] &= ~(1L << index);
+            if (words[w] != 0) {
+                return;
+            }
+            index = w;
+        }
+    }
+    
+    public void setAll() {
+        int bits = size;
+        for (long[] words : levels) {
+            Arrays.fill(words, -1L);
+            if ((bits & 63) != 0) {
+                words[words.length - 1] = (1L << bits) - 1;
+            }
+            bits = words.length;
+        }
+        cardinality = size;
+    }
+    
+    public int nextSetBit(int fromIndex) {
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        if (fromIndex >= size) {
+            return -1;
+        }
+        
+        // Climb until some level has a set bit at or after the position
+        int level = 0;
+        int index = fromIndex;
+        while (true) {
+            long[] words = levels[level];
+            int w = index >>> 6;
+            if (w >= words.length) {
+                return -1;
+            }
+            long word = words[w] & (-1L << index);
+            if (word != 0) {
+                index = (w << 6) + Long.numberOfTrailingZeros(word);
+                break;
+            }
+            if (level == levels.length - 1) {
+                return -1;
+            }
+            level++;
+            index = w + 1;
+        }
+        
+        // Descend through the lowest set bit of each word below it
+        while (level > 0) {
+            level--;
+            index = (index << 6) + Long.numberOfTrailingZeros(levels[level][index]);
+        }
+        return index;
+    }
+    
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside 0.." + (size - 1));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+import java.util.function.IntConsumer;
+
+/**
+ * Collects the slots changed since the last render so the UI restyles only
+ * those. The first change after a drain fires the scheduler once; any
+ * further changes before the drain ride along in the same render pass.
+ */
+public class SlotChangeTracker implements ParkingListener {
+    
+    private final SlotBitSet dirtySlots;
+    private final Runnable scheduler;
+    private boolean scheduled;
+    
+    public SlotChangeTracker(int totalSlots, Runnable scheduler) {
+        this.dirtySlots = new SlotBitSet(totalSlots);
+        this.scheduler = scheduler;
+    }
+    
+    @Override
+    public void vehicleParked(int slotNumber, Vehicle vehicle) {
+        markDirty(slotNumber);
+    }
+    
+    @Override
+    public void vehicleExited(ParkingSession session) {
+        markDirty(session.getSlotNumber());
+    }
+    
+    @Override
+    public void slotHeld(int slotNumber) {
+        markDirty(slotNumber);
+    }
+    
+    @Override
+    public void holdReleased(int slotNumber) {
+        markDirty(slotNumber);
+    }
+    
+    public void markDirty(int slotNumber) {
+        boolean schedule;
+        synchronized (this) {
+            dirtySlots.set(slotNumber - 1);
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            scheduler.run();
+        }
+    }
+    
+    // Hands every dirty slot to the action once, in slot order, and resets the tracker
+    public void drain(IntConsumer action) {
+        int[] slots;
+        synchronized (this) {
+            slots = new int[dirtySlots.cardinality()];
+            int count = 0;
+            for (int i = dirtySlots.nextSetBit(0); i >= 0; i = dirtySlots.nextSetBit(i + 1)) {
+                slots[count++] = i + 1;
+                dirtySlots.clear(i);
+            }
+            scheduled = false;
+        }
+        for (int slotNumber : slots) {
+            action.accept(slotNumber);
+        }
+    }
+}
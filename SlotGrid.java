@@ -0,0 +1,213 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Spatial index over the slots of one size. Each level is cut into square
+ * cells of about sixteen slots, the slots of a cell are stored together with
+ * their coordinates, and every cell keeps a count of its free slots so a
+ * search steps over full cells without touching their slots.
+ *
+ * Nearest-free search walks rings of cells outward from the gate and stops
+ * as soon as no slot in a further ring could beat the best one found, so it
+ * looks at a handful of cells however large the lot is. Free counts are only
+ * a hint kept up to date from engine events; a slot is taken as free only if
+ * the engine says so.
+ */
+public class SlotGrid {
+    
+    private static final int SLOTS_PER_CELL = 16;
+    
+    // Best slot found so far across grids and levels, by cost in metres
+    public static class Candidate {
+        int slotNumber = -1;
+        float cost = Float.POSITIVE_INFINITY;
+        
+        public int getSlotNumber() {
+            return slotNumber;
+        }
+        
+        public float getCost() {
+            return cost;
+        }
+    }
+    
+    private final LotPlan plan;
+    private final float cellSize;
+    private final float[] minX;
+    private final float[] minY;
+    private final int[] columns;
+    private final int[] rows;
+    private final int[] levelBase;
+    private final int[] cellStart;
+    private final int[] slots;
+    private final float[] slotX;
+    private final float[] slotY;
+    private final AtomicIntegerArray freeInCell;
+    private final AtomicInteger free = new AtomicInteger();
+    
+    public SlotGrid(LotPlan plan, SlotSize size) {
+        this.plan = plan;
+        int levels = plan.getLayout().getLevels();
+        minX = new float[levels];
+        minY = new float[levels];
+        float[] maxX = new float[levels];
+        float[] maxY = new float[levels];
+        int[] perLevel = new int[levels];
+        Arrays.fill(minX, Float.POSITIVE_INFINITY);
+        Arrays.fill(minY, Float.POSITIVE_INFINITY);
+        Arrays.fill(maxX, Float.NEGATIVE_INFINITY);
+        Arrays.fill(maxY, Float.NEGATIVE_INFINITY);
+        int count = 0;
+        for (int slotNumber = 1; slotNumber <= plan.getTotalSlots(); slotNumber++) {
+            if (plan.sizeOf(slotNumber) == size) {
+                int l = plan.levelOf(slotNumber) - 1;
+                minX[l] = Math.min(minX[l], plan.xOf(slotNumber));
+                minY[l] = Math.min(minY[l], plan.yOf(slotNumber));
+                maxX[l] = Math.max(maxX[l], plan.xOf(slotNumber));
+                maxY[l] = Math.max(maxY[l], plan.yOf(slotNumber));
+                perLevel[l]++;
+                count++;
+            }
+        }
+        
+        // One cell size for the whole grid, chosen from the area the slots cover
+        double area = 0;
+        for (int l = 0; l < levels; l++) {
+            if (perLevel[l] > 0) {
+                area += Math.max(maxX[l] - minX[l], 1.0) * Math.max(maxY[l] - minY[l], 1.0);
+            }
+        }
+        cellSize = count == 0 ? 1 : (float) Math.max(1.0, Math.sqrt(area * SLOTS_PER_CELL / count));
+        
+        columns = new int[levels];
+        rows = new int[levels];
+        levelBase = new int[levels + 1];
+        for (int l = 0; l < levels; l++) {
+            if (perLevel[l] > 0) {
+                columns[l] = (int) ((maxX[l] - minX[l]) / cellSize) + 1;
+                rows[l] = (int) ((maxY[l] - minY[l]) / cellSize) + 1;
+            }
+            levelBase[l + 1] = levelBase[l] + columns[l] * rows[l];
+        }
+        
+        // Counting sort of the slots by cell
+        int cells = levelBase[levels];
+        cellStart = new int[cells + 1];
+        for (int slotNumber = 1; slotNumber <= plan.getTotalSlots(); slotNumber++) {
+            if (plan.sizeOf(slotNumber) == size) {
+                cellStart[cellOf(slotNumber) + 1]++;
+            }
+        }
+        for (int cell = 0; cell < cells; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        slots = new int[count];
+        slotX = new float[count];
+        slotY = new float[count];
+        int[] next = Arrays.copyOf(cellStart, cells);
+        freeInCell = new AtomicIntegerArray(cells);
+        for (int slotNumber = 1; slotNumber <= plan.getTotalSlots(); slotNumber++) {
+            if (plan.sizeOf(slotNumber) == size) {
+                int cell = cellOf(slotNumber);
+                int position = next[cell]++;
+                slots[position] = slotNumber;
+                slotX[position] = plan.xOf(slotNumber);
+                slotY[position] = plan.yOf(slotNumber);
+                freeInCell.incrementAndGet(cell);
+            }
+        }
+        free.set(count);
+    }
+    
+    public int getSlotCount() {
+        return slots.length;
+    }
+    
+    public int getFreeCount() {
+        return free.get();
+    }
+    
+    // Called with -1 when a slot of this size is taken and +1 when it is released
+    public void adjust(int slotNumber, int delta) {
+        freeInCell.addAndGet(cellOf(slotNumber), delta);
+        free.addAndGet(delta);
+    }
+    
+    // Looks on one level for a free slot cheaper than the candidate; extraCost is added to the distance.
+    // Slots with bookings in unbookedIn are passed over unless it is null
+    public void search(ParkingEngine engine, ReservationBook unbookedIn, int level, float x, float y, float extraCost,
+                       Candidate best) {
+        int l = level - 1;
+        int width = columns[l];
+        int height = rows[l];
+        if (width == 0) {
+            return;
+        }
+        int centerX = clamp((int) Math.floor((x - minX[l]) / cellSize), width);
+        int centerY = clamp((int) Math.floor((y - minY[l]) / cellSize), height);
+        int maxRing = Math.max(Math.max(centerX, width - 1 - centerX), Math.max(centerY, height - 1 - centerY));
+        
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Every cell in this ring is at least ring - 1 cells from the gate's (clamped) cell
+            if (ring > 0 && extraCost + (ring - 1) * cellSize >= best.cost) {
+                return;
+            }
+            int top = centerY - ring;
+            int bottom = centerY + ring;
+            for (int cx = Math.max(0, centerX - ring); cx <= Math.min(width - 1, centerX + ring); cx++) {
+                if (top >= 0) {
+                    scanCell(engine, unbookedIn, l, cx, top, x, y, extraCost, best);
+                }
+                if (ring > 0 && bottom < height) {
+                    scanCell(engine, unbookedIn, l, cx, bottom, x, y, extraCost, best);
+                }
+            }
+            for (int cy = Math.max(0, top + 1); cy <= Math.min(height - 1, bottom - 1); cy++) {
+                if (ring > 0 && centerX - ring >= 0) {
+                    scanCell(engine, unbookedIn, l, centerX - ring, cy, x, y, extraCost, best);
+                }
+                if (ring > 0 && centerX + ring < width) {
+                    scanCell(engine, unbookedIn, l, centerX + ring, cy, x, y, extraCost, best);
+                }
+            }
+        }
+    }
+    
+    private void scanCell(ParkingEngine engine, ReservationBook unbookedIn, int l, int cx, int cy, float x, float y,
+                          float extraCost, Candidate best) {
+        int cell = levelBase[l] + cy * columns[l] + cx;
+        if (freeInCell.get(cell) <= 0) {
+            return;
+        }
+        // Skip the cell if even its nearest edge is no better than the best slot so far
+        float left = minX[l] + cx * cellSize;
+        float bottom = minY[l] + cy * cellSize;
+        float gapX = Math.max(0, Math.max(left - x, x - (left + cellSize)));
+        float gapY = Math.max(0, Math.max(bottom - y, y - (bottom + cellSize)));
+        if (extraCost + (float) Math.sqrt(gapX * gapX + gapY * gapY) >= best.cost) {
+            return;
+        }
+        for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+            float dx = slotX[i] - x;
+            float dy = slotY[i] - y;
+            float cost = extraCost + (float) Math.sqrt(dx * dx + dy * dy);
+            if (cost < best.cost && engine.isAvailable(slots[i])
+                    && (unbookedIn == null || !unbookedIn.hasBookings(slots[i]))) {
+                best.cost = cost;
+                best.slotNumber = slots[i];
+            }
+        }
+    }
+    
+    private int cellOf(int slotNumber) {
+        int l = plan.levelOf(slotNumber) - 1;
+        int cx = clamp((int) ((plan.xOf(slotNumber) - minX[l]) / cellSize), columns[l]);
+        int cy = clamp((int) ((plan.yOf(slotNumber) - minY[l]) / cellSize), rows[l]);
+        return levelBase[l] + cy * columns[l] + cx;
+    }
+    
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+}
@@ -0,0 +1,180 @@
+import javafx.geometry.Orientation;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+import javafx.scene.text.TextAlignment;
+import java.util.function.IntConsumer;
+
+/**
+ * Slot map drawn on a single canvas. Only the rows inside the viewport are
+ * painted, so the node count and layout cost stay the same whether the
+ * lot has twenty slots or a hundred thousand.
+ */
+public class SlotMapView extends Region {
+    
+    private static final double TILE_SIZE = 100;
+    private static final double GAP = 15;
+    private static final double ARC = 16;
+    private static final Color AVAILABLE_FILL = Color.web("#10b981");
+    private static final Color AVAILABLE_BORDER = Color.web("#059669");
+    private static final Color OCCUPIED_FILL = Color.web("#ef4444");
+    private static final Color OCCUPIED_BORDER = Color.web("#dc2626");
+    private static final Color HOVER_BORDER = Color.web("#1e293b");
+    private static final Font NUMBER_FONT = Font.font("System", FontWeight.BOLD, 24);
+    private static final Font STATUS_FONT = Font.font("System", 12);
+    
+    private final ParkingEngine engine;
+    private final Canvas canvas = new Canvas();
+    private final ScrollBar scrollBar = new ScrollBar();
+    private IntConsumer onSlotClicked = slotNumber -> { };
+    
+    // Slots shown, as an inclusive range of slot numbers
+    private int firstSlot;
+    private int lastSlot;
+    private int columns = 1;
+    private int hoveredSlot = -1;
+    
+    public SlotMapView(ParkingEngine engine) {
+        this.engine = engine;
+        this.firstSlot = 1;
+        this.lastSlot = engine.getTotalSlots();
+        
+        scrollBar.setOrientation(Orientation.VERTICAL);
+        scrollBar.valueProperty().addListener((obs, oldValue, newValue) -> redraw());
+        getChildren().addAll(canvas, scrollBar);
+        
+        setOnScroll(e -> scrollBar.setValue(clamp(scrollBar.getValue() - e.getDeltaY())));
+        canvas.setOnMouseMoved(e -> setHoveredSlot(slotAt(e.getX(), e.getY())));
+        canvas.setOnMouseExited(e -> setHoveredSlot(-1));
+        canvas.setOnMouseClicked(e -> {
+            int slotNumber = slotAt(e.getX(), e.getY());
+            if (slotNumber > 0) {
+                onSlotClicked.accept(slotNumber);
+            }
+        });
+    }
+    
+    public void setOnSlotClicked(IntConsumer onSlotClicked) {
+        this.onSlotClicked = onSlotClicked;
+    }
+    
+    public void showRange(int firstSlot, int lastSlot) {
+        this.firstSlot = firstSlot;
+        this.lastSlot = lastSlot;
+        scrollBar.setValue(0);
+        requestLayout();
+        redraw();
+    }
+    
+    // Repaints one tile if it is on screen; off-screen changes are picked up when scrolled to
+    public void refreshSlot(int slotNumber) {
+        if (isVisible(slotNumber)) {
+            drawTile(slotNumber);
+        }
+    }
+    
+    @Override
+    protected void layoutChildren() {
+        double barWidth = scrollBar.prefWidth(-1);
+        double width = Math.max(0, getWidth() - barWidth);
+        double height = getHeight();
+        canvas.setWidth(width);
+        canvas.setHeight(height);
+        scrollBar.resizeRelocate(width, 0, barWidth, height);
+        
+        columns = Math.max(1, (int) ((width + GAP) / (TILE_SIZE + GAP)));
+        double contentHeight = rowCount() * (TILE_SIZE + GAP);
+        scrollBar.setMax(Math.max(0, contentHeight - height));
+        scrollBar.setVisibleAmount(height);
+        scrollBar.setValue(clamp(scrollBar.getValue()));
+        redraw();
+    }
+    
+    @Override
+    protected double computePrefHeight(double width) {
+        return Math.min(rowCount(), 4) * (TILE_SIZE + GAP);
+    }
+    
+    private void redraw() {
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        int firstRow = (int) (scrollBar.getValue() / (TILE_SIZE + GAP));
+        int lastRow = (int) ((scrollBar.getValue() + canvas.getHeight()) / (TILE_SIZE + GAP));
+        int from = firstSlot + firstRow * columns;
+        int to = Math.min(lastSlot, firstSlot + (lastRow + 1) * columns - 1);
+        for (int slotNumber = from; slotNumber <= to; slotNumber++) {
+            drawTile(slotNumber);
+        }
+    }
+    
+    private void drawTile(int slotNumber) {
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        int position = slotNumber - firstSlot;
+        double x = (position % columns) * (TILE_SIZE + GAP);
+        double y = (position / columns) * (TILE_SIZE + GAP) - scrollBar.getValue();
+        boolean available = engine.isAvailable(slotNumber);
+        
+        g.clearRect(x - 2, y - 2, TILE_SIZE + 4, TILE_SIZE + 4);
+        g.setFill(available ? AVAILABLE_FILL : OCCUPIED_FILL);
+        g.fillRoundRect(x, y, TILE_SIZE, TILE_SIZE, ARC, ARC);
+        g.setStroke(slotNumber == hoveredSlot ? HOVER_BORDER : available ? AVAILABLE_BORDER : OCCUPIED_BORDER);
+        g.setLineWidth(slotNumber == hoveredSlot ? 3 : 2);
+        g.strokeRoundRect(x, y, TILE_SIZE, TILE_SIZE, ARC, ARC);
+        
+        g.setFill(Color.WHITE);
+        g.setTextAlign(TextAlignment.CENTER);
+        g.setTextBaseline(VPos.CENTER);
+        g.setFont(NUMBER_FONT);
+        g.fillText(String.valueOf(slotNumber), x + TILE_SIZE / 2, y + TILE_SIZE / 2 - 10);
+        g.setFont(STATUS_FONT);
+        g.fillText(available ? "Free" : engine.isHeld(slotNumber) ? "Reserved" : "Occupied", x + TILE_SIZE / 2,
+            y + TILE_SIZE / 2 + 18);
+    }
+    
+    private void setHoveredSlot(int slotNumber) {
+        if (slotNumber == hoveredSlot) {
+            return;
+        }
+        int previous = hoveredSlot;
+        hoveredSlot = slotNumber;
+        if (previous > 0) {
+            refreshSlot(previous);
+        }
+        if (slotNumber > 0) {
+            refreshSlot(slotNumber);
+        }
+    }
+    
+    private int slotAt(double x, double y) {
+        double contentY = y + scrollBar.getValue();
+        int col = (int) (x / (TILE_SIZE + GAP));
+        int row = (int) (contentY / (TILE_SIZE + GAP));
+        boolean inGap = x % (TILE_SIZE + GAP) > TILE_SIZE || contentY % (TILE_SIZE + GAP) > TILE_SIZE;
+        if (col >= columns || inGap) {
+            return -1;
+        }
+        int slotNumber = firstSlot + row * columns + col;
+        return slotNumber <= lastSlot ? slotNumber : -1;
+    }
+    
+    private boolean isVisible(int slotNumber) {
+        if (slotNumber < firstSlot || slotNumber > lastSlot) {
+            return false;
+        }
+        double y = ((slotNumber - firstSlot) / columns) * (TILE_SIZE + GAP) - scrollBar.getValue();
+        return y + TILE_SIZE >= 0 && y <= canvas.getHeight();
+    }
+    
+    private int rowCount() {
+        return (lastSlot - firstSlot + columns) / columns;
+    }
+    
+    private double clamp(double value) {
+        return Math.max(0, Math.min(scrollBar.getMax(), value));
+    }
+}
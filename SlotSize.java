@@ -0,0 +1,23 @@
+/**
+ * Physical size class of a parking slot, smallest first. A vehicle fits any
+ * slot at least as large as the one its type needs.
+ */
+public enum SlotSize {
+    SMALL("Small"),
+    MEDIUM("Medium"),
+    LARGE("Large");
+    
+    private final String displayName;
+    
+    SlotSize(String displayName) {
+        this.displayName = displayName;
+    }
+    
+    public String getDisplayName() {
+        return displayName;
+    }
+    
+    public boolean fits(SlotSize vehicleSize) {
+        return compareTo(vehicleSize) >= 0;
+    }
+}
@@ -0,0 +1,176 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDateTime;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What each slot holds, as fixed-width records in one direct buffer outside
+ * the Java heap. A record is three longs: the plate code from PlateCodec,
+ * the entry time in epoch seconds, and a header with a generation count,
+ * the vehicle type and the slot state. The slot number is the record's
+ * position. A million slots take 24 MB and no objects, so the collector
+ * has nothing to trace or copy however full the lot is. Only plates
+ * PlateCodec cannot pack are kept as strings, in a map beside the buffer.
+ *
+ * A slot's fields are written only by the thread that owns the slot: the
+ * one that claimed it through the engine's free bit set, or the one whose
+ * compare-and-set on the header vacated it. Every access is volatile, and a
+ * reader checks the header again after reading the fields, so a Cursor
+ * never mixes two vehicles. Vacating bumps the generation, so a vehicle
+ * that leaves and parks again in the same slot still counts as a change.
+ */
+public class SlotStore {
+    
+    public static final int FREE = 0;
+    public static final int HELD = 1;
+    public static final int OCCUPIED = 2;
+    
+    static final int RECORD_BYTES = 24;
+    private static final int PLATE = 0;
+    private static final int ENTRY = 8;
+    private static final int HEADER = 16;
+    private static final VehicleType[] TYPES = VehicleType.values();
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    
+    private final int totalSlots;
+    private final ByteBuffer records;
+    private final ConcurrentHashMap<Integer, String> uncodedPlates = new ConcurrentHashMap<>();
+    
+    public SlotStore(int totalSlots) {
+        if (totalSlots <= 0 || totalSlots > Integer.MAX_VALUE / RECORD_BYTES) {
+            throw new IllegalArgumentException("Cannot store " + totalSlots + " slots");
+        }
+        this.totalSlots = totalSlots;
+        this.records = ByteBuffer.allocateDirect(totalSlots * RECORD_BYTES).order(ByteOrder.nativeOrder());
+    }
+    
+    public int getTotalSlots() {
+        return totalSlots;
+    }
+    
+    public long getOffHeapBytes() {
+        return records.capacity();
+    }
+    
+    // Reusable view of one record at a time; not for sharing between threads
+    public Cursor cursor() {
+        return new Cursor();
+    }
+    
+    // Header as of now, for a later vacate(); index is the slot number minus one
+    long header(int index) {
+        return (long) LONGS.getVolatile(records, index * RECORD_BYTES + HEADER);
+    }
+    
+    static int stateOf(long header) {
+        return (int) (header & 0xFF);
+    }
+    
+    // Caller owns the slot; the header is written last, so readers see the whole vehicle or none of it
+    void occupy(int index, String plate, VehicleType type, long entrySecond) {
+        int base = index * RECORD_BYTES;
+        long code = PlateCodec.encode(plate);
+        if (code == PlateCodec.NONE) {
+            uncodedPlates.put(index, plate);
+        }
+        LONGS.setVolatile(records, base + PLATE, code);
+        LONGS.setVolatile(records, base + ENTRY, entrySecond);
+        long generation = header(index) >>> 16;
+        LONGS.setVolatile(records, base + HEADER, generation << 16 | (long) type.ordinal() << 8 | OCCUPIED);
+    }
+    
+    // Caller owns the free or held slot
+    void setState(int index, int state) {
+        long header = header(index);
+        LONGS.setVolatile(records, index * RECORD_BYTES + HEADER, header & ~0xFFL | state);
+    }
+    
+    // Frees an occupied slot if its header is still the one read; the winner owns the slot afterwards
+    boolean vacate(int index, long expectedHeader) {
+        long next = ((expectedHeader >>> 16) + 1) << 16 | FREE;
+        if (!LONGS.compareAndSet(records, index * RECORD_BYTES + HEADER, expectedHeader, next)) {
+            return false;
+        }
+        uncodedPlates.remove(index);
+        return true;
+    }
+    
+    /**
+     * Flyweight over one slot's record. read() copies the record's fields
+     * into the cursor; the accessors then cost nothing, and only getPlate()
+     * and toVehicle() create objects.
+     */
+    public final class Cursor {
+        private int slotNumber;
+        private long header;
+        private long plateCode;
+        private long entrySecond;
+        private String uncodedPlate;
+        
+        private Cursor() {
+        }
+        
+        // Loads the slot's current record; returns whether a vehicle is parked there
+        public boolean read(int slotNumber) {
+            if (slotNumber < 1 || slotNumber > totalSlots) {
+                throw new IllegalArgumentException("No such slot: " + slotNumber);
+            }
+            int index = slotNumber - 1;
+            int base = index * RECORD_BYTES;
+            this.slotNumber = slotNumber;
+            while (true) {
+                long before = header(index);
+                plateCode = (long) LONGS.getVolatile(records, base + PLATE);
+                entrySecond = (long) LONGS.getVolatile(records, base + ENTRY);
+                uncodedPlate = plateCode == PlateCodec.NONE && stateOf(before) == OCCUPIED ? uncodedPlates.get(index) : null;
+                if (header(index) == before) {
+                    header = before;
+                    return isOccupied();
+                }
+            }
+        }
+        
+        public int getSlotNumber() {
+            return slotNumber;
+        }
+        
+        public int getState() {
+            return stateOf(header);
+        }
+        
+        public boolean isOccupied() {
+            return getState() == OCCUPIED;
+        }
+        
+        long getHeader() {
+            return header;
+        }
+        
+        public VehicleType getType() {
+            return TYPES[(int) (header >>> 8 & 0xFF)];
+        }
+        
+        // PlateCodec.NONE for plates kept as strings
+        public long getPlateCode() {
+            return plateCode;
+        }
+        
+        public String getPlate() {
+            return plateCode != PlateCodec.NONE ? PlateCodec.decode(plateCode) : uncodedPlate;
+        }
+        
+        public long getEntrySecond() {
+            return entrySecond;
+        }
+        
+        public LocalDateTime getEntryTime() {
+            return JournalRecord.fromEpochSecond(entrySecond);
+        }
+        
+        public Vehicle toVehicle() {
+            return isOccupied() ? new Vehicle(getPlate(), getType(), getEntryTime()) : null;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans slot changes out to WebSocket subscribers. Engine events only mark
+ * the slot in a SlotChangeTracker and wake the stream thread, so a gate
+ * thread never waits for a client. At most once per batch interval the
+ * stream thread renders each changed slot once, followed by the new
+ * occupancy totals, encodes the batch once and queues the same bytes on
+ * every subscriber.
+ *
+ * All subscribers are served by that one platform thread through a selector,
+ * writing only what each socket takes without blocking. This keeps the
+ * stream moving however busy the request threads are: on a small machine,
+ * virtual threads woken from outside a busy scheduler can wait seconds to
+ * run. A subscriber whose backlog passes MAX_BACKLOG_BYTES is disconnected
+ * rather than buffered without bound. Messages carry the full slot state, so
+ * a client that subscribes first and then loads /api/slots can apply every
+ * message it receives, and one that reconnects only has to load the slots
+ * again.
+ */
+public class SlotStreamHub implements AutoCloseable {
+    
+    private static final long BATCH_INTERVAL_MILLIS = 20;
+    private static final long MAX_BACKLOG_BYTES = 4L * 1024 * 1024;
+    
+    private final ParkingEngine engine;
+    private final SlotChangeTracker changes;
+    private final Selector selector;
+    private final Queue<WebSocketConnection> joining = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final Thread streamThread;
+    private volatile boolean changed;
+    private volatile boolean running;
+    
+    public SlotStreamHub(ParkingEngine engine) throws IOException {
+        this.engine = engine;
+        this.selector = Selector.open();
+        this.changes = new SlotChangeTracker(engine.getTotalSlots(), this::markChanged);
+        this.streamThread = new Thread(this::streamLoop, "slot-stream");
+        this.streamThread.setDaemon(true);
+    }
+    
+    public void start() {
+        running = true;
+        engine.addListener(changes);
+        streamThread.start();
+    }
+    
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+    
+    // Takes over an upgraded connection; the stream thread owns and closes it from here on
+    public void subscribe(WebSocketConnection connection) {
+        if (!running) {
+            connection.close();
+            return;
+        }
+        subscriberCount.incrementAndGet();
+        joining.add(connection);
+        selector.wakeup();
+    }
+    
+    @Override
+    public void close() {
+        running = false;
+        engine.removeListener(changes);
+        selector.wakeup();
+    }
+    
+    private void markChanged() {
+        changed = true;
+        selector.wakeup();
+    }
+    
+    private void streamLoop() {
+        long lastBatch = 0;
+        try {
+            while (running) {
+                long wait = 0;
+                if (changed) {
+                    long due = lastBatch + BATCH_INTERVAL_MILLIS - System.currentTimeMillis();
+                    wait = Math.max(1, due);
+                }
+                selector.select(wait);
+                admitJoining();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    handle(key);
+                }
+                selector.selectedKeys().clear();
+                if (changed && System.currentTimeMillis() - lastBatch >= BATCH_INTERVAL_MILLIS) {
+                    lastBatch = System.currentTimeMillis();
+                    changed = false;
+                    publishChanges();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Slot stream stopped: " + e.getMessage());
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                ((WebSocketConnection) key.attachment()).close();
+            }
+            for (WebSocketConnection connection; (connection = joining.poll()) != null; ) {
+                connection.close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+        }
+    }
+    
+    private void admitJoining() {
+        for (WebSocketConnection connection; (connection = joining.poll()) != null; ) {
+            try {
+                connection.getChannel().configureBlocking(false);
+                SelectionKey key = connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+                connection.queue(WebSocketConnection.encodeText(List.of(ApiJson.occupancyChange(engine))));
+                // Frames that came in with the handshake will not make the channel readable again
+                if (!connection.read()) {
+                    drop(key, connection);
+                    continue;
+                }
+                write(key, connection);
+            } catch (IOException e) {
+                drop(null, connection);
+            }
+        }
+    }
+    
+    private void handle(SelectionKey key) {
+        WebSocketConnection connection = (WebSocketConnection) key.attachment();
+        if (!key.isValid()) {
+            drop(key, connection);
+            return;
+        }
+        try {
+            if (key.isReadable() && !connection.read()) {
+                drop(key, connection);
+                return;
+            }
+            if (key.isValid()) {
+                write(key, connection);
+            }
+        } catch (IOException e) {
+            drop(key, connection);
+        }
+    }
+    
+    private void publishChanges() {
+        List<String> batch = new ArrayList<>();
+        changes.drain(slotNumber -> batch.add(ApiJson.slotChange(engine, slotNumber)));
+        batch.add(ApiJson.occupancyChange(engine));
+        ByteBuffer frames = WebSocketConnection.encodeText(batch);
+        for (SelectionKey key : selector.keys()) {
+            WebSocketConnection connection = (WebSocketConnection) key.attachment();
+            if (!key.isValid() || connection.isClosed()) {
+                continue;
+            }
+            connection.queue(frames);
+            if (connection.getPendingBytes() > MAX_BACKLOG_BYTES) {
+                // Too slow to keep up; it reloads the slots when it reconnects
+                drop(key, connection);
+                continue;
+            }
+            try {
+                write(key, connection);
+            } catch (IOException e) {
+                drop(key, connection);
+            }
+        }
+    }
+    
+    // Writes what the socket takes now and asks for a write event if anything is left
+    private void write(SelectionKey key, WebSocketConnection connection) throws IOException {
+        int interest = connection.flush() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+        if (key.interestOps() != interest) {
+            key.interestOps(interest);
+        }
+    }
+    
+    private void drop(SelectionKey key, WebSocketConnection connection) {
+        if (key != null) {
+            key.cancel();
+        }
+        if (!connection.isClosed()) {
+            connection.close();
+            subscriberCount.decrementAndGet();
+        }
+    }
+}
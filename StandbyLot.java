@@ -0,0 +1,249 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+
+/**
+ * Standby side of hot-standby replication. It follows a primary's
+ * ReplicationServer and keeps a LotState and a ParkingEngine in step with
+ * it, so taking over means starting a journal and opening the gates, not
+ * rebuilding the lot.
+ *
+ * Each record is applied to the state first, the way recovery applies it,
+ * and then the slot it touched is brought in line with the state. That way
+ * an exit that arrives ahead of its park, or a snapshot after a reconnect,
+ * leaves the engine as it is on the primary. Exits are booked with the
+ * primary's charge, and revenue is held to the primary's total.
+ *
+ * A standby that hears nothing, not even a heartbeat, for the failover time
+ * counts the primary as gone. Nothing fences the old primary off: if it was
+ * only cut off from the standby, both will serve gates. The link between
+ * them should therefore run over the same network the gates use.
+ * Reservation holds are not replicated.
+ */
+public class StandbyLot implements AutoCloseable {
+    
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final long RETRY_MILLIS = 200;
+    private static final int MAX_FRAME_BYTES = 256 << 20;
+    
+    private final ParkingEngine engine;
+    private final InetSocketAddress primary;
+    private final long failoverMillis;
+    // Used only on the reader thread, to compare slots without building vehicles
+    private final SlotStore.Cursor cursor;
+    private Thread reader;
+    private LotState state;
+    private volatile boolean following;
+    private volatile boolean synced;
+    private volatile boolean connected;
+    private volatile long lastSeq;
+    private volatile long lagMillis;
+    private volatile long lastFrameNanos;
+    private volatile Socket socket;
+    
+    public StandbyLot(ParkingEngine engine, InetSocketAddress primary, long failoverMillis) {
+        if (failoverMillis <= ReplicationServer.HEARTBEAT_MILLIS) {
+            throw new IllegalArgumentException("Failover time must be longer than the "
+                + ReplicationServer.HEARTBEAT_MILLIS + " ms heartbeat: " + failoverMillis);
+        }
+        this.engine = engine;
+        this.primary = primary;
+        this.failoverMillis = failoverMillis;
+        this.cursor = engine.getSlotStore().cursor();
+    }
+    
+    public void start() {
+        following = true;
+        reader = new Thread(this::followLoop, "standby");
+        reader.setDaemon(true);
+        reader.start();
+    }
+    
+    // True once a snapshot from the primary has been applied
+    public boolean isSynced() {
+        return synced;
+    }
+    
+    public String getPrimaryName() {
+        return primary.getHostString() + ":" + primary.getPort();
+    }
+    
+    public boolean isConnected() {
+        return connected;
+    }
+    
+    public long getLastSeq() {
+        return lastSeq;
+    }
+    
+    // How long the last frame took from the primary's clock to being applied here
+    public long getLagMillis() {
+        return lagMillis;
+    }
+    
+    // Blocks until the standby has synced and then heard nothing from the primary for the failover time
+    public void awaitPrimaryLoss() throws InterruptedException {
+        while (true) {
+            long silentMillis = (System.nanoTime() - lastFrameNanos) / 1_000_000;
+            if (synced && silentMillis >= failoverMillis) {
+                return;
+            }
+            Thread.sleep(synced ? Math.max(1, Math.min(50, failoverMillis - silentMillis)) : 50);
+        }
+    }
+    
+    // Stops following and hands back the state the engine now matches, ready for ParkingJournal.startFrom
+    public LotState takeOver() throws InterruptedException {
+        if (!synced) {
+            throw new IllegalStateException("Standby has not synced with the primary yet");
+        }
+        close();
+        reader.join();
+        return state;
+    }
+    
+    @Override
+    public void close() {
+        following = false;
+        if (reader != null) {
+            reader.interrupt();
+        }
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+    
+    private void followLoop() {
+        while (following) {
+            try (Socket s = new Socket()) {
+                socket = s;
+                if (!following) {
+                    return;
+                }
+                // Resolved on every attempt, so a primary that moves to a new address is found again
+                s.connect(new InetSocketAddress(primary.getHostString(), primary.getPort()), CONNECT_TIMEOUT_MILLIS);
+                // A primary that stops sending, heartbeats included, breaks the read
+                s.setSoTimeout((int) failoverMillis);
+                s.setTcpNoDelay(true);
+                connected = true;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+                while (following) {
+                    readFrame(in);
+                }
+            } catch (IOException e) {
+                if (connected && following) {
+                    System.err.println("Lost the primary at " + getPrimaryName() + ": " + (e.getMessage() != null ? e.getMessage() : e));
+                }
+            } finally {
+                connected = false;
+                socket = null;
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+    
+    private void readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        int payloadBytes = length - (ReplicationServer.FRAME_HEADER_BYTES - 4);
+        if (payloadBytes < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Bad replication frame of " + length + " bytes");
+        }
+        byte type = in.readByte();
+        long seq = in.readLong();
+        long sentMillis = in.readLong();
+        byte[] payload = new byte[payloadBytes];
+        in.readFully(payload);
+        switch (type) {
+            case ReplicationServer.SNAPSHOT -> restore(LotState.readSnapshot(new ByteArrayInputStream(payload)));
+            case ReplicationServer.BATCH -> applyBatch(ByteBuffer.wrap(payload));
+            case ReplicationServer.HEARTBEAT -> {
+                if (synced && seq != state.getLastSeq()) {
+                    throw new IOException("Primary is at record " + seq + ", standby at " + state.getLastSeq());
+                }
+            }
+            default -> throw new IOException("Unknown replication frame type " + type);
+        }
+        lastFrameNanos = System.nanoTime();
+        lagMillis = Math.max(0, System.currentTimeMillis() - sentMillis);
+    }
+    
+    private void restore(LotState snapshot) throws IOException {
+        if (snapshot.getTotalSlots() != engine.getTotalSlots()) {
+            throw new IOException("Primary has " + snapshot.getTotalSlots() + " slots, this lot has " + engine.getTotalSlots());
+        }
+        state = snapshot;
+        for (int slot = 1; slot <= engine.getTotalSlots(); slot++) {
+            sync(slot, null);
+        }
+        matchRevenue();
+        lastSeq = state.getLastSeq();
+        synced = true;
+    }
+    
+    private void applyBatch(ByteBuffer records) throws IOException {
+        if (!synced) {
+            throw new IOException("Records arrived before a snapshot");
+        }
+        for (JournalRecord record; (record = JournalRecord.readFrom(records)) != null; ) {
+            if (record.getSeq() <= state.getLastSeq()) {
+                continue;
+            }
+            if (record.getSeq() != state.getLastSeq() + 1) {
+                // Reconnecting brings a fresh snapshot
+                throw new IOException("Missed records " + (state.getLastSeq() + 1) + " to " + (record.getSeq() - 1));
+            }
+            state.apply(record);
+            sync(record.getSlotNumber(), record);
+        }
+        if (records.hasRemaining()) {
+            throw new IOException("Corrupt record in replication batch after " + state.getLastSeq());
+        }
+        matchRevenue();
+        lastSeq = state.getLastSeq();
+    }
+    
+    // Makes the engine's slot hold what the state says is parked there
+    private void sync(int slotNumber, JournalRecord cause) {
+        JournalRecord parked = state.getParked(slotNumber);
+        boolean occupied = cursor.read(slotNumber);
+        boolean same = occupied && parked != null && isStay(parked);
+        if (occupied && !same) {
+            // An exit books the primary's charge; a vehicle a snapshot no longer has left while we were away
+            boolean exit = cause != null && cause.getKind() == JournalRecord.EXIT;
+            engine.removeVehicle(slotNumber, exit ? JournalRecord.fromEpochSecond(cause.getExitEpochSecond()) : LocalDateTime.now(),
+                exit ? cause.getChargePaise() : 0, exit ? cause.getSeq() : 0);
+        }
+        if (parked != null && !same) {
+            engine.restoreVehicle(slotNumber, parked.getPlate(), parked.getType(), parked.getEntryEpochSecond());
+        }
+    }
+    
+    private boolean isStay(JournalRecord parked) {
+        if (cursor.getEntrySecond() != parked.getEntryEpochSecond() || cursor.getType() != parked.getType()) {
+            return false;
+        }
+        long plateCode = PlateCodec.encode(parked.getPlate());
+        return plateCode != PlateCodec.NONE ? plateCode == cursor.getPlateCode() : parked.getPlate().equals(cursor.getPlate());
+    }
+    
+    private void matchRevenue() {
+        long drift = state.getRevenuePaise() - engine.getTotalRevenuePaise();
+        if (drift != 0) {
+            engine.restoreRevenue(drift);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Parking tariff with per-type hourly rates, time-of-day bands, a grace
+ * period and a daily cap. Rules are compiled at load into prefix sums over
+ * the hours of a day, so pricing a stay of any length is a handful of array
+ * reads: no allocation, no strings and no loop over the hours parked.
+ *
+ * Every started hour is billed at the rate of the band it starts in, and
+ * every stay pays for at least its first hour, as calculateCharge did, even
+ * one that ends the second it began. Stays are cut into 24-hour blocks from
+ * entry; each block costs at most the daily cap. A stay no longer than a
+ * grace period is free. Types without a rule pay their default hourly rate.
+ */
+public class TariffEngine implements ChargeCalculator {
+    
+    private static final long SECONDS_PER_HOUR = 3600;
+    private static final long SECONDS_PER_DAY = 86_400;
+    
+    private final long[][] hourPrefix;
+    private final long[] fullDayCharge;
+    private final long[] dailyCap;
+    private final long[] graceSeconds;
+    
+    public TariffEngine(List<Rule> rules) {
+        int types = VehicleType.values().length;
+        Rule[] byType = new Rule[types];
+        for (Rule rule : rules) {
+            if (byType[rule.type.ordinal()] != null) {
+                throw new IllegalArgumentException("More than one tariff rule for " + rule.type);
+            }
+            byType[rule.type.ordinal()] = rule;
+        }
+        hourPrefix = new long[types][49];
+        fullDayCharge = new long[types];
+        dailyCap = new long[types];
+        graceSeconds = new long[types];
+        
+        for (int t = 0; t < types; t++) {
+            VehicleType type = VehicleType.values()[t];
+            Rule rule = byType[t] != null ? byType[t] : new Rule(type, type.getHourlyRatePaise());
+            // Two days of hourly rates so a block starting late in the day never wraps
+            for (int hour = 0; hour < 48; hour++) {
+                hourPrefix[t][hour + 1] = hourPrefix[t][hour] + rule.hourlyRates[hour % 24];
+            }
+            long cap = rule.dailyCapPaise > 0 ? rule.dailyCapPaise : Long.MAX_VALUE;
+            dailyCap[t] = cap;
+            fullDayCharge[t] = Math.min(cap, hourPrefix[t][24]);
+            graceSeconds[t] = rule.graceMinutes * 60L;
+        }
+    }
+    
+    // Each type's default hourly rate with no bands, grace or cap
+    public static TariffEngine standard() {
+        return new TariffEngine(List.of());
+    }
+    
+    /**
+     * Loads rules from a properties file, for example:
+     *
+     *   car.rate=2000
+     *   car.band.18-22=3000
+     *   car.graceMinutes=10
+     *   car.dailyCap=20000
+     *
+     * Amounts are in paise and none may be negative; band hours are
+     * start-inclusive, end-exclusive, and a band whose end is its start, such
+     * as 0-24, covers the whole day. Bands of one type may not overlap, since
+     * properties come back in no particular order and nothing would say which
+     * band wins. Keys are prefixed with the type code; a type with no keys
+     * keeps its default rate.
+     */
+    public static TariffEngine load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        List<Rule> rules = new ArrayList<>();
+        for (VehicleType type : VehicleType.values()) {
+            String code = type.getCode();
+            Rule rule = new Rule(type, Long.parseLong(properties.getProperty(code + ".rate",
+                String.valueOf(type.getHourlyRatePaise()))));
+            String bandPrefix = code + ".band.";
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith(bandPrefix)) {
+                    String[] hours = key.substring(bandPrefix.length()).split("-");
+                    if (hours.length != 2) {
+                        throw new IllegalArgumentException("Band keys look like " + bandPrefix + "18-22: " + key);
+                    }
+                    rule.band(Integer.parseInt(hours[0]), Integer.parseInt(hours[1]),
+                        Long.parseLong(properties.getProperty(key)));
+                }
+            }
+            rule.graceMinutes(Integer.parseInt(properties.getProperty(code + ".graceMinutes", "0")));
+            rule.dailyCap(Long.parseLong(properties.getProperty(code + ".dailyCap", "0")));
+            rules.add(rule);
+        }
+        return new TariffEngine(rules);
+    }
+    
+    @Override
+    public long chargeFor(Vehicle vehicle, LocalDateTime exitTime) {
+        return charge(vehicle.getType(),
+            vehicle.getEntryTime().toEpochSecond(ZoneOffset.UTC),
+            exitTime.toEpochSecond(ZoneOffset.UTC));
+    }
+    
+    // Times are wall-clock seconds (local time read as UTC), so hour-of-day needs no zone lookup
+    public long charge(VehicleType type, long entrySecond, long exitSecond) {
+        int typeIndex = type.ordinal();
+        long duration = exitSecond - entrySecond;
+        if (graceSeconds[typeIndex] > 0 && duration <= graceSeconds[typeIndex]) {
+            return 0;
+        }
+        long hours = Math.max(1, (duration + SECONDS_PER_HOUR - 1) / SECONDS_PER_HOUR);
+        long days = hours / 24;
+        int remainingHours = (int) (hours % 24);
+        int startHour = (int) (Math.floorMod(entrySecond, SECONDS_PER_DAY) / SECONDS_PER_HOUR);
+        
+        long[] prefix = hourPrefix[typeIndex];
+        long lastBlock = prefix[startHour + remainingHours] - prefix[startHour];
+        return days * fullDayCharge[typeIndex] + Math.min(dailyCap[typeIndex], lastBlock);
+    }
+    
+    /**
+     * Pricing rule for one vehicle type, before compilation.
+     */
+    public static class Rule {
+        
+        private final VehicleType type;
+        private final long[] hourlyRates = new long[24];
+        private final boolean[] banded = new boolean[24];
+        private int graceMinutes;
+        private long dailyCapPaise;
+        
+        public Rule(VehicleType type, long ratePaise) {
+            if (ratePaise < 0) {
+                throw new IllegalArgumentException("Rate for " + type + " cannot be negative: " + ratePaise);
+            }
+            this.type = type;
+            Arrays.fill(hourlyRates, ratePaise);
+        }
+        
+        // Hours from startHour up to (not including) endHour cost ratePaise; wraps past midnight,
+        // and endHour equal to startHour, as in 0-24, means all day. A band may not share an hour with another
+        public Rule band(int startHour, int endHour, long ratePaise) {
+            if (startHour < 0 || startHour > 23 || endHour < 0 || endHour > 24) {
+                throw new IllegalArgumentException("Band hours run from 0-23 to 0-24: " + startHour + "-" + endHour);
+            }
+            if (ratePaise < 0) {
+                throw new IllegalArgumentException("Band rate cannot be negative: " + ratePaise);
+            }
+            int hours = Math.floorMod(endHour - startHour - 1, 24) + 1;
+            for (int i = 0; i < hours; i++) {
+                if (banded[(startHour + i) % 24]) {
+                    throw new IllegalArgumentException("Band " + startHour + "-" + endHour + " for " + type
+                        + " overlaps another band at hour " + (startHour + i) % 24);
+                }
+            }
+            for (int i = 0; i < hours; i++) {
+                hourlyRates[(startHour + i) % 24] = ratePaise;
+                banded[(startHour + i) % 24] = true;
+            }
+            return this;
+        }
+        
+        public Rule graceMinutes(int minutes) {
+            if (minutes < 0) {
+                throw new IllegalArgumentException("Grace period for " + type + " cannot be negative: " + minutes);
+            }
+            this.graceMinutes = minutes;
+            return this;
+        }
+        
+        // 0 leaves the day uncapped
+        public Rule dailyCap(long capPaise) {
+            if (capPaise < 0) {
+                throw new IllegalArgumentException("Daily cap for " + type + " cannot be negative: " + capPaise);
+            }
+            this.dailyCapPaise = capPaise;
+            return this;
+        }
+    }
+}
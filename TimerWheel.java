@@ -0,0 +1,193 @@
+import java.time.LocalDateTime;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hierarchical timer wheel for deadlines in wall-clock seconds. Six wheels
+ * of 64 buckets each count seconds, 64-second spans, 4096-second spans and
+ * so on, like the digits of a clock, so together they reach thousands of
+ * years ahead. A deadline goes in the lowest wheel whose turn covers it;
+ * when a wheel's bucket comes round, its deadlines are moved one wheel
+ * down, and those in the seconds wheel run. Scheduling, cancelling and
+ * expiring are constant time however many deadlines are pending, and a
+ * deadline days away is moved at most five times before it runs rather
+ * than passed over on every turn.
+ *
+ * Any thread may schedule or cancel; deadlines reach the wheel at its next
+ * tick. Expired tasks run on the thread that advances the wheel: the
+ * wheel's own thread once start() is called, or whoever calls advanceTo()
+ * when replaying recorded time. Times are wall-clock seconds read as UTC,
+ * as in the journal.
+ */
+public class TimerWheel implements AutoCloseable {
+    
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int WHEELS = 6;
+    private static final long TICK_NANOS = 250_000_000L;
+    
+    public static final class Timeout {
+        private final long dueSecond;
+        private final Runnable task;
+        private Timeout next;
+        private volatile boolean cancelled;
+        
+        Timeout(long dueSecond, Runnable task) {
+            this.dueSecond = dueSecond;
+            this.task = task;
+        }
+        
+        public long getDueSecond() {
+            return dueSecond;
+        }
+        
+        // The task will not run if it has not started yet
+        public void cancel() {
+            cancelled = true;
+        }
+        
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+    
+    private final Timeout[][] wheels = new Timeout[WHEELS][WHEEL_SIZE];
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private Thread ticker;
+    private volatile long currentSecond;
+    private long pending;
+    private volatile boolean running;
+    
+    public TimerWheel(LocalDateTime now) {
+        this.currentSecond = JournalRecord.toEpochSecond(now);
+    }
+    
+    // Follows the wall clock from a thread of its own
+    public synchronized void start() {
+        running = true;
+        ticker = new Thread(this::tickLoop, "timer-wheel");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+    
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (ticker != null) {
+            LockSupport.unpark(ticker);
+        }
+    }
+    
+    // The last second the wheel has reached
+    public long getCurrentSecond() {
+        return currentSecond;
+    }
+    
+    // Runs the task once the wheel reaches dueTime; a time already passed runs at the next tick
+    public Timeout schedule(LocalDateTime dueTime, Runnable task) {
+        return schedule(JournalRecord.toEpochSecond(dueTime), task);
+    }
+    
+    public Timeout schedule(long dueSecond, Runnable task) {
+        Timeout timeout = new Timeout(dueSecond, task);
+        added.add(timeout);
+        return timeout;
+    }
+    
+    // Expires everything due up to and including second; only one thread may advance the wheel
+    public void advanceTo(long second) {
+        transferAdded();
+        while (currentSecond < second) {
+            if (pending == 0) {
+                // Nothing to move or run on the way
+                currentSecond = second;
+                transferAdded();
+                break;
+            }
+            currentSecond++;
+            // Higher wheels first, so their deadlines land in buckets still to come
+            int wheel = 0;
+            while (wheel + 1 < WHEELS && (currentSecond & ((1L << (WHEEL_BITS * (wheel + 1))) - 1)) == 0) {
+                wheel++;
+            }
+            for (int w = wheel; w > 0; w--) {
+                cascade(w);
+            }
+            expire();
+            transferAdded();
+        }
+    }
+    
+    private void transferAdded() {
+        for (Timeout timeout; (timeout = added.poll()) != null; ) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            if (timeout.dueSecond <= currentSecond) {
+                run(timeout);
+            } else {
+                place(timeout);
+                pending++;
+            }
+        }
+    }
+    
+    // The lowest wheel where the deadline and the current second share every higher digit
+    private void place(Timeout timeout) {
+        int wheel = 0;
+        while (wheel + 1 < WHEELS && (timeout.dueSecond >>> (WHEEL_BITS * (wheel + 1))) != (currentSecond >>> (WHEEL_BITS * (wheel + 1)))) {
+            wheel++;
+        }
+        int bucket = (int) ((timeout.dueSecond >>> (WHEEL_BITS * wheel)) & WHEEL_MASK);
+        timeout.next = wheels[wheel][bucket];
+        wheels[wheel][bucket] = timeout;
+    }
+    
+    private void cascade(int wheel) {
+        int bucket = (int) ((currentSecond >>> (WHEEL_BITS * wheel)) & WHEEL_MASK);
+        Timeout timeout = wheels[wheel][bucket];
+        wheels[wheel][bucket] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.cancelled) {
+                timeout.next = null;
+                pending--;
+            } else {
+                place(timeout);
+            }
+            timeout = next;
+        }
+    }
+    
+    private void expire() {
+        int bucket = (int) (currentSecond & WHEEL_MASK);
+        Timeout timeout = wheels[0][bucket];
+        wheels[0][bucket] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            pending--;
+            if (!timeout.cancelled) {
+                run(timeout);
+            }
+            timeout = next;
+        }
+    }
+    
+    private static void run(Timeout timeout) {
+        try {
+            timeout.task.run();
+        } catch (RuntimeException e) {
+            System.err.println("Timer task failed: " + e);
+        }
+    }
+    
+    private void tickLoop() {
+        while (running) {
+            advanceTo(JournalRecord.toEpochSecond(LocalDateTime.now()));
+            LockSupport.parkNanos(TICK_NANOS);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+// Compared by value: the engine hands out a fresh copy of a parked vehicle on every read
+public class Vehicle {
+    
+    private final String vehicleNumber;
+    private final VehicleType type;
+    private final LocalDateTime entryTime;
+    
+    public Vehicle(String vehicleNumber, VehicleType type, LocalDateTime entryTime) {
+        if (type == null) {
+            throw new IllegalArgumentException("Vehicle type is required");
+        }
+        this.vehicleNumber = vehicleNumber;
+        this.type = type;
+        this.entryTime = entryTime;
+    }
+    
+    public String getVehicleNumber() {
+        return vehicleNumber;
+    }
+    
+    public VehicleType getType() {
+        return type;
+    }
+    
+    public LocalDateTime getEntryTime() {
+        return entryTime;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof Vehicle)) {
+            return false;
+        }
+        Vehicle vehicle = (Vehicle) other;
+        return type == vehicle.type && Objects.equals(vehicleNumber, vehicle.vehicleNumber)
+            && Objects.equals(entryTime, vehicle.entryTime);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(vehicleNumber, type, entryTime);
+    }
+}
@@ -0,0 +1,81 @@
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.ContentDisplay;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.function.IntConsumer;
+
+/**
+ * Row of the current-vehicles list. The ListView recycles a handful of these
+ * cells for whatever slot numbers are scrolled into view. The charge comes
+ * from the DwellTracker, which has the row redrawn when it steps up; the
+ * row shows the entry time rather than minutes, which would go stale
+ * between redraws.
+ */
+public class VehicleListCell extends ListCell<Integer> {
+    
+    private static final DateTimeFormatter ENTRY_TIME = DateTimeFormatter.ofPattern("dd MMM HH:mm");
+    
+    private final ParkingEngine engine;
+    private final DwellTracker dwell;
+    private final HBox item = new HBox(10);
+    private final Label vehicleLabel = new Label();
+    private final Label detailsLabel = new Label();
+    
+    public VehicleListCell(ParkingEngine engine, DwellTracker dwell, IntConsumer onExit) {
+        this.engine = engine;
+        this.dwell = dwell;
+        
+        item.setAlignment(Pos.CENTER_LEFT);
+        item.getStyleClass().add("vehicle-item");
+        item.setPadding(new Insets(15));
+        
+        VBox info = new VBox(4);
+        vehicleLabel.getStyleClass().add("vehicle-label");
+        detailsLabel.getStyleClass().add("vehicle-details");
+        info.getChildren().addAll(vehicleLabel, detailsLabel);
+        HBox.setHgrow(info, Priority.ALWAYS);
+        
+        Button exitBtn = new Button("Exit");
+        exitBtn.getStyleClass().add("exit-btn");
+        exitBtn.setOnAction(e -> {
+            if (getItem() != null) {
+                onExit.accept(getItem());
+            }
+        });
+        
+        item.getChildren().addAll(info, exitBtn);
+        setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
+    }
+    
+    @Override
+    protected void updateItem(Integer slotNumber, boolean empty) {
+        super.updateItem(slotNumber, empty);
+        Vehicle vehicle = empty || slotNumber == null ? null : engine.getVehicle(slotNumber);
+        if (vehicle == null) {
+            setGraphic(null);
+            return;
+        }
+        
+        vehicleLabel.setText(vehicle.getVehicleNumber());
+        long chargePaise = dwell.getChargePaise(slotNumber);
+        if (dwell.getMinutes(slotNumber) < 0) {
+            // Drawn before the tracker heard of the entry
+            chargePaise = engine.quoteCharge(slotNumber, LocalDateTime.now());
+        }
+        detailsLabel.setText(String.format("Slot %d • %s • since %s • ₹%d.%02d%s",
+            slotNumber,
+            vehicle.getType().getDisplayName(),
+            vehicle.getEntryTime().format(ENTRY_TIME),
+            chargePaise / 100,
+            chargePaise % 100,
+            dwell.isOverstayed(slotNumber) ? " • overstay" : ""));
+        setGraphic(item);
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * Kinds of vehicle the lot accepts, with the default hourly rate in paise and
+ * the smallest slot each one needs. The code is the lower-case name used in
+ * the journal and in tariff files.
+ */
+public enum VehicleType {
+    CAR("Car", "car", 2000, SlotSize.MEDIUM),
+    BIKE("Bike", "bike", 1000, SlotSize.SMALL),
+    TRUCK("Truck", "truck", 4000, SlotSize.LARGE);
+    
+    private static final VehicleType[] VALUES = values();
+    
+    private final String displayName;
+    private final String code;
+    private final long hourlyRatePaise;
+    private final SlotSize slotSize;
+    
+    VehicleType(String displayName, String code, long hourlyRatePaise, SlotSize slotSize) {
+        this.displayName = displayName;
+        this.code = code;
+        this.hourlyRatePaise = hourlyRatePaise;
+        this.slotSize = slotSize;
+    }
+    
+    // Unknown codes are rejected rather than priced as some other type
+    public static VehicleType fromCode(String code) {
+        for (VehicleType type : VALUES) {
+            if (type.code.equals(code)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown vehicle type: " + code);
+    }
+    
+    public String getDisplayName() {
+        return displayName;
+    }
+    
+    public String getCode() {
+        return code;
+    }
+    
+    public long getHourlyRatePaise() {
+        return hourlyRatePaise;
+    }
+    
+    public SlotSize getSlotSize() {
+        return slotSize;
+    }
+}
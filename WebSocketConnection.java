@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Server side of a WebSocket (RFC 6455) on an upgraded, non-blocking
+ * channel, just enough for a push stream: unfragmented text frames out, and
+ * pings and close handled on the way in. Client data frames are read and
+ * discarded.
+ *
+ * Outgoing frames are queued as shared, already encoded buffers, so a batch
+ * is encoded once however many connections it goes to, and a slow client
+ * only grows its own queue. A connection belongs to one selector thread and
+ * is not safe for use from others.
+ *
+ * A client may send frames right behind its handshake, and whatever the
+ * HTTP side had already read past the handshake is handed over with the
+ * channel, to be handled before anything read from it.
+ */
+public class WebSocketConnection {
+    
+    private static final String HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+    private static final int MAX_CONTROL_PAYLOAD = 125;
+    private static final int MAX_CLIENT_PAYLOAD = 64 * 1024;
+    
+    private final SocketChannel channel;
+    private final ByteBuffer in;
+    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+    private long pendingBytes;
+    private long skipRemaining;
+    private boolean closed;
+    
+    public WebSocketConnection(SocketChannel channel) {
+        this(channel, new byte[0]);
+    }
+    
+    // received is what was read from the channel after the handshake
+    public WebSocketConnection(SocketChannel channel, byte[] received) {
+        this.channel = channel;
+        this.in = ByteBuffer.allocate(Math.max(256, received.length)).put(received);
+    }
+    
+    // Value of Sec-WebSocket-Accept for the client's Sec-WebSocket-Key
+    public static String acceptKey(String clientKey) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((clientKey.trim() + HANDSHAKE_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required by every Java runtime", e);
+        }
+    }
+    
+    // One text frame per message, back to back in a read-only buffer any number of connections can queue
+    public static ByteBuffer encodeText(List<String> texts) {
+        byte[][] payloads = new byte[texts.size()][];
+        int size = 0;
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = texts.get(i).getBytes(StandardCharsets.UTF_8);
+            size += headerLength(payloads[i].length) + payloads[i].length;
+        }
+        ByteBuffer frames = ByteBuffer.allocate(size);
+        for (byte[] payload : payloads) {
+            putFrame(frames, OP_TEXT, payload);
+        }
+        return frames.flip().asReadOnlyBuffer();
+    }
+    
+    private static int headerLength(int length) {
+        return length < 126 ? 2 : length <= 0xFFFF ? 4 : 10;
+    }
+    
+    private static void putFrame(ByteBuffer frames, int opcode, byte[] payload) {
+        int length = payload.length;
+        frames.put((byte) (0x80 | opcode));
+        if (length < 126) {
+            frames.put((byte) length);
+        } else if (length <= 0xFFFF) {
+            frames.put((byte) 126).putShort((short) length);
+        } else {
+            frames.put((byte) 127).putLong(length);
+        }
+        frames.put(payload);
+    }
+    
+    public SocketChannel getChannel() {
+        return channel;
+    }
+    
+    public long getPendingBytes() {
+        return pendingBytes;
+    }
+    
+    public boolean isClosed() {
+        return closed;
+    }
+    
+    public void queue(ByteBuffer frames) {
+        pending.add(frames.duplicate());
+        pendingBytes += frames.remaining();
+    }
+    
+    private void queueControl(int opcode, byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(headerLength(payload.length) + payload.length);
+        putFrame(frame, opcode, payload);
+        queue(frame.flip());
+    }
+    
+    // Writes as much of the queue as the socket takes without blocking; true once nothing is left
+    public boolean flush() throws IOException {
+        while (!pending.isEmpty()) {
+            ByteBuffer head = pending.peek();
+            pendingBytes -= channel.write(head);
+            if (head.hasRemaining()) {
+                return false;
+            }
+            pending.poll();
+        }
+        return true;
+    }
+    
+    // Handles the client frames that have arrived; false once the client has closed or broken the protocol
+    public boolean read() throws IOException {
+        if (channel.read(in) < 0) {
+            return false;
+        }
+        in.flip();
+        try {
+            while (true) {
+                if (skipRemaining > 0) {
+                    int skip = (int) Math.min(skipRemaining, in.remaining());
+                    in.position(in.position() + skip);
+                    skipRemaining -= skip;
+                    if (skipRemaining > 0) {
+                        return true;
+                    }
+                }
+                int start = in.position();
+                if (in.remaining() < 2) {
+                    return true;
+                }
+                int opcode = in.get(start) & 0x0F;
+                int second = in.get(start + 1) & 0xFF;
+                int lengthField = second & 0x7F;
+                int maskLength = (second & 0x80) != 0 ? 4 : 0;
+                int header = 2 + (lengthField == 126 ? 2 : lengthField == 127 ? 8 : 0) + maskLength;
+                if (in.remaining() < header) {
+                    return true;
+                }
+                long length = lengthField == 126 ? in.getShort(start + 2) & 0xFFFF
+                    : lengthField == 127 ? in.getLong(start + 2) : lengthField;
+                
+                if (opcode < OP_CLOSE) {
+                    // Clients have nothing to say on this stream; drop the payload as it arrives
+                    if (length < 0 || length > MAX_CLIENT_PAYLOAD) {
+                        return false;
+                    }
+                    in.position(start + header);
+                    skipRemaining = length;
+                    continue;
+                }
+                if (length > MAX_CONTROL_PAYLOAD) {
+                    return false;
+                }
+                if (in.remaining() < header + length) {
+                    return true;
+                }
+                byte[] payload = new byte[(int) length];
+                in.position(start + header);
+                in.get(payload);
+                for (int i = 0; maskLength > 0 && i < payload.length; i++) {
+                    payload[i] ^= in.get(start + header - 4 + (i & 3));
+                }
+                if (opcode == OP_CLOSE) {
+                    queueControl(OP_CLOSE, payload.length >= 2 ? new byte[] {payload[0], payload[1]} : new byte[0]);
+                    flush();
+                    return false;
+                }
+                if (opcode == OP_PING) {
+                    queueControl(OP_PONG, payload);
+                }
+            }
+        } finally {
+            in.compact();
+        }
+    }
+    
+    public void close() {
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package bench;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ParkingBenchmark's workloads under JMH, one workload and lot size per
+ * fork, so no benchmark runs on a JIT profile another one left behind.
+ * The parking classes are in the unnamed package, which a named package
+ * cannot import, and JMH will not generate code for a benchmark in the
+ * unnamed package. So the workload is looked up once, reflectively, in
+ * setUp, and each measured call is a plain interface call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParkingJmh {
+    
+    @Param({"20", "10000", "1000000"})
+    public int slots;
+    
+    @Param({"slotSearch", "entryExit", "occupancyCount", "occupancyScanLegacy", "chargeTariff", "chargeTariffIndexed",
+        "chargeLegacy", "forecastEvents", "chargeDynamic", "assignNearest", "assignBestFit", "assignEntryExit",
+        "listSnapshot", "reportOccupancy", "reportDwell", "reportPeakRevenue"})
+    public String workload;
+    
+    private LongUnaryOperator operation;
+    private long op;
+    
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        Method lookup = Class.forName("ParkingBenchmark").getMethod("workload", String.class, int.class);
+        operation = (LongUnaryOperator) lookup.invoke(null, workload, slots);
+    }
+    
+    @Benchmark
+    public long run() {
+        return operation.applyAsLong(op++);
+    }
+}
@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.jupiter.api.Test;
+
+class ConcurrentSlotBitSetTest {
+    
+    // Either side of where a word, a second summary level and a third one begin
+    private static final int[] SIZES = {1, 63, 64, 65, 127, 128, 4095, 4096, 4097, 262_144, 262_145};
+    
+    @Test
+    void everyBitIsFoundAcrossWordAndLevelBoundaries() {
+        for (int size : SIZES) {
+            ConcurrentSlotBitSet bits = new ConcurrentSlotBitSet(size);
+            SlotBitSet plain = new SlotBitSet(size);
+            assertEquals(-1, bits.nextSetBit(0), "size " + size);
+            bits.setAll();
+            plain.setAll();
+            assertEquals(size, bits.cardinality(), "size " + size);
+            assertEquals(size - 1, bits.nextSetBit(size - 1), "size " + size);
+            assertEquals(-1, bits.nextSetBit(size), "size " + size);
+            assertThrows(IndexOutOfBoundsException.class, () -> bits.get(size));
+            
+            // Clear the bits just below each boundary the set reaches and check the search steps over them
+            for (int boundary : new int[] {64, 4096, 262_144}) {
+                if (boundary >= size) {
+                    continue;
+                }
+                for (int index = boundary - 2; index < boundary; index++) {
+                    assertTrue(bits.clear(index));
+                    plain.clear(index);
+                }
+                assertFalse(bits.clear(boundary - 1));
+                assertEquals(boundary, bits.nextSetBit(boundary - 2), "size " + size);
+                assertEquals(boundary, plain.nextSetBit(boundary - 2), "size " + size);
+                assertTrue(bits.set(boundary - 1));
+                plain.set(boundary - 1);
+                assertEquals(boundary - 1, bits.nextSetBit(boundary - 2), "size " + size);
+                assertEquals(boundary - 1, plain.nextSetBit(boundary - 2), "size " + size);
+            }
+            
+            // Emptying the set leaves no stale summary bit behind
+            for (int index = bits.claimNext(0); index >= 0; index = bits.claimNext(index)) {
+                plain.clear(index);
+            }
+            assertEquals(0, bits.cardinality(), "size " + size);
+            assertEquals(-1, bits.nextSetBit(0), "size " + size);
+            assertEquals(-1, plain.nextSetBit(0), "size " + size);
+            assertEquals(0, plain.cardinality(), "size " + size);
+        }
+    }
+    
+    @Test
+    void matchesThePlainSetOnRandomChanges() {
+        Random random = new Random(42);
+        for (int size : new int[] {4096, 4097}) {
+            ConcurrentSlotBitSet bits = new ConcurrentSlotBitSet(size);
+            SlotBitSet plain = new SlotBitSet(size);
+            for (int i = 0; i < 50_000; i++) {
+                int index = random.nextInt(size);
+                if (random.nextBoolean()) {
+                    bits.set(index);
+                    plain.set(index);
+                } else {
+                    bits.clear(index);
+                    plain.clear(index);
+                }
+                int from = random.nextInt(size);
+                assertEquals(plain.nextSetBit(from), bits.nextSetBit(from));
+            }
+            assertEquals(plain.cardinality(), bits.cardinality());
+        }
+    }
+    
+    @Test
+    void racingClaimsHandOutEachBitOnce() throws Exception {
+        int size = 4097;
+        ConcurrentSlotBitSet bits = new ConcurrentSlotBitSet(size);
+        bits.setAll();
+        ConcurrentLinkedQueue<Integer> claimed = new ConcurrentLinkedQueue<>();
+        List<Thread> gates = new ArrayList<>();
+        for (int g = 0; g < 4; g++) {
+            Thread thread = new Thread(() -> {
+                for (int index = bits.claimNext(0); index >= 0; index = bits.claimNext(0)) {
+                    claimed.add(index);
+                }
+            });
+            gates.add(thread);
+            thread.start();
+        }
+        for (Thread gate : gates) {
+            gate.join();
+        }
+        
+        assertEquals(size, claimed.size());
+        assertEquals(size, claimed.stream().distinct().count());
+        assertEquals(0, bits.cardinality());
+        assertEquals(-1, bits.nextSetBit(0));
+    }
+}
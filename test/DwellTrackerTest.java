@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class DwellTrackerTest {
+    
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2025, 1, 6, 8, 0);
+    
+    @Test
+    void chargesAreReportedAtTheMinuteTheyStepAndNotInBetween() {
+        TariffEngine tariff = new TariffEngine(List.of(
+            new TariffEngine.Rule(VehicleType.CAR, 2000).band(18, 22, 3000).graceMinutes(10).dailyCap(20000)));
+        ParkingEngine engine = new ParkingEngine(4, tariff);
+        TimerWheel timers = new TimerWheel(MONDAY);
+        AtomicInteger quotes = new AtomicInteger();
+        ChargeCalculator counted = (vehicle, exitTime) -> {
+            quotes.incrementAndGet();
+            return tariff.chargeFor(vehicle, exitTime);
+        };
+        DwellTracker dwell = new DwellTracker(engine, counted, timers, 6 * 60);
+        List<Long> heard = new ArrayList<>();
+        List<Long> overstays = new ArrayList<>();
+        dwell.addListener(new DwellTracker.Listener() {
+            @Override
+            public void chargeChanged(int slotNumber, Vehicle vehicle, long chargePaise) {
+                heard.add(dwell.getMinutes(slotNumber));
+                heard.add(chargePaise);
+            }
+            
+            @Override
+            public void overstayed(int slotNumber, Vehicle vehicle, long minutes) {
+                overstays.add(minutes);
+            }
+        });
+        dwell.attach();
+        Vehicle car = new Vehicle("KA01AB1234", VehicleType.CAR, MONDAY);
+        assertEquals(1, engine.parkVehicle(car));
+        
+        // What a vehicle leaving during each minute would owe, worked out the long way
+        List<Long> expected = new ArrayList<>();
+        long previous = tariff.chargeFor(car, MONDAY.plusSeconds(1));
+        long minutes = 2 * 24 * 60;
+        for (long minute = 1; minute <= minutes; minute++) {
+            long charge = tariff.chargeFor(car, MONDAY.plusMinutes(minute).plusSeconds(1));
+            if (charge != previous) {
+                expected.add(minute);
+                expected.add(charge);
+                previous = charge;
+            }
+        }
+        quotes.set(0);
+        long start = JournalRecord.toEpochSecond(MONDAY);
+        for (long minute = 1; minute <= minutes; minute++) {
+            timers.advanceTo(start + minute * 60);
+            assertEquals(minute, dwell.getMinutes(1));
+        }
+        
+        assertEquals(expected, heard);
+        assertEquals(List.of(6L * 60), overstays);
+        assertTrue(dwell.isOverstayed(1));
+        assertEquals(previous, dwell.getChargePaise(1));
+        // Ticking every minute would take a quote a minute; the steps are found in far fewer
+        assertTrue(quotes.get() < minutes / 10, "quotes: " + quotes.get());
+        
+        engine.removeVehicle(1, MONDAY.plusMinutes(minutes));
+        assertEquals(-1, dwell.getMinutes(1));
+        assertEquals(0, dwell.getOverstayCount());
+        assertFalse(dwell.isOverstayed(1));
+    }
+}
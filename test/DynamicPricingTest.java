@@ -0,0 +1,38 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+class DynamicPricingTest {
+    
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2025, 1, 6, 8, 0);
+    
+    @Test
+    void lockOfAVehicleWhoseExitWasMissedGoesWithTheNextParkInItsSlot() {
+        ParkingEngine engine = new ParkingEngine(4, TariffEngine.standard());
+        DynamicPricing pricing = new DynamicPricing(TariffEngine.standard(), new OccupancyForecaster(4));
+        engine.addListener(pricing);
+        for (int i = 0; i < 100; i++) {
+            Vehicle vehicle = new Vehicle("KA01AB" + i, VehicleType.CAR, MONDAY.plusMinutes(i));
+            assertEquals(1, engine.parkVehicle(vehicle));
+            // Every other exit happens while the pricing is not listening
+            if (i % 2 == 0) {
+                engine.removeListener(pricing);
+                engine.removeVehicle(1, MONDAY.plusMinutes(i + 1));
+                engine.addListener(pricing);
+            } else {
+                engine.removeVehicle(1, MONDAY.plusMinutes(i + 1));
+            }
+        }
+        assertEquals(0, pricing.getLockedCount());
+        
+        engine.parkVehicle(new Vehicle("KA01AB100", VehicleType.CAR, MONDAY));
+        engine.removeListener(pricing);
+        engine.removeVehicle(1, MONDAY.plusHours(1));
+        assertEquals(1, pricing.getLockedCount());
+        engine.addListener(pricing);
+        engine.parkVehicle(new Vehicle("KA01AB101", VehicleType.CAR, MONDAY.plusHours(2)));
+        assertEquals(1, pricing.getLockedCount());
+    }
+}
@@ -0,0 +1,76 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class GateEventPipelineTest {
+    
+    @Test
+    void eventTheEngineThrowsOnFailsAloneAndTheWorkerCarriesOn() throws Exception {
+        ParkingEngine engine = new ParkingEngine(10, TariffEngine.standard());
+        engine.addListener(new ParkingListener() {
+            @Override
+            public void vehicleParked(int slotNumber, Vehicle vehicle) {
+                if (vehicle.getVehicleNumber().startsWith("BAD")) {
+                    throw new IllegalStateException("listener failed");
+                }
+            }
+        });
+        List<GateResult> results = Collections.synchronizedList(new ArrayList<>());
+        GateEventPipeline pipeline = new GateEventPipeline(engine, null, 16, 8, results::add);
+        pipeline.start();
+        for (String plate : new String[] {"KA01AA1", "BAD1", "KA01AA2"}) {
+            pipeline.put(new GateEvent(GateEvent.Kind.ENTRY, plate, VehicleType.CAR, "main", LocalDateTime.now()));
+        }
+        pipeline.awaitProcessed();
+        pipeline.close();
+        
+        assertEquals(3, results.size());
+        assertEquals(GateResult.Status.PARKED, results.get(0).getStatus());
+        assertEquals(GateResult.Status.FAILED, results.get(1).getStatus());
+        assertEquals(-1, results.get(1).getSlotNumber());
+        assertEquals(GateResult.Status.PARKED, results.get(2).getStatus());
+    }
+    
+    @Test
+    void batchTheJournalCannotForceReportsWhatTheEngineDid() throws Exception {
+        ParkingEngine engine = new ParkingEngine(10, TariffEngine.standard());
+        engine.parkVehicle(new Vehicle("KA01AA9", VehicleType.CAR, LocalDateTime.now()));
+        engine.setChangeLog(new ParkingEngine.ChangeLog() {
+            private long seq;
+            
+            @Override
+            public long append(JournalRecord record) {
+                return ++seq;
+            }
+            
+            @Override
+            public void batchStarted() {
+            }
+            
+            @Override
+            public void batchEnded() {
+                throw new UncheckedIOException(new IOException("disk gone"));
+            }
+        });
+        List<GateResult> results = Collections.synchronizedList(new ArrayList<>());
+        GateEventPipeline pipeline = new GateEventPipeline(engine, null, 16, 8, results::add);
+        pipeline.put(new GateEvent(GateEvent.Kind.ENTRY, "KA01AA1", VehicleType.CAR, "main", LocalDateTime.now()));
+        pipeline.put(new GateEvent(GateEvent.Kind.EXIT, "KA01AA9", null, "main", LocalDateTime.now()));
+        pipeline.start();
+        pipeline.awaitProcessed();
+        pipeline.close();
+        
+        assertEquals(2, results.size());
+        assertEquals(GateResult.Status.PARKED, results.get(0).getStatus());
+        assertEquals(results.get(0).getSlotNumber(), engine.findSlotByPlate("KA01AA1"));
+        assertEquals(GateResult.Status.EXITED, results.get(1).getStatus());
+        assertEquals(-1, engine.findSlotByPlate("KA01AA9"));
+    }
+}
@@ -0,0 +1,57 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LotLayoutTest {
+    
+    @Test
+    void zoneRangesTileEachLevelWithAShortLastZone() {
+        LotLayout layout = new LotLayout(3, 250, 100);
+        assertEquals(750, layout.getTotalSlots());
+        assertEquals(3, layout.getZonesPerLevel());
+        
+        for (int level = 1; level <= layout.getLevels(); level++) {
+            int next = layout.firstSlotOfLevel(level);
+            for (int zone = 0; zone < layout.getZonesPerLevel(); zone++) {
+                assertEquals(next, layout.firstSlotOfZone(level, zone));
+                for (int slot = next; slot <= layout.lastSlotOfZone(level, zone); slot++) {
+                    assertEquals(level, layout.levelOf(slot));
+                    assertEquals(zone, layout.zoneOf(slot));
+                }
+                next = layout.lastSlotOfZone(level, zone) + 1;
+            }
+            assertEquals(layout.lastSlotOfLevel(level) + 1, next);
+        }
+        assertEquals(701, layout.firstSlotOfZone(3, 2));
+        assertEquals(750, layout.lastSlotOfZone(3, 2));
+        assertEquals("C", LotLayout.zoneName(2));
+    }
+    
+    @Test
+    void zonesNeverSpanMoreThanALevel() {
+        LotLayout layout = new LotLayout(2, 40, 100);
+        assertEquals(1, layout.getZonesPerLevel());
+        assertEquals(41, layout.firstSlotOfZone(2, 0));
+        assertEquals(80, layout.lastSlotOfZone(2, 0));
+        assertThrows(IllegalArgumentException.class, () -> new LotLayout(0, 40, 10));
+    }
+    
+    @Test
+    void plateSearchFindsParkedVehiclesByPrefixInPlateOrder() {
+        ParkingEngine engine = new ParkingEngine(10, TariffEngine.standard());
+        LocalDateTime entry = LocalDateTime.of(2025, 1, 6, 8, 0);
+        engine.parkVehicle(new Vehicle("KA01AB9", VehicleType.CAR, entry));
+        engine.parkVehicle(new Vehicle("MH12CD1", VehicleType.CAR, entry));
+        engine.parkVehicle(new Vehicle("KA01AB2", VehicleType.CAR, entry));
+        engine.parkVehicle(new Vehicle("KA02XY5", VehicleType.CAR, entry));
+        
+        assertEquals(List.of(3, 1), engine.findSlotsByPlatePrefix("ka01", 10));
+        assertEquals(List.of(3, 1, 4), engine.findSlotsByPlatePrefix("KA", 10));
+        assertEquals(List.of(3), engine.findSlotsByPlatePrefix("KA", 1));
+        assertEquals(List.of(), engine.findSlotsByPlatePrefix("DL", 10));
+    }
+}
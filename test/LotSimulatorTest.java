@@ -0,0 +1,64 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LotSimulatorTest {
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void theSameSeedRunsTheSameDays() throws Exception {
+        ParkingConfig config = config();
+        LotSimulator.Run first = LotSimulator.simulate(config, 42, 2, 8.0);
+        LotSimulator.Run second = LotSimulator.simulate(config, 42, 2, 8.0);
+        
+        assertArrayEquals(first.arrivals, second.arrivals);
+        assertArrayEquals(first.refusedByHour, second.refusedByHour);
+        assertEquals(first.refused, second.refused);
+        assertEquals(first.peakOccupied, second.peakOccupied);
+        assertEquals(first.peakSecond, second.peakSecond);
+        assertEquals(first.stillParked, second.stillParked);
+        assertEquals(first.overstayed, second.overstayed);
+        assertEquals(first.revenuePaise, second.revenuePaise);
+        assertEquals(first.averageStay, second.averageStay);
+        assertEquals(first.entries.getCount(), second.entries.getCount());
+        assertEquals(first.exits.getCount(), second.exits.getCount());
+        
+        // Busy enough to fill the lot, turn vehicles away and leave some past the overstay limit
+        assertTrue(first.refused > 0);
+        assertTrue(first.overstayed > 0);
+        assertEquals(Arrays.stream(first.arrivals).sum(), first.entries.getCount());
+        assertEquals(600, first.peakOccupied);
+    }
+    
+    @Test
+    void anotherSeedRunsOtherDays() throws Exception {
+        ParkingConfig config = config();
+        LotSimulator.Run first = LotSimulator.simulate(config, 42, 1, 3.0);
+        LotSimulator.Run other = LotSimulator.simulate(config, 43, 1, 3.0);
+        
+        assertFalse(Arrays.equals(first.arrivals, other.arrivals) && first.revenuePaise == other.revenuePaise);
+    }
+    
+    // Two levels of 300 slots with the standard tariff and plan, whatever files sit in the working directory
+    private ParkingConfig config() throws Exception {
+        Path file = directory.resolve("parking.properties");
+        Files.writeString(file, String.join("\n",
+            "levels=2",
+            "slotsPerLevel=300",
+            "slotsPerZone=50",
+            "overstayMinutes=480",
+            "tariffFile=" + directory.resolve("none.properties").toString().replace('\\', '/'),
+            "planFile=" + directory.resolve("none.properties").toString().replace('\\', '/')));
+        return ParkingConfig.load(file);
+    }
+}
@@ -0,0 +1,78 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class OccupancyForecasterTest {
+    
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2025, 1, 6, 0, 0);
+    
+    @Test
+    void parksFromManyGatesAtOnceAreAllCounted() throws Exception {
+        OccupancyForecaster forecaster = new OccupancyForecaster(10_000);
+        forecaster.attach(new ParkingEngine(10, TariffEngine.standard()), MONDAY);
+        List<Thread> gates = new ArrayList<>();
+        for (int gate = 0; gate < 8; gate++) {
+            int id = gate;
+            gates.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    forecaster.vehicleParked(1, new Vehicle("G" + id + "N" + i, VehicleType.CAR, MONDAY.plusMinutes(30)));
+                }
+            }));
+        }
+        for (Thread gate : gates) {
+            gate.join();
+        }
+        assertEquals(-1, forecaster.forecast(MONDAY));
+        
+        // The first event of the next hour ends 00:00-01:00: 8000 vehicles for its second half
+        Vehicle next = new Vehicle("KA01AB1234", VehicleType.CAR, MONDAY.plusHours(1));
+        forecaster.vehicleParked(1, next);
+        assertEquals(4000, forecaster.forecast(MONDAY), 1e-9);
+        assertEquals(4000, forecaster.forecast(MONDAY.plusDays(1)), 1e-9);
+        assertEquals(1, forecaster.getHoursObserved());
+        
+        // An exit from the hour that just ended, reported late, still lands in it
+        Vehicle early = new Vehicle("G0N0", VehicleType.CAR, MONDAY.plusMinutes(30));
+        forecaster.vehicleExited(new ParkingSession(1, early, MONDAY.plusMinutes(45), 0));
+        assertEquals(4000 - 0.25, forecaster.forecast(MONDAY), 1e-9);
+        
+        // Two hours on, that hour is folded in and the next one carries the 8000 vehicles left
+        forecaster.vehicleExited(new ParkingSession(1, next, MONDAY.plusHours(2), 0));
+        assertEquals(4000 - 0.25, forecaster.forecast(MONDAY), 1e-9);
+        assertEquals(8000, forecaster.forecast(MONDAY.plusHours(1)), 1e-9);
+        assertEquals(2, forecaster.getHoursObserved());
+    }
+    
+    @Test
+    void parksRacingTheHourTheyAreInBeingFoldedAreNotLost() throws Exception {
+        int gates = 8;
+        int hours = 150;
+        int perHour = 50;
+        OccupancyForecaster forecaster = new OccupancyForecaster(1_000_000);
+        forecaster.attach(new ParkingEngine(10, TariffEngine.standard()), MONDAY);
+        List<Thread> threads = new ArrayList<>();
+        for (int gate = 0; gate < gates; gate++) {
+            int id = gate;
+            threads.add(Thread.ofPlatform().start(() -> {
+                // Each gate runs a few minutes behind the others, so some park in an hour another gate is folding
+                for (int hour = 0; hour < hours; hour++) {
+                    for (int i = 0; i < perHour; i++) {
+                        LocalDateTime entry = MONDAY.plusHours(hour).plusMinutes(i + id);
+                        forecaster.vehicleParked(1, new Vehicle("G" + id + "H" + hour + "N" + i, VehicleType.CAR, entry));
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        // Three quiet hours later everything is folded, and the hour after the last parks holds every vehicle
+        forecaster.vehicleParked(1, new Vehicle("KA01AB1234", VehicleType.CAR, MONDAY.plusHours(hours + 3)));
+        assertEquals(gates * hours * perHour, forecaster.forecast(MONDAY.plusHours(hours + 1)), 1e-9);
+    }
+}
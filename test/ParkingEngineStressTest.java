@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Many gate threads parking and removing vehicles on one small lot at
+ * once, contending for the same slots. Every vehicle that got a slot must
+ * either still be in it or have left with exactly one charge, and the
+ * engine's revenue must be the sum of the charges the gates were handed.
+ * With no journal behind it, every exit must still get its own receipt
+ * number, though exits share slots and minutes.
+ */
+class ParkingEngineStressTest {
+    
+    private static final int SLOTS = 256;
+    private static final int THREADS = 8;
+    private static final int OPS_PER_THREAD = 50_000;
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 6, 8, 0);
+    
+    @Test
+    void noSlotIsBookedTwiceAndNoChargeIsLost() throws Exception {
+        ParkingEngine engine = new ParkingEngine(SLOTS, TariffEngine.standard());
+        Set<String> parked = ConcurrentHashMap.newKeySet();
+        Set<String> exited = ConcurrentHashMap.newKeySet();
+        Set<String> receipts = ConcurrentHashMap.newKeySet();
+        LongAdder charged = new LongAdder();
+        CountDownLatch go = new CountDownLatch(1);
+        
+        ExecutorService gates = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> runs = new ArrayList<>();
+        for (int gate = 0; gate < THREADS; gate++) {
+            int id = gate;
+            runs.add(gates.submit(() -> {
+                Random random = new Random(id);
+                go.await();
+                for (int op = 0; op < OPS_PER_THREAD; op++) {
+                    Vehicle vehicle = new Vehicle("G" + id + "N" + op, VehicleType.values()[op % 3], START);
+                    int choice = random.nextInt(4);
+                    if (choice == 0) {
+                        // Nearest free slot, as an entry gate assigns
+                        if (engine.parkVehicle(vehicle) > 0) {
+                            parked.add(vehicle.getVehicleNumber());
+                        }
+                    } else if (choice == 1) {
+                        // A slot picked by hand, which other gates are also trying to take
+                        if (engine.parkVehicle(1 + random.nextInt(SLOTS / 8), vehicle)) {
+                            parked.add(vehicle.getVehicleNumber());
+                        }
+                    } else {
+                        // Exits race each other for the same slots too
+                        ParkingSession session = engine.removeVehicle(1 + random.nextInt(SLOTS),
+                            START.plusMinutes(random.nextInt(3000)));
+                        if (session != null) {
+                            assertTrue(exited.add(session.getVehicle().getVehicleNumber()), "Vehicle left twice");
+                            assertTrue(receipts.add(Receipt.of(session).getNumber()), "Receipt number given twice");
+                            charged.add(session.getChargePaise());
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        go.countDown();
+        for (Future<?> run : runs) {
+            run.get();
+        }
+        gates.shutdown();
+        
+        Set<String> inLot = new HashSet<>();
+        for (int slot = 1; slot <= SLOTS; slot++) {
+            Vehicle vehicle = engine.getVehicle(slot);
+            if (vehicle != null) {
+                assertTrue(inLot.add(vehicle.getVehicleNumber()), "Vehicle in two slots");
+                assertEquals(slot, engine.findSlotByPlate(vehicle.getVehicleNumber()));
+            }
+        }
+        // A vehicle overwritten by a second booking would be neither in the lot nor among the exits
+        Set<String> lost = new HashSet<>(parked);
+        lost.removeAll(inLot);
+        lost.removeAll(exited);
+        assertTrue(lost.isEmpty(), lost.size() + " vehicles lost their slot to a second booking");
+        assertEquals(parked.size(), inLot.size() + exited.size());
+        
+        assertEquals(inLot.size(), engine.getOccupiedCount());
+        assertEquals(SLOTS - inLot.size(), engine.getAvailableCount());
+        assertEquals(charged.sum(), engine.getTotalRevenuePaise());
+        assertTrue(exited.size() > SLOTS, "Too few exits to have contended");
+    }
+}
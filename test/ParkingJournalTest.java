@@ -0,0 +1,219 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParkingJournalTest {
+    
+    private static final LocalDateTime ENTRY = LocalDateTime.of(2025, 1, 6, 8, 0);
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void changeIsInTheLogWhenTheEngineReturns() throws Exception {
+        ParkingEngine engine = new ParkingEngine(20, TariffEngine.standard());
+        try (ParkingJournal journal = ParkingJournal.open(directory, 20)) {
+            journal.attach(engine);
+            assertEquals(1, engine.parkVehicle(new Vehicle("KA01AB1234", VehicleType.CAR, ENTRY)));
+            engine.parkVehicle(new Vehicle("KA01AB5678", VehicleType.BIKE, ENTRY));
+            engine.removeVehicle(1, ENTRY.plusHours(2));
+            
+            // Read back while the first journal is still open, as recovery after a crash would
+            LotState recovered = ParkingJournal.open(directory, 20).getRecoveredState();
+            assertNull(recovered.getParked(1));
+            assertEquals("KA01AB5678", recovered.getParked(2).getPlate());
+            assertEquals(3, recovered.getLastSeq());
+            assertEquals(engine.getTotalRevenuePaise(), recovered.getRevenuePaise());
+        }
+    }
+    
+    @Test
+    void batchIsInTheLogWhenApplyBatchReturns() throws Exception {
+        ParkingEngine engine = new ParkingEngine(100, TariffEngine.standard());
+        try (ParkingJournal journal = ParkingJournal.open(directory, 100)) {
+            journal.attach(engine);
+            engine.applyBatch(() -> {
+                for (int i = 0; i < 50; i++) {
+                    engine.parkVehicle(new Vehicle("KA01AB" + i, VehicleType.CAR, ENTRY));
+                }
+            });
+            
+            LotState recovered = ParkingJournal.open(directory, 100).getRecoveredState();
+            assertEquals(50, recovered.getOccupiedCount());
+            assertEquals(50, recovered.getLastSeq());
+        }
+    }
+    
+    @Test
+    void changeTheJournalRefusesIsNotMade() throws Exception {
+        ParkingEngine engine = new ParkingEngine(20, TariffEngine.standard());
+        SessionStore sessions = new SessionStore();
+        ParkingJournal journal = ParkingJournal.open(directory, 20);
+        journal.attach(engine);
+        engine.addListener(sessions);
+        engine.parkVehicle(1, new Vehicle("KA01AB1234", VehicleType.CAR, ENTRY));
+        journal.close();
+        
+        assertThrows(UncheckedIOException.class, () -> engine.removeVehicle(1, ENTRY.plusHours(2)));
+        assertEquals("KA01AB1234", engine.getVehicle(1).getVehicleNumber());
+        assertEquals(1, engine.findSlotByPlate("KA01AB1234"));
+        assertEquals(0, engine.getTotalRevenuePaise());
+        assertEquals(0, sessions.size());
+        
+        int free = engine.getAvailableCount();
+        Vehicle refused = new Vehicle("KA01AB5678", VehicleType.CAR, ENTRY);
+        assertThrows(UncheckedIOException.class, () -> engine.parkVehicle(refused));
+        assertEquals(free, engine.getAvailableCount());
+        assertEquals(1, engine.getOccupiedCount());
+        assertEquals(-1, engine.findSlotByPlate("KA01AB5678"));
+        
+        // The journal on disk agrees with the engine
+        LotState recovered = ParkingJournal.open(directory, 20).getRecoveredState();
+        assertEquals("KA01AB1234", recovered.getParked(1).getPlate());
+        assertEquals(1, recovered.getOccupiedCount());
+        
+        // Nothing was left half made: without the journal the same changes go through
+        engine.setChangeLog(null);
+        assertEquals(2, engine.parkVehicle(refused));
+        assertNotNull(engine.removeVehicle(1, ENTRY.plusHours(2)));
+        assertEquals(1, sessions.size());
+        assertEquals(sessions.getRevenuePaise(), engine.getTotalRevenuePaise());
+    }
+    
+    @Test
+    void exitsOfOneSlotInOneSecondGetTheirOwnReceipts() throws Exception {
+        ParkingEngine engine = new ParkingEngine(20, TariffEngine.standard());
+        SessionStore sessions = new SessionStore();
+        try (ParkingJournal journal = ParkingJournal.open(directory, 20)) {
+            journal.attach(engine);
+            engine.addListener(sessions);
+            LocalDateTime exit = ENTRY.plusHours(2);
+            engine.parkVehicle(1, new Vehicle("KA01AB1234", VehicleType.CAR, ENTRY));
+            ParkingSession first = engine.removeVehicle(1, exit);
+            engine.parkVehicle(1, new Vehicle("KA01AB5678", VehicleType.CAR, ENTRY));
+            ParkingSession second = engine.removeVehicle(1, exit);
+            
+            String firstNumber = Receipt.of(first).getNumber();
+            assertEquals("20250106-100000-1-2", firstNumber);
+            assertNotEquals(firstNumber, Receipt.of(second).getNumber());
+            // The store and the settlement print the numbers the drivers were handed
+            assertEquals(firstNumber, Receipt.of(sessions, 0).getNumber());
+            Path csv = directory.resolve("settlement.csv");
+            SettlementExport.writeCsv(sessions, ENTRY, exit.plusHours(1), csv);
+            List<String> lines = Files.readAllLines(csv);
+            assertEquals(firstNumber, lines.get(1).split(",")[0]);
+            assertEquals(Receipt.of(second).getNumber(), lines.get(2).split(",")[0]);
+        }
+    }
+    
+    @Test
+    void sessionsComeBackAfterARestart() throws Exception {
+        ParkingEngine engine = new ParkingEngine(20, TariffEngine.standard());
+        SessionStore sessions = new SessionStore();
+        try (ParkingJournal journal = ParkingJournal.open(directory, 20)) {
+            journal.restoreSessions(sessions);
+            journal.attach(engine);
+            engine.addListener(sessions);
+            for (int i = 0; i < 5; i++) {
+                engine.parkVehicle(1 + i, new Vehicle("KA01AB" + i, VehicleType.CAR, ENTRY));
+                engine.removeVehicle(1 + i, ENTRY.plusHours(1 + i));
+            }
+        }
+        
+        // The clean close snapshotted the lot and started the log over; the history still has every exit
+        SessionStore restored = new SessionStore();
+        try (ParkingJournal journal = ParkingJournal.open(directory, 20)) {
+            journal.restoreSessions(restored);
+            assertEquals(LocalDateTime.MIN, journal.getHistoryStart());
+            assertEquals(5, restored.size());
+            assertEquals(sessions.getRevenuePaise(), restored.getRevenuePaise());
+            assertEquals(journal.getRecoveredState().getRevenuePaise(), restored.getRevenuePaise());
+            for (int row = 0; row < 5; row++) {
+                assertEquals(Receipt.of(sessions, row).getNumber(), Receipt.of(restored, row).getNumber());
+            }
+        }
+    }
+    
+    @Test
+    void historyTornInACrashIsMadeWholeFromTheLog() throws Exception {
+        ParkingEngine engine = new ParkingEngine(20, TariffEngine.standard());
+        try (ParkingJournal journal = ParkingJournal.open(directory, 20)) {
+            journal.attach(engine);
+            for (int i = 0; i < 3; i++) {
+                engine.parkVehicle(1 + i, new Vehicle("KA01AB" + i, VehicleType.CAR, ENTRY));
+                engine.removeVehicle(1 + i, ENTRY.plusHours(2));
+            }
+            
+            // As if the crash came before the history reached the disk: half a record, then nothing
+            Path history = directory.resolve("sessions.log");
+            try (FileChannel channel = FileChannel.open(history, StandardOpenOption.WRITE)) {
+                channel.truncate(Files.size(history) - 10);
+            }
+            SessionStore restored = new SessionStore();
+            ParkingJournal recovered = ParkingJournal.open(directory, 20);
+            recovered.restoreSessions(restored);
+            assertEquals(3, restored.size());
+            assertEquals(engine.getTotalRevenuePaise(), restored.getRevenuePaise());
+            // The last exit came back from the log, with the number its receipt was given
+            assertEquals(6, restored.seqOf(2));
+        }
+    }
+    
+    @Test
+    void everyEarlyExitOfASlotCancelsItsOwnPark() throws Exception {
+        LotState state = new LotState(4);
+        JournalRecord firstPark = new JournalRecord(0, JournalRecord.PARK, 3, "KA01AA1", VehicleType.CAR, 100, 0, 0);
+        JournalRecord secondPark = new JournalRecord(0, JournalRecord.PARK, 3, "KA01AA2", VehicleType.CAR, 200, 0, 0);
+        // Both exits of slot 3 reach the journal ahead of their parks
+        state.apply(new JournalRecord(1, JournalRecord.EXIT, 3, "KA01AA1", VehicleType.CAR, 100, 150, 2000));
+        state.apply(new JournalRecord(2, JournalRecord.EXIT, 3, "KA01AA2", VehicleType.CAR, 200, 250, 2000));
+        
+        // A snapshot taken in between keeps both orphans
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        state.writeSnapshot(bytes);
+        LotState restored = LotState.readSnapshot(new ByteArrayInputStream(bytes.toByteArray()));
+        
+        for (LotState lot : new LotState[] {state, restored}) {
+            lot.apply(secondPark.withSeq(3));
+            lot.apply(firstPark.withSeq(4));
+            assertNull(lot.getParked(3));
+            assertEquals(0, lot.getOccupiedCount());
+            assertEquals(4000, lot.getRevenuePaise());
+        }
+        
+        // With the orphans used up, the next park of the slot stands
+        state.apply(new JournalRecord(5, JournalRecord.PARK, 3, "KA01AA3", VehicleType.CAR, 300, 0, 0));
+        assertNotNull(state.getParked(3));
+    }
+    
+    @Test
+    void orphanWhoseParkNeverArrivesGoesOnceTheSlotHasHadAnotherStay() throws Exception {
+        LotState state = new LotState(4);
+        state.apply(new JournalRecord(1, JournalRecord.EXIT, 3, "KA01AA1", VehicleType.CAR, 100, 150, 2000));
+        state.apply(new JournalRecord(2, JournalRecord.PARK, 3, "KA01AA2", VehicleType.CAR, 200, 0, 0));
+        assertEquals(1, state.getOrphanCount());
+        state.apply(new JournalRecord(3, JournalRecord.EXIT, 3, "KA01AA2", VehicleType.CAR, 200, 250, 3000));
+        
+        assertEquals(0, state.getOrphanCount());
+        assertNull(state.getParked(3));
+        assertEquals(5000, state.getRevenuePaise());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        state.writeSnapshot(bytes);
+        assertEquals(0, LotState.readSnapshot(new ByteArrayInputStream(bytes.toByteArray())).getOrphanCount());
+    }
+}
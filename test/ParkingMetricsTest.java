@@ -0,0 +1,35 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+class ParkingMetricsTest {
+    
+    private static final LocalDateTime ENTRY = LocalDateTime.of(2025, 1, 6, 8, 0);
+    
+    @Test
+    void heldSlotsAreFreeNowhere() {
+        LotPlan plan = new LotPlan(new LotLayout(1, 20, 10));
+        ParkingEngine engine = new ParkingEngine(20, TariffEngine.standard());
+        engine.holdSlot(1);
+        ParkingMetrics metrics = new ParkingMetrics(plan, engine);
+        metrics.attach();
+        engine.holdSlot(11);
+        engine.parkVehicle(2, new Vehicle("KA01AB1234", VehicleType.CAR, ENTRY));
+        
+        assertEquals(17, metrics.getFreeSlots());
+        assertEquals(17, metrics.getFreeByZone().values().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(17, metrics.getFreeBySize().values().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(8, metrics.getFreeInZone(1, 0));
+        assertEquals(plan.countOf(plan.sizeOf(1)) - 3, metrics.getFree(plan.sizeOf(1)));
+        
+        engine.releaseHold(1);
+        engine.parkHeld(11, new Vehicle("KA01AB5678", VehicleType.CAR, ENTRY));
+        engine.removeVehicle(2, ENTRY.plusHours(1));
+        assertEquals(19, metrics.getFreeSlots());
+        assertEquals(19, metrics.getFreeBySize().values().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(10, metrics.getFreeInZone(1, 0));
+        assertEquals(9, metrics.getFreeInZone(1, 1));
+    }
+}
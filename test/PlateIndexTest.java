@@ -0,0 +1,102 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class PlateIndexTest {
+    
+    private static final LocalDateTime ENTRY = LocalDateTime.of(2025, 1, 6, 8, 0);
+    
+    @Test
+    void aReservedPlateCannotBeReservedAgainUntilCancelledOrReleased() {
+        PlateIndex index = new PlateIndex();
+        String plate = PlateIndex.normalize("mh 12-ab.1234");
+        assertEquals("MH12AB1234", plate);
+        
+        assertTrue(index.reserve(plate));
+        assertFalse(index.reserve(plate));
+        // A pending entry has no slot yet and is not searchable
+        assertEquals(-1, index.slotOf(plate));
+        assertEquals(0, index.size());
+        index.cancel(plate);
+        assertTrue(index.reserve(plate));
+        
+        index.assign(plate, 7);
+        assertEquals(7, index.slotOf(plate));
+        assertEquals(1, index.size());
+        // Cancel only drops a pending entry, never a parked one
+        index.cancel(plate);
+        assertEquals(7, index.slotOf(plate));
+        assertFalse(index.reserve(plate));
+        // Release names the slot, so a stale exit from another slot changes nothing
+        index.release(plate, 8);
+        assertEquals(7, index.slotOf(plate));
+        index.release(plate, 7);
+        assertEquals(-1, index.slotOf(plate));
+        assertEquals(0, index.size());
+        assertTrue(index.reserve(plate));
+    }
+    
+    @Test
+    void prefixSearchStopsAtTheFirstPlateOutsideThePrefix() {
+        PlateIndex index = new PlateIndex();
+        String[] plates = {"KA01AB2", "KA01AB10", "KA011", "KA02AA1", "K", "MH01AA1"};
+        for (int i = 0; i < plates.length; i++) {
+            index.reserve(plates[i]);
+            index.assign(plates[i], i + 1);
+        }
+        
+        assertEquals(List.of(3, 2, 1), index.slotsWithPrefix("KA01", 10));
+        assertEquals(List.of(2, 1), index.slotsWithPrefix("KA01A", 10));
+        assertEquals(List.of(5, 3), index.slotsWithPrefix("K", 2));
+        assertEquals(List.of(6), index.slotsWithPrefix("MH", 10));
+        assertEquals(List.of(), index.slotsWithPrefix("KA03", 10));
+        assertEquals(List.of(), index.slotsWithPrefix("KA01", 0));
+    }
+    
+    @Test
+    void onePlateReadAtTwoGatesAtOnceIsParkedOnce() throws Exception {
+        ParkingEngine engine = new ParkingEngine(100, TariffEngine.standard());
+        for (int round = 0; round < 200; round++) {
+            String plate = "KA01AB" + round;
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger parked = new AtomicInteger();
+            List<Thread> gates = new ArrayList<>();
+            for (int g = 0; g < 4; g++) {
+                // Each gate reads the plate a little differently
+                String read = g % 2 == 0 ? plate : plate.toLowerCase().replace("ab", "-ab ");
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (engine.parkVehicle(new Vehicle(read, VehicleType.CAR, ENTRY)) > 0) {
+                        parked.incrementAndGet();
+                    }
+                });
+                gates.add(thread);
+                thread.start();
+            }
+            start.countDown();
+            for (Thread gate : gates) {
+                gate.join();
+            }
+            
+            assertEquals(1, parked.get());
+            assertEquals(1, engine.getOccupiedCount());
+            int slot = engine.findSlotByPlate(plate);
+            assertEquals(plate, PlateIndex.normalize(engine.getVehicle(slot).getVehicleNumber()));
+            assertEquals(slot, engine.removeVehicleByPlate(plate.toLowerCase(), ENTRY.plusHours(1)).getSlotNumber());
+            assertNull(engine.removeVehicleByPlate(plate, ENTRY.plusHours(1)));
+        }
+    }
+}
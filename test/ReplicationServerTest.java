@@ -0,0 +1,54 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ReplicationServerTest {
+    
+    private static final LocalDateTime ENTRY = LocalDateTime.of(2025, 1, 6, 8, 0);
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void standbyFollowsBatchesFromALoopbackPrimary() throws Exception {
+        ParkingEngine primary = new ParkingEngine(100, TariffEngine.standard());
+        ParkingEngine follower = new ParkingEngine(100, TariffEngine.standard());
+        try (ParkingJournal journal = ParkingJournal.open(directory, 100)) {
+            journal.attach(primary);
+            try (ReplicationServer replication = ReplicationServer.start(journal,
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                 StandbyLot standby = new StandbyLot(follower,
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), replication.getPort()), 1000)) {
+                standby.start();
+                awaitUntil(standby::isSynced);
+                primary.applyBatch(() -> {
+                    for (int i = 0; i < 40; i++) {
+                        primary.parkVehicle(new Vehicle("KA01AB" + i, VehicleType.CAR, ENTRY));
+                    }
+                });
+                primary.removeVehicle(7, ENTRY.plusHours(3));
+                
+                awaitUntil(() -> standby.getLastSeq() == 41);
+                assertEquals(39, follower.getOccupiedCount());
+                assertEquals(primary.getTotalRevenuePaise(), follower.getTotalRevenuePaise());
+                assertEquals("KA01AB39", follower.getVehicle(40).getVehicleNumber());
+            }
+        }
+    }
+    
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            Thread.sleep(10);
+        }
+    }
+}
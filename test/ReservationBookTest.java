@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+class ReservationBookTest {
+    
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 1, 6, 8, 0);
+    
+    private static ReservationBook book(int slots) {
+        ParkingEngine engine = new ParkingEngine(slots, TariffEngine.standard());
+        return new ReservationBook(engine, new LotPlan(new LotLayout(1, slots, slots)), new TimerWheel(NOW));
+    }
+    
+    @Test
+    void overlongAndFarOffBookingsAreRejected() {
+        ReservationBook book = book(10);
+        LocalDateTime start = NOW.plusHours(2);
+        assertThrows(IllegalArgumentException.class,
+            () -> book.reserve("KA01AB1234", VehicleType.CAR, start, start.plusDays(1).plusMinutes(1), NOW));
+        assertThrows(IllegalArgumentException.class,
+            () -> book.reserve("KA01AB1234", VehicleType.CAR, NOW.plusDays(31), NOW.plusDays(31).plusHours(1), NOW));
+        assertThrows(IllegalArgumentException.class,
+            () -> book.findSlot(VehicleType.CAR, start, start.plusYears(100), NOW));
+        assertNotNull(book.reserve("KA01AB1234", VehicleType.CAR, start, start.plusDays(1), NOW));
+    }
+    
+    @Test
+    void cancellingOneBookingKeepsTheSlotBlockedForItsNeighbour() {
+        ReservationBook book = book(10);
+        LocalDateTime day = NOW.plusDays(1);
+        // Blocked 09:30-11:05 and 11:10-13:00, both on slot 1 and both in the 11:00 quarter
+        Reservation first = book.reserve("KA01AA1", VehicleType.CAR, day.withHour(10), day.withHour(11).withMinute(5), NOW);
+        Reservation second = book.reserve("KA01AA2", VehicleType.CAR, day.withHour(11).withMinute(40), day.withHour(13), NOW);
+        assertEquals(first.getSlotNumber(), second.getSlotNumber());
+        
+        assertTrue(book.cancel(first.getId()));
+        // Blocked 10:15-11:15, which meets the second booking only in the 11:00 quarter
+        int slot = book.findSlot(VehicleType.CAR, day.withHour(10).withMinute(45), day.withHour(11).withMinute(15), NOW);
+        assertTrue(slot != second.getSlotNumber(), "Slot " + slot + " is booked from 11:10");
+        assertEquals(second.getSlotNumber(), book.findSlot(VehicleType.CAR, day.withHour(10), day.withHour(11), NOW));
+    }
+    
+    @Test
+    void bookingsOnALargeLotFindFreeSlots() {
+        ReservationBook book = book(1_000_000);
+        LocalDateTime start = NOW.plusDays(29);
+        for (int i = 0; i < 1000; i++) {
+            Reservation reservation = book.reserve("KA01AB" + i, VehicleType.BIKE, start, start.plusDays(1), NOW);
+            assertEquals(i + 1, reservation.getSlotNumber());
+        }
+        assertEquals(1001, book.findSlot(VehicleType.BIKE, start.plusHours(3), start.plusHours(4), NOW));
+    }
+    
+    @Test
+    void windowStartingNowOnANearlyFullLotFindsItsLastFreeSlot() {
+        int slots = 200_000;
+        ParkingEngine engine = new ParkingEngine(slots, TariffEngine.standard());
+        ReservationBook book = new ReservationBook(engine, new LotPlan(new LotLayout(1, slots, slots)), new TimerWheel(NOW));
+        for (int i = 0; i < slots; i++) {
+            if (i != slots - 7 && i != slots - 3) {
+                engine.parkVehicle(i + 1, new Vehicle("KA01AB" + i, VehicleType.BIKE, NOW));
+            }
+        }
+        int slot = book.findSlot(VehicleType.BIKE, NOW, NOW.plusHours(1), NOW);
+        assertTrue(slot == slots - 6 || slot == slots - 2, "Slot " + slot + " is not free");
+        Reservation first = book.reserve("KA02AB1", VehicleType.BIKE, NOW, NOW.plusHours(1), NOW);
+        Reservation second = book.reserve("KA02AB2", VehicleType.BIKE, NOW, NOW.plusHours(1), NOW);
+        assertTrue(first.getSlotNumber() != second.getSlotNumber());
+        assertEquals(-1, book.findSlot(VehicleType.BIKE, NOW, NOW.plusHours(1), NOW));
+    }
+    
+    @Test
+    void walkInsKeepOffSlotsBookedLaterUntilNothingElseIsLeft() {
+        ParkingEngine engine = new ParkingEngine(4, TariffEngine.standard());
+        LotPlan plan = new LotPlan(new LotLayout(1, 4, 4));
+        SlotAssigner assigner = new SlotAssigner(plan, engine, SlotAssigner.Mode.NEAREST);
+        assigner.attach();
+        ReservationBook book = new ReservationBook(engine, plan, new TimerWheel(NOW));
+        assigner.setReservations(book);
+        int nearest = assigner.findSlot(VehicleType.BIKE, null);
+        // Blocked from 10:30, well past the hold lead, so the slot is still free to take now
+        Reservation reservation = book.reserve("KA01AA1", VehicleType.BIKE, NOW.plusHours(3), NOW.plusHours(4), NOW);
+        assertEquals(nearest, reservation.getSlotNumber());
+        assertTrue(book.hasBookings(nearest));
+        
+        for (int i = 0; i < 3; i++) {
+            int slot = assigner.parkVehicle(new Vehicle("KA01AB" + i, VehicleType.BIKE, NOW), null);
+            assertTrue(slot > 0 && slot != nearest, "Walk-in sent to booked Slot " + slot);
+        }
+        assertEquals(nearest, assigner.parkVehicle(new Vehicle("KA01AB3", VehicleType.BIKE, NOW), null));
+        assertEquals(ParkingEngine.LOT_FULL, assigner.parkVehicle(new Vehicle("KA01AB4", VehicleType.BIKE, NOW), null));
+    }
+}
@@ -0,0 +1,97 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class SessionStoreTest {
+    
+    private static final long ENTRY = 1_760_000_000L;
+    
+    @Test
+    void rowsCarryOnIntoTheNextChunk() {
+        SessionStore sessions = new SessionStore();
+        for (int row = 0; row <= SessionStore.CHUNK_SIZE; row++) {
+            sessions.add("KA01AB" + (row % 10_000), VehicleType.CAR, 1 + row % 500, ENTRY + row, ENTRY + row + 3600, row, row + 1);
+        }
+        
+        assertEquals(SessionStore.CHUNK_SIZE + 1, sessions.size());
+        assertEquals(2, sessions.chunksFor(sessions.size()).length);
+        int last = SessionStore.CHUNK_SIZE - 1;
+        int first = SessionStore.CHUNK_SIZE;
+        assertEquals(1 + last % 500, sessions.slotOf(last));
+        assertEquals(1 + first % 500, sessions.slotOf(first));
+        assertEquals(ENTRY + first, sessions.entrySecondOf(first));
+        assertEquals(ENTRY + first + 3600, sessions.exitSecondOf(first));
+        assertEquals(first, sessions.chargeOf(first));
+        assertEquals(first + 1, sessions.seqOf(first));
+        assertThrows(IndexOutOfBoundsException.class, () -> sessions.slotOf(first + 1));
+    }
+    
+    @Test
+    void platesThatDoNotPackAreKeptAsStrings() {
+        SessionStore sessions = new SessionStore();
+        sessions.add("ka-01 ab 1234", VehicleType.CAR, 1, ENTRY, ENTRY + 60, 100, 1);
+        sessions.add("Diplomatic Corps 77", VehicleType.TRUCK, 2, ENTRY, ENTRY + 60, 100, 2);
+        sessions.add("Mü-AB 12", VehicleType.BIKE, 3, ENTRY, ENTRY + 60, 100, 3);
+        
+        assertEquals("KA01AB1234", sessions.plateOf(0));
+        assertEquals("DIPLOMATICCORPS77", sessions.plateOf(1));
+        assertEquals("MÜAB12", sessions.plateOf(2));
+        assertEquals(VehicleType.TRUCK, sessions.typeOf(1));
+        assertEquals(SessionStore.plateHash("diplomatic corps 77"), sessions.plateHashOf(1));
+    }
+    
+    @Test
+    void revenueCoversExactlyTheRowsThereAre() throws Exception {
+        SessionStore sessions = new SessionStore();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger mismatches = new AtomicInteger();
+        List<Thread> gates = new ArrayList<>();
+        for (int g = 0; g < 4; g++) {
+            int gate = g;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    sessions.add("KA0" + gate + "AB" + i, VehicleType.CAR, 1 + gate, ENTRY, ENTRY + 60, 100 + i % 7, 0);
+                }
+            });
+            gates.add(thread);
+            thread.start();
+        }
+        Thread checker = new Thread(() -> {
+            while (running.get()) {
+                int rows;
+                long revenue;
+                synchronized (sessions) {
+                    rows = sessions.size();
+                    revenue = sessions.getRevenuePaise();
+                }
+                long sum = 0;
+                for (int row = 0; row < rows; row++) {
+                    sum += sessions.chargeOf(row);
+                }
+                if (sum != revenue) {
+                    mismatches.incrementAndGet();
+                }
+            }
+        });
+        checker.start();
+        for (Thread gate : gates) {
+            gate.join();
+        }
+        running.set(false);
+        checker.join();
+        
+        long sum = 0;
+        for (int row = 0; row < sessions.size(); row++) {
+            sum += sessions.chargeOf(row);
+        }
+        assertEquals(0, mismatches.get());
+        assertEquals(80_000, sessions.size());
+        assertEquals(sum, sessions.getRevenuePaise());
+    }
+}
@@ -0,0 +1,73 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ShardedParkingEngineTest {
+    
+    private static final LocalDateTime ENTRY = LocalDateTime.of(2025, 1, 6, 8, 0);
+    
+    @Test
+    void eachPlateIsParkedInTheLotItWasSentToAndFoundThere() throws Exception {
+        List<String> lotsReporting = Collections.synchronizedList(new ArrayList<>());
+        try (ShardedParkingEngine network = new ShardedParkingEngine(64, 16, (lot, result) -> lotsReporting.add(lot))) {
+            network.addLot("north", new ParkingEngine(10, TariffEngine.standard()), null, null);
+            network.addLot("south", new ParkingEngine(10, TariffEngine.standard()), null, null);
+            for (int i = 0; i < 6; i++) {
+                String lot = i % 2 == 0 ? "north" : "south";
+                network.put(lot, new GateEvent(GateEvent.Kind.ENTRY, "KA01AB" + i, VehicleType.CAR, "main", ENTRY));
+            }
+            network.awaitProcessed();
+            
+            assertEquals(3, network.lot("north").getEngine().getOccupiedCount());
+            assertEquals(3, network.lot("south").getEngine().getOccupiedCount());
+            assertEquals(6, lotsReporting.size());
+            assertEquals(3, Collections.frequency(lotsReporting, "north"));
+            for (int i = 0; i < 6; i++) {
+                ShardedParkingEngine.PlateLocation location = network.findPlate("ka01ab" + i);
+                assertEquals(i % 2 == 0 ? "north" : "south", location.getLot());
+                assertEquals(network.lot(location.getLot()).getEngine().findSlotByPlate("KA01AB" + i),
+                    location.getSlotNumber());
+            }
+            assertNull(network.findPlate("KA01AB9"));
+            
+            // An exit sent to the lot the plate is not in leaves it parked where it is
+            network.put("north", new GateEvent(GateEvent.Kind.EXIT, "KA01AB1", null, "main", ENTRY.plusHours(1)));
+            network.put("south", new GateEvent(GateEvent.Kind.EXIT, "KA01AB3", null, "main", ENTRY.plusHours(1)));
+            network.awaitProcessed();
+            assertEquals("south", network.findPlate("KA01AB1").getLot());
+            assertNull(network.findPlate("KA01AB3"));
+            assertThrows(IllegalArgumentException.class, () -> network.offer("east", new GateEvent(
+                GateEvent.Kind.EXIT, "KA01AB1", null, "main", ENTRY)));
+        }
+    }
+    
+    @Test
+    void heldSlotsAreNotCountedAsAvailable() {
+        try (ShardedParkingEngine network = new ShardedParkingEngine(64, 16, (lot, result) -> { })) {
+            ParkingEngine north = new ParkingEngine(10, TariffEngine.standard());
+            ParkingEngine south = new ParkingEngine(20, TariffEngine.standard());
+            network.addLot("north", north, null, null);
+            network.addLot("south", south, null, null);
+            north.holdSlot(1);
+            north.holdSlot(2);
+            north.parkVehicle(new Vehicle("KA01AB1", VehicleType.CAR, ENTRY));
+            south.holdSlot(5);
+            
+            ShardedParkingEngine.Occupancy total = network.occupancy();
+            assertEquals(30, total.getTotalSlots());
+            assertEquals(1, total.getOccupied());
+            assertEquals(26, total.getAvailable());
+            Map<String, ShardedParkingEngine.Occupancy> byLot = network.occupancyByLot();
+            assertEquals(7, byLot.get("north").getAvailable());
+            assertEquals(19, byLot.get("south").getAvailable());
+        }
+    }
+}
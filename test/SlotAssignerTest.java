@@ -0,0 +1,120 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SlotAssignerTest {
+    
+    private static final LocalDateTime ENTRY = LocalDateTime.of(2025, 1, 6, 8, 0);
+    // SlotAssigner's ramp distance per level between the gate and the slot
+    private static final float LEVEL_DISTANCE = 40f;
+    
+    @Test
+    void nearestMatchesAScanOfEveryFreeSlotFromEachGate() {
+        LotPlan plan = new LotPlan(new LotLayout(3, 600, 100));
+        plan.addGate("east", 2, 180, 20);
+        plan.addGate("ramp", 3, 60, 40);
+        ParkingEngine engine = new ParkingEngine(plan.getTotalSlots(), TariffEngine.standard());
+        SlotAssigner assigner = new SlotAssigner(plan, engine, SlotAssigner.Mode.NEAREST);
+        assigner.attach();
+        Random random = new Random(7);
+        
+        int plate = 0;
+        for (int round = 0; round < 300; round++) {
+            // Park or free a handful of slots at random, then ask for each type at each gate
+            for (int i = 0; i < 5; i++) {
+                int slotNumber = 1 + random.nextInt(plan.getTotalSlots());
+                if (engine.isAvailable(slotNumber)) {
+                    engine.parkVehicle(slotNumber, new Vehicle("KA01AB" + plate++, VehicleType.TRUCK, ENTRY));
+                } else {
+                    engine.removeVehicle(slotNumber, ENTRY.plusHours(1));
+                }
+            }
+            for (LotPlan.Gate gate : plan.getGates()) {
+                for (VehicleType type : VehicleType.values()) {
+                    int slotNumber = assigner.findSlot(type, gate.getName());
+                    assertEquals(nearestCost(plan, engine, gate, type), cost(plan, gate, slotNumber), 1e-3f,
+                        type + " from " + gate.getName());
+                }
+            }
+        }
+    }
+    
+    @Test
+    void bestFitOnlyTakesABiggerSlotWhenItSavesALongWalk() {
+        // Large bays next to the gate, medium ones further along the same row
+        LotPlan near = planWithMediumFrom(50);
+        LotPlan far = planWithMediumFrom(100);
+        
+        assertEquals(1, assigner(near, SlotAssigner.Mode.NEAREST).findSlot(VehicleType.CAR, "main"));
+        assertEquals(21, assigner(near, SlotAssigner.Mode.BEST_FIT).findSlot(VehicleType.CAR, "main"));
+        assertEquals(1, assigner(far, SlotAssigner.Mode.BEST_FIT).findSlot(VehicleType.CAR, "main"));
+        // Two sizes too big costs twice over
+        assertEquals(21, assigner(near, SlotAssigner.Mode.BEST_FIT).findSlot(VehicleType.BIKE, "main"));
+        assertEquals(1, assigner(far, SlotAssigner.Mode.BEST_FIT).findSlot(VehicleType.BIKE, "main"));
+    }
+    
+    @Test
+    void bestFitLeavesTheLastTenthOfLargeBaysToTrucks() {
+        LotPlan plan = planWithMediumFrom(100);
+        ParkingEngine engine = new ParkingEngine(plan.getTotalSlots(), TariffEngine.standard());
+        SlotAssigner assigner = new SlotAssigner(plan, engine, SlotAssigner.Mode.BEST_FIT);
+        assigner.attach();
+        for (int slotNumber = 1; slotNumber <= 18; slotNumber++) {
+            engine.parkVehicle(slotNumber, new Vehicle("KA01TR" + slotNumber, VehicleType.TRUCK, ENTRY));
+        }
+        
+        // Two of twenty large bays left: cars walk to a medium one, trucks still get the large
+        assertEquals(21, assigner.findSlot(VehicleType.CAR, "main"));
+        assertEquals(19, assigner.findSlot(VehicleType.TRUCK, "main"));
+        assigner.setMode(SlotAssigner.Mode.NEAREST);
+        assertEquals(19, assigner.findSlot(VehicleType.CAR, "main"));
+        
+        // A truck never gets a medium bay, however many are free
+        assertEquals(19, assigner.parkVehicle(new Vehicle("KA01TR19", VehicleType.TRUCK, ENTRY), "main"));
+        assertEquals(20, assigner.parkVehicle(new Vehicle("KA01TR20", VehicleType.TRUCK, ENTRY), "main"));
+        assertEquals(ParkingEngine.LOT_FULL, assigner.parkVehicle(new Vehicle("KA01TR21", VehicleType.TRUCK, ENTRY), "main"));
+        assertEquals(ParkingEngine.ALREADY_PARKED, assigner.parkVehicle(new Vehicle("ka01tr20", VehicleType.TRUCK, ENTRY), "main"));
+        assertEquals(0, assigner.getFreeCount(SlotSize.LARGE));
+        assertEquals(20, assigner.getFreeCount(SlotSize.MEDIUM));
+    }
+    
+    // One level of 40 slots in a row from the gate: 20 large from x = 1, then 20 medium from x = mediumFrom + 1
+    private static LotPlan planWithMediumFrom(float mediumFrom) {
+        LotPlan plan = new LotPlan(new LotLayout(1, 40, 40));
+        for (int slotNumber = 1; slotNumber <= 40; slotNumber++) {
+            boolean large = slotNumber <= 20;
+            plan.setSlot(slotNumber, large ? SlotSize.LARGE : SlotSize.MEDIUM,
+                large ? slotNumber : mediumFrom + slotNumber - 20, 0);
+        }
+        plan.addGate("main", 1, 0, 0);
+        return plan;
+    }
+    
+    private static SlotAssigner assigner(LotPlan plan, SlotAssigner.Mode mode) {
+        SlotAssigner assigner = new SlotAssigner(plan, new ParkingEngine(plan.getTotalSlots(), TariffEngine.standard()), mode);
+        assigner.attach();
+        return assigner;
+    }
+    
+    private static float nearestCost(LotPlan plan, ParkingEngine engine, LotPlan.Gate gate, VehicleType type) {
+        float best = Float.POSITIVE_INFINITY;
+        for (int slotNumber = 1; slotNumber <= plan.getTotalSlots(); slotNumber++) {
+            if (engine.isAvailable(slotNumber) && plan.fits(slotNumber, type)) {
+                best = Math.min(best, cost(plan, gate, slotNumber));
+            }
+        }
+        return best;
+    }
+    
+    private static float cost(LotPlan plan, LotPlan.Gate gate, int slotNumber) {
+        if (slotNumber < 0) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float dx = plan.xOf(slotNumber) - gate.getX();
+        float dy = plan.yOf(slotNumber) - gate.getY();
+        return Math.abs(plan.levelOf(slotNumber) - gate.getLevel()) * LEVEL_DISTANCE + (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
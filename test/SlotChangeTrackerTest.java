@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class SlotChangeTrackerTest {
+    
+    private static final LocalDateTime ENTRY = LocalDateTime.of(2025, 1, 6, 8, 0);
+    
+    @Test
+    void changesBeforeARenderShareOnePassAndComeOutOnceInSlotOrder() {
+        AtomicInteger renders = new AtomicInteger();
+        SlotChangeTracker tracker = new SlotChangeTracker(5000, renders::incrementAndGet);
+        tracker.markDirty(4097);
+        tracker.markDirty(3);
+        tracker.markDirty(65);
+        tracker.markDirty(3);
+        assertEquals(1, renders.get());
+        
+        List<Integer> drawn = new ArrayList<>();
+        tracker.drain(drawn::add);
+        assertEquals(List.of(3, 65, 4097), drawn);
+        
+        // Nothing left to draw, and the next change asks for a new pass
+        drawn.clear();
+        tracker.drain(drawn::add);
+        assertEquals(List.of(), drawn);
+        tracker.markDirty(5000);
+        assertEquals(2, renders.get());
+        tracker.drain(drawn::add);
+        assertEquals(List.of(5000), drawn);
+    }
+    
+    @Test
+    void engineChangesMarkTheirSlots() {
+        ParkingEngine engine = new ParkingEngine(100, TariffEngine.standard());
+        AtomicInteger renders = new AtomicInteger();
+        SlotChangeTracker tracker = new SlotChangeTracker(engine.getTotalSlots(), renders::incrementAndGet);
+        engine.addListener(tracker);
+        assertEquals(1, engine.parkVehicle(new Vehicle("KA01AB1", VehicleType.CAR, ENTRY)));
+        assertEquals(2, engine.parkVehicle(new Vehicle("KA01AB2", VehicleType.CAR, ENTRY)));
+        engine.holdSlot(50);
+        engine.removeVehicle(1, ENTRY.plusHours(1));
+        
+        List<Integer> drawn = new ArrayList<>();
+        tracker.drain(drawn::add);
+        assertEquals(List.of(1, 2, 50), drawn);
+        assertEquals(1, renders.get());
+        
+        engine.releaseHold(50);
+        drawn.clear();
+        tracker.drain(drawn::add);
+        assertEquals(List.of(50), drawn);
+    }
+}
@@ -0,0 +1,135 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class SlotStoreTest {
+    
+    private static final long ENTRY = 1_736_150_400L;
+    
+    @Test
+    void recordsReadBackAndEachVacateStartsANewGeneration() {
+        SlotStore store = new SlotStore(1000);
+        SlotStore.Cursor cursor = store.cursor();
+        assertEquals(1000L * SlotStore.RECORD_BYTES, store.getOffHeapBytes());
+        assertFalse(cursor.read(1000));
+        assertNull(cursor.toVehicle());
+        assertThrows(IllegalArgumentException.class, () -> cursor.read(1001));
+        
+        store.occupy(999, "KA01AB1234", VehicleType.TRUCK, ENTRY);
+        assertTrue(cursor.read(1000));
+        assertEquals("KA01AB1234", cursor.getPlate());
+        assertEquals(VehicleType.TRUCK, cursor.getType());
+        assertEquals(ENTRY, cursor.getEntrySecond());
+        long first = cursor.getHeader();
+        
+        // The same vehicle back in the same slot still reads as a change
+        assertTrue(store.vacate(999, first));
+        assertEquals(SlotStore.FREE, SlotStore.stateOf(store.header(999)));
+        store.occupy(999, "KA01AB1234", VehicleType.TRUCK, ENTRY);
+        cursor.read(1000);
+        assertNotEquals(first, cursor.getHeader());
+        assertFalse(store.vacate(999, first));
+        assertTrue(cursor.read(1000));
+        
+        // Holding keeps the generation; only vacating moves it on
+        store.setState(0, SlotStore.HELD);
+        assertFalse(cursor.read(1));
+        assertEquals(SlotStore.HELD, cursor.getState());
+        store.setState(0, SlotStore.FREE);
+        assertEquals(0, store.header(0));
+    }
+    
+    @Test
+    void platesThatDoNotPackGoAwayWithTheirVehicle() {
+        SlotStore store = new SlotStore(4);
+        SlotStore.Cursor cursor = store.cursor();
+        store.occupy(1, "Diplomatic Corps 77", VehicleType.CAR, ENTRY);
+        assertTrue(cursor.read(2));
+        assertEquals(PlateCodec.NONE, cursor.getPlateCode());
+        assertEquals("Diplomatic Corps 77", cursor.toVehicle().getVehicleNumber());
+        
+        assertTrue(store.vacate(1, cursor.getHeader()));
+        store.occupy(1, "KA01AB1", VehicleType.BIKE, ENTRY + 60);
+        cursor.read(2);
+        assertEquals("KA01AB1", cursor.getPlate());
+        assertEquals(VehicleType.BIKE, cursor.getType());
+    }
+    
+    @Test
+    void racingVacatesOfOneStayHaveOneWinner() throws Exception {
+        SlotStore store = new SlotStore(1);
+        for (int round = 0; round < 500; round++) {
+            store.occupy(0, "KA01AB" + round, VehicleType.CAR, ENTRY + round);
+            long header = store.header(0);
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger winners = new AtomicInteger();
+            List<Thread> gates = new ArrayList<>();
+            for (int g = 0; g < 4; g++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (store.vacate(0, header)) {
+                        winners.incrementAndGet();
+                    }
+                });
+                gates.add(thread);
+                thread.start();
+            }
+            start.countDown();
+            for (Thread gate : gates) {
+                gate.join();
+            }
+            assertEquals(1, winners.get());
+            assertEquals(SlotStore.FREE, SlotStore.stateOf(store.header(0)));
+            assertEquals((header >>> 16) + 1, store.header(0) >>> 16);
+        }
+    }
+    
+    @Test
+    void aReaderNeverSeesTwoVehiclesMixed() throws Exception {
+        SlotStore store = new SlotStore(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger mixed = new AtomicInteger();
+        AtomicInteger seen = new AtomicInteger();
+        // Each vehicle's entry second says which plate and type it has
+        Thread gate = new Thread(() -> {
+            for (int i = 0; seen.get() < 20_000; i++) {
+                store.occupy(0, "KA01AB" + (i % 2), VehicleType.values()[i % 2], ENTRY + i % 2);
+                store.vacate(0, store.header(0));
+            }
+            running.set(false);
+        });
+        Thread reader = new Thread(() -> {
+            SlotStore.Cursor cursor = store.cursor();
+            while (running.get()) {
+                if (cursor.read(1)) {
+                    int which = (int) (cursor.getEntrySecond() - ENTRY);
+                    if (!cursor.getPlate().equals("KA01AB" + which) || cursor.getType() != VehicleType.values()[which]) {
+                        mixed.incrementAndGet();
+                    }
+                    seen.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+        gate.start();
+        gate.join();
+        reader.join();
+        
+        assertEquals(0, mixed.get());
+    }
+}
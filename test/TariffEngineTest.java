@@ -0,0 +1,155 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Golden charges for TariffEngine. The standard tariff is held to the old
+ * calculateCharge wherever that billed correctly, and to one more started
+ * hour where it truncated; the banded, capped and grace tariffs are held to
+ * charges worked out by hand.
+ */
+class TariffEngineTest {
+    
+    private static final LocalDateTime MONDAY = LocalDateTime.of(2025, 1, 6, 0, 0);
+    
+    @TempDir
+    Path directory;
+    
+    // calculateCharge as it was in Main.java before the tariff engine, in paise
+    private static long legacyCharge(VehicleType type, LocalDateTime entry, LocalDateTime exit) {
+        long hours = ChronoUnit.HOURS.between(entry, exit);
+        if (hours == 0) hours = 1;
+        int rate = switch (type.getCode()) {
+            case "car" -> 20;
+            case "bike" -> 10;
+            case "truck" -> 40;
+            default -> 20;
+        };
+        return hours * rate * 100;
+    }
+    
+    private static long charge(TariffEngine tariff, VehicleType type, LocalDateTime entry, LocalDateTime exit) {
+        return tariff.chargeFor(new Vehicle("KA01AB1234", type, entry), exit);
+    }
+    
+    @Test
+    void standardTariffMatchesTheOldChargeForWholeHours() {
+        TariffEngine tariff = TariffEngine.standard();
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            VehicleType type = VehicleType.values()[random.nextInt(3)];
+            LocalDateTime entry = MONDAY.plusMinutes(random.nextInt(7 * 24 * 60));
+            LocalDateTime exit = entry.plusHours(random.nextInt(100));
+            assertEquals(legacyCharge(type, entry, exit), charge(tariff, type, entry, exit), entry + " to " + exit);
+        }
+    }
+    
+    @Test
+    void zeroLengthStayStillPaysTheFirstHour() {
+        TariffEngine tariff = TariffEngine.standard();
+        for (VehicleType type : VehicleType.values()) {
+            assertEquals(legacyCharge(type, MONDAY, MONDAY), charge(tariff, type, MONDAY, MONDAY));
+            assertEquals(type.getHourlyRatePaise(), charge(tariff, type, MONDAY, MONDAY.plusSeconds(1)));
+        }
+    }
+    
+    @Test
+    void startedHourIsBilledWhereTheOldChargeTruncated() {
+        TariffEngine tariff = TariffEngine.standard();
+        LocalDateTime entry = MONDAY.plusHours(9);
+        // 1h59m: the old code billed one hour
+        assertEquals(2000, legacyCharge(VehicleType.CAR, entry, entry.plusMinutes(119)));
+        assertEquals(4000, charge(tariff, VehicleType.CAR, entry, entry.plusMinutes(119)));
+        assertEquals(legacyCharge(VehicleType.TRUCK, entry, entry.plusHours(5)) + 4000,
+            charge(tariff, VehicleType.TRUCK, entry, entry.plusHours(5).plusSeconds(1)));
+    }
+    
+    @Test
+    void bandsCapAndGrace() {
+        TariffEngine tariff = new TariffEngine(List.of(
+            new TariffEngine.Rule(VehicleType.CAR, 2000).band(18, 22, 3000).graceMinutes(10).dailyCap(20_000),
+            new TariffEngine.Rule(VehicleType.BIKE, 1000).band(22, 6, 500)));
+        LocalDateTime evening = MONDAY.plusHours(17);
+        
+        // 17:00-20:30 bills 17, 18, 19 and 20 at their bands
+        assertEquals(2000 + 3 * 3000, charge(tariff, VehicleType.CAR, evening, evening.plusMinutes(210)));
+        assertEquals(0, charge(tariff, VehicleType.CAR, evening, evening.plusMinutes(10)));
+        assertEquals(2000, charge(tariff, VehicleType.CAR, evening, evening.plusMinutes(11)));
+        // 16 h from 17:00 would be 2000 * 12 + 3000 * 4 = 36000, capped at 20000
+        assertEquals(20_000, charge(tariff, VehicleType.CAR, evening, evening.plusHours(16)));
+        // Two capped days and one more hour at 17:00
+        assertEquals(2 * 20_000 + 2000, charge(tariff, VehicleType.CAR, evening, evening.plusHours(49)));
+        
+        // The night band wraps past midnight: 21:00-01:00 is one day hour and three night hours
+        LocalDateTime night = MONDAY.plusHours(21);
+        assertEquals(1000 + 3 * 500, charge(tariff, VehicleType.BIKE, night, night.plusHours(4)));
+        // Without a grace period a bike pays its first hour even for no time at all
+        assertEquals(500, charge(tariff, VehicleType.BIKE, night.plusHours(2), night.plusHours(2)));
+        // Trucks have no rule and keep the default rate
+        assertEquals(3 * 4000, charge(tariff, VehicleType.TRUCK, night, night.plusHours(3)));
+    }
+    
+    @Test
+    void bandEndingWhereItStartsCoversTheWholeDay() {
+        for (int[] hours : new int[][] {{0, 24}, {0, 0}, {7, 7}}) {
+            TariffEngine tariff = new TariffEngine(List.of(
+                new TariffEngine.Rule(VehicleType.CAR, 2000).band(hours[0], hours[1], 1500)));
+            assertEquals(24 * 1500, charge(tariff, VehicleType.CAR, MONDAY.plusHours(5), MONDAY.plusHours(29)),
+                hours[0] + "-" + hours[1]);
+        }
+    }
+    
+    @Test
+    void bandHoursOutsideTheDayAreRejected() {
+        TariffEngine.Rule rule = new TariffEngine.Rule(VehicleType.CAR, 2000);
+        assertThrows(IllegalArgumentException.class, () -> rule.band(0, 25, 1000));
+        assertThrows(IllegalArgumentException.class, () -> rule.band(24, 2, 1000));
+        assertThrows(IllegalArgumentException.class, () -> rule.band(-1, 2, 1000));
+        assertThrows(IllegalArgumentException.class, () -> rule.band(8, 10, -1));
+    }
+    
+    @Test
+    void overlappingBandsAndNegativeAmountsAreRejected() throws IOException {
+        TariffEngine.Rule rule = new TariffEngine.Rule(VehicleType.CAR, 2000).band(18, 22, 3000).band(22, 2, 1000);
+        assertThrows(IllegalArgumentException.class, () -> rule.band(21, 23, 2500));
+        assertThrows(IllegalArgumentException.class, () -> rule.band(1, 3, 2500));
+        assertThrows(IllegalArgumentException.class, () -> rule.band(5, 5, 2500));
+        // A band that was refused leaves no hours of its own behind
+        TariffEngine tariff = new TariffEngine(List.of(rule.band(2, 18, 1500)));
+        assertEquals(1500 + 3000, charge(tariff, VehicleType.CAR, MONDAY.plusHours(17), MONDAY.plusHours(19)));
+        
+        assertThrows(IllegalArgumentException.class, () -> new TariffEngine.Rule(VehicleType.CAR, -1));
+        assertThrows(IllegalArgumentException.class, () -> new TariffEngine.Rule(VehicleType.CAR, 2000).graceMinutes(-5));
+        assertThrows(IllegalArgumentException.class, () -> new TariffEngine.Rule(VehicleType.CAR, 2000).dailyCap(-1));
+        
+        Path file = directory.resolve("tariff.properties");
+        Files.writeString(file, "car.band.18-22=3000\ncar.band.20-23=2500\n");
+        assertThrows(IllegalArgumentException.class, () -> TariffEngine.load(file));
+        Files.writeString(file, "truck.dailyCap=-100\n");
+        assertThrows(IllegalArgumentException.class, () -> TariffEngine.load(file));
+    }
+    
+    @Test
+    void loadedTariffPricesLikeTheSameRules() throws IOException {
+        Path file = directory.resolve("tariff.properties");
+        Files.writeString(file, "car.rate=2000\ncar.band.18-22=3000\ncar.graceMinutes=10\ncar.dailyCap=20000\n"
+            + "bike.band.0-24=800\n");
+        TariffEngine loaded = TariffEngine.load(file);
+        LocalDateTime evening = MONDAY.plusHours(17);
+        assertEquals(2000 + 3 * 3000, charge(loaded, VehicleType.CAR, evening, evening.plusMinutes(210)));
+        assertEquals(3 * 800, charge(loaded, VehicleType.BIKE, evening, evening.plusHours(3)));
+        
+        Files.writeString(file, "car.band.18=3000\n");
+        assertThrows(IllegalArgumentException.class, () -> TariffEngine.load(file));
+    }
+}
@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+class VehicleTypeTest {
+    
+    private static final LocalDateTime ENTRY = LocalDateTime.of(2025, 1, 6, 8, 0);
+    
+    @Test
+    void codesRoundTripAndAnythingElseIsRejected() {
+        for (VehicleType type : VehicleType.values()) {
+            assertSame(type, VehicleType.fromCode(type.getCode()));
+        }
+        for (String code : new String[] {"Car", "CAR", "van", "", "car "}) {
+            assertThrows(IllegalArgumentException.class, () -> VehicleType.fromCode(code), code);
+        }
+    }
+    
+    @Test
+    void eachTypeIsChargedItsOwnRate() {
+        TariffEngine tariff = TariffEngine.standard();
+        for (VehicleType type : VehicleType.values()) {
+            Vehicle vehicle = new Vehicle("KA01AB1", type, ENTRY);
+            assertEquals(type.getHourlyRatePaise(), tariff.chargeFor(vehicle, ENTRY.plusMinutes(30)));
+            assertEquals(3 * type.getHourlyRatePaise(), tariff.chargeFor(vehicle, ENTRY.plusMinutes(121)));
+        }
+        assertEquals(2000, VehicleType.CAR.getHourlyRatePaise());
+        assertEquals(1000, VehicleType.BIKE.getHourlyRatePaise());
+        assertEquals(4000, VehicleType.TRUCK.getHourlyRatePaise());
+    }
+    
+    @Test
+    void aVehicleFitsItsOwnSizeAndLarger() {
+        assertTrue(SlotSize.LARGE.fits(VehicleType.TRUCK.getSlotSize()));
+        assertFalse(SlotSize.MEDIUM.fits(VehicleType.TRUCK.getSlotSize()));
+        assertTrue(SlotSize.MEDIUM.fits(VehicleType.CAR.getSlotSize()));
+        assertFalse(SlotSize.SMALL.fits(VehicleType.CAR.getSlotSize()));
+        for (SlotSize size : SlotSize.values()) {
+            assertTrue(size.fits(VehicleType.BIKE.getSlotSize()));
+        }
+    }
+    
+    @Test
+    void gateEventsParseTypesByCodeAndFailFastOnUnknownOnes() {
+        GateEvent entry = GateEvent.parse("2025-01-06T08:00,main,ENTRY,KA01AB1,truck");
+        assertSame(VehicleType.TRUCK, entry.getType());
+        assertEquals(ENTRY, entry.getTimestamp());
+        assertNull(GateEvent.parse("2025-01-06T09:00:30,main,EXIT,KA01AB1,").getType());
+        assertThrows(IllegalArgumentException.class, () -> GateEvent.parse("2025-01-06T08:00,main,ENTRY,KA01AB1,van"));
+        assertThrows(IllegalArgumentException.class, () -> GateEvent.parse("2025-01-06T08:00,main,ENTRY,KA01AB1,"));
+    }
+}